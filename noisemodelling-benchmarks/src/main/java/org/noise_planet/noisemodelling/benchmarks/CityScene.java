@@ -0,0 +1,290 @@
+/**
+ * NoiseMap is a scientific computation plugin for OrbisGIS developed in order to
+ * evaluate the noise impact on urban mobility plans. This model is
+ * based on the French standard method NMPB2008. It includes traffic-to-noise
+ * sources evaluation and sound propagation processing.
+ * <p>
+ * This version is developed at French IRSTV Institute and at IFSTTAR
+ * (http://www.ifsttar.fr/) as part of the Eval-PDU project, funded by the
+ * French Agence Nationale de la Recherche (ANR) under contract ANR-08-VILL-0005-01.
+ * <p>
+ * Noisemap is distributed under GPL 3 license. Its reference contact is Judicaël
+ * Picaut <judicael.picaut@ifsttar.fr>. It is maintained by Nicolas Fortin
+ * as part of the "Atelier SIG" team of the IRSTV Institute <http://www.irstv.fr/>.
+ * <p>
+ * Copyright (C) 2011 IFSTTAR
+ * Copyright (C) 2011-2012 IRSTV (FR CNRS 2488)
+ * <p>
+ * Noisemap is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * <p>
+ * Noisemap is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * Noisemap. If not, see <http://www.gnu.org/licenses/>.
+ * <p>
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.noise_planet.noisemodelling.benchmarks;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.Polygon;
+import org.locationtech.jts.index.strtree.STRtree;
+import org.noise_planet.noisemodelling.pathfinder.CnossosPropagationData;
+import org.noise_planet.noisemodelling.pathfinder.ComputeCnossosRays;
+import org.noise_planet.noisemodelling.pathfinder.ProfileBuilder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * City scene used as benchmark input. A scene is either generated from a random seed (synthetic) or read from the
+ * Lorient fixture shipped with the tutorial module. With the same parameters the generated scene is always the same,
+ * in order to compare the benchmark results between releases.
+ */
+public class CityScene {
+    public static final String SYNTHETIC = "synthetic";
+    public static final String LORIENT = "lorient";
+    private static final String FIXTURE_PATH = "/org/noise_planet/nmtutorial01/";
+    private static final GeometryFactory GEOMETRY_FACTORY = new GeometryFactory();
+    /** Distance between two building block centers (m) */
+    private static final double BLOCK_PITCH = 40;
+    /** Width of the streets between blocks (m) */
+    private static final double STREET_WIDTH = 14;
+    /** Receivers height relative to the ground (m) */
+    private static final double RECEIVER_HEIGHT = 4;
+    /** Sources height relative to the ground (m) */
+    private static final double SOURCE_HEIGHT = 0.05;
+
+    private final ProfileBuilder profileBuilder;
+    private final CnossosPropagationData propagationData;
+    private final ComputeCnossosRays computeRays;
+    /** One point per source, the middle vertex of the source geometry */
+    private final List<Coordinate> sourcePoints = new ArrayList<>();
+
+    private CityScene(ProfileBuilder profileBuilder, CnossosPropagationData propagationData) {
+        this.profileBuilder = profileBuilder;
+        this.propagationData = propagationData;
+        this.computeRays = new ComputeCnossosRays(propagationData);
+        computeRays.setThreadCount(1);
+        computeRays.makeRelativeZToAbsolute();
+        for(Geometry source : propagationData.sourceGeometries) {
+            Coordinate[] coordinates = source.getCoordinates();
+            sourcePoints.add(coordinates[coordinates.length / 2]);
+        }
+    }
+
+    public ProfileBuilder getProfileBuilder() {
+        return profileBuilder;
+    }
+
+    public CnossosPropagationData getPropagationData() {
+        return propagationData;
+    }
+
+    public ComputeCnossosRays getComputeRays() {
+        return computeRays;
+    }
+
+    public List<Coordinate> getReceivers() {
+        return propagationData.receivers;
+    }
+
+    /**
+     * @return One representative point (absolute altitude) for each sound source
+     */
+    public List<Coordinate> getSourcePoints() {
+        return sourcePoints;
+    }
+
+    /**
+     * Create a scene
+     * @param parameters Scene parameters
+     * @return The scene ready for computation
+     */
+    public static CityScene create(Parameters parameters) throws IOException {
+        if(LORIENT.equalsIgnoreCase(parameters.scene)) {
+            return fixture(parameters);
+        } else if(SYNTHETIC.equalsIgnoreCase(parameters.scene)) {
+            return synthetic(parameters);
+        } else {
+            throw new IllegalArgumentException(String.format("Unknown scene %s", parameters.scene));
+        }
+    }
+
+    /**
+     * Generate a Manhattan-like city: square blocks of buildings separated by streets, roads on the streets,
+     * receivers on the sidewalks and a rolling DEM.
+     * @param parameters Scene parameters
+     * @return The generated scene
+     */
+    public static CityScene synthetic(Parameters parameters) {
+        Random random = new Random(parameters.seed);
+        int blocks = Math.max(1, (int) Math.ceil(Math.sqrt(parameters.buildings)));
+        double size = blocks * BLOCK_PITCH;
+        ProfileBuilder profileBuilder = new ProfileBuilder();
+        // Buildings
+        int buildingCount = 0;
+        for(int i = 0; i < blocks && buildingCount < parameters.buildings; i++) {
+            for(int j = 0; j < blocks && buildingCount < parameters.buildings; j++) {
+                double minX = i * BLOCK_PITCH + STREET_WIDTH / 2 + random.nextDouble() * 2;
+                double minY = j * BLOCK_PITCH + STREET_WIDTH / 2 + random.nextDouble() * 2;
+                double maxX = (i + 1) * BLOCK_PITCH - STREET_WIDTH / 2 - random.nextDouble() * 6;
+                double maxY = (j + 1) * BLOCK_PITCH - STREET_WIDTH / 2 - random.nextDouble() * 6;
+                Polygon footprint = GEOMETRY_FACTORY.createPolygon(new Coordinate[] {new Coordinate(minX, minY),
+                        new Coordinate(maxX, minY), new Coordinate(maxX, maxY), new Coordinate(minX, maxY),
+                        new Coordinate(minX, minY)});
+                profileBuilder.addBuilding(footprint, 5 + random.nextDouble() * 25, buildingCount + 1);
+                buildingCount++;
+            }
+        }
+        // Topography
+        if(parameters.demPoints > 0) {
+            int demSide = Math.max(2, (int) Math.ceil(Math.sqrt(parameters.demPoints)));
+            double margin = BLOCK_PITCH;
+            double step = (size + 2 * margin) / (demSide - 1);
+            for(int i = 0; i < demSide; i++) {
+                for(int j = 0; j < demSide; j++) {
+                    double x = -margin + i * step;
+                    double y = -margin + j * step;
+                    double z = 10 * Math.sin(x / 150) * Math.cos(y / 200) + random.nextDouble() * 0.5;
+                    profileBuilder.addTopographicPoint(new Coordinate(x, y, z));
+                }
+            }
+        }
+        // Ground effect, soft ground on one half of the city
+        profileBuilder.addGroundEffect(-BLOCK_PITCH, size / 2, -BLOCK_PITCH, size + BLOCK_PITCH, 0.7);
+        profileBuilder.addGroundEffect(size / 2, size + BLOCK_PITCH, -BLOCK_PITCH, size + BLOCK_PITCH, 0.0);
+        profileBuilder.finishFeeding();
+        CnossosPropagationData data = new CnossosPropagationData(profileBuilder);
+        data.reflexionOrder = parameters.reflexionOrder;
+        data.maxSrcDist = parameters.maximumPropagationDistance;
+        data.maxRefDist = Math.min(parameters.maximumPropagationDistance, CnossosPropagationData.DEFAULT_MAXIMUM_REF_DIST);
+        data.setComputeHorizontalDiffraction(true);
+        data.setComputeVerticalDiffraction(true);
+        // Road sources, placed in the middle of the streets along x or y axis
+        for(int idSource = 0; idSource < parameters.sources; idSource++) {
+            int street = random.nextInt(blocks + 1);
+            int start = random.nextInt(blocks);
+            int end = Math.min(blocks, start + 1 + random.nextInt(3));
+            double streetPos = street * BLOCK_PITCH;
+            Coordinate[] road;
+            if(random.nextBoolean()) {
+                road = new Coordinate[] {new Coordinate(start * BLOCK_PITCH, streetPos, SOURCE_HEIGHT),
+                        new Coordinate(end * BLOCK_PITCH, streetPos, SOURCE_HEIGHT)};
+            } else {
+                road = new Coordinate[] {new Coordinate(streetPos, start * BLOCK_PITCH, SOURCE_HEIGHT),
+                        new Coordinate(streetPos, end * BLOCK_PITCH, SOURCE_HEIGHT)};
+            }
+            data.addSource((long) idSource, GEOMETRY_FACTORY.createLineString(road));
+        }
+        // Receivers on the sidewalk
+        for(int idReceiver = 0; idReceiver < parameters.receivers; idReceiver++) {
+            int street = random.nextInt(blocks + 1);
+            double along = random.nextDouble() * size;
+            double streetPos = street * BLOCK_PITCH + (random.nextBoolean() ? 1 : -1) * (STREET_WIDTH / 2 - 1);
+            Coordinate receiver = random.nextBoolean() ? new Coordinate(along, streetPos, RECEIVER_HEIGHT) :
+                    new Coordinate(streetPos, along, RECEIVER_HEIGHT);
+            data.addReceiver(idReceiver, receiver);
+        }
+        return new CityScene(profileBuilder, data);
+    }
+
+    /**
+     * Read the Lorient fixture (buildings, roads and DEM) of the tutorial module. Receivers are randomly placed
+     * outside the buildings, the number of buildings and dem points are the one of the fixture.
+     * @param parameters Scene parameters, sources limit the number of roads (0 for all roads)
+     * @return The fixture scene
+     */
+    public static CityScene fixture(Parameters parameters) throws IOException {
+        Random random = new Random(parameters.seed);
+        ProfileBuilder profileBuilder = new ProfileBuilder();
+        STRtree buildingsIndex = new STRtree();
+        int idBuilding = 1;
+        for(GeoJsonFixture.Feature building : GeoJsonFixture.readResource(FIXTURE_PATH + "buildings.geojson",
+                "height")) {
+            double height = Double.isNaN(building.value) ? 10 : building.value;
+            Geometry footprint = building.geometry;
+            for(int i = 0; i < footprint.getNumGeometries(); i++) {
+                Polygon polygon = (Polygon) footprint.getGeometryN(i);
+                profileBuilder.addBuilding(polygon, height, idBuilding++);
+                buildingsIndex.insert(polygon.getEnvelopeInternal(), polygon);
+            }
+        }
+        if(parameters.demPoints > 0) {
+            for (GeoJsonFixture.Feature demPoint : GeoJsonFixture.readResource(FIXTURE_PATH + "dem_lorient.geojson",
+                    "height")) {
+                profileBuilder.addTopographicPoint(demPoint.geometry.getCoordinate());
+            }
+        }
+        profileBuilder.finishFeeding();
+        CnossosPropagationData data = new CnossosPropagationData(profileBuilder);
+        data.reflexionOrder = parameters.reflexionOrder;
+        data.maxSrcDist = parameters.maximumPropagationDistance;
+        data.maxRefDist = Math.min(parameters.maximumPropagationDistance, CnossosPropagationData.DEFAULT_MAXIMUM_REF_DIST);
+        data.setComputeHorizontalDiffraction(true);
+        data.setComputeVerticalDiffraction(true);
+        List<GeoJsonFixture.Feature> roads = GeoJsonFixture.readResource(FIXTURE_PATH + "lw_roads.geojson", "pk");
+        Envelope roadsEnvelope = new Envelope();
+        long idSource = 0;
+        for(GeoJsonFixture.Feature road : roads) {
+            if(parameters.sources > 0 && idSource >= parameters.sources) {
+                break;
+            }
+            Geometry roadGeometry = road.geometry.copy();
+            // Fixture roads z are relative to the ground
+            data.addSource(idSource++, roadGeometry);
+            roadsEnvelope.expandToInclude(roadGeometry.getEnvelopeInternal());
+        }
+        buildingsIndex.build();
+        int idReceiver = 0;
+        while(idReceiver < parameters.receivers) {
+            Coordinate receiver = new Coordinate(roadsEnvelope.getMinX() + random.nextDouble() * roadsEnvelope.getWidth(),
+                    roadsEnvelope.getMinY() + random.nextDouble() * roadsEnvelope.getHeight(), RECEIVER_HEIGHT);
+            boolean inBuilding = false;
+            for(Object item : buildingsIndex.query(new Envelope(receiver))) {
+                if(((Polygon) item).intersects(GEOMETRY_FACTORY.createPoint(receiver))) {
+                    inBuilding = true;
+                    break;
+                }
+            }
+            if(!inBuilding) {
+                data.addReceiver(idReceiver++, receiver);
+            }
+        }
+        return new CityScene(profileBuilder, data);
+    }
+
+    /**
+     * Size of the generated scene
+     */
+    public static class Parameters {
+        /** {@link #SYNTHETIC} or {@link #LORIENT} */
+        public String scene = SYNTHETIC;
+        /** Number of buildings (synthetic scene only) */
+        public int buildings = 500;
+        /** Number of DEM points (synthetic scene), 0 disable the DEM of the fixture scene */
+        public int demPoints = 2500;
+        /** Number of road sources (0 for all the fixture roads) */
+        public int sources = 20;
+        /** Number of receivers */
+        public int receivers = 100;
+        /** Reflection order */
+        public int reflexionOrder = 1;
+        /** Maximum source-receiver distance (m) */
+        public double maximumPropagationDistance = 500;
+        /** Random generator seed */
+        public long seed = 42;
+    }
+}
@@ -0,0 +1,85 @@
+/**
+ * NoiseMap is a scientific computation plugin for OrbisGIS developed in order to
+ * evaluate the noise impact on urban mobility plans. This model is
+ * based on the French standard method NMPB2008. It includes traffic-to-noise
+ * sources evaluation and sound propagation processing.
+ * <p>
+ * This version is developed at French IRSTV Institute and at IFSTTAR
+ * (http://www.ifsttar.fr/) as part of the Eval-PDU project, funded by the
+ * French Agence Nationale de la Recherche (ANR) under contract ANR-08-VILL-0005-01.
+ * <p>
+ * Noisemap is distributed under GPL 3 license. Its reference contact is Judicaël
+ * Picaut <judicael.picaut@ifsttar.fr>. It is maintained by Nicolas Fortin
+ * as part of the "Atelier SIG" team of the IRSTV Institute <http://www.irstv.fr/>.
+ * <p>
+ * Copyright (C) 2011 IFSTTAR
+ * Copyright (C) 2011-2012 IRSTV (FR CNRS 2488)
+ * <p>
+ * Noisemap is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * <p>
+ * Noisemap is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * Noisemap. If not, see <http://www.gnu.org/licenses/>.
+ * <p>
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.noise_planet.noisemodelling.benchmarks;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+
+/**
+ * JMH shared state holding the city scene. Scene size is configured with the JMH parameters, ex:
+ * {@code java -jar benchmarks.jar -p scene=synthetic -p buildings=2000 -p reflexionOrder=2}
+ */
+@State(Scope.Benchmark)
+public class CityScenePlan {
+    @Param({CityScene.SYNTHETIC, CityScene.LORIENT})
+    public String scene;
+
+    @Param({"500"})
+    public int buildings;
+
+    @Param({"2500"})
+    public int demPoints;
+
+    @Param({"20"})
+    public int sources;
+
+    @Param({"100"})
+    public int receivers;
+
+    @Param({"1"})
+    public int reflexionOrder;
+
+    @Param({"500"})
+    public double maximumPropagationDistance;
+
+    public CityScene cityScene;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        CityScene.Parameters parameters = new CityScene.Parameters();
+        parameters.scene = scene;
+        parameters.buildings = buildings;
+        parameters.demPoints = demPoints;
+        parameters.sources = sources;
+        parameters.receivers = receivers;
+        parameters.reflexionOrder = reflexionOrder;
+        parameters.maximumPropagationDistance = maximumPropagationDistance;
+        cityScene = CityScene.create(parameters);
+    }
+}
@@ -0,0 +1,144 @@
+/**
+ * NoiseMap is a scientific computation plugin for OrbisGIS developed in order to
+ * evaluate the noise impact on urban mobility plans. This model is
+ * based on the French standard method NMPB2008. It includes traffic-to-noise
+ * sources evaluation and sound propagation processing.
+ * <p>
+ * This version is developed at French IRSTV Institute and at IFSTTAR
+ * (http://www.ifsttar.fr/) as part of the Eval-PDU project, funded by the
+ * French Agence Nationale de la Recherche (ANR) under contract ANR-08-VILL-0005-01.
+ * <p>
+ * Noisemap is distributed under GPL 3 license. Its reference contact is Judicaël
+ * Picaut <judicael.picaut@ifsttar.fr>. It is maintained by Nicolas Fortin
+ * as part of the "Atelier SIG" team of the IRSTV Institute <http://www.irstv.fr/>.
+ * <p>
+ * Copyright (C) 2011 IFSTTAR
+ * Copyright (C) 2011-2012 IRSTV (FR CNRS 2488)
+ * <p>
+ * Noisemap is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * <p>
+ * Noisemap is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * Noisemap. If not, see <http://www.gnu.org/licenses/>.
+ * <p>
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.noise_planet.noisemodelling.benchmarks;
+
+import org.h2gis.api.EmptyProgressVisitor;
+import org.noise_planet.noisemodelling.pathfinder.IComputeRaysOut;
+import org.noise_planet.noisemodelling.pathfinder.PropagationPath;
+import org.noise_planet.noisemodelling.propagation.ComputeRaysOutAttenuation;
+import org.noise_planet.noisemodelling.propagation.PropagationProcessPathData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Attenuation benchmark, evaluation of the CNOSSOS-EU attenuation of the source-receiver rays computed once on the
+ * scene.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ComputeAttenuationBenchmark {
+
+    /**
+     * Rays of a source-receiver couple
+     */
+    static final class SourceReceiverRays {
+        final long sourceId;
+        final double sourceLi;
+        final long receiverId;
+        final List<PropagationPath> propagationPaths;
+
+        SourceReceiverRays(long sourceId, double sourceLi, long receiverId, List<PropagationPath> propagationPaths) {
+            this.sourceId = sourceId;
+            this.sourceLi = sourceLi;
+            this.receiverId = receiverId;
+            this.propagationPaths = propagationPaths;
+        }
+    }
+
+    /**
+     * Keep the rays grouped by source-receiver couple, as provided to {@link IComputeRaysOut#addPropagationPaths}
+     */
+    static final class RaysCollector implements IComputeRaysOut {
+        final List<SourceReceiverRays> rays = new ArrayList<>();
+
+        @Override
+        public double[] addPropagationPaths(long sourceId, double sourceLi, long receiverId,
+                                            List<PropagationPath> propagationPath) {
+            rays.add(new SourceReceiverRays(sourceId, sourceLi, receiverId, new ArrayList<>(propagationPath)));
+            return new double[0];
+        }
+
+        @Override
+        public void finalizeReceiver(long receiverId) {
+
+        }
+
+        @Override
+        public IComputeRaysOut subProcess() {
+            return this;
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class SceneRays {
+        List<SourceReceiverRays> rays;
+        PropagationProcessPathData pathData;
+        ComputeRaysOutAttenuation attenuation;
+
+        @Setup(Level.Trial)
+        public void setUp(CityScenePlan plan) {
+            CityScene scene = plan.cityScene;
+            RaysCollector collector = new RaysCollector();
+            for(int receiverId = 0; receiverId < scene.getReceivers().size(); receiverId++) {
+                scene.getComputeRays().computeRaysAtPosition(receiverId, scene.getReceivers().get(receiverId),
+                        collector, new EmptyProgressVisitor());
+            }
+            if(collector.rays.isEmpty()) {
+                throw new IllegalStateException("No rays computed on the scene");
+            }
+            rays = collector.rays;
+            pathData = new PropagationProcessPathData();
+            attenuation = new ComputeRaysOutAttenuation(false, pathData, scene.getPropagationData());
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int index = 0;
+    }
+
+    @Benchmark
+    public double[] computeAttenuation(SceneRays sceneRays, Cursor cursor) {
+        cursor.index = (cursor.index + 1) % sceneRays.rays.size();
+        SourceReceiverRays rays = sceneRays.rays.get(cursor.index);
+        return sceneRays.attenuation.computeAttenuation(sceneRays.pathData, rays.sourceId, rays.sourceLi,
+                rays.receiverId, rays.propagationPaths);
+    }
+}
@@ -0,0 +1,103 @@
+/**
+ * NoiseMap is a scientific computation plugin for OrbisGIS developed in order to
+ * evaluate the noise impact on urban mobility plans. This model is
+ * based on the French standard method NMPB2008. It includes traffic-to-noise
+ * sources evaluation and sound propagation processing.
+ * <p>
+ * This version is developed at French IRSTV Institute and at IFSTTAR
+ * (http://www.ifsttar.fr/) as part of the Eval-PDU project, funded by the
+ * French Agence Nationale de la Recherche (ANR) under contract ANR-08-VILL-0005-01.
+ * <p>
+ * Noisemap is distributed under GPL 3 license. Its reference contact is Judicaël
+ * Picaut <judicael.picaut@ifsttar.fr>. It is maintained by Nicolas Fortin
+ * as part of the "Atelier SIG" team of the IRSTV Institute <http://www.irstv.fr/>.
+ * <p>
+ * Copyright (C) 2011 IFSTTAR
+ * Copyright (C) 2011-2012 IRSTV (FR CNRS 2488)
+ * <p>
+ * Noisemap is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * <p>
+ * Noisemap is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * Noisemap. If not, see <http://www.gnu.org/licenses/>.
+ * <p>
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.noise_planet.noisemodelling.benchmarks;
+
+import org.h2gis.api.EmptyProgressVisitor;
+import org.locationtech.jts.geom.Coordinate;
+import org.noise_planet.noisemodelling.pathfinder.ComputeCnossosRaysOut;
+import org.noise_planet.noisemodelling.pathfinder.Orientation;
+import org.noise_planet.noisemodelling.pathfinder.PropagationPath;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ray computation benchmarks, for a complete receiver and for a single source-receiver direct path.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ComputeCnossosRaysBenchmark {
+
+    /**
+     * Iterate over the receivers and sources of the scene, always in the same order
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+        int receiverIndex = 0;
+        int sourceIndex = 0;
+
+        int nextReceiver(CityScene scene) {
+            receiverIndex = (receiverIndex + 1) % scene.getReceivers().size();
+            return receiverIndex;
+        }
+
+        int nextSource(CityScene scene) {
+            sourceIndex = (sourceIndex + 1) % scene.getSourcePoints().size();
+            return sourceIndex;
+        }
+    }
+
+    @Benchmark
+    public long computeRaysAtPosition(CityScenePlan plan, Cursor cursor) {
+        CityScene scene = plan.cityScene;
+        int receiverId = cursor.nextReceiver(scene);
+        ComputeCnossosRaysOut out = new ComputeCnossosRaysOut(false, scene.getPropagationData());
+        scene.getComputeRays().computeRaysAtPosition(receiverId, scene.getReceivers().get(receiverId), out,
+                new EmptyProgressVisitor());
+        return out.rayCount.get();
+    }
+
+    @Benchmark
+    public List<PropagationPath> directPath(CityScenePlan plan, Cursor cursor) {
+        CityScene scene = plan.cityScene;
+        int receiverId = cursor.nextReceiver(scene);
+        int sourceId = cursor.nextSource(scene);
+        Coordinate receiver = scene.getReceivers().get(receiverId);
+        Coordinate source = scene.getSourcePoints().get(sourceId);
+        return scene.getComputeRays().directPath(source, sourceId, new Orientation(), receiver, receiverId,
+                true, true, false);
+    }
+}
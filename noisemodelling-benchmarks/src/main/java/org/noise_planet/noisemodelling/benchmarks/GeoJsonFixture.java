@@ -0,0 +1,169 @@
+/**
+ * NoiseMap is a scientific computation plugin for OrbisGIS developed in order to
+ * evaluate the noise impact on urban mobility plans. This model is
+ * based on the French standard method NMPB2008. It includes traffic-to-noise
+ * sources evaluation and sound propagation processing.
+ * <p>
+ * This version is developed at French IRSTV Institute and at IFSTTAR
+ * (http://www.ifsttar.fr/) as part of the Eval-PDU project, funded by the
+ * French Agence Nationale de la Recherche (ANR) under contract ANR-08-VILL-0005-01.
+ * <p>
+ * Noisemap is distributed under GPL 3 license. Its reference contact is Judicaël
+ * Picaut <judicael.picaut@ifsttar.fr>. It is maintained by Nicolas Fortin
+ * as part of the "Atelier SIG" team of the IRSTV Institute <http://www.irstv.fr/>.
+ * <p>
+ * Copyright (C) 2011 IFSTTAR
+ * Copyright (C) 2011-2012 IRSTV (FR CNRS 2488)
+ * <p>
+ * Noisemap is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * <p>
+ * Noisemap is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * Noisemap. If not, see <http://www.gnu.org/licenses/>.
+ * <p>
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.noise_planet.noisemodelling.benchmarks;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.LinearRing;
+import org.locationtech.jts.geom.Polygon;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Minimal GeoJSON FeatureCollection reader used to load the fixture city scenes.
+ * Only the geometry types found in the NoiseModelling fixtures are supported (Point, LineString, Polygon and
+ * their Multi counterpart).
+ */
+public class GeoJsonFixture {
+    private static final GeometryFactory GEOMETRY_FACTORY = new GeometryFactory();
+
+    /**
+     * A geometry and its numeric property value
+     */
+    public static final class Feature {
+        public final Geometry geometry;
+        public final double value;
+
+        public Feature(Geometry geometry, double value) {
+            this.geometry = geometry;
+            this.value = value;
+        }
+    }
+
+    /**
+     * Read features from a GeoJSON stream
+     * @param inputStream GeoJSON FeatureCollection
+     * @param property Numeric property to read in feature properties, NaN if the property is missing
+     * @return Features
+     */
+    public static List<Feature> read(InputStream inputStream, String property) throws IOException {
+        JsonNode root = new ObjectMapper().readTree(inputStream);
+        JsonNode features = root.get("features");
+        if(features == null || !features.isArray()) {
+            return Collections.emptyList();
+        }
+        List<Feature> result = new ArrayList<>(features.size());
+        for(JsonNode feature : features) {
+            JsonNode geometry = feature.get("geometry");
+            if(geometry == null || geometry.isNull()) {
+                continue;
+            }
+            double value = Double.NaN;
+            JsonNode properties = feature.get("properties");
+            if(property != null && properties != null && properties.has(property)) {
+                value = properties.get(property).asDouble(Double.NaN);
+            }
+            result.add(new Feature(readGeometry(geometry), value));
+        }
+        return result;
+    }
+
+    /**
+     * Read features from a classpath resource
+     * @param resourceName Absolute resource name
+     * @param property Numeric property to read in feature properties
+     * @return Features
+     */
+    public static List<Feature> readResource(String resourceName, String property) throws IOException {
+        try(InputStream inputStream = GeoJsonFixture.class.getResourceAsStream(resourceName)) {
+            if(inputStream == null) {
+                throw new IOException(String.format("Fixture resource %s not found", resourceName));
+            }
+            return read(inputStream, property);
+        }
+    }
+
+    static Geometry readGeometry(JsonNode geometry) {
+        String type = geometry.get("type").asText();
+        JsonNode coordinates = geometry.get("coordinates");
+        switch (type) {
+            case "Point":
+                return GEOMETRY_FACTORY.createPoint(readCoordinate(coordinates));
+            case "MultiPoint":
+                return GEOMETRY_FACTORY.createMultiPointFromCoords(readCoordinates(coordinates));
+            case "LineString":
+                return GEOMETRY_FACTORY.createLineString(readCoordinates(coordinates));
+            case "MultiLineString":
+                LineString[] lineStrings = new LineString[coordinates.size()];
+                for(int i = 0; i < lineStrings.length; i++) {
+                    lineStrings[i] = GEOMETRY_FACTORY.createLineString(readCoordinates(coordinates.get(i)));
+                }
+                return GEOMETRY_FACTORY.createMultiLineString(lineStrings);
+            case "Polygon":
+                return readPolygon(coordinates);
+            case "MultiPolygon":
+                Polygon[] polygons = new Polygon[coordinates.size()];
+                for(int i = 0; i < polygons.length; i++) {
+                    polygons[i] = readPolygon(coordinates.get(i));
+                }
+                return GEOMETRY_FACTORY.createMultiPolygon(polygons);
+            default:
+                throw new IllegalArgumentException(String.format("Geometry type %s is not supported", type));
+        }
+    }
+
+    private static Polygon readPolygon(JsonNode rings) {
+        LinearRing shell = GEOMETRY_FACTORY.createLinearRing(readCoordinates(rings.get(0)));
+        LinearRing[] holes = new LinearRing[rings.size() - 1];
+        for(int i = 0; i < holes.length; i++) {
+            holes[i] = GEOMETRY_FACTORY.createLinearRing(readCoordinates(rings.get(i + 1)));
+        }
+        return GEOMETRY_FACTORY.createPolygon(shell, holes);
+    }
+
+    private static Coordinate[] readCoordinates(JsonNode coordinates) {
+        Coordinate[] result = new Coordinate[coordinates.size()];
+        for(int i = 0; i < result.length; i++) {
+            result[i] = readCoordinate(coordinates.get(i));
+        }
+        return result;
+    }
+
+    private static Coordinate readCoordinate(JsonNode coordinate) {
+        if(coordinate.size() > 2) {
+            return new Coordinate(coordinate.get(0).asDouble(), coordinate.get(1).asDouble(),
+                    coordinate.get(2).asDouble());
+        } else {
+            return new Coordinate(coordinate.get(0).asDouble(), coordinate.get(1).asDouble());
+        }
+    }
+}
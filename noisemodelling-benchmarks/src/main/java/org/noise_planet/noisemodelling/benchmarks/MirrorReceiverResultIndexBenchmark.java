@@ -0,0 +1,134 @@
+/**
+ * NoiseMap is a scientific computation plugin for OrbisGIS developed in order to
+ * evaluate the noise impact on urban mobility plans. This model is
+ * based on the French standard method NMPB2008. It includes traffic-to-noise
+ * sources evaluation and sound propagation processing.
+ * <p>
+ * This version is developed at French IRSTV Institute and at IFSTTAR
+ * (http://www.ifsttar.fr/) as part of the Eval-PDU project, funded by the
+ * French Agence Nationale de la Recherche (ANR) under contract ANR-08-VILL-0005-01.
+ * <p>
+ * Noisemap is distributed under GPL 3 license. Its reference contact is Judicaël
+ * Picaut <judicael.picaut@ifsttar.fr>. It is maintained by Nicolas Fortin
+ * as part of the "Atelier SIG" team of the IRSTV Institute <http://www.irstv.fr/>.
+ * <p>
+ * Copyright (C) 2011 IFSTTAR
+ * Copyright (C) 2011-2012 IRSTV (FR CNRS 2488)
+ * <p>
+ * Noisemap is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * <p>
+ * Noisemap is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * Noisemap. If not, see <http://www.gnu.org/licenses/>.
+ * <p>
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.noise_planet.noisemodelling.benchmarks;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.noise_planet.noisemodelling.pathfinder.CnossosPropagationData;
+import org.noise_planet.noisemodelling.pathfinder.MirrorReceiverBeamIndex;
+import org.noise_planet.noisemodelling.pathfinder.MirrorReceiverResult;
+import org.noise_planet.noisemodelling.pathfinder.MirrorReceiverResultIndex;
+import org.noise_planet.noisemodelling.pathfinder.ProfileBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Image receivers benchmarks, construction of the index for one receiver and query of the image receivers visible
+ * from a source.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class MirrorReceiverResultIndexBenchmark {
+
+    /**
+     * Walls around each receiver and prebuilt index of image receivers
+     */
+    @State(Scope.Benchmark)
+    public static class ReceiverWalls {
+        List<List<ProfileBuilder.Wall>> walls = new ArrayList<>();
+        List<MirrorReceiverResultIndex> indexes = new ArrayList<>();
+        List<MirrorReceiverBeamIndex> beamIndexes = new ArrayList<>();
+        MirrorReceiverBeamIndex.ReflectingWalls reflectingWalls;
+
+        @Setup(Level.Trial)
+        public void setUp(CityScenePlan plan) {
+            CnossosPropagationData data = plan.cityScene.getPropagationData();
+            reflectingWalls = new MirrorReceiverBeamIndex.ReflectingWalls(data.profileBuilder);
+            for(Coordinate receiver : plan.cityScene.getReceivers()) {
+                Envelope envelope = new Envelope(receiver);
+                envelope.expandBy(data.maxSrcDist);
+                List<ProfileBuilder.Wall> receiverWalls = data.profileBuilder.getWallsIn(envelope);
+                walls.add(receiverWalls);
+                indexes.add(new MirrorReceiverResultIndex(receiverWalls, receiver, Math.max(1, data.reflexionOrder),
+                        data.maxSrcDist, data.maxRefDist));
+                beamIndexes.add(new MirrorReceiverBeamIndex(reflectingWalls, receiver,
+                        Math.max(1, data.reflexionOrder), data.maxSrcDist, data.maxRefDist));
+            }
+        }
+    }
+
+    @Benchmark
+    public MirrorReceiverResultIndex build(CityScenePlan plan, ReceiverWalls receiverWalls,
+                                           ComputeCnossosRaysBenchmark.Cursor cursor) {
+        CityScene scene = plan.cityScene;
+        CnossosPropagationData data = scene.getPropagationData();
+        int receiverId = cursor.nextReceiver(scene);
+        return new MirrorReceiverResultIndex(receiverWalls.walls.get(receiverId), scene.getReceivers().get(receiverId),
+                Math.max(1, data.reflexionOrder), data.maxSrcDist, data.maxRefDist);
+    }
+
+    @Benchmark
+    public List<MirrorReceiverResult> query(CityScenePlan plan, ReceiverWalls receiverWalls,
+                                            ComputeCnossosRaysBenchmark.Cursor cursor) {
+        CityScene scene = plan.cityScene;
+        int receiverId = cursor.nextReceiver(scene);
+        Coordinate source = scene.getSourcePoints().get(cursor.nextSource(scene));
+        return receiverWalls.indexes.get(receiverId).findCloseMirrorReceivers(source);
+    }
+
+    @Benchmark
+    public MirrorReceiverBeamIndex buildBeam(CityScenePlan plan, ReceiverWalls receiverWalls,
+                                             ComputeCnossosRaysBenchmark.Cursor cursor) {
+        CityScene scene = plan.cityScene;
+        CnossosPropagationData data = scene.getPropagationData();
+        int receiverId = cursor.nextReceiver(scene);
+        return new MirrorReceiverBeamIndex(receiverWalls.reflectingWalls, scene.getReceivers().get(receiverId),
+                Math.max(1, data.reflexionOrder), data.maxSrcDist, data.maxRefDist);
+    }
+
+    @Benchmark
+    public List<MirrorReceiverResult> queryBeam(CityScenePlan plan, ReceiverWalls receiverWalls,
+                                                ComputeCnossosRaysBenchmark.Cursor cursor) {
+        CityScene scene = plan.cityScene;
+        int receiverId = cursor.nextReceiver(scene);
+        Coordinate source = scene.getSourcePoints().get(cursor.nextSource(scene));
+        return receiverWalls.beamIndexes.get(receiverId).findCloseMirrorReceivers(source);
+    }
+}
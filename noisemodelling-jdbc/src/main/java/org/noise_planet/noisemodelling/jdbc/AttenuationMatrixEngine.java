@@ -0,0 +1,358 @@
+/**
+ * NoiseModelling is an open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by the DECIDE team from the Lab-STICC (CNRS) and by the Mixt Research Unit in Environmental Acoustics (Université Gustave Eiffel).
+ * <http://noise-planet.org/noisemodelling.html>
+ *
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ */
+package org.noise_planet.noisemodelling.jdbc;
+
+import org.noise_planet.noisemodelling.jdbc.utils.AttenuationMatrixReader;
+import org.noise_planet.noisemodelling.pathfinder.ThreadPool;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.noise_planet.noisemodelling.pathfinder.utils.PowerUtils.dbaToW;
+import static org.noise_planet.noisemodelling.pathfinder.utils.PowerUtils.wToDba;
+
+/**
+ * Compute the receiver levels of emission scenarios from an attenuation matrix written by the propagation
+ * computation (see {@link LDENConfig#setAttenuationMatrixFile(File)}). The propagation paths are not computed again,
+ * the receivers are read one after the other and the levels of all the time steps are computed in parallel.
+ */
+public class AttenuationMatrixEngine {
+    public static final int DEFAULT_BATCH_SIZE = 64;
+    private final File attenuationMatrixFile;
+    private int threadCount = Runtime.getRuntime().availableProcessors();
+    private int batchSize = DEFAULT_BATCH_SIZE;
+
+    /**
+     * @param attenuationMatrixFile File written by the propagation computation
+     */
+    public AttenuationMatrixEngine(File attenuationMatrixFile) {
+        this.attenuationMatrixFile = attenuationMatrixFile;
+    }
+
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    /**
+     * @param threadCount Number of computation threads
+     */
+    public void setThreadCount(int threadCount) {
+        this.threadCount = Math.max(1, threadCount);
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * @param batchSize Number of receivers computed by a thread at once
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    /**
+     * Sound power of the sources for each time step
+     */
+    public interface Emission {
+        /**
+         * @return Number of time steps
+         */
+        int getStepCount();
+
+        /**
+         * @param step Time step
+         * @return Attenuation period of the time step, ordinal of {@link LDENConfig.TIME_PERIOD}
+         */
+        int getPeriod(int step);
+
+        /**
+         * @param sourceId Source identifier
+         * @param step Time step
+         * @return Sound power (W) of each frequency band or null if the source does not emit during this step
+         */
+        double[] getSourcePower(long sourceId, int step);
+    }
+
+    /**
+     * Receive the levels of the receivers, called by the computation threads
+     */
+    public interface LevelsConsumer {
+        /**
+         * @param receiverId Receiver identifier
+         * @param step Time step
+         * @param levels Level (dB) of each frequency band
+         * @throws IOException Error while storing the levels, the computation is stopped
+         */
+        void accept(long receiverId, int step, double[] levels) throws IOException;
+    }
+
+    /**
+     * Compute the levels of all the receivers of the attenuation matrix
+     * @param emission Sound power of the sources
+     * @param consumer Levels output, must be thread safe
+     * @return Number of receivers
+     * @throws IOException Error while reading the matrix or storing the levels
+     */
+    public long run(Emission emission, LevelsConsumer consumer) throws IOException {
+        AtomicReference<Exception> error = new AtomicReference<>();
+        long receiverCount = 0;
+        try (AttenuationMatrixReader reader = new AttenuationMatrixReader(attenuationMatrixFile)) {
+            int bandCount = reader.getFrequencies().size();
+            int periodCount = reader.getPeriodCount();
+            for (int step = 0; step < emission.getStepCount(); step++) {
+                if (emission.getPeriod(step) < 0 || emission.getPeriod(step) >= periodCount) {
+                    throw new IllegalArgumentException("The attenuation matrix does not contain the period " +
+                            emission.getPeriod(step) + " of the step " + step);
+                }
+            }
+            // The reading thread computes a batch itself when all the threads are busy
+            ThreadPool threadPool = new ThreadPool(threadCount, threadCount, Long.MAX_VALUE, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(threadCount * 2), new ThreadPoolExecutor.CallerRunsPolicy());
+            try {
+                List<AttenuationMatrixReader.ReceiverAttenuation> batch = new ArrayList<>(batchSize);
+                AttenuationMatrixReader.ReceiverAttenuation receiver;
+                while (error.get() == null && (receiver = reader.next()) != null) {
+                    batch.add(receiver);
+                    receiverCount++;
+                    if (batch.size() == batchSize) {
+                        threadPool.execute(new BatchComputation(batch, emission, consumer, periodCount, bandCount,
+                                error));
+                        batch = new ArrayList<>(batchSize);
+                    }
+                }
+                if (!batch.isEmpty() && error.get() == null) {
+                    threadPool.execute(new BatchComputation(batch, emission, consumer, periodCount, bandCount,
+                            error));
+                }
+            } finally {
+                threadPool.shutdown();
+                try {
+                    threadPool.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
+                } catch (InterruptedException ex) {
+                    error.compareAndSet(null, ex);
+                }
+            }
+        }
+        if (error.get() != null) {
+            if (error.get() instanceof IOException) {
+                throw (IOException) error.get();
+            }
+            throw new IOException(error.get().getLocalizedMessage(), error.get());
+        }
+        return receiverCount;
+    }
+
+    /**
+     * Compute the levels of a receiver for all the time steps
+     * @param receiver Attenuation between the receiver and its sources
+     * @param emission Sound power of the sources
+     * @param consumer Levels output
+     * @param periodCount Number of periods of the attenuation matrix
+     * @param bandCount Number of frequency bands
+     * @throws IOException Error while storing the levels
+     */
+    static void computeReceiver(AttenuationMatrixReader.ReceiverAttenuation receiver, Emission emission,
+                                LevelsConsumer consumer, int periodCount, int bandCount) throws IOException {
+        int sourceCount = receiver.getSourceCount();
+        // Attenuation converted once, shared by the time steps
+        double[] attenuations = new double[sourceCount * periodCount * bandCount];
+        for (int source = 0; source < sourceCount; source++) {
+            for (int period = 0; period < periodCount; period++) {
+                for (int band = 0; band < bandCount; band++) {
+                    attenuations[(source * periodCount + period) * bandCount + band] =
+                            dbaToW(receiver.getAttenuation(source, period, band));
+                }
+            }
+        }
+        for (int step = 0; step < emission.getStepCount(); step++) {
+            int period = emission.getPeriod(step);
+            double[] levels = new double[bandCount];
+            for (int source = 0; source < sourceCount; source++) {
+                double[] power = emission.getSourcePower(receiver.sourceIds[source], step);
+                if (power == null) {
+                    continue;
+                }
+                int offset = (source * periodCount + period) * bandCount;
+                for (int band = 0; band < bandCount; band++) {
+                    levels[band] += power[band] * attenuations[offset + band];
+                }
+            }
+            consumer.accept(receiver.receiverId, step, wToDba(levels));
+        }
+    }
+
+    private static final class BatchComputation implements Runnable {
+        private final List<AttenuationMatrixReader.ReceiverAttenuation> receivers;
+        private final Emission emission;
+        private final LevelsConsumer consumer;
+        private final int periodCount;
+        private final int bandCount;
+        private final AtomicReference<Exception> error;
+
+        BatchComputation(List<AttenuationMatrixReader.ReceiverAttenuation> receivers, Emission emission,
+                         LevelsConsumer consumer, int periodCount, int bandCount, AtomicReference<Exception> error) {
+            this.receivers = receivers;
+            this.emission = emission;
+            this.consumer = consumer;
+            this.periodCount = periodCount;
+            this.bandCount = bandCount;
+            this.error = error;
+        }
+
+        @Override
+        public void run() {
+            try {
+                for (AttenuationMatrixReader.ReceiverAttenuation receiver : receivers) {
+                    if (error.get() != null) {
+                        return;
+                    }
+                    computeReceiver(receiver, emission, consumer, periodCount, bandCount);
+                }
+            } catch (Exception ex) {
+                error.compareAndSet(null, ex);
+            }
+        }
+    }
+
+    /**
+     * Sound power of the sources stored in memory, for each named time step
+     */
+    public static class TimeStepEmission implements Emission {
+        private final Map<String, Integer> steps = new LinkedHashMap<>();
+        private final List<Integer> periods = new ArrayList<>();
+        private final Map<Long, List<double[]>> sourcesPower = new HashMap<>();
+
+        /**
+         * Add a time step. Steps named D, E or N use the attenuation of the day, evening or night period, the other
+         * steps use the attenuation of the day period.
+         * @param step Step name
+         * @return Step index
+         */
+        public int addStep(String step) {
+            Integer index = steps.get(step);
+            if (index == null) {
+                index = steps.size();
+                steps.put(step, index);
+                int period = LDENConfig.TIME_PERIOD.DAY.ordinal();
+                if ("E".equals(step)) {
+                    period = LDENConfig.TIME_PERIOD.EVENING.ordinal();
+                } else if ("N".equals(step)) {
+                    period = LDENConfig.TIME_PERIOD.NIGHT.ordinal();
+                }
+                periods.add(period);
+            }
+            return index;
+        }
+
+        /**
+         * @param step Step name
+         * @param period Attenuation period of the step
+         * @return Step index
+         */
+        public int addStep(String step, LDENConfig.TIME_PERIOD period) {
+            int index = addStep(step);
+            periods.set(index, period.ordinal());
+            return index;
+        }
+
+        /**
+         * @param sourceId Source identifier
+         * @param step Step name
+         * @param levels Sound power level (dB) of each frequency band
+         */
+        public void addSourceLevels(long sourceId, String step, double[] levels) {
+            int index = addStep(step);
+            List<double[]> sourcePower = sourcesPower.computeIfAbsent(sourceId, k -> new ArrayList<>());
+            while (sourcePower.size() <= index) {
+                sourcePower.add(null);
+            }
+            sourcePower.set(index, dbaToW(levels));
+        }
+
+        /**
+         * @return Step names ordered by index
+         */
+        public List<String> getStepNames() {
+            return Collections.unmodifiableList(new ArrayList<>(steps.keySet()));
+        }
+
+        @Override
+        public int getStepCount() {
+            return steps.size();
+        }
+
+        @Override
+        public int getPeriod(int step) {
+            return periods.get(step);
+        }
+
+        @Override
+        public double[] getSourcePower(long sourceId, int step) {
+            List<double[]> sourcePower = sourcesPower.get(sourceId);
+            return sourcePower == null || step >= sourcePower.size() ? null : sourcePower.get(step);
+        }
+
+        /**
+         * Read the emission of the sources from a table with the fields IDSOURCE, TIMESTRING and one sound power
+         * level field per frequency band. The TIMESTRING field is optional, all the rows are in the D step without
+         * it.
+         * @param connection Active connection
+         * @param tableName Emission table
+         * @param lwFrequencyPrepend Prefix of the sound power level fields, ex: LW for LW63, LW125..
+         * @param frequencies Frequency bands (Hz) of the attenuation matrix
+         * @return Emission of the sources
+         * @throws SQLException Error while reading the table
+         */
+        public static TimeStepEmission fromTable(Connection connection, String tableName, String lwFrequencyPrepend,
+                                                 List<Integer> frequencies) throws SQLException {
+            TimeStepEmission emission = new TimeStepEmission();
+            try (Statement st = connection.createStatement();
+                 ResultSet rs = st.executeQuery("SELECT * FROM " + tableName)) {
+                int sourceField = rs.findColumn("IDSOURCE");
+                int timeField = -1;
+                for (int column = 1; column <= rs.getMetaData().getColumnCount(); column++) {
+                    if ("TIMESTRING".equalsIgnoreCase(rs.getMetaData().getColumnLabel(column))) {
+                        timeField = column;
+                    }
+                }
+                int[] levelFields = new int[frequencies.size()];
+                for (int idFreq = 0; idFreq < levelFields.length; idFreq++) {
+                    levelFields[idFreq] = rs.findColumn(lwFrequencyPrepend + frequencies.get(idFreq));
+                }
+                while (rs.next()) {
+                    double[] levels = new double[levelFields.length];
+                    for (int idFreq = 0; idFreq < levelFields.length; idFreq++) {
+                        levels[idFreq] = rs.getDouble(levelFields[idFreq]);
+                    }
+                    emission.addSourceLevels(rs.getLong(sourceField), timeField > 0 ? rs.getString(timeField) : "D",
+                            levels);
+                }
+            }
+            return emission;
+        }
+    }
+}
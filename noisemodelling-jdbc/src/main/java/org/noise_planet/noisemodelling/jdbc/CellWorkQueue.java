@@ -0,0 +1,422 @@
+/**
+ * NoiseModelling is an open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by the DECIDE team from the Lab-STICC (CNRS) and by the Mixt Research Unit in Environmental Acoustics (Université Gustave Eiffel).
+ * <http://noise-planet.org/noisemodelling.html>
+ *
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ */
+package org.noise_planet.noisemodelling.jdbc;
+
+import org.h2gis.api.ProgressVisitor;
+import org.h2gis.utilities.JDBCUtilities;
+import org.h2gis.utilities.TableLocation;
+import org.h2gis.utilities.dbtypes.DBUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Distribution of the cells of a computation between several workers (JVM processes, possibly on different hosts)
+ * through a table of the shared database. A coordinator fills the queue with {@link #init(Connection, Map)}, each
+ * worker opens its own connections, claims the cells one by one and writes its levels in its own partition tables
+ * (see {@link #setPartitionTables(LDENConfig, String)}). The writer of the worker sets a cell as done once its levels
+ * are committed (see {@link LDENPointNoiseMapFactory#setCellWorkQueue(CellWorkQueue)}). Once the queue is empty the
+ * coordinator merges the partitions into the result tables with
+ * {@link #mergePartitions(Connection, LDENConfig, Collection)}.
+ */
+public class CellWorkQueue {
+    public static final int STATE_PENDING = 0;
+    public static final int STATE_RUNNING = 1;
+    public static final int STATE_DONE = 2;
+    private static final Logger LOGGER = LoggerFactory.getLogger(CellWorkQueue.class);
+    private static final Pattern WORKER_PATTERN = Pattern.compile("[A-Za-z0-9_]+");
+    private final String tableName;
+
+    /**
+     * @param tableName Queue table
+     */
+    public CellWorkQueue(String tableName) {
+        this.tableName = tableName;
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    /**
+     * Create the queue table with all the cells in pending state. The cells with the most receivers are claimed
+     * first, so the workers end at about the same time.
+     * @param connection Active connection
+     * @param cells Cells with their number of receivers, see {@link PointNoiseMap#searchPopulatedCells(Connection)}
+     * @throws SQLException Error while creating the table
+     */
+    public void init(Connection connection, Map<PointNoiseMap.CellIndex, Integer> cells) throws SQLException {
+        try (Statement st = connection.createStatement()) {
+            st.execute("DROP TABLE IF EXISTS " + tableName);
+            st.execute("CREATE TABLE " + tableName + " (CELL_LONGITUDE integer NOT NULL," +
+                    " CELL_LATITUDE integer NOT NULL, RECEIVER_COUNT integer NOT NULL, STATE integer NOT NULL," +
+                    " WORKER varchar, PRIMARY KEY(CELL_LONGITUDE, CELL_LATITUDE))");
+        }
+        try (PreparedStatement st = connection.prepareStatement("INSERT INTO " + tableName +
+                " VALUES (?, ?, ?, " + STATE_PENDING + ", NULL)")) {
+            for (Map.Entry<PointNoiseMap.CellIndex, Integer> cell : cells.entrySet()) {
+                st.setInt(1, cell.getKey().getLongitudeIndex());
+                st.setInt(2, cell.getKey().getLatitudeIndex());
+                st.setInt(3, cell.getValue());
+                st.addBatch();
+            }
+            st.executeBatch();
+        }
+        commit(connection);
+    }
+
+    /**
+     * Claim the next pending cell. Concurrent workers never claim the same cell.
+     * @param connection Connection of the worker
+     * @param worker Worker identifier
+     * @return The claimed cell, or null if there is no more pending cells
+     * @throws SQLException Error while updating the queue
+     */
+    public PointNoiseMap.CellIndex pollCell(Connection connection, String worker) throws SQLException {
+        checkWorker(worker);
+        try (PreparedStatement select = connection.prepareStatement("SELECT CELL_LONGITUDE, CELL_LATITUDE FROM " +
+                tableName + " WHERE STATE = " + STATE_PENDING +
+                " ORDER BY RECEIVER_COUNT DESC, CELL_LATITUDE, CELL_LONGITUDE LIMIT 1");
+             PreparedStatement update = connection.prepareStatement("UPDATE " + tableName + " SET STATE = " +
+                     STATE_RUNNING + ", WORKER = ? WHERE CELL_LONGITUDE = ? AND CELL_LATITUDE = ? AND STATE = " +
+                     STATE_PENDING)) {
+            while (true) {
+                PointNoiseMap.CellIndex cellIndex;
+                try (ResultSet rs = select.executeQuery()) {
+                    if (!rs.next()) {
+                        return null;
+                    }
+                    cellIndex = new PointNoiseMap.CellIndex(rs.getInt(1), rs.getInt(2));
+                }
+                update.setString(1, worker);
+                update.setInt(2, cellIndex.getLongitudeIndex());
+                update.setInt(3, cellIndex.getLatitudeIndex());
+                // the state condition fails if another worker claimed the cell in the meantime
+                int claimed = update.executeUpdate();
+                commit(connection);
+                if (claimed == 1) {
+                    return cellIndex;
+                }
+            }
+        }
+    }
+
+    /**
+     * Set a cell as done, the levels of the cell must be committed before
+     * @param connection Connection of the worker
+     * @param cellIndex Computed cell
+     * @throws SQLException Error while updating the queue
+     */
+    public void setCellDone(Connection connection, PointNoiseMap.CellIndex cellIndex) throws SQLException {
+        try (PreparedStatement st = connection.prepareStatement("UPDATE " + tableName + " SET STATE = " +
+                STATE_DONE + " WHERE CELL_LONGITUDE = ? AND CELL_LATITUDE = ?")) {
+            st.setInt(1, cellIndex.getLongitudeIndex());
+            st.setInt(2, cellIndex.getLatitudeIndex());
+            st.executeUpdate();
+        }
+        commit(connection);
+    }
+
+    /**
+     * Give back the cells of a worker to the queue. After a crash of the worker the levels of its computed cells
+     * may not be written, then its partition tables must be dropped and all its cells released.
+     * @param connection Active connection
+     * @param worker Worker identifier
+     * @param keepDone True to release only the claimed cells that have not been computed
+     * @return Number of released cells
+     * @throws SQLException Error while updating the queue
+     */
+    public int releaseCells(Connection connection, String worker, boolean keepDone) throws SQLException {
+        int released;
+        try (PreparedStatement st = connection.prepareStatement("UPDATE " + tableName + " SET STATE = " +
+                STATE_PENDING + ", WORKER = NULL WHERE WORKER = ?" +
+                (keepDone ? " AND STATE = " + STATE_RUNNING : ""))) {
+            st.setString(1, worker);
+            released = st.executeUpdate();
+        }
+        commit(connection);
+        return released;
+    }
+
+    private void releaseCell(Connection connection, String worker, PointNoiseMap.CellIndex cellIndex)
+            throws SQLException {
+        try (PreparedStatement st = connection.prepareStatement("UPDATE " + tableName + " SET STATE = " +
+                STATE_PENDING + ", WORKER = NULL WHERE CELL_LONGITUDE = ? AND CELL_LATITUDE = ? AND WORKER = ?" +
+                " AND STATE = " + STATE_RUNNING)) {
+            st.setInt(1, cellIndex.getLongitudeIndex());
+            st.setInt(2, cellIndex.getLatitudeIndex());
+            st.setString(3, worker);
+            st.executeUpdate();
+        }
+        commit(connection);
+    }
+
+    /**
+     * @param connection Active connection
+     * @return Number of cells not computed yet
+     * @throws SQLException Error while reading the queue
+     */
+    public int countRemainingCells(Connection connection) throws SQLException {
+        try (Statement st = connection.createStatement();
+             ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM " + tableName + " WHERE STATE <> " + STATE_DONE)) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    /**
+     * @param connection Active connection
+     * @return Identifiers of the workers that claimed at least one cell
+     * @throws SQLException Error while reading the queue
+     */
+    public List<String> fetchWorkers(Connection connection) throws SQLException {
+        List<String> workers = new ArrayList<>();
+        try (Statement st = connection.createStatement();
+             ResultSet rs = st.executeQuery("SELECT DISTINCT WORKER FROM " + tableName +
+                     " WHERE WORKER IS NOT NULL ORDER BY WORKER")) {
+            while (rs.next()) {
+                workers.add(rs.getString(1));
+            }
+        }
+        return workers;
+    }
+
+    /**
+     * Worker loop, compute the cells claimed from the queue until the queue is empty. The cells are claimed only
+     * when they are about to be prepared, so the cells are shared between the workers according to their speed.
+     * The cells are not set as done by this method, the writer of the worker sets each cell as done once its levels
+     * are committed, see {@link LDENPointNoiseMapFactory#setCellWorkQueue(CellWorkQueue)}.
+     * @param queueConnection Connection used to claim the cells. It must not be the connection of the computation
+     *                        when the cells are prepared in advance, the preparation thread uses that connection
+     *                        while the next cell is claimed.
+     * @param connection Connection of the computation
+     * @param worker Worker identifier
+     * @param pointNoiseMap Initialized computation of the worker
+     * @param progression Progression info
+     * @param skipReceivers Set of already processed receivers
+     * @param cellComputedListener Called after the computation of each cell, the factory of the worker
+     * @return Number of computed cells
+     * @throws SQLException Error while updating the queue or computing a cell
+     * @throws java.io.IOException Error while computing a cell
+     * @see PointNoiseMap#setMaximumPreparedCells(int)
+     */
+    public int evaluateCells(Connection queueConnection, Connection connection, String worker,
+                             PointNoiseMap pointNoiseMap, ProgressVisitor progression, Set<Long> skipReceivers,
+                             PointNoiseMap.CellComputedListener cellComputedListener)
+            throws SQLException, java.io.IOException {
+        checkWorker(worker);
+        if (queueConnection == connection && pointNoiseMap.getMaximumPreparedCells() > 0) {
+            throw new IllegalArgumentException("The queue requires its own connection when the cells are prepared" +
+                    " in advance");
+        }
+        ClaimedCells claimedCells = new ClaimedCells(queueConnection, worker);
+        Set<PointNoiseMap.CellIndex> computedCells = new HashSet<>();
+        pointNoiseMap.evaluateCells(connection, () -> claimedCells, progression, skipReceivers,
+                (cellIndex, computeRaysOut) -> {
+                    cellComputedListener.cellComputed(cellIndex, computeRaysOut);
+                    computedCells.add(cellIndex);
+                });
+        if (claimedCells.error != null) {
+            throw claimedCells.error;
+        }
+        // cells claimed in advance but not computed (canceled computation)
+        for (PointNoiseMap.CellIndex cellIndex : claimedCells.claimed) {
+            if (!computedCells.contains(cellIndex)) {
+                releaseCell(queueConnection, worker, cellIndex);
+            }
+        }
+        return computedCells.size();
+    }
+
+    /**
+     * Set the output tables and files of a worker, named by prefixing the result tables (and the checkpoint table)
+     * and the output file names with the worker identifier. The output files are not merged by
+     * {@link #mergePartitions(Connection, LDENConfig, Collection)}.
+     * @param ldenConfig Configuration of the worker
+     * @param worker Worker identifier
+     */
+    public static void setPartitionTables(LDENConfig ldenConfig, String worker) {
+        checkWorker(worker);
+        ldenConfig.setlDayTable(getPartitionTable(ldenConfig.getlDayTable(), worker));
+        ldenConfig.setlEveningTable(getPartitionTable(ldenConfig.getlEveningTable(), worker));
+        ldenConfig.setlNightTable(getPartitionTable(ldenConfig.getlNightTable(), worker));
+        ldenConfig.setlDenTable(getPartitionTable(ldenConfig.getlDenTable(), worker));
+        ldenConfig.setRaysTable(getPartitionTable(ldenConfig.getRaysTable(), worker));
+        ldenConfig.setlChannelTablePrefix(getPartitionTable(ldenConfig.getlChannelTablePrefix(), worker));
+        if (ldenConfig.getCheckpointTable() != null) {
+            ldenConfig.setCheckpointTable(getPartitionTable(ldenConfig.getCheckpointTable(), worker));
+        }
+        if (ldenConfig.getSqlOutputFile() != null) {
+            ldenConfig.setSqlOutputFile(getPartitionFile(ldenConfig.getSqlOutputFile(), worker));
+        }
+        if (ldenConfig.getColumnarOutputFile() != null) {
+            ldenConfig.setColumnarOutputFile(getPartitionFile(ldenConfig.getColumnarOutputFile(), worker));
+        }
+        if (ldenConfig.getAttenuationMatrixFile() != null) {
+            ldenConfig.setAttenuationMatrixFile(getPartitionFile(ldenConfig.getAttenuationMatrixFile(), worker));
+        }
+    }
+
+    /**
+     * @param file Output file
+     * @param worker Worker identifier
+     * @return Output file of the worker, in the same folder
+     */
+    public static File getPartitionFile(File file, String worker) {
+        return new File(file.getParentFile(), worker + "_" + file.getName());
+    }
+
+    /**
+     * @param tableName Result table name, optionally with its schema
+     * @param worker Worker identifier
+     * @return Table name of the worker partition
+     */
+    public static String getPartitionTable(String tableName, String worker) {
+        int nameStart = tableName.lastIndexOf('.') + 1;
+        return tableName.substring(0, nameStart) + worker + "_" + tableName.substring(nameStart);
+    }
+
+    /**
+     * Move the rows of the worker partitions into the result tables, then drop the partitions. A receiver on the
+     * border of two cells claimed by two different workers is kept only once in the levels tables.
+     * @param connection Active connection
+     * @param ldenConfig Configuration with the result table names (without worker prefix)
+     * @param workers Identifiers of the workers
+     * @throws SQLException Error while merging the tables
+     */
+    public static void mergePartitions(Connection connection, LDENConfig ldenConfig, Collection<String> workers)
+            throws SQLException {
+        List<String> tables = new ArrayList<>();
+        tables.add(ldenConfig.getlDayTable());
+        tables.add(ldenConfig.getlEveningTable());
+        tables.add(ldenConfig.getlNightTable());
+        tables.add(ldenConfig.getlDenTable());
+        for (String channel : ldenConfig.getEmissionChannels().keySet()) {
+            tables.add(ldenConfig.getChannelTable(channel));
+        }
+        for (String table : tables) {
+            mergeTable(connection, table, workers, true);
+        }
+        // rays rows are not deduplicated, the table has no index on the receiver identifier
+        mergeTable(connection, ldenConfig.getRaysTable(), workers, false);
+        commit(connection);
+    }
+
+    private static void mergeTable(Connection connection, String tableName, Collection<String> workers,
+                                   boolean uniqueReceivers) throws SQLException {
+        List<String> partitions = new ArrayList<>();
+        for (String worker : workers) {
+            String partition = getPartitionTable(tableName, worker);
+            if (JDBCUtilities.tableExists(connection, TableLocation.parse(partition, DBUtils.getDBType(connection)))) {
+                partitions.add(partition);
+            }
+        }
+        if (partitions.isEmpty()) {
+            return;
+        }
+        LOGGER.info(String.format("Merge %d partitions into %s", partitions.size(), tableName));
+        try (Statement st = connection.createStatement()) {
+            st.execute("DROP TABLE IF EXISTS " + tableName);
+            // the first partition becomes the result table with its keys
+            st.execute("ALTER TABLE " + partitions.get(0) + " RENAME TO " +
+                    tableName.substring(tableName.lastIndexOf('.') + 1));
+            List<String> columns = new ArrayList<>();
+            for (String column : JDBCUtilities.getColumnNames(connection, tableName)) {
+                // auto incremented key of the rays table
+                if (!column.equalsIgnoreCase("PK")) {
+                    columns.add(column);
+                }
+            }
+            String columnList = String.join(", ", columns);
+            for (String partition : partitions.subList(1, partitions.size())) {
+                StringBuilder sb = new StringBuilder("INSERT INTO " + tableName + "(" + columnList + ") SELECT " +
+                        columnList + " FROM " + partition + " P");
+                if (uniqueReceivers) {
+                    sb.append(" WHERE NOT EXISTS (SELECT 1 FROM ");
+                    sb.append(tableName);
+                    sb.append(" T WHERE T.IDRECEIVER = P.IDRECEIVER)");
+                }
+                st.executeUpdate(sb.toString());
+                st.execute("DROP TABLE " + partition);
+            }
+        }
+    }
+
+    private static void checkWorker(String worker) {
+        if (worker == null || !WORKER_PATTERN.matcher(worker).matches()) {
+            throw new IllegalArgumentException("The worker identifier must contain only letters, digits and _");
+        }
+    }
+
+    private static void commit(Connection connection) throws SQLException {
+        if (!connection.getAutoCommit()) {
+            connection.commit();
+        }
+    }
+
+    /**
+     * Cells claimed from the queue while iterating
+     */
+    private final class ClaimedCells implements Iterator<PointNoiseMap.CellIndex> {
+        private final Connection connection;
+        private final String worker;
+        private final List<PointNoiseMap.CellIndex> claimed = new ArrayList<>();
+        private PointNoiseMap.CellIndex next = null;
+        private boolean finished = false;
+        private SQLException error = null;
+
+        ClaimedCells(Connection connection, String worker) {
+            this.connection = connection;
+            this.worker = worker;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null && !finished) {
+                try {
+                    next = pollCell(connection, worker);
+                    if (next != null) {
+                        claimed.add(next);
+                    }
+                } catch (SQLException ex) {
+                    error = ex;
+                }
+                finished = next == null;
+            }
+            return next != null;
+        }
+
+        @Override
+        public PointNoiseMap.CellIndex next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            PointNoiseMap.CellIndex cellIndex = next;
+            next = null;
+            return cellIndex;
+        }
+    }
+}
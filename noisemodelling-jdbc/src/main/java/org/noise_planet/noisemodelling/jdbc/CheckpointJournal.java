@@ -0,0 +1,300 @@
+/**
+ * NoiseModelling is an open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by the DECIDE team from the Lab-STICC (CNRS) and by the Mixt Research Unit in Environmental Acoustics (Université Gustave Eiffel).
+ * <http://noise-planet.org/noisemodelling.html>
+ *
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ */
+package org.noise_planet.noisemodelling.jdbc;
+
+import org.h2gis.utilities.JDBCUtilities;
+import org.h2gis.utilities.TableLocation;
+import org.h2gis.utilities.dbtypes.DBUtils;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Journal of the cells of a computation stored in a table next to the result tables. A cell is recorded once all
+ * the levels of its receivers are written, with its receivers identifiers stored as ranges of consecutive values.
+ * An interrupted computation can then be resumed without computing again the recorded cells.
+ */
+public class CheckpointJournal {
+    private final String tableName;
+
+    /**
+     * @param tableName Journal table
+     */
+    public CheckpointJournal(String tableName) {
+        this.tableName = tableName;
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    /**
+     * Create the journal table
+     * @param connection Active connection
+     * @param resume True to keep the cells recorded by a previous computation
+     * @throws SQLException Error while creating the table
+     */
+    public void init(Connection connection, boolean resume) throws SQLException {
+        try (Statement st = connection.createStatement()) {
+            if (!resume) {
+                st.execute("DROP TABLE IF EXISTS " + tableName);
+            }
+            st.execute("CREATE TABLE IF NOT EXISTS " + tableName + " (CELL_LONGITUDE integer NOT NULL," +
+                    " CELL_LATITUDE integer NOT NULL, FIRST_RECEIVER bigint, LAST_RECEIVER bigint)");
+            // used by deleteUnrecordedRows to find the range of each receiver
+            String indexName = TableLocation.parse(tableName, DBUtils.getDBType(connection)).getTable() + "_RECEIVERS";
+            st.execute("CREATE INDEX IF NOT EXISTS " + indexName + " ON " + tableName +
+                    " (FIRST_RECEIVER, LAST_RECEIVER)");
+        }
+    }
+
+    /**
+     * Record a cell and its receivers. The rows of the cell are inserted in a single transaction.
+     * @param connection Active connection
+     * @param cellIndex Computed cell
+     * @param receivers Identifiers of the receivers computed in this cell
+     * @throws SQLException Error while inserting the rows
+     */
+    public void addCell(Connection connection, PointNoiseMap.CellIndex cellIndex, long[] receivers) throws SQLException {
+        long[] sortedReceivers = receivers.clone();
+        Arrays.sort(sortedReceivers);
+        boolean autoCommit = connection.getAutoCommit();
+        if (autoCommit) {
+            connection.setAutoCommit(false);
+        }
+        try (PreparedStatement st = connection.prepareStatement("INSERT INTO " + tableName + " VALUES (?, ?, ?, ?)")) {
+            st.setInt(1, cellIndex.getLongitudeIndex());
+            st.setInt(2, cellIndex.getLatitudeIndex());
+            if (sortedReceivers.length == 0) {
+                // the cell is recorded even without receivers
+                st.setObject(3, null);
+                st.setObject(4, null);
+                st.addBatch();
+            }
+            int rangeStart = 0;
+            for (int i = 1; i <= sortedReceivers.length; i++) {
+                if (i == sortedReceivers.length || sortedReceivers[i] > sortedReceivers[i - 1] + 1) {
+                    st.setLong(3, sortedReceivers[rangeStart]);
+                    st.setLong(4, sortedReceivers[i - 1]);
+                    st.addBatch();
+                    rangeStart = i;
+                }
+            }
+            st.executeBatch();
+            connection.commit();
+        } catch (SQLException ex) {
+            connection.rollback();
+            throw ex;
+        } finally {
+            if (autoCommit) {
+                connection.setAutoCommit(true);
+            }
+        }
+    }
+
+    /**
+     * @param connection Active connection
+     * @param skipReceivers Filled with the receiver ranges of the recorded cells
+     * @return Recorded cells, empty if the journal table does not exist
+     * @throws SQLException Error while reading the table
+     */
+    public Set<PointNoiseMap.CellIndex> fetchCompletedCells(Connection connection, ReceiverRanges skipReceivers)
+            throws SQLException {
+        Set<PointNoiseMap.CellIndex> cells = new HashSet<>();
+        if (!JDBCUtilities.tableExists(connection, TableLocation.parse(tableName, DBUtils.getDBType(connection)))) {
+            return cells;
+        }
+        try (Statement st = connection.createStatement();
+             ResultSet rs = st.executeQuery("SELECT * FROM " + tableName)) {
+            while (rs.next()) {
+                cells.add(new PointNoiseMap.CellIndex(rs.getInt(1), rs.getInt(2)));
+                long firstReceiver = rs.getLong(3);
+                if (!rs.wasNull()) {
+                    skipReceivers.addRange(firstReceiver, rs.getLong(4));
+                }
+            }
+        }
+        return cells;
+    }
+
+    /**
+     * Remove the rows of the receivers that are not recorded in the journal, they have been written by the
+     * interrupted computation of a cell
+     * @param connection Active connection
+     * @param levelsTable Table with an IDRECEIVER field
+     * @return Number of removed rows
+     * @throws SQLException Error while removing the rows
+     */
+    public int deleteUnrecordedRows(Connection connection, String levelsTable) throws SQLException {
+        try (Statement st = connection.createStatement()) {
+            return st.executeUpdate("DELETE FROM " + levelsTable + " L WHERE NOT EXISTS (SELECT 1 FROM " +
+                    tableName + " J WHERE L.IDRECEIVER BETWEEN J.FIRST_RECEIVER AND J.LAST_RECEIVER)");
+        }
+    }
+
+    /**
+     * Set of receiver identifiers made of the ranges of the recorded cells, without expanding them, and of the
+     * receivers added one by one. It is given as the set of already processed receivers of {@link PointNoiseMap}.
+     */
+    public static final class ReceiverRanges extends AbstractSet<Long> {
+        private final Set<Long> receivers;
+        private long[] firstReceivers = new long[16];
+        private long[] lastReceivers = new long[16];
+        private int rangeCount = 0;
+        private boolean sorted = true;
+        private long rangesSize = 0;
+
+        public ReceiverRanges() {
+            this(new HashSet<>());
+        }
+
+        /**
+         * @param receivers Receivers outside of the ranges, the added receivers are stored in this set
+         */
+        public ReceiverRanges(Set<Long> receivers) {
+            this.receivers = receivers;
+        }
+
+        /**
+         * @param firstReceiver First receiver identifier of the range
+         * @param lastReceiver Last receiver identifier of the range (included). The ranges must not overlap.
+         */
+        public void addRange(long firstReceiver, long lastReceiver) {
+            if (rangeCount == firstReceivers.length) {
+                firstReceivers = Arrays.copyOf(firstReceivers, rangeCount * 2);
+                lastReceivers = Arrays.copyOf(lastReceivers, rangeCount * 2);
+            }
+            if (rangeCount > 0 && firstReceiver < firstReceivers[rangeCount - 1]) {
+                sorted = false;
+            }
+            firstReceivers[rangeCount] = firstReceiver;
+            lastReceivers[rangeCount++] = lastReceiver;
+            rangesSize += lastReceiver - firstReceiver + 1;
+        }
+
+        /**
+         * @return Number of ranges
+         */
+        public int getRangeCount() {
+            return rangeCount;
+        }
+
+        private void sortRanges() {
+            if (sorted) {
+                return;
+            }
+            Integer[] order = new Integer[rangeCount];
+            for (int i = 0; i < rangeCount; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> Long.compare(firstReceivers[a], firstReceivers[b]));
+            long[] first = new long[firstReceivers.length];
+            long[] last = new long[lastReceivers.length];
+            for (int i = 0; i < rangeCount; i++) {
+                first[i] = firstReceivers[order[i]];
+                last[i] = lastReceivers[order[i]];
+            }
+            firstReceivers = first;
+            lastReceivers = last;
+            sorted = true;
+        }
+
+        /**
+         * @param receiver Receiver identifier
+         * @return True if the receiver is in one of the ranges
+         */
+        public boolean inRanges(long receiver) {
+            sortRanges();
+            int index = Arrays.binarySearch(firstReceivers, 0, rangeCount, receiver);
+            if (index >= 0) {
+                return true;
+            }
+            // range with the greatest first receiver lower than the receiver
+            index = -index - 2;
+            return index >= 0 && receiver <= lastReceivers[index];
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return o instanceof Long && (inRanges((Long) o) || receivers.contains(o));
+        }
+
+        @Override
+        public boolean add(Long receiver) {
+            return !inRanges(receiver) && receivers.add(receiver);
+        }
+
+        @Override
+        public Iterator<Long> iterator() {
+            sortRanges();
+            Iterator<Long> receiversIterator = receivers.iterator();
+            return new Iterator<Long>() {
+                int range = 0;
+                long next = rangeCount > 0 ? firstReceivers[0] : 0;
+
+                @Override
+                public boolean hasNext() {
+                    return range < rangeCount || receiversIterator.hasNext();
+                }
+
+                @Override
+                public Long next() {
+                    if (range < rangeCount) {
+                        long receiver = next;
+                        if (next == lastReceivers[range]) {
+                            range++;
+                            next = range < rangeCount ? firstReceivers[range] : 0;
+                        } else {
+                            next++;
+                        }
+                        return receiver;
+                    }
+                    if (!receiversIterator.hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    return receiversIterator.next();
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return (int) Math.min(Integer.MAX_VALUE, rangesSize + receivers.size());
+        }
+    }
+
+    /**
+     * Cell computed by {@link PointNoiseMap} waiting for the writing of its levels
+     */
+    public static final class CompletedCell {
+        public final PointNoiseMap.CellIndex cellIndex;
+        public final long[] receivers;
+
+        public CompletedCell(PointNoiseMap.CellIndex cellIndex, List<Long> receivers) {
+            this.cellIndex = cellIndex;
+            this.receivers = new long[receivers.size()];
+            for (int i = 0; i < this.receivers.length; i++) {
+                this.receivers[i] = receivers.get(i);
+            }
+        }
+    }
+}
@@ -10,6 +10,8 @@ import org.locationtech.jts.geom.*;
 import org.locationtech.jts.geom.prep.PreparedPolygon;
 import org.locationtech.jts.io.WKTWriter;
 import org.noise_planet.noisemodelling.pathfinder.CnossosPropagationData;
+import org.noise_planet.noisemodelling.pathfinder.GriddedDem;
+import org.noise_planet.noisemodelling.pathfinder.GroundFactorGrid;
 import org.noise_planet.noisemodelling.pathfinder.ProfileBuilder;
 import org.noise_planet.noisemodelling.propagation.PropagationProcessPathData;
 import org.slf4j.Logger;
@@ -47,6 +49,8 @@ public abstract class JdbcNoiseMap {
     protected String soilTableName = "";
     // Digital elevation model table. (Contains points or triangles)
     protected String demTable = "";
+    // True if the DEM points located on a regular grid are interpolated on the grid instead of being triangulated
+    protected boolean griddedDem = false;
     protected String sound_lvl_field = "DB_M";
     // True if Z of sound source and receivers are relative to the ground
     protected boolean receiverHasAbsoluteZCoordinates = false;
@@ -59,6 +63,9 @@ public abstract class JdbcNoiseMap {
     protected boolean zBuildings = false;
     // Soil areas are splited by the provided size in order to reduce the propagation time
     protected double groundSurfaceSplitSideLength = 200;
+    // Side length of the cells of the rasterised soil areas, 0 to use the soil areas polygons
+    protected double groundFactorGridResolution = 0;
+    private GroundFactorGrid groundFactorGrid = null;
     protected int soundReflectionOrder = 2;
 
     protected boolean bodyBarrier = false; // it needs to be true if train propagation is computed (multiple reflection between the train and a screen)
@@ -72,10 +79,23 @@ public abstract class JdbcNoiseMap {
 
     /** stop calculation if the sum of further sources contributions are smaller than this value */
     public double noiseFloor = Double.NEGATIVE_INFINITY;
+    /** Source points farther than this distance (m) are merged into aggregate sources, 0 to disable */
+    protected double farFieldAggregationDistance = 0;
+    /** Maximum geometric divergence error (dB) of a merged source point */
+    protected double farFieldAggregationError = CnossosPropagationData.DEFAULT_FAR_FIELD_AGGREGATION_ERROR;
+    /** Method used to find the image receivers of the reflection paths */
+    protected CnossosPropagationData.ReflectionMethod reflectionMethod =
+            CnossosPropagationData.ReflectionMethod.IMAGE_RECEIVER_TREE;
+    /** Receivers in the same square tile of this size (m) share their queries, 0 to compute each receiver alone */
+    protected double receiverGroupSize = CnossosPropagationData.DEFAULT_RECEIVER_GROUP_SIZE;
 
     protected String heightField = "HEIGHT";
     protected GeometryFactory geometryFactory;
     protected int parallelComputationCount = 0;
+    // Side length, in cells, of the regions kept in memory by the scene cache (0 to disable the cache)
+    protected int sceneCacheRegionSize = 0;
+    protected int sceneCacheMaximumRegions = 4;
+    private SceneRegionCache sceneCache = null;
     // Initialised attributes
     protected int gridDim = 0;
     protected Envelope mainEnvelope = new Envelope();
@@ -178,7 +198,137 @@ public abstract class JdbcNoiseMap {
         this.groundSurfaceSplitSideLength = groundSurfaceSplitSideLength;
     }
 
+    /**
+     * @return Side length of the cells of the rasterised soil areas, 0 if the soil areas polygons are used
+     */
+    public double getGroundFactorGridResolution() {
+        return groundFactorGridResolution;
+    }
+
+    /**
+     * The soil areas are rasterised once in {@link #initialize(Connection, ProgressVisitor)} instead of being split and
+     * fed to each cell. The mean ground factor of a path is then computed on the grid, a cell taking the G of the soil
+     * area that contains its center. Must be set before the initialization.
+     * @param groundFactorGridResolution Side length of the grid cells, 0 to use the soil areas polygons
+     */
+    public void setGroundFactorGridResolution(double groundFactorGridResolution) {
+        this.groundFactorGridResolution = groundFactorGridResolution;
+    }
+
+    /**
+     * @return Rasterised soil areas built by the initialization or null if the soil areas polygons are used
+     */
+    public GroundFactorGrid getGroundFactorGrid() {
+        return groundFactorGrid;
+    }
+
+    /**
+     * Rasterise all the soil areas of the computation envelope
+     * @param connection Active connection
+     * @param envelope Envelope of the grid
+     * @return Ground factor grid
+     * @throws SQLException
+     */
+    GroundFactorGrid fetchGroundFactorGrid(Connection connection, Envelope envelope) throws SQLException {
+        GroundFactorGrid grid = new GroundFactorGrid(envelope, groundFactorGridResolution);
+        String soilGeomName = getGeometryColumnNames(connection,
+                TableLocation.parse(soilTableName)).get(0);
+        try (PreparedStatement st = connection.prepareStatement(
+                "SELECT " + TableLocation.quoteIdentifier(soilGeomName) + ", G FROM " +
+                        soilTableName + " WHERE " +
+                        TableLocation.quoteIdentifier(soilGeomName) + " && ?::geometry")) {
+            st.setObject(1, geometryFactory.toGeometry(envelope));
+            try (SpatialResultSet rs = st.executeQuery().unwrap(SpatialResultSet.class)) {
+                while (rs.next()) {
+                    Geometry soilArea = rs.getGeometry();
+                    if(soilArea != null) {
+                        grid.addArea(soilArea, rs.getDouble("G"));
+                    }
+                }
+            }
+        }
+        return grid;
+    }
+
+    /**
+     * Feed the profile builder with the buildings, topographic points and soil areas of the cell
+     * @param connection Active connection
+     * @param cellI Cell I index
+     * @param cellJ Cell J index
+     * @param fetchEnvelope Expanded envelope of the cell
+     * @param builder Profile builder of the cell
+     * @throws SQLException
+     */
+    protected void fetchCellScene(Connection connection, int cellI, int cellJ, Envelope fetchEnvelope,
+                                  ProfileBuilder builder) throws SQLException {
+        SceneRegionCache cache = getSceneCache();
+        if(cache != null && cache.containsCell(cellI, cellJ, fetchEnvelope)) {
+            cache.feedCell(connection, cellI, cellJ, fetchEnvelope, builder);
+        } else {
+            fetchCellBuildings(connection, fetchEnvelope, builder);
+            //if we have topographic points data
+            fetchCellDem(connection, fetchEnvelope, builder);
+            // Fetch soil areas
+            fetchCellSoilAreas(connection, fetchEnvelope, builder);
+        }
+    }
+
+    /**
+     * @return Scene cache of the current computation area or null if the cache is disabled
+     */
+    protected synchronized SceneRegionCache getSceneCache() {
+        if(sceneCacheRegionSize <= 0) {
+            sceneCache = null;
+        } else if(sceneCache == null || !sceneCache.isCompatible(sceneCacheRegionSize, sceneCacheMaximumRegions)) {
+            sceneCache = new SceneRegionCache(this, sceneCacheRegionSize, sceneCacheMaximumRegions);
+        }
+        return sceneCache;
+    }
+
+    /**
+     * @return Side length, in cells, of the regions kept in memory by the scene cache. 0 if the cache is disabled
+     */
+    public int getSceneCacheRegionSize() {
+        return sceneCacheRegionSize;
+    }
+
+    /**
+     * Buildings, topographic points and soil areas are fetched once for a square region of cells instead of once for
+     * each cell. Expanded envelopes of adjacent cells overlap, then the database is queried less often. The cells must
+     * be evaluated in an order that keep them close to each other (row by row) to benefit from the cache.
+     * @param sceneCacheRegionSize Side length, in cells, of the regions kept in memory. 0 to disable the cache
+     */
+    public synchronized void setSceneCacheRegionSize(int sceneCacheRegionSize) {
+        this.sceneCacheRegionSize = sceneCacheRegionSize;
+    }
+
+    /**
+     * @return Maximum number of regions kept in memory by the scene cache
+     */
+    public int getSceneCacheMaximumRegions() {
+        return sceneCacheMaximumRegions;
+    }
+
+    /**
+     * @param sceneCacheMaximumRegions Maximum number of regions kept in memory by the scene cache, the least recently
+     *                                 used region is removed first
+     */
+    public synchronized void setSceneCacheMaximumRegions(int sceneCacheMaximumRegions) {
+        this.sceneCacheMaximumRegions = sceneCacheMaximumRegions;
+    }
+
     protected void fetchCellDem(Connection connection, Envelope fetchEnvelope, ProfileBuilder mesh) throws SQLException {
+        addCellDem(fetchDemPoints(connection, fetchEnvelope), fetchEnvelope, mesh);
+    }
+
+    /**
+     * @param connection Active connection
+     * @param fetchEnvelope Fetch envelope
+     * @return Topographic points located in the envelope
+     * @throws SQLException
+     */
+    List<Coordinate> fetchDemPoints(Connection connection, Envelope fetchEnvelope) throws SQLException {
+        List<Coordinate> points = new ArrayList<>();
         if(!demTable.isEmpty()) {
             List<String> geomFields = getGeometryColumnNames(connection,
                     TableLocation.parse(demTable));
@@ -195,17 +345,61 @@ public abstract class JdbcNoiseMap {
                     while (rs.next()) {
                         Geometry pt = rs.getGeometry();
                         if(pt != null) {
-                            mesh.addTopographicPoint(pt.getCoordinate());
+                            points.add(pt.getCoordinate());
                         }
                     }
                 }
             }
         }
+        return points;
+    }
+
+    /**
+     * Feed the profile builder with a copy of the topographic points located in the envelope
+     * @param points Topographic points fetched with an envelope that contains fetchEnvelope
+     * @param fetchEnvelope Cell expanded envelope
+     * @param mesh Profile builder
+     */
+    void addCellDem(List<Coordinate> points, Envelope fetchEnvelope, ProfileBuilder mesh) {
+        if(griddedDem) {
+            List<Coordinate> cellPoints = new ArrayList<>();
+            for(Coordinate point : points) {
+                if(fetchEnvelope.intersects(point)) {
+                    cellPoints.add(point);
+                }
+            }
+            GriddedDem grid = GriddedDem.fromPoints(cellPoints);
+            if(grid != null) {
+                mesh.setGriddedDem(grid);
+                return;
+            }
+            if(cellPoints.size() > 3) {
+                logger.warn("Digital elevation model points do not fill a regular grid, use a triangulation");
+            }
+        }
+        for(Coordinate point : points) {
+            if(fetchEnvelope.intersects(point)) {
+                mesh.addTopographicPoint(point.copy());
+            }
+        }
     }
 
     protected void fetchCellSoilAreas(Connection connection, Envelope fetchEnvelope, ProfileBuilder builder)
             throws SQLException {
-        if(!soilTableName.isEmpty()){
+        addCellSoilAreas(fetchSoilAreaParts(connection, fetchEnvelope), fetchEnvelope, builder);
+    }
+
+    /**
+     * Fetch soil areas and split them with the ground surface grid
+     * @param connection Active connection
+     * @param fetchEnvelope Fetch envelope
+     * @return Soil areas split by squares of {@link #getGroundSurfaceSplitSideLength()}
+     * @throws SQLException
+     */
+    List<SceneRegionCache.SoilAreaPart> fetchSoilAreaParts(Connection connection, Envelope fetchEnvelope)
+            throws SQLException {
+        List<SceneRegionCache.SoilAreaPart> parts = new ArrayList<>();
+        if(!soilTableName.isEmpty() && groundFactorGrid == null){
             double startX = Math.floor(fetchEnvelope.getMinX() / groundSurfaceSplitSideLength) * groundSurfaceSplitSideLength;
             double startY = Math.floor(fetchEnvelope.getMinY() / groundSurfaceSplitSideLength) * groundSurfaceSplitSideLength;
             String soilGeomName = getGeometryColumnNames(connection,
@@ -228,11 +422,13 @@ public abstract class JdbcNoiseMap {
                                     double startXGeo = Math.max(startX, Math.floor(geoEnv.getMinX() / groundSurfaceSplitSideLength) * groundSurfaceSplitSideLength);
                                     double startYGeo = Math.max(startY, Math.floor(geoEnv.getMinY() / groundSurfaceSplitSideLength) * groundSurfaceSplitSideLength);
                                     double xCursor = startXGeo;
+                                    long squareX = Math.round(startXGeo / groundSurfaceSplitSideLength);
                                     double g = rs.getDouble("G");
                                     double maxX = Math.min(fetchEnvelope.getMaxX(), geoEnv.getMaxX());
                                     double maxY = Math.min(fetchEnvelope.getMaxY(), geoEnv.getMaxY());
                                     while (xCursor < maxX) {
                                         double yCursor = startYGeo;
+                                        long squareY = Math.round(startYGeo / groundSurfaceSplitSideLength);
                                         while (yCursor < maxY) {
                                             Envelope cellEnv = new Envelope(xCursor, xCursor + groundSurfaceSplitSideLength, yCursor, yCursor + groundSurfaceSplitSideLength);
                                             Geometry envGeom = geometryFactory.toGeometry(cellEnv);
@@ -240,15 +436,18 @@ public abstract class JdbcNoiseMap {
                                                 try {
                                                     Geometry inters = poly.intersection(envGeom);
                                                     if (!inters.isEmpty() && (inters instanceof Polygon || inters instanceof MultiPolygon)) {
-                                                        builder.addGroundEffect(inters, g);
+                                                        parts.add(new SceneRegionCache.SoilAreaPart(inters, g,
+                                                                squareX, squareY, xCursor, yCursor));
                                                     }
                                                 } catch (TopologyException | IllegalArgumentException ex) {
                                                     // Ignore
                                                 }
                                             }
                                             yCursor += groundSurfaceSplitSideLength;
+                                            squareY++;
                                         }
                                         xCursor += groundSurfaceSplitSideLength;
+                                        squareX++;
                                     }
                                 }
                             }
@@ -257,8 +456,29 @@ public abstract class JdbcNoiseMap {
                 }
             }
         }
+        return parts;
     }
 
+    /**
+     * Feed the profile builder with the soil area parts that would have been fetched using the envelope
+     * @param parts Soil areas parts fetched with an envelope that contains fetchEnvelope
+     * @param fetchEnvelope Cell expanded envelope
+     * @param builder Profile builder
+     */
+    void addCellSoilAreas(List<SceneRegionCache.SoilAreaPart> parts, Envelope fetchEnvelope, ProfileBuilder builder) {
+        if(groundFactorGrid != null) {
+            builder.setGroundFactorGrid(groundFactorGrid);
+            return;
+        }
+        long startSquareX = (long) Math.floor(fetchEnvelope.getMinX() / groundSurfaceSplitSideLength);
+        long startSquareY = (long) Math.floor(fetchEnvelope.getMinY() / groundSurfaceSplitSideLength);
+        for(SceneRegionCache.SoilAreaPart part : parts) {
+            if(part.squareX >= startSquareX && part.squareY >= startSquareY &&
+                    part.squareMinX < fetchEnvelope.getMaxX() && part.squareMinY < fetchEnvelope.getMaxY()) {
+                builder.addGroundEffect(part.geometry, part.g);
+            }
+        }
+    }
 
     void fetchCellBuildings(Connection connection, Envelope fetchEnvelope, ProfileBuilder builder) throws SQLException {
         ArrayList<ProfileBuilder.Building> buildings = new ArrayList<>();
@@ -269,7 +489,17 @@ public abstract class JdbcNoiseMap {
     }
 
     void fetchCellBuildings(Connection connection, Envelope fetchEnvelope, List<ProfileBuilder.Building> buildings) throws SQLException {
-        Geometry envGeo = geometryFactory.toGeometry(fetchEnvelope);
+        addCellBuildings(fetchBuildingRows(connection, fetchEnvelope), fetchEnvelope, buildings);
+    }
+
+    /**
+     * @param connection Active connection
+     * @param fetchEnvelope Fetch envelope
+     * @return Buildings geometries and attributes, without clipping
+     * @throws SQLException
+     */
+    List<SceneRegionCache.BuildingRow> fetchBuildingRows(Connection connection, Envelope fetchEnvelope) throws SQLException {
+        List<SceneRegionCache.BuildingRow> rows = new ArrayList<>();
         boolean fetchAlpha = JDBCUtilities.hasField(connection, buildingsTableName, alphaFieldName);
         String additionalQuery = "";
         if(!heightField.isEmpty()) {
@@ -296,52 +526,68 @@ public abstract class JdbcNoiseMap {
                 if(!pkBuilding.isEmpty()) {
                     columnIndex = JDBCUtilities.getFieldIndex(rs.getMetaData(), pkBuilding);
                 }
-                double oldAlpha = wallAbsorption;
-                List<Double> alphaList = new ArrayList<>(propagationProcessPathDataDay.freq_lvl.size());
-                for(double freq : propagationProcessPathDataDay.freq_lvl_exact) {
-                    alphaList.add(getWallAlpha(oldAlpha, freq));
-                }
                 while (rs.next()) {
-                    //if we don't have height of building
                     Geometry building = rs.getGeometry();
                     if(building != null) {
-                        Geometry intersectedGeometry = null;
-                        try {
-                            intersectedGeometry = building.intersection(envGeo);
-                        } catch (TopologyException ex) {
-                            WKTWriter wktWriter = new WKTWriter(3);
-                            logger.error(String.format("Error with input buildings geometry\n%s\n%s",wktWriter.write(building),wktWriter.write(envGeo)), ex);
-                        }
-                        if(intersectedGeometry instanceof Polygon || intersectedGeometry instanceof MultiPolygon) {
-                            if(fetchAlpha && Double.compare(rs.getDouble(alphaFieldName), oldAlpha) != 0 ) {
-                                // Compute building absorption value
-                                alphaList.clear();
-                                oldAlpha = rs.getDouble(alphaFieldName);
-                                for(double freq : propagationProcessPathDataDay.freq_lvl_exact) {
-                                    alphaList.add(getWallAlpha(oldAlpha, freq));
-                                }
-                            }
-
-                            int pk = -1;
-                            if(columnIndex != 0) {
-                                pk = rs.getInt(columnIndex);
-                            }
-                            for(int i=0; i<intersectedGeometry.getNumGeometries(); i++) {
-                                Geometry geometry = intersectedGeometry.getGeometryN(i);
-                                if(geometry instanceof Polygon && !geometry.isEmpty()) {
-                                    ProfileBuilder.Building poly = new ProfileBuilder.Building((Polygon) geometry,
-                                            heightField.isEmpty() ? Double.MAX_VALUE : rs.getDouble(heightField),
-                                            alphaList, pk, iszBuildings());
-                                    buildings.add(poly);
-                                }
-                            }
+                        int pk = -1;
+                        if(columnIndex != 0) {
+                            pk = rs.getInt(columnIndex);
                         }
+                        //if we don't have height of building
+                        rows.add(new SceneRegionCache.BuildingRow(building,
+                                heightField.isEmpty() ? Double.MAX_VALUE : rs.getDouble(heightField),
+                                fetchAlpha ? rs.getDouble(alphaFieldName) : Double.NaN, pk));
                     }
                 }
             }
         }
+        return rows;
     }
 
+    /**
+     * Clip the buildings with the envelope
+     * @param rows Buildings fetched with an envelope that contains fetchEnvelope
+     * @param fetchEnvelope Cell expanded envelope
+     * @param buildings (Out) Clipped buildings
+     */
+    void addCellBuildings(List<SceneRegionCache.BuildingRow> rows, Envelope fetchEnvelope, List<ProfileBuilder.Building> buildings) {
+        Geometry envGeo = geometryFactory.toGeometry(fetchEnvelope);
+        double oldAlpha = wallAbsorption;
+        List<Double> alphaList = new ArrayList<>(propagationProcessPathDataDay.freq_lvl.size());
+        for(double freq : propagationProcessPathDataDay.freq_lvl_exact) {
+            alphaList.add(getWallAlpha(oldAlpha, freq));
+        }
+        for(SceneRegionCache.BuildingRow row : rows) {
+            if(!row.envelope.intersects(fetchEnvelope)) {
+                continue;
+            }
+            Geometry intersectedGeometry = null;
+            try {
+                intersectedGeometry = row.geometry.intersection(envGeo);
+            } catch (TopologyException ex) {
+                WKTWriter wktWriter = new WKTWriter(3);
+                logger.error(String.format("Error with input buildings geometry\n%s\n%s",wktWriter.write(row.geometry),wktWriter.write(envGeo)), ex);
+            }
+            if(intersectedGeometry instanceof Polygon || intersectedGeometry instanceof MultiPolygon) {
+                if(!Double.isNaN(row.alpha) && Double.compare(row.alpha, oldAlpha) != 0 ) {
+                    // Compute building absorption value
+                    alphaList.clear();
+                    oldAlpha = row.alpha;
+                    for(double freq : propagationProcessPathDataDay.freq_lvl_exact) {
+                        alphaList.add(getWallAlpha(oldAlpha, freq));
+                    }
+                }
+                for(int i=0; i<intersectedGeometry.getNumGeometries(); i++) {
+                    Geometry geometry = intersectedGeometry.getGeometryN(i);
+                    if(geometry instanceof Polygon && !geometry.isEmpty()) {
+                        ProfileBuilder.Building poly = new ProfileBuilder.Building((Polygon) geometry,
+                                row.height, alphaList, row.pk, iszBuildings());
+                        buildings.add(poly);
+                    }
+                }
+            }
+        }
+    }
 
     /**
      * Fetch source geometries and power
@@ -433,6 +679,10 @@ public abstract class JdbcNoiseMap {
             throw new SQLException(new IllegalArgumentException(
                     "Maximum wall seeking distance cannot be superior than maximum propagation distance"));
         }
+        synchronized (this) {
+            // Tables content may have changed since the last computation
+            sceneCache = null;
+        }
         int srid = 0;
         DBTypes dbTypes = DBUtils.getDBType(connection);
         if(!sourcesTableName.isEmpty()) {
@@ -467,6 +717,13 @@ public abstract class JdbcNoiseMap {
             // 1 Step - Evaluation of the main bounding box (sources)
             setMainEnvelope(getComputationEnvelope(connection));
         }
+        groundFactorGrid = null;
+        if(groundFactorGridResolution > 0 && !soilTableName.isEmpty()) {
+            // Cells fetch the scene up to twice the propagation distance around them
+            Envelope gridEnvelope = new Envelope(mainEnvelope);
+            gridEnvelope.expandBy(maximumPropagationDistance * 2);
+            groundFactorGrid = fetchGroundFactorGrid(connection, gridEnvelope);
+        }
     }
 
     /**
@@ -583,6 +840,23 @@ public abstract class JdbcNoiseMap {
         this.demTable = demTable;
     }
 
+    /**
+     * @return True if the DEM points located on a regular grid are interpolated on the grid
+     */
+    public boolean isGriddedDem() {
+        return griddedDem;
+    }
+
+    /**
+     * When the DEM table contains the nodes of a regular grid (ex: a raster imported with AscReaderDriver) the ground
+     * elevation is interpolated on the grid cells instead of computing a triangulation for each cell. If the points of
+     * a cell are not on a regular grid, or if the grid has missing nodes, the triangulation is used.
+     * @param griddedDem True to detect and use regular grids
+     */
+    public void setGriddedDem(boolean griddedDem) {
+        this.griddedDem = griddedDem;
+    }
+
     /**
      * Field name of the {@link #sourcesTableName}HERTZ. Where HERTZ is a number [100-5000].
      * Without the hertz value.
@@ -651,6 +925,69 @@ public abstract class JdbcNoiseMap {
         this.maximumError = maximumError;
     }
 
+    /**
+     * @return Source points farther than this distance (m) from the receiver are merged into aggregate sources,
+     * 0 if disabled
+     */
+    public double getFarFieldAggregationDistance() {
+        return farFieldAggregationDistance;
+    }
+
+    /**
+     * @param farFieldAggregationDistance Omnidirectional source points farther than this distance (m) from the
+     *                                    receiver are merged into aggregate sources whose paths are computed once,
+     *                                    0 to disable
+     */
+    public void setFarFieldAggregationDistance(double farFieldAggregationDistance) {
+        this.farFieldAggregationDistance = farFieldAggregationDistance;
+    }
+
+    /**
+     * @return Maximum geometric divergence error (dB) of a source point merged into an aggregate source
+     */
+    public double getFarFieldAggregationError() {
+        return farFieldAggregationError;
+    }
+
+    /**
+     * @param farFieldAggregationError Maximum geometric divergence error (dB) of a source point merged into an
+     *                                 aggregate source
+     */
+    public void setFarFieldAggregationError(double farFieldAggregationError) {
+        this.farFieldAggregationError = farFieldAggregationError;
+    }
+
+    /**
+     * @return Method used to find the image receivers of the reflection paths
+     */
+    public CnossosPropagationData.ReflectionMethod getReflectionMethod() {
+        return reflectionMethod;
+    }
+
+    /**
+     * @param reflectionMethod Method used to find the image receivers of the reflection paths, beam tracing keeps
+     *                         higher reflection orders tractable on large scenes
+     */
+    public void setReflectionMethod(CnossosPropagationData.ReflectionMethod reflectionMethod) {
+        this.reflectionMethod = reflectionMethod;
+    }
+
+    /**
+     * @return Size (m) of the square tiles used to group the receivers
+     */
+    public double getReceiverGroupSize() {
+        return receiverGroupSize;
+    }
+
+    /**
+     * @param receiverGroupSize Receivers in the same square tile of this size (m), like the receivers of a facade,
+     *                          share the walls, sources and obstacle intersections queries. 0 to compute each
+     *                          receiver alone
+     */
+    public void setReceiverGroupSize(double receiverGroupSize) {
+        this.receiverGroupSize = receiverGroupSize;
+    }
+
     /**
      * @return Reflection and diffraction maximum search distance, default to 400m.
      */
@@ -765,7 +1102,7 @@ public abstract class JdbcNoiseMap {
         while(maximumPropagationDistance / (greatestSideLength / Math.pow(2, subdivisionLevel)) < MINIMAL_BUFFER_RATIO) {
             subdivisionLevel++;
         }
-        gridDim = (int) Math.pow(2, subdivisionLevel);
+        setGridDim((int) Math.pow(2, subdivisionLevel));
     }
 
     /**
@@ -1,19 +1,28 @@
 package org.noise_planet.noisemodelling.jdbc;
 
+import org.noise_planet.noisemodelling.jdbc.utils.AttenuationMatrixWriter;
 import org.noise_planet.noisemodelling.pathfinder.IComputeRaysOut;
 import org.noise_planet.noisemodelling.pathfinder.PropagationPath;
 import org.noise_planet.noisemodelling.pathfinder.utils.PowerUtils;
+import org.noise_planet.noisemodelling.propagation.AttenuationCnossosEvaluator;
 import org.noise_planet.noisemodelling.propagation.ComputeRaysOutAttenuation;
 import org.noise_planet.noisemodelling.propagation.PropagationProcessPathData;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 import static org.noise_planet.noisemodelling.pathfinder.utils.PowerUtils.*;
 
@@ -66,8 +75,10 @@ public class LDENComputeRaysOut extends ComputeRaysOutAttenuation {
             switch (timePeriod) {
                 case DAY:
                     dayLevels = levels;
+                    break;
                 case EVENING:
                     eveningLevels = levels;
+                    break;
                 default:
                     nightLevels = levels;
             }
@@ -107,10 +118,10 @@ public class LDENComputeRaysOut extends ComputeRaysOutAttenuation {
             return levels;
         }
 
-        double[] processAndPushResult(long receiverPK, List<double[]> wjSources,List<VerticeSL> receiverAttenuationLevels, ConcurrentLinkedDeque<VerticeSL> result, boolean feedStack) {
+        double[] processAndPushResult(long receiverPK, List<double[]> wjSources,List<VerticeSL> receiverAttenuationLevels, ReceiverLevelsBuffer result, boolean feedStack) {
             double[] levels = sumLevels(wjSources, receiverAttenuationLevels);
             if(feedStack) {
-                pushInStack(result, new VerticeSL(receiverPK, -1, wToDba(levels)));
+                pushInStack(result, receiverPK, -1, wToDba(levels));
             }
             return levels;
         }
@@ -133,6 +144,10 @@ public class LDENComputeRaysOut extends ComputeRaysOutAttenuation {
                     }
                 }
             }
+            if(ldenConfig.mergeTimePeriodAttenuation && !ldenComputeRaysOut.keepAbsorption && ldenComputeRaysOut.dayPathData != null &&
+                    ldenComputeRaysOut.eveningPathData != null && ldenComputeRaysOut.nightPathData != null) {
+                return addMergedPropagationPaths(sourceId, sourceLi, receiverId, propagationPathsParameter);
+            }
             double[] globalLevel = null;
             for(LDENConfig.TIME_PERIOD timePeriod : LDENConfig.TIME_PERIOD.values()) {
                 for(PropagationPath propagationPath : propagationPathsParameter) {
@@ -162,26 +177,64 @@ public class LDENComputeRaysOut extends ComputeRaysOutAttenuation {
         }
 
         /**
-         * @param stack Stack to feed
-         * @param data receiver noise level in dB
+         * Evaluate the attenuation of the paths for all time periods at once, the terms that do not depend on the
+         * meteorological data are shared between the periods.
          */
-        public void pushInStack(ConcurrentLinkedDeque<VerticeSL> stack, VerticeSL data) {
-            while(ldenComputeRaysOut.ldenData.queueSize.get() > ldenConfig.outputMaximumQueue) {
-                try {
-                    Thread.sleep(10);
-                } catch (InterruptedException ex) {
-                    ldenConfig.aborted = true;
-                    break;
+        private double[] addMergedPropagationPaths(long sourceId, double sourceLi, long receiverId, List<PropagationPath> propagationPathsParameter) {
+            if(propagationPathsParameter.isEmpty()) {
+                return null;
+            }
+            LDENConfig.TIME_PERIOD[] timePeriods = LDENConfig.TIME_PERIOD.values();
+            AttenuationCnossosEvaluator[] evaluators = new AttenuationCnossosEvaluator[timePeriods.length];
+            for(LDENConfig.TIME_PERIOD timePeriod : timePeriods) {
+                evaluators[timePeriod.ordinal()] = lDENThreadRaysOut[timePeriod.ordinal()].getEvaluator();
+            }
+            double[][] periodLevels = ldenComputeRaysOut.computeAttenuation(evaluators, sourceId, sourceLi, receiverId,
+                    propagationPathsParameter);
+            double[] globalLevel = null;
+            for(LDENConfig.TIME_PERIOD timePeriod : timePeriods) {
+                double[] level = lDENThreadRaysOut[timePeriod.ordinal()].addAttenuation(sourceId, receiverId,
+                        periodLevels[timePeriod.ordinal()]);
+                if (globalLevel == null) {
+                    globalLevel = level;
+                } else {
+                    globalLevel = PowerUtils.sumDbArray(globalLevel, level);
                 }
-                if(ldenConfig.aborted) {
-                    if(ldenComputeRaysOut != null && this.ldenComputeRaysOut.inputData != null &&
-                            this.ldenComputeRaysOut.inputData.cellProg != null) {
-                        this.ldenComputeRaysOut.inputData.cellProg.cancel();
-                    }
-                    return;
+            }
+            // Same ray count as the per period evaluation, where each period counts the paths. The time period of
+            // the paths is left unset as they are evaluated for all periods.
+            ldenComputeRaysOut.rayCount.addAndGet((long) timePeriods.length * propagationPathsParameter.size());
+            return globalLevel;
+        }
+
+        /**
+         * Park the calling thread while the result writer is late
+         * @return False if the computation has been aborted
+         */
+        private boolean awaitQueueCapacity() {
+            if(!ldenComputeRaysOut.ldenData.awaitQueueCapacity(ldenConfig)) {
+                if(ldenComputeRaysOut != null && this.ldenComputeRaysOut.inputData != null &&
+                        this.ldenComputeRaysOut.inputData.cellProg != null) {
+                    this.ldenComputeRaysOut.inputData.cellProg.cancel();
                 }
+                return false;
+            }
+            return true;
+        }
+
+        /**
+         * The result writer is notified by {@link #finalizeReceiver(long)} once all the rows of the receiver are
+         * pushed.
+         * @param stack Stack to feed
+         * @param receiverPK Receiver identifier
+         * @param sourcePK Source identifier or -1 if sources are merged
+         * @param levels receiver noise level in dB, the values are copied
+         */
+        public void pushInStack(ReceiverLevelsBuffer stack, long receiverPK, long sourcePK, double[] levels) {
+            if(!awaitQueueCapacity()) {
+                return;
             }
-            stack.add(data);
+            stack.add(receiverPK, sourcePK, levels);
             ldenComputeRaysOut.ldenData.queueSize.incrementAndGet();
         }
 
@@ -190,25 +243,28 @@ public class LDENComputeRaysOut extends ComputeRaysOutAttenuation {
             return null;
         }
 
+        @Override
+        public void appendImageReceiver(long added) {
+            ldenComputeRaysOut.appendImageReceiver(added);
+        }
+
+        @Override
+        public void appendRejectedBeam(long added) {
+            ldenComputeRaysOut.appendRejectedBeam(added);
+        }
+
+        @Override
+        public void appendReflexionPath(long added) {
+            ldenComputeRaysOut.appendReflexionPath(added);
+        }
+
         /**
          * @param stack Stack to feed
          * @param data rays
          */
         public void pushInStack(ConcurrentLinkedDeque<PropagationPath> stack, Collection<PropagationPath> data) {
-            while(ldenComputeRaysOut.ldenData.queueSize.get() > ldenConfig.outputMaximumQueue) {
-                try {
-                    Thread.sleep(10);
-                } catch (InterruptedException ex) {
-                    ldenConfig.aborted = true;
-                    break;
-                }
-                if(ldenConfig.aborted) {
-                    if(ldenComputeRaysOut != null && this.ldenComputeRaysOut.inputData != null &&
-                            this.ldenComputeRaysOut.inputData.cellProg != null) {
-                        this.ldenComputeRaysOut.inputData.cellProg.cancel();
-                    }
-                    return;
-                }
+            if(!awaitQueueCapacity()) {
+                return;
             }
             if(ldenConfig.getMaximumRaysOutputCount() == 0 || ldenComputeRaysOut.ldenData.totalRaysInserted.get() < ldenConfig.getMaximumRaysOutputCount()) {
                 long newTotalRays = ldenComputeRaysOut.ldenData.totalRaysInserted.addAndGet(data.size());
@@ -229,6 +285,102 @@ public class LDENComputeRaysOut extends ComputeRaysOutAttenuation {
             }
         }
 
+        /**
+         * @param bandCount Number of frequency bands
+         * @return Energetic sum of the attenuation of the source points of each source, [period * bandCount + band]
+         */
+        private Map<Long, double[]> sumSourcesAttenuation(int bandCount) {
+            int valueCount = lDENThreadRaysOut.length * bandCount;
+            Map<Long, double[]> sourcesAttenuation = new LinkedHashMap<>();
+            for (int period = 0; period < lDENThreadRaysOut.length; period++) {
+                for (VerticeSL lvl : lDENThreadRaysOut[period].receiverAttenuationLevels) {
+                    double[] attenuation = sourcesAttenuation.computeIfAbsent(lvl.sourceId, k -> new double[valueCount]);
+                    for (int idFreq = 0; idFreq < bandCount; idFreq++) {
+                        attenuation[period * bandCount + idFreq] += dbaToW(lvl.value[idFreq]);
+                    }
+                }
+            }
+            return sourcesAttenuation;
+        }
+
+        /**
+         * @param sourceId Source index
+         * @return Source identifier
+         */
+        private long getSourcePK(long sourceId) {
+            if (ldenComputeRaysOut.inputData != null && sourceId < ldenComputeRaysOut.inputData.sourcesPk.size()) {
+                return ldenComputeRaysOut.inputData.sourcesPk.get((int) sourceId);
+            }
+            return sourceId;
+        }
+
+        /**
+         * Write the attenuation of each period between the receiver and its sources
+         * @param attenuationMatrix Attenuation matrix writer
+         * @param receiverPK Receiver identifier
+         */
+        private void writeAttenuationMatrix(AttenuationMatrixWriter attenuationMatrix, long receiverPK) {
+            int valueCount = lDENThreadRaysOut.length * attenuationMatrix.getBandCount();
+            Map<Long, double[]> sourcesAttenuation = sumSourcesAttenuation(attenuationMatrix.getBandCount());
+            long[] sourcePKs = new long[sourcesAttenuation.size()];
+            double[] attenuations = new double[sourcesAttenuation.size() * valueCount];
+            int idSource = 0;
+            for (Map.Entry<Long, double[]> entry : sourcesAttenuation.entrySet()) {
+                sourcePKs[idSource] = getSourcePK(entry.getKey());
+                double[] attenuation = entry.getValue();
+                for (int idValue = 0; idValue < valueCount; idValue++) {
+                    attenuations[idSource * valueCount + idValue] = wToDba(attenuation[idValue]);
+                }
+                idSource++;
+            }
+            try {
+                attenuationMatrix.addReceiver(receiverPK, sourcePKs.length, sourcePKs, attenuations);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+
+        /**
+         * Push the levels of each emission channel. The attenuation of a time period is computed once and shared by
+         * all the channels of this period.
+         * @param receiverPK Receiver identifier
+         */
+        private void pushChannelLevels(long receiverPK) {
+            int bandCount = ldenComputeRaysOut.dayPathData.freq_lvl.size();
+            int[] channelPeriods = new int[ldenConfig.emissionChannels.size()];
+            int idChannel = 0;
+            for (LDENConfig.TIME_PERIOD timePeriod : ldenConfig.emissionChannels.values()) {
+                channelPeriods[idChannel++] = timePeriod.ordinal();
+            }
+            List<double[][]> wjSourcesChannels = ldenComputeRaysOut.ldenPropagationProcessData.wjSourcesChannels;
+            Map<Long, double[]> sourcesAttenuation = sumSourcesAttenuation(bandCount);
+            double[][] levels = new double[channelPeriods.length][bandCount];
+            for (Map.Entry<Long, double[]> entry : sourcesAttenuation.entrySet()) {
+                double[][] wjChannels = wjSourcesChannels.get(entry.getKey().intValue());
+                double[] attenuation = entry.getValue();
+                for (idChannel = 0; idChannel < channelPeriods.length; idChannel++) {
+                    double[] wj = wjChannels[idChannel];
+                    int offset = channelPeriods[idChannel] * bandCount;
+                    if (!ldenConfig.mergeSources) {
+                        Arrays.fill(levels[idChannel], 0);
+                    }
+                    for (int idFreq = 0; idFreq < bandCount; idFreq++) {
+                        levels[idChannel][idFreq] += wj[idFreq] * attenuation[offset + idFreq];
+                    }
+                    if (!ldenConfig.mergeSources) {
+                        pushInStack(ldenComputeRaysOut.ldenData.getChannelLevels(idChannel), receiverPK,
+                                getSourcePK(entry.getKey()), wToDba(levels[idChannel]));
+                    }
+                }
+            }
+            if (ldenConfig.mergeSources) {
+                for (idChannel = 0; idChannel < channelPeriods.length; idChannel++) {
+                    pushInStack(ldenComputeRaysOut.ldenData.getChannelLevels(idChannel), receiverPK, -1,
+                            wToDba(levels[idChannel]));
+                }
+            }
+        }
+
         @Override
         public void finalizeReceiver(final long receiverId) {
             if(!propagationPaths.isEmpty()) {
@@ -255,6 +407,10 @@ public class LDENComputeRaysOut extends ComputeRaysOutAttenuation {
                     receiverPK = ldenComputeRaysOut.inputData.receiversPk.get((int)receiverId);
                 }
             }
+            AttenuationMatrixWriter attenuationMatrix = ldenComputeRaysOut.ldenData.attenuationMatrix;
+            if(attenuationMatrix != null) {
+                writeAttenuationMatrix(attenuationMatrix, receiverPK);
+            }
             double[] dayLevels = new double[0], eveningLevels = new double[0], nightLevels = new double[0];
             if (!ldenConfig.mergeSources) {
                 // Aggregate by source id
@@ -291,19 +447,19 @@ public class LDENComputeRaysOut extends ComputeRaysOutAttenuation {
                     if (ldenConfig.computeLDay || ldenConfig.computeLDEN) {
                         dayLevels = sumArray(wToDba(ldenComputeRaysOut.ldenPropagationProcessData.wjSourcesD.get((int) sourceId)), entry.getValue().dayLevels);
                         if(ldenConfig.computeLDay) {
-                            pushInStack(ldenComputeRaysOut.ldenData.lDayLevels, new VerticeSL(receiverPK, sourcePK, dayLevels));
+                            pushInStack(ldenComputeRaysOut.ldenData.lDayLevels, receiverPK, sourcePK, dayLevels);
                         }
                     }
                     if (ldenConfig.computeLEvening || ldenConfig.computeLDEN) {
                         eveningLevels = sumArray(wToDba(ldenComputeRaysOut.ldenPropagationProcessData.wjSourcesE.get((int) sourceId)), entry.getValue().eveningLevels);
                         if(ldenConfig.computeLEvening) {
-                            pushInStack(ldenComputeRaysOut.ldenData.lEveningLevels, new VerticeSL(receiverPK, sourcePK, eveningLevels));
+                            pushInStack(ldenComputeRaysOut.ldenData.lEveningLevels, receiverPK, sourcePK, eveningLevels);
                         }
                     }
                     if (ldenConfig.computeLNight || ldenConfig.computeLDEN) {
                         nightLevels = sumArray(wToDba(ldenComputeRaysOut.ldenPropagationProcessData.wjSourcesN.get((int) sourceId)), entry.getValue().nightLevels);
                         if(ldenConfig.computeLNight) {
-                            pushInStack(ldenComputeRaysOut.ldenData.lNightLevels, new VerticeSL(receiverPK, sourcePK, nightLevels));
+                            pushInStack(ldenComputeRaysOut.ldenData.lNightLevels, receiverPK, sourcePK, nightLevels);
                         }
                     }
                     if (ldenConfig.computeLDEN) {
@@ -313,7 +469,7 @@ public class LDENComputeRaysOut extends ComputeRaysOutAttenuation {
                                     4 * dbaToW(wToDba(eveningLevels[idFrequency]) + 5) +
                                     8 * dbaToW(wToDba(nightLevels[idFrequency]) + 10)) / 24.0;
                         }
-                        pushInStack(ldenComputeRaysOut.ldenData.lDenLevels, new VerticeSL(receiverPK, sourcePK, levels));
+                        pushInStack(ldenComputeRaysOut.ldenData.lDenLevels, receiverPK, sourcePK, levels);
                     }
                 }
             } else {
@@ -343,22 +499,129 @@ public class LDENComputeRaysOut extends ComputeRaysOutAttenuation {
                                 4 * dbaToW(wToDba(eveningLevels[idFrequency]) + 5) +
                                 8 * dbaToW(wToDba(nightLevels[idFrequency]) + 10)) / 24.0;
                     }
-                    pushInStack(ldenComputeRaysOut.ldenData.lDenLevels, new VerticeSL(receiverPK, -1, wToDba(levels)));
+                    pushInStack(ldenComputeRaysOut.ldenData.lDenLevels, receiverPK, -1, wToDba(levels));
                 }
             }
+            if (!ldenConfig.emissionChannels.isEmpty()) {
+                pushChannelLevels(receiverPK);
+            }
             for (ThreadRaysOut threadRaysOut : lDENThreadRaysOut) {
                 threadRaysOut.receiverAttenuationLevels.clear();
             }
+            // Hand off the rows of this receiver to the result writer
+            ldenComputeRaysOut.ldenData.signalNewElements();
         }
     }
 
     public static class LdenData {
         public final AtomicLong queueSize = new AtomicLong(0);
         public final AtomicLong totalRaysInserted = new AtomicLong(0);
-        public final ConcurrentLinkedDeque<VerticeSL> lDayLevels = new ConcurrentLinkedDeque<>();
-        public final ConcurrentLinkedDeque<VerticeSL> lEveningLevels = new ConcurrentLinkedDeque<>();
-        public final ConcurrentLinkedDeque<VerticeSL> lNightLevels = new ConcurrentLinkedDeque<>();
-        public final ConcurrentLinkedDeque<VerticeSL> lDenLevels = new ConcurrentLinkedDeque<>();
+        public final ReceiverLevelsBuffer lDayLevels = new ReceiverLevelsBuffer();
+        public final ReceiverLevelsBuffer lEveningLevels = new ReceiverLevelsBuffer();
+        public final ReceiverLevelsBuffer lNightLevels = new ReceiverLevelsBuffer();
+        public final ReceiverLevelsBuffer lDenLevels = new ReceiverLevelsBuffer();
         public final ConcurrentLinkedDeque<PropagationPath> rays = new ConcurrentLinkedDeque<>();
+        // Cells recorded in the checkpoint table once their levels are written
+        public final ConcurrentLinkedDeque<CheckpointJournal.CompletedCell> completedCells = new ConcurrentLinkedDeque<>();
+        // Levels of the emission channels, ordered as LDENConfig#getEmissionChannels
+        private final List<ReceiverLevelsBuffer> channelLevels = new ArrayList<>();
+        /** Attenuation matrix output, null if the attenuation matrix is not written */
+        public volatile AttenuationMatrixWriter attenuationMatrix;
+        // Period of the abort flag check while a thread is parked
+        private static final long ABORT_CHECK_PERIOD_MILLIS = 100;
+        private final ReentrantLock queueLock = new ReentrantLock();
+        // Signaled by the writer when elements have been consumed
+        private final Condition queueNotFull = queueLock.newCondition();
+        // Signaled by the producers when elements are available
+        private final Condition queueNotEmpty = queueLock.newCondition();
+
+        /**
+         * @param channel Index of the emission channel
+         * @return Levels of the emission channel, created on the first call
+         */
+        public ReceiverLevelsBuffer getChannelLevels(int channel) {
+            synchronized (channelLevels) {
+                while (channelLevels.size() <= channel) {
+                    channelLevels.add(new ReceiverLevelsBuffer());
+                }
+                return channelLevels.get(channel);
+            }
+        }
+
+        /**
+         * Park the calling thread while the number of pending elements exceeds the maximum queue size
+         * @param ldenConfig Configuration that holds the maximum queue size and the abort flag
+         * @return False if the computation has been aborted
+         */
+        boolean awaitQueueCapacity(LDENConfig ldenConfig) {
+            if(queueSize.get() <= ldenConfig.outputMaximumQueue) {
+                return !ldenConfig.aborted;
+            }
+            queueLock.lock();
+            try {
+                while (queueSize.get() > ldenConfig.outputMaximumQueue) {
+                    if (ldenConfig.aborted) {
+                        return false;
+                    }
+                    queueNotFull.await(ABORT_CHECK_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+                }
+            } catch (InterruptedException ex) {
+                ldenConfig.aborted = true;
+                return false;
+            } finally {
+                queueLock.unlock();
+            }
+            return !ldenConfig.aborted;
+        }
+
+        /**
+         * Park the calling thread until elements are pushed
+         * @param timeout Maximum time to wait
+         * @param unit Unit of timeout
+         * @return True if there is elements to consume
+         * @throws InterruptedException If interrupted while waiting
+         */
+        boolean awaitNewElements(long timeout, TimeUnit unit) throws InterruptedException {
+            if(queueSize.get() > 0) {
+                return true;
+            }
+            long nanos = unit.toNanos(timeout);
+            queueLock.lock();
+            try {
+                while (queueSize.get() == 0) {
+                    if (nanos <= 0) {
+                        return false;
+                    }
+                    nanos = queueNotEmpty.awaitNanos(nanos);
+                }
+                return true;
+            } finally {
+                queueLock.unlock();
+            }
+        }
+
+        /**
+         * Wake up the consumer, called once a batch of elements has been pushed
+         */
+        public void signalNewElements() {
+            queueLock.lock();
+            try {
+                queueNotEmpty.signalAll();
+            } finally {
+                queueLock.unlock();
+            }
+        }
+
+        /**
+         * Wake up the parked producers, called once a batch of elements has been consumed
+         */
+        public void signalElementsConsumed() {
+            queueLock.lock();
+            try {
+                queueNotFull.signalAll();
+            } finally {
+                queueLock.unlock();
+            }
+        }
     }
 }
@@ -24,6 +24,9 @@ package org.noise_planet.noisemodelling.jdbc;
 import org.noise_planet.noisemodelling.propagation.PropagationProcessPathData;
 
 import java.io.File;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -74,19 +77,43 @@ public class LDENConfig {
     // if the stack is full, the computation core is waiting
     int outputMaximumQueue = 50000;
 
+    /**
+     * Insertion of the rows of the level tables.
+     * BATCH_INSERT one row per statement, statements sent in batch
+     * MULTI_ROW_INSERT one statement contains multiple rows
+     * COPY PostgreSQL COPY FROM STDIN, multi-row insertion is used if the connection is not PostgreSQL
+     */
+    public enum ResultInsertMethods {BATCH_INSERT, MULTI_ROW_INSERT, COPY}
+    ResultInsertMethods resultInsertMethod = ResultInsertMethods.BATCH_INSERT;
+    // Number of rows sent to the database at once
+    int resultInsertBatchSize = 500;
+
     boolean mergeSources = true;
+    // Evaluate the terms that do not depend on the time period once for day, evening and night
+    boolean mergeTimePeriodAttenuation = true;
 
     String lDayTable = "LDAY_RESULT";
     String lEveningTable = "LEVENING_RESULT";
     String lNightTable = "LNIGHT_RESULT";
     String lDenTable = "LDEN_RESULT";
     String raysTable = "RAYS";
+    // Emission channels computed in the same propagation pass, with the time period of their attenuation
+    Map<String, TIME_PERIOD> emissionChannels = new LinkedHashMap<>();
+    String lChannelTablePrefix = "LCHANNEL_";
 
     String lwFrequencyPrepend = "LW";
 
     File sqlOutputFile;
     Boolean sqlOutputFileCompression = true;
+    // Levels written in a binary columnar file instead of the level tables
+    File columnarOutputFile;
+    // Attenuation between each source and receiver written in a binary file
+    File attenuationMatrixFile;
     Boolean dropResultsTable = true;
+    // Table of the cells whose levels are written, null to not record the progression
+    String checkpointTable = null;
+    // Keep the result tables and the checkpoint table of a previous computation
+    boolean resumeComputation = false;
 
     public LDENConfig(INPUT_MODE input_mode) {
         this.input_mode = input_mode;
@@ -173,6 +200,110 @@ public class LDENConfig {
         this.sqlOutputFile = sqlOutputFile;
     }
 
+    /**
+     * @return File of the levels in the binary columnar format or null if the levels are written in tables
+     */
+    public File getColumnarOutputFile() {
+        return columnarOutputFile;
+    }
+
+    /**
+     * Write the levels of all periods in a single binary columnar file instead of the level tables. The file can be
+     * read with {@link org.noise_planet.noisemodelling.jdbc.utils.ColumnarLevelsReader}. Rays are not written in this
+     * file.
+     * @param columnarOutputFile Output file, null to write the levels in tables
+     */
+    public void setColumnarOutputFile(File columnarOutputFile) {
+        this.columnarOutputFile = columnarOutputFile;
+    }
+
+    /**
+     * @return File of the attenuation matrix or null if the attenuation matrix is not written
+     */
+    public File getAttenuationMatrixFile() {
+        return attenuationMatrixFile;
+    }
+
+    /**
+     * Write the attenuation of each period between each source and each receiver, without the emission of the
+     * sources. The levels of other emission scenarios can then be computed with
+     * {@link AttenuationMatrixEngine} without computing the propagation paths again.
+     * The file is replaced and only holds the receivers of one complete run.
+     * @param attenuationMatrixFile Output file, null to not write the attenuation matrix
+     */
+    public void setAttenuationMatrixFile(File attenuationMatrixFile) {
+        this.attenuationMatrixFile = attenuationMatrixFile;
+    }
+
+    /**
+     * Add an emission channel (hour of the day, scenario..) computed with the same propagation paths as the other
+     * periods. The sound power of the sources is read from the fields suffixed by the channel name, ex: LV_H07,
+     * LV_SPD_H07 for the traffic flow input or LWH0763, LWH07125.. for the sound power input. The levels of the
+     * channel are written in the table {@link #getChannelTable(String)}.
+     * @param name Channel name, must be a valid field and table name suffix
+     * @param timePeriod Time period of the meteorological data used to compute the attenuation of the channel
+     */
+    public void addEmissionChannel(String name, TIME_PERIOD timePeriod) {
+        emissionChannels.put(name, timePeriod);
+    }
+
+    /**
+     * @return Emission channels in insertion order, with the time period of their attenuation
+     */
+    public Map<String, TIME_PERIOD> getEmissionChannels() {
+        return Collections.unmodifiableMap(emissionChannels);
+    }
+
+    public void clearEmissionChannels() {
+        emissionChannels.clear();
+    }
+
+    /**
+     * @param channel Channel name
+     * @return Name of the levels table of the channel
+     */
+    public String getChannelTable(String channel) {
+        return lChannelTablePrefix + channel;
+    }
+
+    public String getlChannelTablePrefix() {
+        return lChannelTablePrefix;
+    }
+
+    /**
+     * @param lChannelTablePrefix Prefix of the levels tables of the emission channels
+     */
+    public void setlChannelTablePrefix(String lChannelTablePrefix) {
+        this.lChannelTablePrefix = lChannelTablePrefix;
+    }
+
+    public String getCheckpointTable() {
+        return checkpointTable;
+    }
+
+    /**
+     * Record the computed cells in a table once their levels are written, see {@link CheckpointJournal}. The
+     * levels must be written in tables.
+     * @param checkpointTable Checkpoint table name, null to not record the computed cells
+     */
+    public void setCheckpointTable(String checkpointTable) {
+        this.checkpointTable = checkpointTable;
+    }
+
+    public boolean isResumeComputation() {
+        return resumeComputation;
+    }
+
+    /**
+     * Continue an interrupted computation. The result tables are kept and the rows of the receivers that are not in
+     * the checkpoint table are removed. {@link PointNoiseMap#setResumeJournal(CheckpointJournal)} skips the cells
+     * that do not need to be computed again. The attenuation matrix file can not be appended to and is rejected.
+     * @param resumeComputation True to resume the computation recorded in the checkpoint table
+     */
+    public void setResumeComputation(boolean resumeComputation) {
+        this.resumeComputation = resumeComputation;
+    }
+
     public void setComputeLDay(boolean computeLDay) {
         this.computeLDay = computeLDay;
     }
@@ -223,6 +354,50 @@ public class LDENConfig {
         this.keepAbsorption = keepAbsorption;
     }
 
+    /**
+     * @return True if the attenuation terms that do not depend on the meteorological data are evaluated once for all
+     * time periods
+     */
+    public boolean isMergeTimePeriodAttenuation() {
+        return mergeTimePeriodAttenuation;
+    }
+
+    /**
+     * @param mergeTimePeriodAttenuation If true, the divergence, reflection, ground and diffraction attenuation are
+     *                                   evaluated once for the day, evening and night periods. Only the atmospheric
+     *                                   absorption and the favourable conditions are evaluated for each period.
+     *                                   Ignored when the absorption data is kept in rays. The evaluated paths do not
+     *                                   hold a time period in this mode.
+     */
+    public void setMergeTimePeriodAttenuation(boolean mergeTimePeriodAttenuation) {
+        this.mergeTimePeriodAttenuation = mergeTimePeriodAttenuation;
+    }
+
+    public ResultInsertMethods getResultInsertMethod() {
+        return resultInsertMethod;
+    }
+
+    /**
+     * @param resultInsertMethod Method used to insert the rows of the level tables
+     */
+    public void setResultInsertMethod(ResultInsertMethods resultInsertMethod) {
+        this.resultInsertMethod = resultInsertMethod;
+    }
+
+    public int getResultInsertBatchSize() {
+        return resultInsertBatchSize;
+    }
+
+    /**
+     * @param resultInsertBatchSize Number of rows of the level tables sent to the database at once
+     */
+    public void setResultInsertBatchSize(int resultInsertBatchSize) {
+        if(resultInsertBatchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be strictly positive");
+        }
+        this.resultInsertBatchSize = resultInsertBatchSize;
+    }
+
     /**
      * @param coefficientVersion Cnossos revisions have multiple coefficients for road emission formulae this parameter
      *                          will be removed when the final version of Cnossos will be published
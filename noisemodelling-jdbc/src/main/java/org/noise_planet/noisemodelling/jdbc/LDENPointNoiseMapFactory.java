@@ -24,13 +24,17 @@ package org.noise_planet.noisemodelling.jdbc;
 
 import org.h2gis.utilities.GeometryTableUtilities;
 import org.h2gis.utilities.JDBCUtilities;
+import org.h2gis.utilities.TableLocation;
+import org.h2gis.utilities.dbtypes.DBUtils;
 import org.locationtech.jts.geom.LineString;
 import org.noise_planet.noisemodelling.emission.DirectionAttributes;
 import org.noise_planet.noisemodelling.emission.RailWayLW;
+import org.noise_planet.noisemodelling.jdbc.utils.AttenuationMatrixWriter;
+import org.noise_planet.noisemodelling.jdbc.utils.ColumnarLevelsWriter;
+import org.noise_planet.noisemodelling.jdbc.utils.PostgreSQLCopy;
 import org.noise_planet.noisemodelling.jdbc.utils.StringPreparedStatements;
 import org.noise_planet.noisemodelling.pathfinder.*;
 import org.noise_planet.noisemodelling.pathfinder.utils.ProfilerThread;
-import org.noise_planet.noisemodelling.propagation.ComputeRaysOutAttenuation;
 import org.noise_planet.noisemodelling.propagation.PropagationProcessPathData;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -42,6 +46,7 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.*;
 import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.TimeUnit;
 import java.util.zip.GZIPOutputStream;
 
 import static org.noise_planet.noisemodelling.pathfinder.utils.PowerUtils.*;
@@ -49,15 +54,20 @@ import static org.noise_planet.noisemodelling.pathfinder.utils.PowerUtils.*;
 /**
  *
  */
-public class LDENPointNoiseMapFactory implements PointNoiseMap.PropagationProcessDataFactory, PointNoiseMap.IComputeRaysOutFactory, ProfilerThread.Metric {
+public class LDENPointNoiseMapFactory implements PointNoiseMap.PropagationProcessDataFactory, PointNoiseMap.IComputeRaysOutFactory, ProfilerThread.Metric, PointNoiseMap.CellComputedListener {
     LDENConfig ldenConfig;
     TableWriter tableWriter;
     Thread tableWriterThread;
     Connection connection;
     static final int BATCH_MAX_SIZE = 500;
+    // Lowest limit of parameters in a statement among the supported databases (PostgreSQL)
+    static final int MAXIMUM_STATEMENT_PARAMETERS = 32767;
     static final int WRITER_CACHE = 65536;
+    // Maximum time in milliseconds the writer stay parked before checking the exit flags
+    static final long WRITER_MAXIMUM_WAIT = 100;
     LDENComputeRaysOut.LdenData ldenData = new LDENComputeRaysOut.LdenData();
     int srid;
+    CellWorkQueue cellWorkQueue = null;
 
     /**
      * Attenuation and other attributes relative to direction on sphere
@@ -89,6 +99,23 @@ public class LDENPointNoiseMapFactory implements PointNoiseMap.PropagationProces
         return ldenData;
     }
 
+    /**
+     * @return Queue of the distributed computation, null if the cells are not claimed from a queue
+     */
+    public CellWorkQueue getCellWorkQueue() {
+        return cellWorkQueue;
+    }
+
+    /**
+     * The computed cells are set as done in the queue by the writer, once their levels are committed. The factory
+     * must receive the computed cells through {@link #cellComputed(PointNoiseMap.CellIndex, IComputeRaysOut)}.
+     * Must be called before {@link #start()}.
+     * @param cellWorkQueue Queue of the distributed computation, see {@link CellWorkQueue#evaluateCells}
+     */
+    public void setCellWorkQueue(CellWorkQueue cellWorkQueue) {
+        this.cellWorkQueue = cellWorkQueue;
+    }
+
     public void insertTrainDirectivity() {
         directionAttributes.clear();
         directionAttributes.put(0, new LDENPropagationProcessData.OmnidirectionalDirection());
@@ -112,6 +139,8 @@ public class LDENPointNoiseMapFactory implements PointNoiseMap.PropagationProces
                 period = "E";
             } else if (ldenConfig.computeLNight) {
                 period = "N";
+            } else if (!ldenConfig.emissionChannels.isEmpty()) {
+                period = ldenConfig.emissionChannels.keySet().iterator().next();
             }
             String freqField = ldenConfig.lwFrequencyPrepend + period;
             if (!period.isEmpty()) {
@@ -173,6 +202,7 @@ public class LDENPointNoiseMapFactory implements PointNoiseMap.PropagationProces
             throw new IllegalStateException("start() function must be called after PointNoiseMap initialization call");
         }
         tableWriter = new TableWriter(connection, ldenConfig, ldenData, srid);
+        tableWriter.cellWorkQueue = cellWorkQueue;
         ldenConfig.exitWhenDone = false;
         tableWriterThread = new Thread(tableWriter);
         tableWriterThread.start();
@@ -191,12 +221,12 @@ public class LDENPointNoiseMapFactory implements PointNoiseMap.PropagationProces
      */
     public void stop() {
         ldenConfig.exitWhenDone = true;
-        while (tableWriterThread != null && tableWriterThread.isAlive()) {
+        ldenData.signalNewElements();
+        if (tableWriterThread != null) {
             try {
-                Thread.sleep(150);
+                tableWriterThread.join();
             } catch (InterruptedException e) {
                 // ignore
-                break;
             }
         }
     }
@@ -206,14 +236,50 @@ public class LDENPointNoiseMapFactory implements PointNoiseMap.PropagationProces
      */
     public void cancel() {
         ldenConfig.aborted = true;
-        while (tableWriterThread.isAlive()) {
-            try {
-                Thread.sleep(150);
-            } catch (InterruptedException e) {
-                // ignore
-                break;
-            }
+        ldenData.signalNewElements();
+        ldenData.signalElementsConsumed();
+        try {
+            tableWriterThread.join();
+        } catch (InterruptedException e) {
+            // ignore
+        }
+    }
+
+    /**
+     * Read the checkpoint table of an interrupted computation, see {@link LDENConfig#setResumeComputation(boolean)}
+     * @param skipReceivers Filled with the receiver ranges of the completed cells
+     * @return Completed cells that do not need to be computed again
+     * @throws SQLException Error while reading the checkpoint table
+     * @see PointNoiseMap#setResumeJournal(CheckpointJournal)
+     */
+    public Set<PointNoiseMap.CellIndex> fetchCompletedCells(CheckpointJournal.ReceiverRanges skipReceivers)
+            throws SQLException {
+        if(ldenConfig.checkpointTable == null || !ldenConfig.resumeComputation) {
+            return new HashSet<>();
         }
+        return new CheckpointJournal(ldenConfig.checkpointTable).fetchCompletedCells(connection, skipReceivers);
+    }
+
+    /**
+     * Record the cell in the checkpoint table and set the cell as done in the queue once all its levels are written.
+     * Must be called after the computation of each cell if {@link LDENConfig#setCheckpointTable(String)} or
+     * {@link #setCellWorkQueue(CellWorkQueue)} is set.
+     * @param cellIndex Computed cell
+     * @param computeRaysOut Computation output of the cell
+     */
+    @Override
+    public void cellComputed(PointNoiseMap.CellIndex cellIndex, IComputeRaysOut computeRaysOut) {
+        if((ldenConfig.checkpointTable == null && cellWorkQueue == null) || ldenConfig.aborted ||
+                !(computeRaysOut instanceof LDENComputeRaysOut)) {
+            return;
+        }
+        CnossosPropagationData inputData = ((LDENComputeRaysOut) computeRaysOut).inputData;
+        if(inputData == null || (inputData.cellProg != null && inputData.cellProg.isCanceled())) {
+            // the cell has not been fully computed
+            return;
+        }
+        ldenData.completedCells.add(new CheckpointJournal.CompletedCell(cellIndex, inputData.receiversPk));
+        ldenData.signalNewElements();
     }
 
     @Override
@@ -230,6 +296,88 @@ public class LDENPointNoiseMapFactory implements PointNoiseMap.PropagationProces
                 (LDENPropagationProcessData)threadData, ldenData, ldenConfig);
     }
 
+    /**
+     * Insertion of the rows of a level table
+     */
+    interface LevelsRowsWriter {
+        /**
+         * @param receiverId Receiver identifier
+         * @param sourceId Source identifier, ignored if sources are merged
+         * @param levels Levels for each frequency band, the values are copied
+         * @param laeq A weighted global level
+         * @param leq Global level
+         */
+        void addRow(long receiverId, long sourceId, double[] levels, double laeq, double leq) throws SQLException, IOException;
+
+        /**
+         * Send the pending rows
+         */
+        void flush() throws SQLException, IOException;
+
+        void close() throws SQLException;
+    }
+
+    /**
+     * Insert rows using the PostgreSQL COPY FROM STDIN command
+     */
+    static class CopyLevelsRowsWriter implements LevelsRowsWriter {
+        final Connection connection;
+        final LDENConfig ldenConfig;
+        final String copyQuery;
+        final StringBuilder rows = new StringBuilder();
+        int rowCount = 0;
+
+        CopyLevelsRowsWriter(Connection connection, String tableName, LDENConfig ldenConfig) {
+            this.connection = connection;
+            this.ldenConfig = ldenConfig;
+            this.copyQuery = "COPY " + tableName + " FROM STDIN";
+        }
+
+        @Override
+        public void addRow(long receiverId, long sourceId, double[] levels, double laeq, double leq) throws SQLException, IOException {
+            rows.append(receiverId);
+            if (!ldenConfig.mergeSources) {
+                rows.append('\t').append(sourceId);
+            }
+            if (!ldenConfig.computeLAEQOnly) {
+                for (double level : levels) {
+                    rows.append('\t').append(level);
+                }
+            }
+            rows.append('\t').append(laeq);
+            if (!ldenConfig.computeLAEQOnly) {
+                rows.append('\t').append(leq);
+            }
+            rows.append('\n');
+            rowCount++;
+            if(rowCount >= ldenConfig.resultInsertBatchSize) {
+                flush();
+            }
+        }
+
+        @Override
+        public void flush() throws SQLException, IOException {
+            if(rowCount > 0) {
+                copyIn(copyQuery, new StringReader(rows.toString()));
+                rows.setLength(0);
+                rowCount = 0;
+            }
+        }
+
+        @Override
+        public void close() {
+        }
+
+        /**
+         * @param copyQuery COPY ... FROM STDIN query
+         * @param rows Rows in the COPY text format
+         * @return Number of inserted rows
+         */
+        long copyIn(String copyQuery, Reader rows) throws SQLException, IOException {
+            return PostgreSQLCopy.copyIn(connection, copyQuery, rows);
+        }
+    }
+
     private static class TableWriter implements Runnable {
         Logger LOGGER = LoggerFactory.getLogger(TableWriter.class);
         File sqlFilePath;
@@ -240,6 +388,11 @@ public class LDENPointNoiseMapFactory implements PointNoiseMap.PropagationProces
         boolean started = false;
         Writer o;
         int srid;
+        LDENConfig.ResultInsertMethods insertMethod;
+        ColumnarLevelsWriter columnarLevelsWriter;
+        CheckpointJournal checkpointJournal;
+        CellWorkQueue cellWorkQueue;
+        Map<String, LevelsRowsWriter> levelsRowsWriters = new HashMap<>();
 
         public TableWriter(Connection connection, LDENConfig ldenConfig, LDENComputeRaysOut.LdenData ldenData, int srid) {
             this.connection = connection;
@@ -251,6 +404,7 @@ public class LDENPointNoiseMapFactory implements PointNoiseMap.PropagationProces
                 a_weighting[idfreq] = ldenConfig.propagationProcessPathDataDay.freq_lvl_a_weighting.get(idfreq);
             }
             this.srid = srid;
+            insertMethod = ldenConfig.resultInsertMethod;
         }
 
         void processRaysStack(ConcurrentLinkedDeque<PropagationPath> stack) throws SQLException {
@@ -307,82 +461,241 @@ public class LDENPointNoiseMapFactory implements PointNoiseMap.PropagationProces
                     ps.executeBatch();
                     ps.clearBatch();
                     batchSize = 0;
+                    ldenData.signalElementsConsumed();
                 }
             }
             if (batchSize > 0) {
                 ps.executeBatch();
             }
+            ldenData.signalElementsConsumed();
 
         }
 
         /**
-         * Pop values from stack and insert rows
+         * @param tableName Level table
+         * @param period Time period of the table, see {@link ColumnarLevelsWriter#PERIOD_DEN}
+         * @return Writer of the rows of the table, kept for the next calls
+         */
+        LevelsRowsWriter getLevelsRowsWriter(String tableName, byte period) throws SQLException {
+            LevelsRowsWriter writer = levelsRowsWriters.get(tableName);
+            if(writer == null) {
+                if(columnarLevelsWriter != null) {
+                    writer = new ColumnarLevelsRowsWriter(columnarLevelsWriter, period);
+                } else if(insertMethod == LDENConfig.ResultInsertMethods.COPY) {
+                    writer = new CopyLevelsRowsWriter(connection, tableName, ldenConfig);
+                } else {
+                    int columnCount = 2 + (ldenConfig.mergeSources ? 0 : 1) + (ldenConfig.computeLAEQOnly ? 0 :
+                            ldenConfig.propagationProcessPathDataDay.freq_lvl.size() + 1);
+                    int rowsPerStatement = 1;
+                    if(insertMethod == LDENConfig.ResultInsertMethods.MULTI_ROW_INSERT) {
+                        rowsPerStatement = Math.max(1, Math.min(ldenConfig.resultInsertBatchSize,
+                                MAXIMUM_STATEMENT_PARAMETERS / columnCount));
+                    }
+                    writer = new PreparedStatementLevelsRowsWriter(tableName, ldenConfig, rowsPerStatement);
+                }
+                levelsRowsWriters.put(tableName, writer);
+            }
+            return writer;
+        }
+
+        /**
+         * Pop values from stack and insert rows. The rows are sent when the batch of the table writer is full, or by
+         * {@link #flushWriters()}
          * @param tableName Table to feed
+         * @param period Time period of the table
          * @param stack Stack to pop from
          * @throws SQLException Got an error
          */
-        void processStack(String tableName, ConcurrentLinkedDeque<ComputeRaysOutAttenuation.VerticeSL> stack) throws SQLException {
-            StringBuilder query = new StringBuilder("INSERT INTO ");
-            query.append(tableName);
-            query.append(" VALUES (? "); // ID_RECEIVER
-            if(!ldenConfig.mergeSources) {
-                query.append(", ?"); // ID_SOURCE
+        void processStack(String tableName, byte period, ReceiverLevelsBuffer stack) throws SQLException, IOException {
+            LevelsRowsWriter writer = getLevelsRowsWriter(tableName, period);
+            double[] rowValue = new double[ldenConfig.propagationProcessPathDataDay.freq_lvl.size()];
+            ReceiverLevelsBuffer.Block block;
+            while((block = stack.poll()) != null) {
+                for(int row = 0; row < block.size(); row++) {
+                    block.copyLevels(row, rowValue);
+                    if (!ldenConfig.computeLAEQOnly) {
+                        for (int idfreq = 0; idfreq < rowValue.length; idfreq++) {
+                            if (!Double.isFinite(rowValue[idfreq])) {
+                                rowValue[idfreq] = -99.0;
+                            }
+                        }
+                    }
+                    // laeq value
+                    double laeq = wToDba(sumArray(dbaToW(sumArray(rowValue, a_weighting))));
+                    if (!Double.isFinite(laeq)) {
+                        laeq = -99;
+                    }
+                    // leq value
+                    double leq = wToDba(sumArray(dbaToW(rowValue)));
+                    writer.addRow(block.getReceiverId(row), block.getSourceId(row), rowValue, laeq, leq);
+                }
+                ldenData.queueSize.addAndGet(-block.size());
+                stack.recycle(block);
+                ldenData.signalElementsConsumed();
             }
-            if (!ldenConfig.computeLAEQOnly) {
-                query.append(", ?".repeat(ldenConfig.propagationProcessPathDataDay.freq_lvl.size())); // freq value
-                query.append(", ?, ?);"); // laeq, leq
-            }else{
-                query.append(", ?);"); // laeq, leq
+        }
+
+        /**
+         * Send the rows kept by the writers until their batch is full
+         */
+        void flushWriters() throws SQLException, IOException {
+            for(LevelsRowsWriter writer : levelsRowsWriters.values()) {
+                writer.flush();
             }
-            PreparedStatement ps;
-            if(sqlFilePath == null) {
-                ps = connection.prepareStatement(query.toString());
-            } else {
-                ps = new StringPreparedStatements(o, query.toString());
+        }
+
+        /**
+         * Insert rows using prepared statements sent in batch. Each statement can contain multiple rows.
+         */
+        private class PreparedStatementLevelsRowsWriter implements LevelsRowsWriter {
+            final String tableName;
+            final LDENConfig ldenConfig;
+            final int rowsPerStatement;
+            final int bandCount;
+            final PreparedStatement singleRowStatement;
+            final PreparedStatement statement;
+            final long[] receiverIds;
+            final long[] sourceIds;
+            final double[] levels;
+            final double[] laeqs;
+            final double[] leqs;
+            int pendingRows = 0;
+            int batchRows = 0;
+
+            PreparedStatementLevelsRowsWriter(String tableName, LDENConfig ldenConfig, int rowsPerStatement) throws SQLException {
+                this.tableName = tableName;
+                this.ldenConfig = ldenConfig;
+                this.rowsPerStatement = rowsPerStatement;
+                this.bandCount = ldenConfig.propagationProcessPathDataDay.freq_lvl.size();
+                singleRowStatement = prepareStatement(1);
+                statement = rowsPerStatement > 1 ? prepareStatement(rowsPerStatement) : singleRowStatement;
+                receiverIds = new long[rowsPerStatement];
+                sourceIds = new long[rowsPerStatement];
+                levels = new double[rowsPerStatement * bandCount];
+                laeqs = new double[rowsPerStatement];
+                leqs = new double[rowsPerStatement];
             }
-            int batchSize = 0;
-            while(!stack.isEmpty()) {
-                ComputeRaysOutAttenuation.VerticeSL row = stack.pop();
-                ldenData.queueSize.decrementAndGet();
-                int parameterIndex = 1;
-                ps.setLong(parameterIndex++, row.receiverId);
+
+            PreparedStatement prepareStatement(int rowCount) throws SQLException {
+                StringBuilder row = new StringBuilder("(?"); // ID_RECEIVER
                 if(!ldenConfig.mergeSources) {
-                    ps.setLong(parameterIndex++, row.sourceId);
+                    row.append(", ?"); // ID_SOURCE
+                }
+                if (!ldenConfig.computeLAEQOnly) {
+                    row.append(", ?".repeat(bandCount)); // freq value
+                    row.append(", ?, ?)"); // laeq, leq
+                } else {
+                    row.append(", ?)"); // laeq
+                }
+                StringBuilder query = new StringBuilder("INSERT INTO ");
+                query.append(tableName);
+                query.append(" VALUES ");
+                for(int idRow = 0; idRow < rowCount; idRow++) {
+                    if(idRow > 0) {
+                        query.append(", ");
+                    }
+                    query.append(row);
+                }
+                query.append(";");
+                if(sqlFilePath == null) {
+                    return connection.prepareStatement(query.toString());
+                } else {
+                    return new StringPreparedStatements(o, query.toString());
                 }
+            }
 
-                if (!ldenConfig.computeLAEQOnly){
-                    for(int idfreq=0;idfreq < ldenConfig.propagationProcessPathDataDay.freq_lvl.size(); idfreq++) {
-                        double value = row.value[idfreq];
-                        if(!Double.isFinite(value)) {
-                            value = -99.0;
-                            row.value[idfreq] = value;
+            void bindRows(PreparedStatement ps, int firstRow, int rowCount) throws SQLException {
+                int parameterIndex = 1;
+                for(int idRow = firstRow; idRow < firstRow + rowCount; idRow++) {
+                    ps.setLong(parameterIndex++, receiverIds[idRow]);
+                    if (!ldenConfig.mergeSources) {
+                        ps.setLong(parameterIndex++, sourceIds[idRow]);
+                    }
+                    if (!ldenConfig.computeLAEQOnly) {
+                        for (int idfreq = 0; idfreq < bandCount; idfreq++) {
+                            ps.setDouble(parameterIndex++, levels[idRow * bandCount + idfreq]);
                         }
-                        ps.setDouble(parameterIndex++, value);
                     }
-
+                    ps.setDouble(parameterIndex++, laeqs[idRow]);
+                    if (!ldenConfig.computeLAEQOnly) {
+                        ps.setDouble(parameterIndex++, leqs[idRow]);
+                    }
                 }
-                // laeq value
-                double value = wToDba(sumArray(dbaToW(sumArray(row.value, a_weighting))));
-                if(!Double.isFinite(value)) {
-                    value = -99;
+            }
+
+            @Override
+            public void addRow(long receiverId, long sourceId, double[] rowLevels, double laeq, double leq) throws SQLException {
+                receiverIds[pendingRows] = receiverId;
+                sourceIds[pendingRows] = sourceId;
+                System.arraycopy(rowLevels, 0, levels, pendingRows * bandCount, bandCount);
+                laeqs[pendingRows] = laeq;
+                leqs[pendingRows] = leq;
+                pendingRows++;
+                if(pendingRows == rowsPerStatement) {
+                    bindRows(statement, 0, rowsPerStatement);
+                    statement.addBatch();
+                    pendingRows = 0;
+                    batchRows += rowsPerStatement;
+                    if (batchRows >= ldenConfig.resultInsertBatchSize) {
+                        statement.executeBatch();
+                        statement.clearBatch();
+                        batchRows = 0;
+                    }
                 }
-                ps.setDouble(parameterIndex++, value);
+            }
 
-                // leq value
-                if (!ldenConfig.computeLAEQOnly) {
-                    ps.setDouble(parameterIndex++, wToDba(sumArray(dbaToW(row.value))));
+            @Override
+            public void flush() throws SQLException {
+                if(batchRows > 0) {
+                    statement.executeBatch();
+                    statement.clearBatch();
+                    batchRows = 0;
                 }
+                if(pendingRows > 0) {
+                    // not enough rows for a multi-row statement
+                    for(int idRow = 0; idRow < pendingRows; idRow++) {
+                        bindRows(singleRowStatement, idRow, 1);
+                        singleRowStatement.addBatch();
+                    }
+                    singleRowStatement.executeBatch();
+                    singleRowStatement.clearBatch();
+                    pendingRows = 0;
+                }
+            }
 
-                ps.addBatch();
-                batchSize++;
-                if (batchSize >= BATCH_MAX_SIZE) {
-                    ps.executeBatch();
-                    ps.clearBatch();
-                    batchSize = 0;
+            @Override
+            public void close() throws SQLException {
+                if(statement != singleRowStatement) {
+                    statement.close();
                 }
+                singleRowStatement.close();
             }
-            if (batchSize > 0) {
-                ps.executeBatch();
+        }
+
+        /**
+         * Append rows of a time period in the columnar file shared by all periods
+         */
+        private static class ColumnarLevelsRowsWriter implements LevelsRowsWriter {
+            final ColumnarLevelsWriter writer;
+            final byte period;
+
+            ColumnarLevelsRowsWriter(ColumnarLevelsWriter writer, byte period) {
+                this.writer = writer;
+                this.period = period;
+            }
+
+            @Override
+            public void addRow(long receiverId, long sourceId, double[] levels, double laeq, double leq) throws IOException {
+                writer.addRow(period, receiverId, sourceId, levels, laeq, leq);
+            }
+
+            @Override
+            public void flush() {
+                // rows are written by chunks
+            }
+
+            @Override
+            public void close() {
             }
         }
 
@@ -414,7 +727,9 @@ public class LDENPointNoiseMapFactory implements PointNoiseMap.PropagationProces
             if (ldenConfig.mergeSources) {
                 return "ALTER TABLE " + tableName + " ADD PRIMARY KEY(IDRECEIVER);";
             } else {
-                return "CREATE INDEX ON " + tableName + " (IDRECEIVER);";
+                // the index may have been created by the resumed computation
+                return "CREATE INDEX IF NOT EXISTS " + TableLocation.parse(tableName).getTable() +
+                        "_IDRECEIVER ON " + tableName + " (IDRECEIVER);";
             }
         }
 
@@ -429,8 +744,24 @@ public class LDENPointNoiseMapFactory implements PointNoiseMap.PropagationProces
         }
 
         public void init() throws SQLException, IOException {
+            if(insertMethod == LDENConfig.ResultInsertMethods.COPY &&
+                    (sqlFilePath != null || !PostgreSQLCopy.isSupported(connection))) {
+                LOGGER.warn("COPY insertion require a PostgreSQL connection, use multi-row insertion instead");
+                insertMethod = LDENConfig.ResultInsertMethods.MULTI_ROW_INSERT;
+            }
+            if(ldenConfig.checkpointTable != null) {
+                if(sqlFilePath != null || ldenConfig.columnarOutputFile != null) {
+                    throw new IllegalArgumentException("The checkpoint table requires the levels to be written in tables");
+                }
+                if(ldenConfig.resumeComputation && ldenConfig.attenuationMatrixFile != null) {
+                    // the matrix file of the interrupted computation can not be appended to
+                    throw new IllegalArgumentException("The attenuation matrix file is not supported when resuming a computation");
+                }
+                checkpointJournal = new CheckpointJournal(ldenConfig.checkpointTable);
+                checkpointJournal.init(connection, ldenConfig.resumeComputation);
+            }
             if(ldenConfig.getExportRaysMethod() == LDENConfig.ExportRaysMethods.TO_RAYS_TABLE) {
-                if(ldenConfig.dropResultsTable) {
+                if(ldenConfig.dropResultsTable && !isResuming()) {
                     String q = String.format("DROP TABLE IF EXISTS %s;", ldenConfig.raysTable);
                     processQuery(q);
                 }
@@ -446,60 +777,154 @@ public class LDENPointNoiseMapFactory implements PointNoiseMap.PropagationProces
                 }
                 sb.append(");");
                 processQuery(sb.toString());
+                if(isResuming()) {
+                    checkpointJournal.deleteUnrecordedRows(connection, ldenConfig.raysTable);
+                }
             }
-            if(ldenConfig.computeLDay) {
-                if(ldenConfig.dropResultsTable) {
-                    String q = String.format("DROP TABLE IF EXISTS %s;", ldenConfig.lDayTable);
-                    processQuery(q);
+            if(ldenConfig.attenuationMatrixFile != null) {
+                ldenData.attenuationMatrix = new AttenuationMatrixWriter(ldenConfig.attenuationMatrixFile,
+                        ldenConfig.propagationProcessPathDataDay.freq_lvl, LDENConfig.TIME_PERIOD.values().length);
+            }
+            if(ldenConfig.columnarOutputFile != null) {
+                if(ColumnarLevelsWriter.PERIOD_FIRST_CHANNEL + ldenConfig.emissionChannels.size() > Byte.MAX_VALUE) {
+                    throw new IllegalArgumentException("Too many emission channels for the columnar output");
                 }
-                String q = forgeCreateTable(ldenConfig.lDayTable);
-                processQuery(q);
+                // levels are not written in tables
+                columnarLevelsWriter = new ColumnarLevelsWriter(ldenConfig.columnarOutputFile,
+                        ldenConfig.propagationProcessPathDataDay.freq_lvl, !ldenConfig.mergeSources,
+                        ldenConfig.computeLAEQOnly);
+                return;
+            }
+            if(ldenConfig.computeLDay) {
+                createLevelsTable(ldenConfig.lDayTable);
             }
             if(ldenConfig.computeLEvening) {
-                if(ldenConfig.dropResultsTable) {
-                    String q = String.format("DROP TABLE IF EXISTS %s;", ldenConfig.lEveningTable);
-                    processQuery(q);
-                }
-                String q = forgeCreateTable(ldenConfig.lEveningTable);
-                processQuery(q);
+                createLevelsTable(ldenConfig.lEveningTable);
             }
             if(ldenConfig.computeLNight) {
-                if(ldenConfig.dropResultsTable) {
-                    String q = String.format("DROP TABLE IF EXISTS %s;", ldenConfig.lNightTable);
-                    processQuery(q);
-                }
-                String q = forgeCreateTable(ldenConfig.lNightTable);
-                processQuery(q);
+                createLevelsTable(ldenConfig.lNightTable);
             }
             if(ldenConfig.computeLDEN) {
-                if(ldenConfig.dropResultsTable) {
-                    String q = String.format("DROP TABLE IF EXISTS %s;", ldenConfig.lDenTable);
-                    processQuery(q);
-                }
-                String q = forgeCreateTable(ldenConfig.lDenTable);
+                createLevelsTable(ldenConfig.lDenTable);
+            }
+            for(String channel : ldenConfig.emissionChannels.keySet()) {
+                createLevelsTable(ldenConfig.getChannelTable(channel));
+            }
+        }
+
+        /**
+         * @return True if the rows of an interrupted computation are kept
+         */
+        boolean isResuming() {
+            return checkpointJournal != null && ldenConfig.resumeComputation;
+        }
+
+        /**
+         * Create a levels table. If the computation is resumed the existing table is kept without the rows of the
+         * receivers that are not in the checkpoint table.
+         * @param tableName Levels table
+         */
+        void createLevelsTable(String tableName) throws SQLException, IOException {
+            if(isResuming() && JDBCUtilities.tableExists(connection,
+                    TableLocation.parse(tableName, DBUtils.getDBType(connection)))) {
+                int removedRows = checkpointJournal.deleteUnrecordedRows(connection, tableName);
+                LOGGER.info(String.format(Locale.ROOT, "Resume computation, %d rows of interrupted cells removed from %s",
+                        removedRows, tableName));
+                return;
+            }
+            if(ldenConfig.dropResultsTable) {
+                String q = String.format("DROP TABLE IF EXISTS %s;", tableName);
                 processQuery(q);
             }
+            processQuery(forgeCreateTable(tableName));
+        }
+
+        /**
+         * Write the pending levels of the emission channels
+         * @return False if there was no pending levels
+         */
+        boolean processChannelStacks() throws SQLException, IOException {
+            boolean processed = false;
+            int idChannel = 0;
+            for(String channel : ldenConfig.emissionChannels.keySet()) {
+                ReceiverLevelsBuffer stack = ldenData.getChannelLevels(idChannel);
+                if(!stack.isEmpty()) {
+                    processStack(ldenConfig.getChannelTable(channel),
+                            (byte) (ColumnarLevelsWriter.PERIOD_FIRST_CHANNEL + idChannel), stack);
+                    processed = true;
+                }
+                idChannel++;
+            }
+            return processed;
+        }
+
+        /**
+         * Write the pending levels of all the periods, of the emission channels and the pending rays
+         * @return False if there was no pending rows
+         */
+        boolean processPendingStacks() throws SQLException, IOException {
+            boolean processed = false;
+            if(!ldenData.lDayLevels.isEmpty()) {
+                processStack(ldenConfig.lDayTable, (byte) LDENConfig.TIME_PERIOD.DAY.ordinal(), ldenData.lDayLevels);
+                processed = true;
+            }
+            if(!ldenData.lEveningLevels.isEmpty()) {
+                processStack(ldenConfig.lEveningTable, (byte) LDENConfig.TIME_PERIOD.EVENING.ordinal(), ldenData.lEveningLevels);
+                processed = true;
+            }
+            if(!ldenData.lNightLevels.isEmpty()) {
+                processStack(ldenConfig.lNightTable, (byte) LDENConfig.TIME_PERIOD.NIGHT.ordinal(), ldenData.lNightLevels);
+                processed = true;
+            }
+            if(!ldenData.lDenLevels.isEmpty()) {
+                processStack(ldenConfig.lDenTable, ColumnarLevelsWriter.PERIOD_DEN, ldenData.lDenLevels);
+                processed = true;
+            }
+            if(!ldenData.rays.isEmpty()) {
+                processRaysStack(ldenData.rays);
+                processed = true;
+            }
+            return processChannelStacks() || processed;
+        }
+
+        /**
+         * Write all the pending levels then record the computed cells in the checkpoint table and set them as done in
+         * the queue. The levels of a cell are pushed before the cell is added to the completed cells.
+         */
+        void processCompletedCells() throws SQLException, IOException {
+            List<CheckpointJournal.CompletedCell> completedCells = new ArrayList<>();
+            CheckpointJournal.CompletedCell completedCell;
+            while((completedCell = ldenData.completedCells.poll()) != null) {
+                completedCells.add(completedCell);
+            }
+            processPendingStacks();
+            // the rows of the cells must be stored before the cells are recorded
+            flushWriters();
+            if(checkpointJournal != null) {
+                for(CheckpointJournal.CompletedCell cell : completedCells) {
+                    checkpointJournal.addCell(connection, cell.cellIndex, cell.receivers);
+                }
+            }
+            if(cellWorkQueue != null) {
+                // commit the rows with the state of the cells
+                for(CheckpointJournal.CompletedCell cell : completedCells) {
+                    cellWorkQueue.setCellDone(connection, cell.cellIndex);
+                }
+            }
         }
 
         void mainLoop() throws SQLException, IOException {
             while (!ldenConfig.aborted) {
                 started = true;
                 try {
-                    if(!ldenData.lDayLevels.isEmpty()) {
-                        processStack(ldenConfig.lDayTable, ldenData.lDayLevels);
-                    } else if(!ldenData.lEveningLevels.isEmpty()) {
-                        processStack(ldenConfig.lEveningTable, ldenData.lEveningLevels);
-                    } else if(!ldenData.lNightLevels.isEmpty()) {
-                        processStack(ldenConfig.lNightTable, ldenData.lNightLevels);
-                    } else if(!ldenData.lDenLevels.isEmpty()) {
-                        processStack(ldenConfig.lDenTable, ldenData.lDenLevels);
-                    } else if(!ldenData.rays.isEmpty()) {
-                        processRaysStack(ldenData.rays);
-                    } else {
+                    if(!ldenData.completedCells.isEmpty()) {
+                        processCompletedCells();
+                    } else if(!processPendingStacks()) {
                         if(ldenConfig.exitWhenDone) {
                             break;
                         } else {
-                            Thread.sleep(50);
+                            // Parked until the producers hand off new rows
+                            ldenData.awaitNewElements(WRITER_MAXIMUM_WAIT, TimeUnit.MILLISECONDS);
                         }
                     }
                 } catch (InterruptedException ex) {
@@ -509,21 +934,70 @@ public class LDENPointNoiseMapFactory implements PointNoiseMap.PropagationProces
             }
         }
 
+        void closeWriters() throws SQLException, IOException {
+            for(LevelsRowsWriter writer : levelsRowsWriters.values()) {
+                writer.close();
+            }
+            levelsRowsWriters.clear();
+            if(columnarLevelsWriter != null) {
+                columnarLevelsWriter.close();
+                columnarLevelsWriter = null;
+            }
+            if(ldenData.attenuationMatrix != null) {
+                ldenData.attenuationMatrix.close();
+                ldenData.attenuationMatrix = null;
+            }
+        }
+
         void createKeys()  throws SQLException, IOException {
+            if(ldenConfig.columnarOutputFile != null) {
+                return;
+            }
             // Set primary keys
             LOGGER.info("Write done, apply primary keys");
             if(ldenConfig.computeLDay) {
-                processQuery(forgePkTable(ldenConfig.lDayTable));
+                createKey(ldenConfig.lDayTable);
             }
             if(ldenConfig.computeLEvening) {
-                processQuery(forgePkTable(ldenConfig.lEveningTable));
+                createKey(ldenConfig.lEveningTable);
             }
             if(ldenConfig.computeLNight) {
-                processQuery(forgePkTable(ldenConfig.lNightTable));
+                createKey(ldenConfig.lNightTable);
             }
             if(ldenConfig.computeLDEN) {
-                processQuery(forgePkTable(ldenConfig.lDenTable));
+                createKey(ldenConfig.lDenTable);
+            }
+            for(String channel : ldenConfig.emissionChannels.keySet()) {
+                createKey(ldenConfig.getChannelTable(channel));
+            }
+        }
+
+        /**
+         * @param tableName Levels table
+         */
+        void createKey(String tableName) throws SQLException, IOException {
+            if(isResuming() && ldenConfig.mergeSources && JDBCUtilities.getIntegerPrimaryKey(connection,
+                    TableLocation.parse(tableName, DBUtils.getDBType(connection))) > 0) {
+                // the key has been created by the resumed computation
+                return;
+            }
+            processQuery(forgePkTable(tableName));
+        }
+
+        /**
+         * Create the tables, write the levels until the computation is done then create the keys
+         */
+        void writeResults() throws SQLException, IOException {
+            try {
+                init();
+                mainLoop();
+                if(!ldenConfig.aborted) {
+                    flushWriters();
+                }
+            } finally {
+                closeWriters();
             }
+            createKeys();
         }
 
         OutputStreamWriter getStream() throws IOException {
@@ -539,9 +1013,7 @@ public class LDENPointNoiseMapFactory implements PointNoiseMap.PropagationProces
             // Drop and create tables
             if(sqlFilePath == null) {
                 try {
-                    init();
-                    mainLoop();
-                    createKeys();
+                    writeResults();
                 } catch (SQLException e) {
                     LOGGER.error("SQL Writer exception", e);
                     LOGGER.error(e.getLocalizedMessage(), e.getNextException());
@@ -553,9 +1025,7 @@ public class LDENPointNoiseMapFactory implements PointNoiseMap.PropagationProces
             } else {
                 try(OutputStreamWriter bw = getStream()) {
                     o = bw;
-                    init();
-                    mainLoop();
-                    createKeys();
+                    writeResults();
                 } catch (SQLException e) {
                     LOGGER.error("SQL Writer exception", e);
                     LOGGER.error(e.getLocalizedMessage(), e.getNextException());
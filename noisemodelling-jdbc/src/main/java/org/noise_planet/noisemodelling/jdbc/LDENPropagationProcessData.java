@@ -54,6 +54,8 @@ public class LDENPropagationProcessData extends CnossosPropagationData {
     public List<double[]> wjSourcesD = new ArrayList<>();
     public List<double[]> wjSourcesE = new ArrayList<>();
     public List<double[]> wjSourcesN = new ArrayList<>();
+    // Source value in energetic of each emission channel [source][channel][band]
+    public List<double[][]> wjSourcesChannels = new ArrayList<>();
 
     /**
      * Attenuation and other attributes relative to direction on sphere
@@ -84,6 +86,9 @@ public class LDENPropagationProcessData extends CnossosPropagationData {
         if(ldenConfig.computeLNight || ldenConfig.computeLDEN) {
             wjSourcesN.add(res[2]);
         }
+        if(!ldenConfig.emissionChannels.isEmpty()) {
+            wjSourcesChannels.add(computeChannelsLw(rs));
+        }
     }
 
     @Override
@@ -267,23 +272,7 @@ public class LDENPropagationProcessData extends CnossosPropagationData {
                 }
             }
         } else if(ldenConfig.input_mode == LDENConfig.INPUT_MODE.INPUT_MODE_TRAFFIC_FLOW) {
-            // Extract road slope
-            double slope = 0;
-            try {
-                Geometry g = rs.getGeometry();
-                if(profileBuilder!=null && g != null && !g.isEmpty()) {
-                    Coordinate[] c = g.getCoordinates();
-                    if(c.length >= 2) {
-                        double z0 = profileBuilder.getZ(c[0]);
-                        double z1 = profileBuilder.getZ(c[1]);
-                        if(!Double.isNaN(z0) && !Double.isNaN(z1)) {
-                            slope = Utils.computeSlope(z0, z1, g.getLength());
-                        }
-                    }
-                }
-            } catch (SQLException ex) {
-                // ignore
-            }
+            double slope = getRoadSlope(rs);
             // Day
             ld = dbaToW(getEmissionFromResultSet(rs, "D", slope));
 
@@ -297,7 +286,80 @@ public class LDENPropagationProcessData extends CnossosPropagationData {
         return new double[][] {ld, le, ln};
     }
 
+    /**
+     * @param rs result set of source
+     * @return Gradient percentage of the road extracted from the ground elevation
+     */
+    private double getRoadSlope(SpatialResultSet rs) {
+        double slope = 0;
+        try {
+            Geometry g = rs.getGeometry();
+            if(profileBuilder!=null && g != null && !g.isEmpty()) {
+                Coordinate[] c = g.getCoordinates();
+                if(c.length >= 2) {
+                    double z0 = profileBuilder.getZ(c[0]);
+                    double z1 = profileBuilder.getZ(c[1]);
+                    if(!Double.isNaN(z0) && !Double.isNaN(z1)) {
+                        slope = Utils.computeSlope(z0, z1, g.getLength());
+                    }
+                }
+            }
+        } catch (SQLException ex) {
+            // ignore
+        }
+        return slope;
+    }
+
+    /**
+     * @param rs result set of source
+     * @return Emission spectrum in W of each emission channel, see {@link LDENConfig#addEmissionChannel}
+     */
+    public double[][] computeChannelsLw(SpatialResultSet rs) throws SQLException, IOException {
+        List<Integer> frequencies = ldenConfig.propagationProcessPathDataDay.freq_lvl;
+        double[][] channelsLw = new double[ldenConfig.emissionChannels.size()][];
+        double slope = 0;
+        if (ldenConfig.input_mode == LDENConfig.INPUT_MODE.INPUT_MODE_TRAFFIC_FLOW) {
+            slope = getRoadSlope(rs);
+        }
+        int idChannel = 0;
+        for (String channel : ldenConfig.emissionChannels.keySet()) {
+            double[] lw = new double[frequencies.size()];
+            if (ldenConfig.input_mode == LDENConfig.INPUT_MODE.INPUT_MODE_PROBA) {
+                double val = dbaToW(90.0);
+                for (int idfreq = 0; idfreq < lw.length; idfreq++) {
+                    lw[idfreq] = val;
+                }
+            } else if (ldenConfig.input_mode == LDENConfig.INPUT_MODE.INPUT_MODE_LW_DEN) {
+                for (int idfreq = 0; idfreq < lw.length; idfreq++) {
+                    lw[idfreq] = dbaToW(rs.getDouble(ldenConfig.lwFrequencyPrepend + channel + frequencies.get(idfreq)));
+                }
+            } else {
+                lw = dbaToW(getEmissionFromResultSet(rs, channel, slope));
+            }
+            channelsLw[idChannel++] = lw;
+        }
+        return channelsLw;
+    }
+
     public double[] getMaximalSourcePower(int sourceId) {
+        if(!wjSourcesChannels.isEmpty() && sourceId < wjSourcesChannels.size()) {
+            // Highest power of the channels and of the time periods for each band
+            double[] maximalPower = getMaximalPeriodPower(sourceId).clone();
+            for(double[] channelPower : wjSourcesChannels.get(sourceId)) {
+                if(maximalPower.length == 0) {
+                    maximalPower = channelPower.clone();
+                } else {
+                    for(int idFreq = 0; idFreq < maximalPower.length; idFreq++) {
+                        maximalPower[idFreq] = Math.max(maximalPower[idFreq], channelPower[idFreq]);
+                    }
+                }
+            }
+            return maximalPower;
+        }
+        return getMaximalPeriodPower(sourceId);
+    }
+
+    private double[] getMaximalPeriodPower(int sourceId) {
         if(ldenConfig.computeLDay && sourceId < wjSourcesD.size()) {
             return wjSourcesD.get(sourceId);
         } else if(ldenConfig.computeLEvening && sourceId < wjSourcesE.size()) {
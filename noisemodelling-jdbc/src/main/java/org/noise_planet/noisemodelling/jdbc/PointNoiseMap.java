@@ -35,6 +35,12 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.StreamSupport;
 
 /**
  * Compute noise propagation at specified receiver points.
@@ -47,12 +53,23 @@ public class PointNoiseMap extends JdbcNoiseMap {
     private Logger logger = LoggerFactory.getLogger(PointNoiseMap.class);
     private int threadCount = 0;
     private ProfilerThread profilerThread;
+    private int maximumPreparedCells = 1;
+    private CheckpointJournal resumeJournal = null;
+    // Envelopes of the variable size cells, null if the cells are the cells of the uniform grid
+    private volatile Map<CellIndex, Envelope> adaptiveCellEnvelopes = null;
 
     public PointNoiseMap(String buildingsTableName, String sourcesTableName, String receiverTableName) {
         super(buildingsTableName, sourcesTableName);
         this.receiverTableName = receiverTableName;
     }
 
+    /**
+     * @return Table name that contains receivers
+     */
+    public String getReceiverTableName() {
+        return receiverTableName;
+    }
+
     /**
      * Computation stacks and timing are collected by this class in order
      * to profile the execution of the simulation
@@ -87,6 +104,40 @@ public class PointNoiseMap extends JdbcNoiseMap {
         this.threadCount = threadCount;
     }
 
+    /**
+     * @return Maximum number of cells prepared in advance by {@link #evaluateCells}
+     */
+    public int getMaximumPreparedCells() {
+        return maximumPreparedCells;
+    }
+
+    /**
+     * The preparation of the next cells (fetch of the geometries, triangulation and index build) is done while
+     * the rays of the current cell are computed. Each prepared cell is kept in memory until its computation.
+     * @param maximumPreparedCells Maximum number of cells prepared in advance by {@link #evaluateCells}, 0 to
+     *                             prepare the cells sequentially
+     */
+    public void setMaximumPreparedCells(int maximumPreparedCells) {
+        this.maximumPreparedCells = maximumPreparedCells;
+    }
+
+    /**
+     * @return Journal of the resumed computation, null if all the cells are computed
+     */
+    public CheckpointJournal getResumeJournal() {
+        return resumeJournal;
+    }
+
+    /**
+     * Resume an interrupted computation, {@link #evaluateCells} skips the cells recorded in the journal and their
+     * receivers.
+     * @param resumeJournal Journal of the interrupted computation, null to compute all the cells
+     * @see LDENConfig#setResumeComputation(boolean)
+     */
+    public void setResumeJournal(CheckpointJournal resumeJournal) {
+        this.resumeJournal = resumeJournal;
+    }
+
     /**
      * Initialisation of data structures needed for sound propagation.
      * @param connection JDBC Connection
@@ -103,8 +154,7 @@ public class PointNoiseMap extends JdbcNoiseMap {
         if(verbose) {
             logger.info("Begin processing of cell " + ij + " / " + gridDim * gridDim);
         }
-        Envelope cellEnvelope = getCellEnv(mainEnvelope, cellI,
-                cellJ, getCellWidth(), getCellHeight());
+        Envelope cellEnvelope = getCellEnvelope(cellI, cellJ);
 
 
         Envelope expandedCellEnvelop = new Envelope(cellEnvelope);
@@ -114,12 +164,8 @@ public class PointNoiseMap extends JdbcNoiseMap {
         // feed freeFieldFinder for fast intersection query
         // optimization
         // Fetch buildings in extendedEnvelope
-        fetchCellBuildings(connection, expandedCellEnvelop, builder);
-        //if we have topographic points data
-        fetchCellDem(connection, expandedCellEnvelop, builder);
-
-        // Fetch soil areas
-        fetchCellSoilAreas(connection, expandedCellEnvelop, builder);
+        // Fetch topographic points and soil areas in extendedEnvelope
+        fetchCellScene(connection, cellI, cellJ, expandedCellEnvelop, builder);
 
         builder.finishFeeding();
 
@@ -134,6 +180,9 @@ public class PointNoiseMap extends JdbcNoiseMap {
         propagationProcessData.setBodyBarrier(bodyBarrier);
         propagationProcessData.maximumError = getMaximumError();
         propagationProcessData.noiseFloor = getNoiseFloor();
+        propagationProcessData.setFarFieldAggregation(getFarFieldAggregationDistance(), getFarFieldAggregationError());
+        propagationProcessData.setReflectionMethod(getReflectionMethod());
+        propagationProcessData.setReceiverGroupSize(getReceiverGroupSize());
         propagationProcessData.maxRefDist = maximumReflectionDistance;
         propagationProcessData.maxSrcDist = maximumPropagationDistance;
         propagationProcessData.gS = getGs();
@@ -198,6 +247,58 @@ public class PointNoiseMap extends JdbcNoiseMap {
         return computationEnvelope;
     }
 
+    /**
+     * @param cellI Cell I [0-{@link #getGridDim()}]
+     * @param cellJ Cell J [0-{@link #getGridDim()}]
+     * @return Envelope of the cell, larger than a grid cell if the cell comes from
+     * {@link #searchAdaptiveCells(Connection, QuadTreeCellPartitioner)}
+     */
+    public Envelope getCellEnvelope(int cellI, int cellJ) {
+        Map<CellIndex, Envelope> cellEnvelopes = adaptiveCellEnvelopes;
+        if(cellEnvelopes != null) {
+            Envelope cellEnvelope = cellEnvelopes.get(new CellIndex(cellJ, cellI));
+            if(cellEnvelope != null) {
+                return new Envelope(cellEnvelope);
+            }
+        }
+        return getCellEnv(mainEnvelope, cellI, cellJ, getCellWidth(), getCellHeight());
+    }
+
+    /**
+     * Split the computation area into cells of variable size according to the density of receivers, buildings and
+     * sources. The grid dimension is set to the dimension of the deepest level of the partition, the returned cells
+     * can then be computed with {@link #evaluateCell} or {@link #evaluateCells} like the cells of
+     * {@link #searchPopulatedCells(Connection)}. Changing the grid dimension clears the partition.
+     * @param connection Active connection
+     * @param partitioner Partition parameters, the current grid dimension is the initial grid
+     * @return Cell index with number of receivers
+     * @throws SQLException Error while counting the features
+     */
+    public Map<CellIndex, Integer> searchAdaptiveCells(Connection connection, QuadTreeCellPartitioner partitioner) throws SQLException {
+        if(mainEnvelope == null || mainEnvelope.isNull()) {
+            throw new IllegalStateException("Call initialize before calling searchAdaptiveCells");
+        }
+        List<QuadTreeCellPartitioner.Cell> cells = partitioner.partition(connection, this);
+        setGridDim(Math.max(1, gridDim) << partitioner.getMaximumDepth());
+        Map<CellIndex, Envelope> cellEnvelopes = new HashMap<>();
+        Map<CellIndex, Integer> cellIndices = new HashMap<>();
+        for(QuadTreeCellPartitioner.Cell cell : cells) {
+            cellEnvelopes.put(cell.cellIndex, cell.envelope);
+            cellIndices.put(cell.cellIndex, cell.receiverCount);
+        }
+        adaptiveCellEnvelopes = cellEnvelopes;
+        if(verbose) {
+            logger.info(String.format("The computation area is split into %d cells", cells.size()));
+        }
+        return cellIndices;
+    }
+
+    @Override
+    public void setGridDim(int gridDim) {
+        super.setGridDim(gridDim);
+        adaptiveCellEnvelopes = null;
+    }
+
     /**
      * Fetch all receivers and compute cells that contains receivers
      * @param connection
@@ -256,8 +357,125 @@ public class PointNoiseMap extends JdbcNoiseMap {
      */
     public IComputeRaysOut evaluateCell(Connection connection, int cellI, int cellJ,
                                         ProgressVisitor progression, Set<Long> skipReceivers) throws SQLException, IOException {
-        CnossosPropagationData threadData = prepareCell(connection, cellI, cellJ, progression, skipReceivers);
+        return computeCell(prepareCell(connection, cellI, cellJ, progression, skipReceivers));
+    }
 
+    /**
+     * Launch sound propagation on all provided cells. The next cells are prepared in a dedicated thread while
+     * the rays of the current cell are computed.
+     * @param connection JDBC Connection
+     * @param cellIndices Cells to compute, in computation order. The cells are fetched from the iterator only when
+     *                    they are about to be prepared
+     * @param progression Progression info
+     * @param skipReceivers Set of already processed receivers
+     * @param cellComputedListener Called after the computation of each cell
+     * @throws SQLException
+     * @throws IOException
+     * @see #setMaximumPreparedCells(int)
+     * @see #setResumeJournal(CheckpointJournal)
+     */
+    public void evaluateCells(Connection connection, Iterable<CellIndex> cellIndices, ProgressVisitor progression,
+                              Set<Long> skipReceivers, CellComputedListener cellComputedListener) throws SQLException, IOException {
+        if(resumeJournal != null) {
+            CheckpointJournal.ReceiverRanges completedReceivers = new CheckpointJournal.ReceiverRanges(skipReceivers);
+            Set<CellIndex> completedCells = resumeJournal.fetchCompletedCells(connection, completedReceivers);
+            logger.info(String.format(Locale.ROOT, "Resume computation, skip %d completed cells",
+                    completedCells.size()));
+            Iterable<CellIndex> allCells = cellIndices;
+            cellIndices = () -> StreamSupport.stream(allCells.spliterator(), false)
+                    .filter(cellIndex -> !completedCells.contains(cellIndex)).iterator();
+            skipReceivers = completedReceivers;
+        }
+        if(maximumPreparedCells <= 0) {
+            for(CellIndex cellIndex : cellIndices) {
+                if(progression != null && progression.isCanceled()) {
+                    break;
+                }
+                IComputeRaysOut out = evaluateCell(connection, cellIndex.getLatitudeIndex(),
+                        cellIndex.getLongitudeIndex(), progression, skipReceivers);
+                cellComputedListener.cellComputed(cellIndex, out);
+            }
+            return;
+        }
+        // A single thread prepare the cells in the computation order, skipReceivers is only used by this thread
+        ExecutorService preparationExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "PointNoiseMap cell preparation");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Deque<Map.Entry<CellIndex, Future<CnossosPropagationData>>> preparedCells = new ArrayDeque<>();
+        Iterator<CellIndex> cellIterator = cellIndices.iterator();
+        try {
+            // One cell is computed while at most maximumPreparedCells are prepared
+            while (preparedCells.size() < maximumPreparedCells && cellIterator.hasNext()) {
+                submitCellPreparation(preparationExecutor, preparedCells, connection, cellIterator.next(),
+                        progression, skipReceivers);
+            }
+            while (!preparedCells.isEmpty()) {
+                if(progression != null && progression.isCanceled()) {
+                    break;
+                }
+                Map.Entry<CellIndex, Future<CnossosPropagationData>> preparedCell = preparedCells.removeFirst();
+                CnossosPropagationData threadData = getPreparedCell(preparedCell.getValue());
+                while (preparedCells.size() < maximumPreparedCells && cellIterator.hasNext()) {
+                    submitCellPreparation(preparationExecutor, preparedCells, connection, cellIterator.next(),
+                            progression, skipReceivers);
+                }
+                cellComputedListener.cellComputed(preparedCell.getKey(), computeCell(threadData));
+            }
+        } finally {
+            for(Map.Entry<CellIndex, Future<CnossosPropagationData>> preparedCell : preparedCells) {
+                preparedCell.getValue().cancel(false);
+            }
+            preparationExecutor.shutdown();
+            // Do not return while the connection is still used by the preparation thread
+            try {
+                if(!preparationExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS)) {
+                    logger.warn("Timeout elapsed before termination of the cell preparation.");
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void submitCellPreparation(ExecutorService preparationExecutor,
+                                       Deque<Map.Entry<CellIndex, Future<CnossosPropagationData>>> preparedCells,
+                                       Connection connection, CellIndex cellIndex, ProgressVisitor progression,
+                                       Set<Long> skipReceivers) {
+        preparedCells.addLast(new AbstractMap.SimpleImmutableEntry<>(cellIndex,
+                preparationExecutor.submit(() -> prepareCell(connection, cellIndex.getLatitudeIndex(),
+                        cellIndex.getLongitudeIndex(), progression, skipReceivers))));
+    }
+
+    private static CnossosPropagationData getPreparedCell(Future<CnossosPropagationData> preparedCell) throws SQLException, IOException {
+        try {
+            return preparedCell.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for the cell preparation", ex);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if(cause instanceof SQLException) {
+                throw (SQLException) cause;
+            } else if(cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if(cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if(cause instanceof Error) {
+                throw (Error) cause;
+            } else {
+                throw new SQLException(cause);
+            }
+        }
+    }
+
+    /**
+     * Launch sound propagation on a cell prepared with {@link #prepareCell}
+     * @param threadData Data input for cell evaluation
+     * @return Computation output
+     */
+    public IComputeRaysOut computeCell(CnossosPropagationData threadData) {
         if(verbose) {
             logger.info(String.format("This computation area contains %d receivers %d sound sources and %d buildings",
                     threadData.receivers.size(), threadData.sourceGeometries.size(),
@@ -302,6 +520,14 @@ public class PointNoiseMap extends JdbcNoiseMap {
         }
     }
 
+    public interface CellComputedListener {
+        /**
+         * @param cellIndex Computed cell
+         * @param computeRaysOut Computation output of the cell
+         */
+        void cellComputed(CellIndex cellIndex, IComputeRaysOut computeRaysOut) throws SQLException, IOException;
+    }
+
     public interface PropagationProcessDataFactory {
         CnossosPropagationData create(ProfileBuilder builder);
 
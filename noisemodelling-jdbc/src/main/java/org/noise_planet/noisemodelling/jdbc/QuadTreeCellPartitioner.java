@@ -0,0 +1,251 @@
+/**
+ * NoiseModelling is an open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by the DECIDE team from the Lab-STICC (CNRS) and by the Mixt Research Unit in Environmental Acoustics (Université Gustave Eiffel).
+ * <http://noise-planet.org/noisemodelling.html>
+ *
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ */
+package org.noise_planet.noisemodelling.jdbc;
+
+import org.h2gis.utilities.GeometryTableUtilities;
+import org.h2gis.utilities.TableLocation;
+import org.h2gis.utilities.dbtypes.DBTypes;
+import org.h2gis.utilities.dbtypes.DBUtils;
+import org.locationtech.jts.geom.Envelope;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Split the computation area into cells of variable size. Each cell of the {@link JdbcNoiseMap#getGridDim()} grid
+ * is recursively split into 4 cells while it contains too many receivers, or while too many buildings and sources
+ * are located in its envelope expanded by the maximum propagation distance. The features are counted by the
+ * database on a fine grid (the grid of the deepest level), only the populated fine cells are transferred.
+ */
+public class QuadTreeCellPartitioner {
+    /** Maximum side cell count of the deepest level grid */
+    public static final int MAXIMUM_FINE_GRID_DIM = 2048;
+    private int maximumReceivers = 10000;
+    private int maximumSceneObjects = 200000;
+    private int maximumDepth = 4;
+
+    /**
+     * @return Maximum number of receivers of a cell, the cell is split if it contains more receivers
+     */
+    public int getMaximumReceivers() {
+        return maximumReceivers;
+    }
+
+    /**
+     * @param maximumReceivers Maximum number of receivers of a cell, the cell is split if it contains more receivers
+     */
+    public void setMaximumReceivers(int maximumReceivers) {
+        this.maximumReceivers = maximumReceivers;
+    }
+
+    /**
+     * @return Maximum number of buildings and sources in the expanded envelope of a cell
+     */
+    public int getMaximumSceneObjects() {
+        return maximumSceneObjects;
+    }
+
+    /**
+     * @param maximumSceneObjects Maximum number of buildings and sources in the expanded envelope of a cell, the
+     *                            cell is split if there are more objects. This budget limits the memory of a cell.
+     */
+    public void setMaximumSceneObjects(int maximumSceneObjects) {
+        this.maximumSceneObjects = maximumSceneObjects;
+    }
+
+    /**
+     * @return Maximum number of splits of a cell of the initial grid
+     */
+    public int getMaximumDepth() {
+        return maximumDepth;
+    }
+
+    /**
+     * @param maximumDepth Maximum number of splits of a cell of the initial grid, the smallest cells are
+     *                     2^maximumDepth times smaller on each side
+     */
+    public void setMaximumDepth(int maximumDepth) {
+        if(maximumDepth < 0) {
+            throw new IllegalArgumentException("Maximum depth must be positive");
+        }
+        this.maximumDepth = maximumDepth;
+    }
+
+    /**
+     * Split the computation area of the noise map
+     * @param connection Active connection
+     * @param noiseMap Initialized noise map, its grid dimension is the initial grid (1 if not set)
+     * @return Cells containing at least one receiver, expressed on the grid of the deepest level
+     * @throws SQLException Error while counting the features
+     */
+    public List<Cell> partition(Connection connection, PointNoiseMap noiseMap) throws SQLException {
+        Envelope mainEnvelope = noiseMap.getMainEnvelope();
+        if(mainEnvelope == null || mainEnvelope.isNull()) {
+            throw new IllegalStateException("Call initialize before partitioning the computation area");
+        }
+        int rootDim = Math.max(1, noiseMap.getGridDim());
+        int rootSpan = 1 << maximumDepth;
+        if((long) rootDim * rootSpan > MAXIMUM_FINE_GRID_DIM) {
+            throw new IllegalArgumentException(String.format("The grid of the deepest level contains more than %d" +
+                    " cells per side, reduce the maximum depth or the grid dimension", MAXIMUM_FINE_GRID_DIM));
+        }
+        int fineDim = rootDim * rootSpan;
+        double cellWidth = mainEnvelope.getWidth() / fineDim;
+        double cellHeight = mainEnvelope.getHeight() / fineDim;
+        // Number of fine cells covered by the maximum propagation distance
+        int margin = (int) Math.min(fineDim, Math.ceil(noiseMap.getMaximumPropagationDistance() /
+                Math.max(Double.MIN_VALUE, Math.min(cellWidth, cellHeight))));
+        long[] receivers = new long[fineDim * fineDim];
+        countFeatures(connection, noiseMap.getReceiverTableName(), mainEnvelope, fineDim, 0, receivers);
+        long[] sceneObjects = new long[fineDim * fineDim];
+        if(!noiseMap.getBuildingsTableName().isEmpty()) {
+            countFeatures(connection, noiseMap.getBuildingsTableName(), mainEnvelope, fineDim, margin, sceneObjects);
+        }
+        if(!noiseMap.getSourcesTableName().isEmpty()) {
+            countFeatures(connection, noiseMap.getSourcesTableName(), mainEnvelope, fineDim, margin, sceneObjects);
+        }
+        SummedArea receiverArea = new SummedArea(receivers, fineDim);
+        SummedArea sceneArea = new SummedArea(sceneObjects, fineDim);
+        List<Cell> cells = new ArrayList<>();
+        for(int i = 0; i < rootDim; i++) {
+            for(int j = 0; j < rootDim; j++) {
+                split(i * rootSpan, j * rootSpan, rootSpan, margin, receiverArea, sceneArea, mainEnvelope,
+                        cellWidth, cellHeight, cells);
+            }
+        }
+        return cells;
+    }
+
+    private void split(int cellI, int cellJ, int span, int margin, SummedArea receiverArea, SummedArea sceneArea,
+                       Envelope mainEnvelope, double cellWidth, double cellHeight, List<Cell> cells) {
+        long receiverCount = receiverArea.sum(cellI, cellJ, cellI + span, cellJ + span);
+        if(receiverCount == 0) {
+            return;
+        }
+        long sceneObjectCount = sceneArea.sum(cellI - margin, cellJ - margin, cellI + span + margin,
+                cellJ + span + margin);
+        if(span > 1 && (receiverCount > maximumReceivers || sceneObjectCount > maximumSceneObjects)) {
+            int half = span / 2;
+            split(cellI, cellJ, half, margin, receiverArea, sceneArea, mainEnvelope, cellWidth, cellHeight, cells);
+            split(cellI + half, cellJ, half, margin, receiverArea, sceneArea, mainEnvelope, cellWidth, cellHeight, cells);
+            split(cellI, cellJ + half, half, margin, receiverArea, sceneArea, mainEnvelope, cellWidth, cellHeight, cells);
+            split(cellI + half, cellJ + half, half, margin, receiverArea, sceneArea, mainEnvelope, cellWidth,
+                    cellHeight, cells);
+        } else {
+            Envelope envelope = JdbcNoiseMap.getCellEnv(mainEnvelope, cellI, cellJ, cellWidth, cellHeight);
+            envelope.expandToInclude(JdbcNoiseMap.getCellEnv(mainEnvelope, cellI + span - 1, cellJ + span - 1,
+                    cellWidth, cellHeight));
+            cells.add(new Cell(new PointNoiseMap.CellIndex(cellJ, cellI), span, envelope, (int) receiverCount,
+                    sceneObjectCount));
+        }
+    }
+
+    /**
+     * Count the features of a table by the center of their envelope on the fine grid
+     * @param margin Features outside of the grid, but within this number of cells, are counted in the border cells
+     */
+    private static void countFeatures(Connection connection, String tableName, Envelope mainEnvelope, int fineDim,
+                                      int margin, long[] counts) throws SQLException {
+        DBTypes dbType = DBUtils.getDBType(connection);
+        List<String> geometryFields = GeometryTableUtilities.getGeometryColumnNames(connection,
+                TableLocation.parse(tableName, dbType));
+        if(geometryFields.isEmpty()) {
+            throw new SQLException("The table " + tableName + " does not contain a Geometry field");
+        }
+        String geometryField = TableLocation.quoteIdentifier(geometryFields.get(0), dbType);
+        try(PreparedStatement st = connection.prepareStatement("SELECT CELL_I, CELL_J, COUNT(*) FROM (SELECT" +
+                " FLOOR(((ST_XMIN(" + geometryField + ") + ST_XMAX(" + geometryField + ")) / 2 - ?) / ?) CELL_I," +
+                " FLOOR(((ST_YMIN(" + geometryField + ") + ST_YMAX(" + geometryField + ")) / 2 - ?) / ?) CELL_J" +
+                " FROM " + tableName + " WHERE " + geometryField + " IS NOT NULL) C GROUP BY CELL_I, CELL_J")) {
+            st.setDouble(1, mainEnvelope.getMinX());
+            st.setDouble(2, mainEnvelope.getWidth() / fineDim);
+            st.setDouble(3, mainEnvelope.getMinY());
+            st.setDouble(4, mainEnvelope.getHeight() / fineDim);
+            try(ResultSet rs = st.executeQuery()) {
+                while (rs.next()) {
+                    double cellI = rs.getDouble(1);
+                    if(rs.wasNull()) {
+                        // empty geometry
+                        continue;
+                    }
+                    double cellJ = rs.getDouble(2);
+                    // features on the upper bound of the envelope are in the last cell
+                    if(cellI < -margin || cellI > fineDim + margin || cellJ < -margin || cellJ > fineDim + margin) {
+                        continue;
+                    }
+                    int i = (int) Math.max(0, Math.min(fineDim - 1, cellI));
+                    int j = (int) Math.max(0, Math.min(fineDim - 1, cellJ));
+                    counts[j * fineDim + i] += rs.getLong(3);
+                }
+            }
+        }
+    }
+
+    /**
+     * Sum of the counts over any rectangle of cells in constant time
+     */
+    private static final class SummedArea {
+        private final long[] sums;
+        private final int dim;
+
+        SummedArea(long[] counts, int dim) {
+            this.dim = dim;
+            sums = new long[(dim + 1) * (dim + 1)];
+            for(int j = 0; j < dim; j++) {
+                long rowSum = 0;
+                for(int i = 0; i < dim; i++) {
+                    rowSum += counts[j * dim + i];
+                    sums[(j + 1) * (dim + 1) + i + 1] = sums[j * (dim + 1) + i + 1] + rowSum;
+                }
+            }
+        }
+
+        /**
+         * @return Sum of the cells [minI, maxI[ x [minJ, maxJ[, clamped to the grid
+         */
+        long sum(int minI, int minJ, int maxI, int maxJ) {
+            minI = Math.max(0, minI);
+            minJ = Math.max(0, minJ);
+            maxI = Math.min(dim, maxI);
+            maxJ = Math.min(dim, maxJ);
+            return sums[maxJ * (dim + 1) + maxI] - sums[minJ * (dim + 1) + maxI] - sums[maxJ * (dim + 1) + minI] +
+                    sums[minJ * (dim + 1) + minI];
+        }
+    }
+
+    /**
+     * Cell of the partition
+     */
+    public static final class Cell {
+        /** Index of the lower left cell of the deepest level grid covered by this cell */
+        public final PointNoiseMap.CellIndex cellIndex;
+        /** Side length of this cell expressed in cells of the deepest level grid */
+        public final int span;
+        public final Envelope envelope;
+        public final int receiverCount;
+        /** Number of buildings and sources in the envelope expanded by the maximum propagation distance */
+        public final long sceneObjectCount;
+
+        Cell(PointNoiseMap.CellIndex cellIndex, int span, Envelope envelope, int receiverCount,
+             long sceneObjectCount) {
+            this.cellIndex = cellIndex;
+            this.span = span;
+            this.envelope = envelope;
+            this.receiverCount = receiverCount;
+            this.sceneObjectCount = sceneObjectCount;
+        }
+    }
+}
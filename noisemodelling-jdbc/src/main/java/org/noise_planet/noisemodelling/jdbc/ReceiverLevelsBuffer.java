@@ -0,0 +1,189 @@
+/**
+ * NoiseModelling is an open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by the DECIDE team from the Lab-STICC (CNRS) and by the Mixt Research Unit in Environmental Acoustics (Université Gustave Eiffel).
+ * <http://noise-planet.org/noisemodelling.html>
+ *
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ */
+package org.noise_planet.noisemodelling.jdbc;
+
+import org.noise_planet.noisemodelling.propagation.ComputeRaysOutAttenuation;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * Thread safe FIFO of receiver levels. Rows are stored in blocks of primitive arrays (receiver identifier, source
+ * identifier and spectrum) instead of one object per row. Consumed blocks are recycled by the producers.
+ */
+public class ReceiverLevelsBuffer {
+    public static final int DEFAULT_BLOCK_SIZE = 1024;
+    // Number of consumed blocks kept for reuse
+    private static final int MAXIMUM_FREE_BLOCKS = 4;
+    private final int blockSize;
+    private int bandCount = -1;
+    private final ArrayDeque<Block> blocks = new ArrayDeque<>();
+    private final ArrayDeque<Block> freeBlocks = new ArrayDeque<>();
+    private int size = 0;
+
+    public ReceiverLevelsBuffer() {
+        this(DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * @param blockSize Number of rows of a block
+     */
+    public ReceiverLevelsBuffer(int blockSize) {
+        if(blockSize < 1) {
+            throw new IllegalArgumentException("Block size must be strictly positive");
+        }
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * Append a row at the end of the buffer
+     * @param receiverId Receiver identifier
+     * @param sourceId Source identifier or -1 if the sources are merged
+     * @param levels Levels for each frequency band, the values are copied
+     */
+    public synchronized void add(long receiverId, long sourceId, double[] levels) {
+        if(bandCount < 0) {
+            bandCount = levels.length;
+        } else if(bandCount != levels.length) {
+            throw new IllegalArgumentException("Expected " + bandCount + " frequency bands, got " + levels.length);
+        }
+        Block block = blocks.peekLast();
+        if(block == null || block.end == blockSize) {
+            block = freeBlocks.pollFirst();
+            if(block == null) {
+                block = new Block(blockSize, bandCount);
+            }
+            blocks.addLast(block);
+        }
+        block.receiverIds[block.end] = receiverId;
+        block.sourceIds[block.end] = sourceId;
+        System.arraycopy(levels, 0, block.levels, block.end * bandCount, bandCount);
+        block.end++;
+        size++;
+    }
+
+    /**
+     * Remove the oldest block of rows. The block must be given back with {@link #recycle(Block)} when consumed.
+     * @return The oldest block, filled or not, or null if the buffer is empty
+     */
+    public synchronized Block poll() {
+        Block block = blocks.pollFirst();
+        if(block != null) {
+            size -= block.size();
+        }
+        return block;
+    }
+
+    /**
+     * Give back a consumed block in order to reuse its arrays
+     * @param block Block returned by {@link #poll()}
+     */
+    public synchronized void recycle(Block block) {
+        if(freeBlocks.size() < MAXIMUM_FREE_BLOCKS && block.levels.length == blockSize * bandCount) {
+            block.start = 0;
+            block.end = 0;
+            freeBlocks.addLast(block);
+        }
+    }
+
+    /**
+     * Remove the oldest row
+     * @return The oldest row
+     * @throws NoSuchElementException If the buffer is empty
+     */
+    public synchronized ComputeRaysOutAttenuation.VerticeSL pop() {
+        Block block = blocks.peekFirst();
+        if(block == null) {
+            throw new NoSuchElementException();
+        }
+        ComputeRaysOutAttenuation.VerticeSL row = new ComputeRaysOutAttenuation.VerticeSL(block.getReceiverId(0),
+                block.getSourceId(0), block.getLevels(0));
+        block.start++;
+        size--;
+        if(block.size() == 0) {
+            recycle(blocks.pollFirst());
+        }
+        return row;
+    }
+
+    /**
+     * @return Number of rows in the buffer
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Rows of receiver levels stored in primitive arrays
+     */
+    public static final class Block {
+        private final long[] receiverIds;
+        private final long[] sourceIds;
+        private final double[] levels;
+        private final int bandCount;
+        private int start = 0;
+        private int end = 0;
+
+        Block(int blockSize, int bandCount) {
+            this.receiverIds = new long[blockSize];
+            this.sourceIds = new long[blockSize];
+            this.levels = new double[blockSize * bandCount];
+            this.bandCount = bandCount;
+        }
+
+        /**
+         * @return Number of rows
+         */
+        public int size() {
+            return end - start;
+        }
+
+        public int getBandCount() {
+            return bandCount;
+        }
+
+        public long getReceiverId(int row) {
+            return receiverIds[start + row];
+        }
+
+        public long getSourceId(int row) {
+            return sourceIds[start + row];
+        }
+
+        public double getLevel(int row, int band) {
+            return levels[(start + row) * bandCount + band];
+        }
+
+        /**
+         * @param row Row index
+         * @return A copy of the levels of the row
+         */
+        public double[] getLevels(int row) {
+            int offset = (start + row) * bandCount;
+            return Arrays.copyOfRange(levels, offset, offset + bandCount);
+        }
+
+        /**
+         * Copy the levels of the row into the provided array
+         * @param row Row index
+         * @param target Array of length {@link #getBandCount()}
+         */
+        public void copyLevels(int row, double[] target) {
+            System.arraycopy(levels, (start + row) * bandCount, target, 0, bandCount);
+        }
+    }
+}
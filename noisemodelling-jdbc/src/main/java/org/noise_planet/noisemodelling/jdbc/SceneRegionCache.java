@@ -0,0 +1,208 @@
+/**
+ * NoiseModelling is an open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by the DECIDE team from the Lab-STICC (CNRS) and by the Mixt Research Unit in Environmental Acoustics (Université Gustave Eiffel).
+ * <http://noise-planet.org/noisemodelling.html>
+ *
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ */
+package org.noise_planet.noisemodelling.jdbc;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.noise_planet.noisemodelling.pathfinder.ProfileBuilder;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keep in memory the buildings, topographic points and soil areas fetched for a square region of computation cells.
+ * Adjacent cells share most of their expanded envelope, the geometries are then fetched once from the database for
+ * all the cells of the region. Each cell receive its own copy of the geometries, as {@link ProfileBuilder} modify
+ * the provided buildings and coordinates while building its structures.
+ */
+public class SceneRegionCache {
+    private final JdbcNoiseMap noiseMap;
+    private final int regionCellCount;
+    private final int maximumRegions;
+    private final Envelope mainEnvelope;
+    private final int gridDim;
+    private final double maximumPropagationDistance;
+    // Access ordered in order to remove the least recently used region
+    private final Map<Long, Region> regions = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * @param noiseMap Noise map that provides the table names and the fetch methods
+     * @param regionCellCount Side length of a region expressed in cells
+     * @param maximumRegions Maximum number of regions kept in memory
+     */
+    public SceneRegionCache(JdbcNoiseMap noiseMap, int regionCellCount, int maximumRegions) {
+        if(regionCellCount < 1 || maximumRegions < 1) {
+            throw new IllegalArgumentException("Region cell count and maximum regions must be strictly positive");
+        }
+        this.noiseMap = noiseMap;
+        this.regionCellCount = regionCellCount;
+        this.maximumRegions = maximumRegions;
+        this.mainEnvelope = new Envelope(noiseMap.getMainEnvelope());
+        this.gridDim = noiseMap.getGridDim();
+        this.maximumPropagationDistance = noiseMap.getMaximumPropagationDistance();
+    }
+
+    /**
+     * @param regionCellCount Side length of a region expressed in cells
+     * @param maximumRegions Maximum number of regions kept in memory
+     * @return True if this cache has been built with the current computation area of the noise map
+     */
+    boolean isCompatible(int regionCellCount, int maximumRegions) {
+        return this.regionCellCount == regionCellCount && this.maximumRegions == maximumRegions &&
+                gridDim == noiseMap.getGridDim() && mainEnvelope.equals(noiseMap.getMainEnvelope()) &&
+                Double.compare(maximumPropagationDistance, noiseMap.getMaximumPropagationDistance()) == 0;
+    }
+
+    /**
+     * @return Number of regions currently kept in memory
+     */
+    public synchronized int getRegionCount() {
+        return regions.size();
+    }
+
+    /**
+     * Fetch the region of the cell if it is not already in memory
+     * @param connection Active connection
+     * @param cellI Cell I index
+     * @param cellJ Cell J index
+     * @return Region that contains the scene features of the expanded cell envelope
+     * @throws SQLException
+     */
+    synchronized Region getRegion(Connection connection, int cellI, int cellJ) throws SQLException {
+        int regionI = cellI / regionCellCount;
+        int regionJ = cellJ / regionCellCount;
+        long key = ((long) regionI << 32) | regionJ;
+        Region region = regions.get(key);
+        if(region == null) {
+            Envelope regionEnvelope = getRegionEnvelope(regionI, regionJ);
+            region = new Region(noiseMap.fetchBuildingRows(connection, regionEnvelope),
+                    noiseMap.fetchDemPoints(connection, regionEnvelope),
+                    noiseMap.fetchSoilAreaParts(connection, regionEnvelope));
+            regions.put(key, region);
+            Iterator<Long> it = regions.keySet().iterator();
+            while(regions.size() > maximumRegions && it.hasNext()) {
+                it.next();
+                it.remove();
+            }
+        }
+        return region;
+    }
+
+    private Envelope getRegionEnvelope(int regionI, int regionJ) {
+        double cellWidth = mainEnvelope.getWidth() / gridDim;
+        double cellHeight = mainEnvelope.getHeight() / gridDim;
+        Envelope regionEnvelope = JdbcNoiseMap.getCellEnv(mainEnvelope, regionI * regionCellCount,
+                regionJ * regionCellCount, cellWidth, cellHeight);
+        regionEnvelope.expandToInclude(JdbcNoiseMap.getCellEnv(mainEnvelope,
+                Math.min(gridDim, (regionI + 1) * regionCellCount) - 1,
+                Math.min(gridDim, (regionJ + 1) * regionCellCount) - 1, cellWidth, cellHeight));
+        regionEnvelope.expandBy(maximumPropagationDistance);
+        return regionEnvelope;
+    }
+
+    /**
+     * @param cellI Cell I index
+     * @param cellJ Cell J index
+     * @param fetchEnvelope Expanded envelope of the cell
+     * @return True if the region of the cell contains the expanded envelope. False for cells larger than a grid
+     * cell, see {@link PointNoiseMap#searchAdaptiveCells(java.sql.Connection, QuadTreeCellPartitioner)}
+     */
+    public boolean containsCell(int cellI, int cellJ, Envelope fetchEnvelope) {
+        return getRegionEnvelope(cellI / regionCellCount, cellJ / regionCellCount).contains(fetchEnvelope);
+    }
+
+    /**
+     * Feed the profile builder with the buildings, topographic points and soil areas of the cell
+     * @param connection Active connection
+     * @param cellI Cell I index
+     * @param cellJ Cell J index
+     * @param fetchEnvelope Expanded envelope of the cell
+     * @param builder Profile builder of the cell
+     * @throws SQLException
+     */
+    public void feedCell(Connection connection, int cellI, int cellJ, Envelope fetchEnvelope,
+                         ProfileBuilder builder) throws SQLException {
+        Region region = getRegion(connection, cellI, cellJ);
+        List<ProfileBuilder.Building> buildings = new ArrayList<>();
+        noiseMap.addCellBuildings(region.buildings, fetchEnvelope, buildings);
+        for(ProfileBuilder.Building building : buildings) {
+            builder.addBuilding(building);
+        }
+        noiseMap.addCellDem(region.demPoints, fetchEnvelope, builder);
+        noiseMap.addCellSoilAreas(region.soilAreaParts, fetchEnvelope, builder);
+    }
+
+    /**
+     * Scene features of a region. Lists are read only once built.
+     */
+    static final class Region {
+        final List<BuildingRow> buildings;
+        final List<Coordinate> demPoints;
+        final List<SoilAreaPart> soilAreaParts;
+
+        Region(List<BuildingRow> buildings, List<Coordinate> demPoints, List<SoilAreaPart> soilAreaParts) {
+            this.buildings = buildings;
+            this.demPoints = demPoints;
+            this.soilAreaParts = soilAreaParts;
+        }
+    }
+
+    /**
+     * Building as stored in the database, before the intersection with the cell envelope
+     */
+    static final class BuildingRow {
+        final Geometry geometry;
+        final Envelope envelope;
+        final double height;
+        /** Wall absorption or NaN if the table does not provide it */
+        final double alpha;
+        final int pk;
+
+        BuildingRow(Geometry geometry, double height, double alpha, int pk) {
+            this.geometry = geometry;
+            this.envelope = geometry.getEnvelopeInternal();
+            this.height = height;
+            this.alpha = alpha;
+            this.pk = pk;
+        }
+    }
+
+    /**
+     * Part of a soil area, split by a square of the ground surface grid
+     */
+    static final class SoilAreaPart {
+        final Geometry geometry;
+        final double g;
+        /** Grid column of the square */
+        final long squareX;
+        /** Grid row of the square */
+        final long squareY;
+        /** Lower left corner of the square */
+        final double squareMinX;
+        final double squareMinY;
+
+        SoilAreaPart(Geometry geometry, double g, long squareX, long squareY, double squareMinX, double squareMinY) {
+            this.geometry = geometry;
+            this.g = g;
+            this.squareX = squareX;
+            this.squareY = squareY;
+            this.squareMinX = squareMinX;
+            this.squareMinY = squareMinY;
+        }
+    }
+}
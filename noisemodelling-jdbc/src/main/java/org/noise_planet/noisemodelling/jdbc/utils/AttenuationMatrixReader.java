@@ -0,0 +1,196 @@
+/**
+ * NoiseModelling is an open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by the DECIDE team from the Lab-STICC (CNRS) and by the Mixt Research Unit in Environmental Acoustics (Université Gustave Eiffel).
+ * <http://noise-planet.org/noisemodelling.html>
+ *
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ */
+package org.noise_planet.noisemodelling.jdbc.utils;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Read a file written by {@link AttenuationMatrixWriter}. Receivers are read one after the other with
+ * {@link #next()} or fetched by identifier with {@link #read(long)}.
+ */
+public class AttenuationMatrixReader implements Closeable {
+    private final File file;
+    private final DataInputStream in;
+    private final int periodCount;
+    private final List<Integer> frequencies;
+    private final double quantisationStep;
+    private boolean finished = false;
+    private RandomAccessFile randomAccessFile;
+    private Map<Long, Long> receiverOffsets;
+
+    /**
+     * @param file Attenuation matrix file
+     * @throws IOException Error while reading the header or the file is not an attenuation matrix
+     */
+    public AttenuationMatrixReader(File file) throws IOException {
+        this.file = file;
+        in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 65536));
+        if(in.readInt() != AttenuationMatrixWriter.MAGIC) {
+            in.close();
+            throw new IOException("Not an attenuation matrix file");
+        }
+        int version = in.readInt();
+        if(version != AttenuationMatrixWriter.VERSION) {
+            in.close();
+            throw new IOException("Unsupported attenuation matrix file version " + version);
+        }
+        periodCount = in.readInt();
+        int bandCount = in.readInt();
+        List<Integer> frequencyList = new ArrayList<>(bandCount);
+        for(int idFreq = 0; idFreq < bandCount; idFreq++) {
+            frequencyList.add(in.readInt());
+        }
+        frequencies = Collections.unmodifiableList(frequencyList);
+        quantisationStep = in.readDouble();
+    }
+
+    /**
+     * @return Number of attenuation values of each frequency band
+     */
+    public int getPeriodCount() {
+        return periodCount;
+    }
+
+    /**
+     * @return Frequency bands (Hz)
+     */
+    public List<Integer> getFrequencies() {
+        return frequencies;
+    }
+
+    /**
+     * @return The next receiver or null if there is no more receivers
+     * @throws IOException Error while reading
+     */
+    public ReceiverAttenuation next() throws IOException {
+        if(finished) {
+            return null;
+        }
+        ReceiverAttenuation receiver = readReceiver(in);
+        if(receiver == null) {
+            finished = true;
+        }
+        return receiver;
+    }
+
+    /**
+     * @param receiverId Receiver identifier
+     * @return Attenuation of the receiver or null if the receiver is not in the file
+     * @throws IOException Error while reading
+     */
+    public synchronized ReceiverAttenuation read(long receiverId) throws IOException {
+        if(randomAccessFile == null) {
+            randomAccessFile = new RandomAccessFile(file, "r");
+            randomAccessFile.seek(randomAccessFile.length() - Long.BYTES);
+            randomAccessFile.seek(randomAccessFile.readLong());
+            int receiverCount = randomAccessFile.readInt();
+            byte[] index = new byte[receiverCount * 2 * Long.BYTES];
+            randomAccessFile.readFully(index);
+            LongBuffer indexBuffer = ByteBuffer.wrap(index).asLongBuffer();
+            receiverOffsets = new HashMap<>(receiverCount * 2);
+            for(int idReceiver = 0; idReceiver < receiverCount; idReceiver++) {
+                long id = indexBuffer.get();
+                receiverOffsets.put(id, indexBuffer.get());
+            }
+        }
+        Long offset = receiverOffsets.get(receiverId);
+        if(offset == null) {
+            return null;
+        }
+        randomAccessFile.seek(offset);
+        return readReceiver(randomAccessFile);
+    }
+
+    private ReceiverAttenuation readReceiver(DataInput input) throws IOException {
+        long receiverId = input.readLong();
+        int sourceCount = input.readInt();
+        if(sourceCount < 0) {
+            return null;
+        }
+        long[] sourceIds = new long[sourceCount];
+        for(int idSource = 0; idSource < sourceCount; idSource++) {
+            sourceIds[idSource] = input.readLong();
+        }
+        short[] attenuations = new short[sourceCount * periodCount * frequencies.size()];
+        for(int idValue = 0; idValue < attenuations.length; idValue++) {
+            attenuations[idValue] = input.readShort();
+        }
+        return new ReceiverAttenuation(receiverId, sourceIds, attenuations, periodCount, frequencies.size(),
+                quantisationStep);
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+        synchronized (this) {
+            if (randomAccessFile != null) {
+                randomAccessFile.close();
+            }
+        }
+    }
+
+    /**
+     * Attenuation between a receiver and its sources
+     */
+    public static final class ReceiverAttenuation {
+        public final long receiverId;
+        public final long[] sourceIds;
+        /** Quantised attenuation ordered by source, period then frequency band */
+        private final short[] attenuations;
+        private final int periodCount;
+        private final int bandCount;
+        private final double quantisationStep;
+
+        ReceiverAttenuation(long receiverId, long[] sourceIds, short[] attenuations, int periodCount, int bandCount,
+                            double quantisationStep) {
+            this.receiverId = receiverId;
+            this.sourceIds = sourceIds;
+            this.attenuations = attenuations;
+            this.periodCount = periodCount;
+            this.bandCount = bandCount;
+            this.quantisationStep = quantisationStep;
+        }
+
+        /**
+         * @return Number of sources
+         */
+        public int getSourceCount() {
+            return sourceIds.length;
+        }
+
+        /**
+         * @param source Source index
+         * @param period Period index
+         * @param band Frequency band index
+         * @return Attenuation (dB), negative infinity if the source does not contribute to the receiver
+         */
+        public double getAttenuation(int source, int period, int band) {
+            short value = attenuations[(source * periodCount + period) * bandCount + band];
+            return value == AttenuationMatrixWriter.NO_ATTENUATION ? Double.NEGATIVE_INFINITY :
+                    value * quantisationStep;
+        }
+    }
+}
@@ -0,0 +1,176 @@
+/**
+ * NoiseModelling is an open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by the DECIDE team from the Lab-STICC (CNRS) and by the Mixt Research Unit in Environmental Acoustics (Université Gustave Eiffel).
+ * <http://noise-planet.org/noisemodelling.html>
+ *
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ */
+package org.noise_planet.noisemodelling.jdbc.utils;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Write the attenuation between the sources and the receivers in a sparse binary file. The emission of the sources
+ * is not included, so the levels of any emission scenario can be computed later with the same geometry, see
+ * {@link AttenuationMatrixReader}.
+ *
+ * Attenuation values (dB) are quantised in signed 16 bits integers with a step of {@link #QUANTISATION_STEP} dB,
+ * {@link #NO_ATTENUATION} is stored if the source does not contribute to the receiver in a period.
+ *
+ * A file holds the receivers of a single computation run written by a single process: the file is truncated when
+ * the writer is created and the receiver index is only written by {@link #close()}, so a file left by an
+ * interrupted run can not be read nor appended to. Resumed or distributed computations must not share a file.
+ *
+ * File layout (big endian):
+ * <pre>
+ * header: MAGIC int, VERSION int, period count int, band count int, frequencies int[band count],
+ *         quantisation step double
+ * receiver: receiver id long, source count int (-1 for the end of the receivers),
+ *           source id long[source count],
+ *           attenuation short[source count * period count * band count] ordered by source, period then band
+ * index: receiver count int, (receiver id long, receiver offset long)[receiver count]
+ * footer: index offset long
+ * </pre>
+ */
+public class AttenuationMatrixWriter implements Closeable {
+    public static final int MAGIC = 0x4E4D414D; // NMAM
+    public static final int VERSION = 1;
+    public static final double QUANTISATION_STEP = 0.01;
+    /** Stored value of a source that does not contribute to the receiver */
+    public static final short NO_ATTENUATION = Short.MIN_VALUE;
+
+    private final DataOutputStream out;
+    private final int periodCount;
+    private final int bandCount;
+    // Position in the file of the next receiver
+    private long offset;
+    private long[] receiverIds = new long[1024];
+    private long[] receiverOffsets = new long[1024];
+    private int receiverCount = 0;
+    private boolean closed = false;
+
+    /**
+     * @param file Output file, replaced if it exists
+     * @param frequencies Frequency bands (Hz)
+     * @param periodCount Number of attenuation values of each frequency band (time periods with different
+     *                    meteorological conditions)
+     * @throws IOException Error while writing the header
+     */
+    public AttenuationMatrixWriter(File file, List<Integer> frequencies, int periodCount) throws IOException {
+        this(new FileOutputStream(file), frequencies, periodCount);
+    }
+
+    /**
+     * @param outputStream Output stream, closed with this writer
+     * @param frequencies Frequency bands (Hz)
+     * @param periodCount Number of attenuation values of each frequency band
+     * @throws IOException Error while writing the header
+     */
+    public AttenuationMatrixWriter(OutputStream outputStream, List<Integer> frequencies, int periodCount)
+            throws IOException {
+        this.out = new DataOutputStream(new BufferedOutputStream(outputStream, 65536));
+        this.periodCount = periodCount;
+        this.bandCount = frequencies.size();
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(periodCount);
+        out.writeInt(bandCount);
+        for(int frequency : frequencies) {
+            out.writeInt(frequency);
+        }
+        out.writeDouble(QUANTISATION_STEP);
+        offset = out.size();
+    }
+
+    public int getPeriodCount() {
+        return periodCount;
+    }
+
+    public int getBandCount() {
+        return bandCount;
+    }
+
+    /**
+     * @param attenuation Attenuation (dB)
+     * @return Quantised attenuation
+     */
+    public static short quantise(double attenuation) {
+        if(Double.isNaN(attenuation) || attenuation == Double.NEGATIVE_INFINITY) {
+            return NO_ATTENUATION;
+        }
+        return (short) Math.max(NO_ATTENUATION + 1, Math.min(Short.MAX_VALUE,
+                Math.round(attenuation / QUANTISATION_STEP)));
+    }
+
+    /**
+     * Append the attenuation of all the sources of a receiver. This method can be called by several threads.
+     * @param receiverId Receiver identifier
+     * @param sourceCount Number of sources
+     * @param sourceIds Source identifiers
+     * @param attenuations Attenuation (dB) ordered by source, period then frequency band
+     * @throws IOException Error while writing
+     */
+    public synchronized void addReceiver(long receiverId, int sourceCount, long[] sourceIds, double[] attenuations)
+            throws IOException {
+        if(closed) {
+            throw new IOException("Attenuation matrix writer is closed");
+        }
+        int valueCount = sourceCount * periodCount * bandCount;
+        if(attenuations.length < valueCount) {
+            throw new IllegalArgumentException("Expected " + valueCount + " attenuation values, got " +
+                    attenuations.length);
+        }
+        if(receiverCount == receiverIds.length) {
+            receiverIds = Arrays.copyOf(receiverIds, receiverCount * 2);
+            receiverOffsets = Arrays.copyOf(receiverOffsets, receiverCount * 2);
+        }
+        receiverIds[receiverCount] = receiverId;
+        receiverOffsets[receiverCount++] = offset;
+        out.writeLong(receiverId);
+        out.writeInt(sourceCount);
+        for(int idSource = 0; idSource < sourceCount; idSource++) {
+            out.writeLong(sourceIds[idSource]);
+        }
+        for(int idValue = 0; idValue < valueCount; idValue++) {
+            out.writeShort(quantise(attenuations[idValue]));
+        }
+        offset += Long.BYTES + Integer.BYTES + (long) sourceCount * Long.BYTES + (long) valueCount * Short.BYTES;
+    }
+
+    /**
+     * @return Number of written receivers
+     */
+    public synchronized int getReceiverCount() {
+        return receiverCount;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if(closed) {
+            return;
+        }
+        closed = true;
+        out.writeLong(-1);
+        out.writeInt(-1);
+        long indexOffset = offset + Long.BYTES + Integer.BYTES;
+        out.writeInt(receiverCount);
+        for(int idReceiver = 0; idReceiver < receiverCount; idReceiver++) {
+            out.writeLong(receiverIds[idReceiver]);
+            out.writeLong(receiverOffsets[idReceiver]);
+        }
+        out.writeLong(indexOffset);
+        out.close();
+    }
+}
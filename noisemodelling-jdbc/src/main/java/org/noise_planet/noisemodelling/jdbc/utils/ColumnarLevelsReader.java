@@ -0,0 +1,159 @@
+/**
+ * NoiseModelling is an open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by the DECIDE team from the Lab-STICC (CNRS) and by the Mixt Research Unit in Environmental Acoustics (Université Gustave Eiffel).
+ * <http://noise-planet.org/noisemodelling.html>
+ *
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ */
+package org.noise_planet.noisemodelling.jdbc.utils;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Read a file written by {@link ColumnarLevelsWriter} chunk by chunk.
+ */
+public class ColumnarLevelsReader implements Closeable {
+    private final DataInputStream in;
+    private final boolean sourceId;
+    private final boolean laeqOnly;
+    private final List<Integer> frequencies;
+    private boolean finished = false;
+
+    public ColumnarLevelsReader(File file) throws IOException {
+        this(new FileInputStream(file));
+    }
+
+    /**
+     * @param inputStream Input stream, closed with this reader
+     * @throws IOException Error while reading the header or the stream is not a levels file
+     */
+    public ColumnarLevelsReader(InputStream inputStream) throws IOException {
+        in = new DataInputStream(new BufferedInputStream(inputStream, 65536));
+        if(in.readInt() != ColumnarLevelsWriter.MAGIC) {
+            in.close();
+            throw new IOException("Not a columnar levels file");
+        }
+        int version = in.readInt();
+        if(version != ColumnarLevelsWriter.VERSION) {
+            in.close();
+            throw new IOException("Unsupported columnar levels file version " + version);
+        }
+        int flags = in.readInt();
+        sourceId = (flags & ColumnarLevelsWriter.FLAG_SOURCE_ID) != 0;
+        laeqOnly = (flags & ColumnarLevelsWriter.FLAG_LAEQ_ONLY) != 0;
+        int bandCount = in.readInt();
+        List<Integer> frequencyList = new ArrayList<>(bandCount);
+        for(int idFreq = 0; idFreq < bandCount; idFreq++) {
+            frequencyList.add(in.readInt());
+        }
+        frequencies = Collections.unmodifiableList(frequencyList);
+    }
+
+    /**
+     * @return True if the rows contain the source identifier
+     */
+    public boolean hasSourceId() {
+        return sourceId;
+    }
+
+    /**
+     * @return True if the rows contain only the A weighted global level
+     */
+    public boolean isLaeqOnly() {
+        return laeqOnly;
+    }
+
+    /**
+     * @return Frequency bands (Hz)
+     */
+    public List<Integer> getFrequencies() {
+        return frequencies;
+    }
+
+    /**
+     * @return The next chunk of rows or null if there is no more rows
+     * @throws IOException Error while reading
+     */
+    public Chunk next() throws IOException {
+        if(finished) {
+            return null;
+        }
+        int rowCount = in.readInt();
+        if(rowCount == 0) {
+            finished = true;
+            return null;
+        }
+        byte[] buffer = new byte[rowCount * Long.BYTES];
+        long[] receiverIds = new long[rowCount];
+        in.readFully(buffer, 0, rowCount * Long.BYTES);
+        ByteBuffer.wrap(buffer).asLongBuffer().get(receiverIds);
+        long[] sourceIds = null;
+        if(sourceId) {
+            sourceIds = new long[rowCount];
+            in.readFully(buffer, 0, rowCount * Long.BYTES);
+            ByteBuffer.wrap(buffer).asLongBuffer().get(sourceIds);
+        }
+        byte[] periods = new byte[rowCount];
+        in.readFully(periods);
+        float[][] levels = new float[laeqOnly ? 0 : frequencies.size()][];
+        for(int idFreq = 0; idFreq < levels.length; idFreq++) {
+            levels[idFreq] = readColumn(buffer, rowCount);
+        }
+        float[] laeqs = readColumn(buffer, rowCount);
+        float[] leqs = laeqOnly ? null : readColumn(buffer, rowCount);
+        return new Chunk(rowCount, receiverIds, sourceIds, periods, levels, laeqs, leqs);
+    }
+
+    private float[] readColumn(byte[] buffer, int rowCount) throws IOException {
+        float[] column = new float[rowCount];
+        in.readFully(buffer, 0, rowCount * Float.BYTES);
+        ByteBuffer.wrap(buffer).asFloatBuffer().get(column);
+        return column;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /**
+     * Columns of a set of rows
+     */
+    public static final class Chunk {
+        public final int rowCount;
+        public final long[] receiverIds;
+        /** Null if the file does not contain source identifiers */
+        public final long[] sourceIds;
+        public final byte[] periods;
+        /** Levels [band][row], empty if only laeq is available */
+        public final float[][] levels;
+        public final float[] laeqs;
+        /** Null if only laeq is available */
+        public final float[] leqs;
+
+        Chunk(int rowCount, long[] receiverIds, long[] sourceIds, byte[] periods, float[][] levels, float[] laeqs,
+              float[] leqs) {
+            this.rowCount = rowCount;
+            this.receiverIds = receiverIds;
+            this.sourceIds = sourceIds;
+            this.periods = periods;
+            this.levels = levels;
+            this.laeqs = laeqs;
+            this.leqs = leqs;
+        }
+    }
+}
@@ -0,0 +1,175 @@
+/**
+ * NoiseModelling is an open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by the DECIDE team from the Lab-STICC (CNRS) and by the Mixt Research Unit in Environmental Acoustics (Université Gustave Eiffel).
+ * <http://noise-planet.org/noisemodelling.html>
+ *
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ */
+package org.noise_planet.noisemodelling.jdbc.utils;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Write receiver levels in a binary columnar file. Rows are written by chunks, each chunk contains the columns one
+ * after the other, so the memory usage does not depend on the number of rows.
+ *
+ * File layout (big endian):
+ * <pre>
+ * header: MAGIC int, VERSION int, flags int, band count int, frequencies int[band count]
+ * chunk: row count int (0 for the end of the file),
+ *        receiver id long[row count], source id long[row count] (if FLAG_SOURCE_ID),
+ *        period byte[row count],
+ *        for each band level float[row count] (if not FLAG_LAEQ_ONLY),
+ *        laeq float[row count], leq float[row count] (if not FLAG_LAEQ_ONLY)
+ * </pre>
+ */
+public class ColumnarLevelsWriter implements Closeable {
+    public static final int MAGIC = 0x4E4D4C56; // NMLV
+    public static final int VERSION = 1;
+    public static final int FLAG_SOURCE_ID = 1;
+    public static final int FLAG_LAEQ_ONLY = 2;
+    /** Period value of Lden rows, other periods are the ordinal of LDENConfig.TIME_PERIOD */
+    public static final byte PERIOD_DEN = 3;
+    /** Period value of the rows of the first emission channel, followed by the other channels */
+    public static final byte PERIOD_FIRST_CHANNEL = 4;
+    public static final int DEFAULT_CHUNK_SIZE = 65536;
+
+    private final DataOutputStream out;
+    private final boolean sourceId;
+    private final boolean laeqOnly;
+    private final int bandCount;
+    private final long[] receiverIds;
+    private final long[] sourceIds;
+    private final byte[] periods;
+    private final float[][] levels;
+    private final float[] laeqs;
+    private final float[] leqs;
+    // Big endian conversion buffer of a column
+    private final ByteBuffer columnBuffer;
+    private int rowCount = 0;
+
+    /**
+     * @param file Output file
+     * @param frequencies Frequency bands (Hz)
+     * @param sourceId True if the rows contain the source identifier
+     * @param laeqOnly True if only the A weighted global level is written
+     * @throws IOException Error while writing the header
+     */
+    public ColumnarLevelsWriter(File file, List<Integer> frequencies, boolean sourceId, boolean laeqOnly) throws IOException {
+        this(new FileOutputStream(file), frequencies, sourceId, laeqOnly, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param outputStream Output stream, closed with this writer
+     * @param frequencies Frequency bands (Hz)
+     * @param sourceId True if the rows contain the source identifier
+     * @param laeqOnly True if only the A weighted global level is written
+     * @param chunkSize Number of rows of a chunk
+     * @throws IOException Error while writing the header
+     */
+    public ColumnarLevelsWriter(OutputStream outputStream, List<Integer> frequencies, boolean sourceId,
+                                boolean laeqOnly, int chunkSize) throws IOException {
+        this.out = new DataOutputStream(new BufferedOutputStream(outputStream, 65536));
+        this.sourceId = sourceId;
+        this.laeqOnly = laeqOnly;
+        this.bandCount = frequencies.size();
+        receiverIds = new long[chunkSize];
+        sourceIds = sourceId ? new long[chunkSize] : null;
+        periods = new byte[chunkSize];
+        levels = new float[laeqOnly ? 0 : bandCount][chunkSize];
+        laeqs = new float[chunkSize];
+        leqs = laeqOnly ? null : new float[chunkSize];
+        columnBuffer = ByteBuffer.allocate(chunkSize * Long.BYTES);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt((sourceId ? FLAG_SOURCE_ID : 0) | (laeqOnly ? FLAG_LAEQ_ONLY : 0));
+        out.writeInt(bandCount);
+        for(int frequency : frequencies) {
+            out.writeInt(frequency);
+        }
+    }
+
+    /**
+     * @param period Time period
+     * @param receiverId Receiver identifier
+     * @param sourceId Source identifier, ignored if the file does not contain the source identifier
+     * @param rowLevels Level of each frequency band (dB)
+     * @param laeq A weighted global level (dB)
+     * @param leq Global level (dB)
+     * @throws IOException Error while writing a chunk
+     */
+    public void addRow(byte period, long receiverId, long sourceId, double[] rowLevels, double laeq, double leq) throws IOException {
+        receiverIds[rowCount] = receiverId;
+        if(this.sourceId) {
+            sourceIds[rowCount] = sourceId;
+        }
+        periods[rowCount] = period;
+        if(!laeqOnly) {
+            for (int idFreq = 0; idFreq < bandCount; idFreq++) {
+                levels[idFreq][rowCount] = (float) rowLevels[idFreq];
+            }
+            leqs[rowCount] = (float) leq;
+        }
+        laeqs[rowCount] = (float) laeq;
+        rowCount++;
+        if(rowCount == receiverIds.length) {
+            writeChunk();
+        }
+    }
+
+    private void writeChunk() throws IOException {
+        if(rowCount == 0) {
+            return;
+        }
+        out.writeInt(rowCount);
+        columnBuffer.clear();
+        columnBuffer.asLongBuffer().put(receiverIds, 0, rowCount);
+        out.write(columnBuffer.array(), 0, rowCount * Long.BYTES);
+        if(sourceId) {
+            columnBuffer.asLongBuffer().put(sourceIds, 0, rowCount);
+            out.write(columnBuffer.array(), 0, rowCount * Long.BYTES);
+        }
+        out.write(periods, 0, rowCount);
+        for(float[] bandLevels : levels) {
+            writeColumn(bandLevels);
+        }
+        writeColumn(laeqs);
+        if(!laeqOnly) {
+            writeColumn(leqs);
+        }
+        rowCount = 0;
+    }
+
+    private void writeColumn(float[] column) throws IOException {
+        columnBuffer.asFloatBuffer().put(column, 0, rowCount);
+        out.write(columnBuffer.array(), 0, rowCount * Float.BYTES);
+    }
+
+    /**
+     * Write the pending rows in a chunk
+     * @throws IOException Error while writing
+     */
+    public void flush() throws IOException {
+        writeChunk();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        writeChunk();
+        out.writeInt(0);
+        out.close();
+    }
+}
@@ -0,0 +1,51 @@
+/**
+ * NoiseModelling is an open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by the DECIDE team from the Lab-STICC (CNRS) and by the Mixt Research Unit in Environmental Acoustics (Université Gustave Eiffel).
+ * <http://noise-planet.org/noisemodelling.html>
+ *
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ */
+package org.noise_planet.noisemodelling.jdbc.utils;
+
+import org.postgresql.PGConnection;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Bulk insertion using the PostgreSQL COPY protocol. The PostgreSQL driver is an optional dependency, this class
+ * must be used only if {@link #isSupported(Connection)} returns true.
+ */
+public final class PostgreSQLCopy {
+    private PostgreSQLCopy() {}
+
+    /**
+     * @param connection Active connection
+     * @return True if the PostgreSQL driver is available and the connection is a PostgreSQL connection
+     */
+    public static boolean isSupported(Connection connection) {
+        try {
+            return connection.isWrapperFor(PGConnection.class);
+        } catch (SQLException | LinkageError ex) {
+            return false;
+        }
+    }
+
+    /**
+     * @param connection PostgreSQL connection
+     * @param sql COPY ... FROM STDIN query
+     * @param rows Rows in the COPY text format
+     * @return Number of inserted rows
+     * @throws SQLException Got an error from the database
+     * @throws IOException Got an error while reading the rows
+     */
+    public static long copyIn(Connection connection, String sql, Reader rows) throws SQLException, IOException {
+        return connection.unwrap(PGConnection.class).getCopyAPI().copyIn(sql, rows);
+    }
+}
@@ -8,6 +8,7 @@ import org.locationtech.jts.math.Vector3D;
 import org.noise_planet.noisemodelling.pathfinder.*;
 import org.noise_planet.noisemodelling.pathfinder.utils.AlphaUtils;
 import org.noise_planet.noisemodelling.pathfinder.utils.PowerUtils;
+import org.noise_planet.noisemodelling.propagation.AttenuationCnossosEvaluator;
 import org.noise_planet.noisemodelling.propagation.ComputeRaysOutAttenuation;
 import org.noise_planet.noisemodelling.propagation.EvaluateAttenuationCnossos;
 import org.noise_planet.noisemodelling.propagation.PropagationProcessPathData;
@@ -5768,8 +5769,8 @@ public class EvaluateAttenuationCnossosTest {
         }
 
         @Override
-        public double[] computeAttenuation(PropagationProcessPathData data, long sourceId, double sourceLi, long receiverId, List<PropagationPath> propagationPath) {
-            double[] attenuation = super.computeAttenuation(data, sourceId, sourceLi, receiverId, propagationPath);
+        public double[] computeAttenuation(AttenuationCnossosEvaluator evaluator, long sourceId, double sourceLi, long receiverId, List<PropagationPath> propagationPath) {
+            double[] attenuation = super.computeAttenuation(evaluator, sourceId, sourceLi, receiverId, propagationPath);
             double[] soundLevel = wToDba(multArray(processData.wjSources.get((int)sourceId), dbaToW(attenuation)));
             return soundLevel;
         }
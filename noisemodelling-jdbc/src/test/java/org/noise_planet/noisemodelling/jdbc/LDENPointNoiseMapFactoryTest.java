@@ -9,35 +9,49 @@ import org.h2gis.functions.io.dbf.DBFRead;
 import org.h2gis.functions.io.shp.SHPDriverFunction;
 import org.h2gis.functions.io.shp.SHPRead;
 import org.h2gis.utilities.JDBCUtilities;
+import org.h2gis.utilities.SpatialResultSet;
+import org.h2gis.utilities.TableLocation;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.jts.geom.LineString;
 import org.noise_planet.noisemodelling.emission.RailWayLW;
+import org.noise_planet.noisemodelling.jdbc.utils.AttenuationMatrixReader;
+import org.noise_planet.noisemodelling.jdbc.utils.ColumnarLevelsReader;
+import org.noise_planet.noisemodelling.jdbc.utils.ColumnarLevelsWriter;
 import org.noise_planet.noisemodelling.jdbc.utils.MakeLWTable;
 import org.noise_planet.noisemodelling.pathfinder.IComputeRaysOut;
 import org.noise_planet.noisemodelling.pathfinder.ProfileBuilder;
 import org.noise_planet.noisemodelling.pathfinder.RootProgressVisitor;
 import org.noise_planet.noisemodelling.pathfinder.utils.KMLDocument;
+import org.noise_planet.noisemodelling.pathfinder.utils.PowerUtils;
 import org.noise_planet.noisemodelling.propagation.ComputeRaysOutAttenuation;
 import org.noise_planet.noisemodelling.propagation.PropagationProcessPathData;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.xml.stream.XMLStreamException;
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.Reader;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.*;
+import static org.noise_planet.noisemodelling.pathfinder.utils.PowerUtils.dbaToW;
 import static org.noise_planet.noisemodelling.pathfinder.utils.PowerUtils.sumArray;
 import static org.noise_planet.noisemodelling.pathfinder.utils.PowerUtils.sumDbArray;
+import static org.noise_planet.noisemodelling.pathfinder.utils.PowerUtils.wToDba;
 
 public class LDENPointNoiseMapFactoryTest {
 
@@ -57,6 +71,36 @@ public class LDENPointNoiseMapFactoryTest {
         }
     }
 
+    @Test
+    public void testOutputQueueBackPressure() throws Exception {
+        LDENConfig ldenConfig = new LDENConfig(LDENConfig.INPUT_MODE.INPUT_MODE_LW_DEN);
+        ldenConfig.setOutputMaximumQueue(10);
+        LDENComputeRaysOut.LdenData ldenData = new LDENComputeRaysOut.LdenData();
+        ldenData.queueSize.set(11);
+        Thread producer = new Thread(() -> {
+            if(ldenData.awaitQueueCapacity(ldenConfig)) {
+                ldenData.queueSize.incrementAndGet();
+                ldenData.signalNewElements();
+            }
+        });
+        producer.start();
+        // the producer is parked while the queue is full
+        producer.join(300);
+        assertTrue(producer.isAlive());
+        assertEquals(11, ldenData.queueSize.get());
+        // consume one element and wake up the producer
+        ldenData.queueSize.decrementAndGet();
+        ldenData.signalElementsConsumed();
+        producer.join(5000);
+        assertFalse(producer.isAlive());
+        assertEquals(11, ldenData.queueSize.get());
+        assertTrue(ldenData.awaitNewElements(1, TimeUnit.SECONDS));
+        // aborted computation release the producers
+        ldenData.queueSize.set(20);
+        ldenConfig.aborted = true;
+        assertFalse(ldenData.awaitQueueCapacity(ldenConfig));
+    }
+
     @Test
     public void testNoiseEmission() throws SQLException, IOException {
         SHPRead.importTable(connection, LDENPointNoiseMapFactoryTest.class.getResource("roads_traff.shp").getFile());
@@ -745,6 +789,814 @@ public class LDENPointNoiseMapFactoryTest {
 
     }
 
+    /**
+     * Write the night levels of the same scene with each insertion method
+     * @param ldenConfig Configuration
+     * @param tableName Night table name
+     */
+    private void computeNightLevels(LDENConfig ldenConfig, String tableName) throws SQLException, IOException {
+        computeNightLevels(ldenConfig, "ROADS_TRAFF", tableName);
+    }
+
+    /**
+     * Write the night levels of the sources table
+     * @param ldenConfig Configuration
+     * @param sourcesTable Sources table name
+     * @param tableName Night table name
+     */
+    private void computeNightLevels(LDENConfig ldenConfig, String sourcesTable, String tableName) throws SQLException, IOException {
+        ldenConfig.setlNightTable(tableName);
+        LDENPointNoiseMapFactory factory = new LDENPointNoiseMapFactory(connection, ldenConfig);
+        PointNoiseMap pointNoiseMap = new PointNoiseMap("BUILDINGS", sourcesTable,
+                "RECEIVERS");
+        pointNoiseMap.setComputeRaysOutFactory(factory);
+        pointNoiseMap.setPropagationProcessDataFactory(factory);
+        pointNoiseMap.setMaximumPropagationDistance(100.0);
+        pointNoiseMap.setComputeHorizontalDiffraction(false);
+        pointNoiseMap.setComputeVerticalDiffraction(false);
+        pointNoiseMap.setSoundReflectionOrder(0);
+        Set<Long> receivers = new HashSet<>();
+        try {
+            RootProgressVisitor progressLogger = new RootProgressVisitor(1, true, 1);
+            pointNoiseMap.initialize(connection, new EmptyProgressVisitor());
+            factory.start();
+            pointNoiseMap.setGridDim(4); // force grid size
+            Map<PointNoiseMap.CellIndex, Integer> cells = pointNoiseMap.searchPopulatedCells(connection);
+            ProgressVisitor progressVisitor = progressLogger.subProcess(cells.size());
+            for(PointNoiseMap.CellIndex cellIndex : new TreeSet<>(cells.keySet())) {
+                pointNoiseMap.evaluateCell(connection, cellIndex.getLatitudeIndex(), cellIndex.getLongitudeIndex(), progressVisitor, receivers);
+            }
+        }finally {
+            factory.stop();
+        }
+        connection.commit();
+    }
+
+    @Test
+    public void testTableGenerationInsertMethods() throws SQLException, IOException {
+        SHPRead.importTable(connection, LDENPointNoiseMapFactoryTest.class.getResource("roads_traff.shp").getFile());
+        SHPRead.importTable(connection, LDENPointNoiseMapFactoryTest.class.getResource("buildings.shp").getFile());
+        SHPRead.importTable(connection, LDENPointNoiseMapFactoryTest.class.getResource("receivers.shp").getFile());
+
+        LDENConfig ldenConfig = new LDENConfig(LDENConfig.INPUT_MODE.INPUT_MODE_TRAFFIC_FLOW);
+        ldenConfig.setComputeLDay(false);
+        ldenConfig.setComputeLEvening(false);
+        ldenConfig.setComputeLNight(true);
+        ldenConfig.setComputeLDEN(false);
+        ldenConfig.setMergeSources(false);
+
+        computeNightLevels(ldenConfig, "LNIGHT_BATCH");
+        ldenConfig.setResultInsertMethod(LDENConfig.ResultInsertMethods.MULTI_ROW_INSERT);
+        // batch size is not a divisor of the row count
+        ldenConfig.setResultInsertBatchSize(7);
+        computeNightLevels(ldenConfig, "LNIGHT_MULTI_ROW");
+        // COPY is not available with H2, multi-row insertion is used instead
+        ldenConfig.setResultInsertMethod(LDENConfig.ResultInsertMethods.COPY);
+        computeNightLevels(ldenConfig, "LNIGHT_COPY");
+
+        int rowCount;
+        try(ResultSet rs = connection.createStatement().executeQuery("SELECT COUNT(*) CPT FROM LNIGHT_BATCH")) {
+            assertTrue(rs.next());
+            rowCount = rs.getInt(1);
+            assertTrue(rowCount > 0);
+        }
+        for(String tableName : new String[] {"LNIGHT_MULTI_ROW", "LNIGHT_COPY"}) {
+            try(ResultSet rs = connection.createStatement().executeQuery("SELECT COUNT(*) CPT FROM " + tableName)) {
+                assertTrue(rs.next());
+                assertEquals(rowCount, rs.getInt(1));
+            }
+            try(ResultSet rs = connection.createStatement().executeQuery("SELECT COUNT(*) FROM (SELECT * FROM " +
+                    "LNIGHT_BATCH EXCEPT SELECT * FROM " + tableName + ")")) {
+                assertTrue(rs.next());
+                assertEquals(0, rs.getInt(1));
+            }
+        }
+    }
+
+    @Test
+    public void testCopyLevelsRowsWriter() throws SQLException, IOException {
+        SHPRead.importTable(connection, LDENPointNoiseMapFactoryTest.class.getResource("roads_traff.shp").getFile());
+        SHPRead.importTable(connection, LDENPointNoiseMapFactoryTest.class.getResource("buildings.shp").getFile());
+        SHPRead.importTable(connection, LDENPointNoiseMapFactoryTest.class.getResource("receivers.shp").getFile());
+
+        LDENConfig ldenConfig = new LDENConfig(LDENConfig.INPUT_MODE.INPUT_MODE_TRAFFIC_FLOW);
+        ldenConfig.setComputeLDay(false);
+        ldenConfig.setComputeLEvening(false);
+        ldenConfig.setComputeLNight(true);
+        ldenConfig.setComputeLDEN(false);
+        ldenConfig.setMergeSources(false);
+        computeNightLevels(ldenConfig, "LNIGHT_BATCH");
+        // batch size is not a divisor of the row count
+        ldenConfig.setResultInsertBatchSize(7);
+        int bandCount = ldenConfig.getPropagationProcessPathData(LDENConfig.TIME_PERIOD.NIGHT).freq_lvl.size();
+
+        // The rows in the COPY text format are inserted in a H2 table
+        connection.createStatement().execute("CREATE TABLE LNIGHT_COPY AS SELECT * FROM LNIGHT_BATCH WHERE 1=0");
+        List<Integer> copiedRows = new ArrayList<>();
+        LDENPointNoiseMapFactory.CopyLevelsRowsWriter writer = new LDENPointNoiseMapFactory.CopyLevelsRowsWriter(
+                connection, "LNIGHT_COPY", ldenConfig) {
+            @Override
+            long copyIn(String copyQuery, Reader rows) throws SQLException, IOException {
+                assertEquals("COPY LNIGHT_COPY FROM STDIN", copyQuery);
+                int rowCount = 0;
+                try(BufferedReader reader = new BufferedReader(rows);
+                    PreparedStatement ps = connection.prepareStatement("INSERT INTO LNIGHT_COPY VALUES (?, ?" +
+                            ", ?".repeat(bandCount + 2) + ")")) {
+                    String line;
+                    while((line = reader.readLine()) != null) {
+                        String[] values = line.split("\t");
+                        assertEquals(bandCount + 4, values.length);
+                        for(int i = 0; i < values.length; i++) {
+                            ps.setObject(i + 1, values[i]);
+                        }
+                        ps.execute();
+                        rowCount++;
+                    }
+                }
+                copiedRows.add(rowCount);
+                return rowCount;
+            }
+        };
+        int rowCount = 0;
+        try(ResultSet rs = connection.createStatement().executeQuery("SELECT * FROM LNIGHT_BATCH")) {
+            double[] levels = new double[bandCount];
+            while (rs.next()) {
+                for(int i = 0; i < bandCount; i++) {
+                    levels[i] = rs.getDouble(3 + i);
+                }
+                writer.addRow(rs.getLong(1), rs.getLong(2), levels, rs.getDouble(3 + bandCount),
+                        rs.getDouble(4 + bandCount));
+                rowCount++;
+            }
+        }
+        assertTrue(rowCount > 7);
+        // rows are sent by full batches, the remaining rows are kept until the flush
+        assertEquals(rowCount / 7, copiedRows.size());
+        writer.flush();
+        writer.close();
+        assertEquals((rowCount + 6) / 7, copiedRows.size());
+        for(int i = 0; i < copiedRows.size() - 1; i++) {
+            assertEquals(7, copiedRows.get(i).intValue());
+        }
+        try(ResultSet rs = connection.createStatement().executeQuery("SELECT COUNT(*) CPT FROM LNIGHT_COPY")) {
+            assertTrue(rs.next());
+            assertEquals(rowCount, rs.getInt(1));
+        }
+        try(ResultSet rs = connection.createStatement().executeQuery("SELECT COUNT(*) FROM (SELECT * FROM " +
+                "LNIGHT_BATCH EXCEPT SELECT * FROM LNIGHT_COPY)")) {
+            assertTrue(rs.next());
+            assertEquals(0, rs.getInt(1));
+        }
+    }
+
+    @Test
+    public void testColumnarOutputFile() throws SQLException, IOException {
+        SHPRead.importTable(connection, LDENPointNoiseMapFactoryTest.class.getResource("roads_traff.shp").getFile());
+        SHPRead.importTable(connection, LDENPointNoiseMapFactoryTest.class.getResource("buildings.shp").getFile());
+        SHPRead.importTable(connection, LDENPointNoiseMapFactoryTest.class.getResource("receivers.shp").getFile());
+
+        LDENConfig ldenConfig = new LDENConfig(LDENConfig.INPUT_MODE.INPUT_MODE_TRAFFIC_FLOW);
+        ldenConfig.setComputeLDay(false);
+        ldenConfig.setComputeLEvening(false);
+        ldenConfig.setComputeLNight(true);
+        ldenConfig.setComputeLDEN(false);
+        ldenConfig.setMergeSources(false);
+
+        computeNightLevels(ldenConfig, "LNIGHT_TABLE");
+        File columnarFile = File.createTempFile("lnight", ".bin");
+        columnarFile.deleteOnExit();
+        ldenConfig.setColumnarOutputFile(columnarFile);
+        computeNightLevels(ldenConfig, "LNIGHT_COLUMNAR");
+        assertFalse(JDBCUtilities.tableExists(connection, "LNIGHT_COLUMNAR"));
+
+        // receiver and source identifiers to laeq
+        Map<List<Long>, Double> expectedLaeq = new HashMap<>();
+        try(ResultSet rs = connection.createStatement().executeQuery("SELECT IDRECEIVER, IDSOURCE, LAEQ FROM LNIGHT_TABLE")) {
+            while (rs.next()) {
+                expectedLaeq.put(Arrays.asList(rs.getLong(1), rs.getLong(2)), rs.getDouble(3));
+            }
+        }
+        assertFalse(expectedLaeq.isEmpty());
+        int rowCount = 0;
+        try(ColumnarLevelsReader reader = new ColumnarLevelsReader(columnarFile)) {
+            assertTrue(reader.hasSourceId());
+            assertFalse(reader.isLaeqOnly());
+            assertEquals(ldenConfig.propagationProcessPathDataDay.freq_lvl, reader.getFrequencies());
+            ColumnarLevelsReader.Chunk chunk;
+            while((chunk = reader.next()) != null) {
+                for(int row = 0; row < chunk.rowCount; row++) {
+                    assertEquals(LDENConfig.TIME_PERIOD.NIGHT.ordinal(), chunk.periods[row]);
+                    Double laeq = expectedLaeq.get(Arrays.asList(chunk.receiverIds[row], chunk.sourceIds[row]));
+                    assertNotNull(laeq);
+                    // the columnar file keeps the double values, LNIGHT_TABLE columns are NUMERIC(5, 2)
+                    assertEquals(laeq, chunk.laeqs[row], 0.01);
+                    rowCount++;
+                }
+            }
+        }
+        assertEquals(expectedLaeq.size(), rowCount);
+    }
+
+    @Test
+    public void testAttenuationMatrix() throws SQLException, IOException {
+        SHPRead.importTable(connection, LDENPointNoiseMapFactoryTest.class.getResource("roads_traff.shp").getFile());
+        SHPRead.importTable(connection, LDENPointNoiseMapFactoryTest.class.getResource("buildings.shp").getFile());
+        SHPRead.importTable(connection, LDENPointNoiseMapFactoryTest.class.getResource("receivers.shp").getFile());
+
+        LDENConfig ldenConfig = new LDENConfig(LDENConfig.INPUT_MODE.INPUT_MODE_LW_DEN);
+        ldenConfig.setComputeLDay(false);
+        ldenConfig.setComputeLEvening(false);
+        ldenConfig.setComputeLNight(true);
+        ldenConfig.setComputeLDEN(false);
+        ldenConfig.setMergeSources(false);
+        List<Integer> frequencies = new PropagationProcessPathData().freq_lvl;
+
+        // Night sound power of the roads, the same values are used by the propagation and the matrix engine
+        StringBuilder lwFields = new StringBuilder();
+        StringBuilder lwValues = new StringBuilder();
+        for(int frequency : frequencies) {
+            lwFields.append(", LWN").append(frequency).append(" DOUBLE");
+            lwValues.append(", ?");
+        }
+        try(Statement st = connection.createStatement()) {
+            st.execute("CREATE TABLE ROADS_LW(PK INTEGER PRIMARY KEY, THE_GEOM GEOMETRY" + lwFields + ")");
+        }
+        LDENConfig trafficConfig = new LDENConfig(LDENConfig.INPUT_MODE.INPUT_MODE_TRAFFIC_FLOW);
+        for(LDENConfig.TIME_PERIOD period : LDENConfig.TIME_PERIOD.values()) {
+            trafficConfig.setPropagationProcessPathData(period, new PropagationProcessPathData());
+        }
+        LDENPropagationProcessData emissionData = new LDENPropagationProcessData(null, trafficConfig);
+        int pkIndex = JDBCUtilities.getIntegerPrimaryKey(connection, new TableLocation("ROADS_TRAFF"));
+        try(ResultSet rs = connection.createStatement().executeQuery("SELECT * FROM ROADS_TRAFF");
+            PreparedStatement insert = connection.prepareStatement("INSERT INTO ROADS_LW VALUES(?, ?" + lwValues + ")")) {
+            SpatialResultSet srs = rs.unwrap(SpatialResultSet.class);
+            while (srs.next()) {
+                double[] lw = wToDba(emissionData.computeLw(srs)[2]);
+                insert.setLong(1, srs.getLong(pkIndex));
+                insert.setObject(2, srs.getGeometry());
+                for(int idFreq = 0; idFreq < lw.length; idFreq++) {
+                    insert.setDouble(3 + idFreq, lw[idFreq]);
+                }
+                insert.execute();
+            }
+        }
+
+        File matrixFile = File.createTempFile("attenuation", ".bin");
+        matrixFile.deleteOnExit();
+        ldenConfig.setAttenuationMatrixFile(matrixFile);
+        computeNightLevels(ldenConfig, "ROADS_LW", "LNIGHT_TABLE");
+
+        // Expected receiver levels, sum of the levels of the sources
+        Map<Long, double[]> expectedLevels = new HashMap<>();
+        try(ResultSet rs = connection.createStatement().executeQuery("SELECT * FROM LNIGHT_TABLE")) {
+            while (rs.next()) {
+                double[] levels = new double[frequencies.size()];
+                for(int idFreq = 0; idFreq < levels.length; idFreq++) {
+                    levels[idFreq] = rs.getDouble("HZ" + frequencies.get(idFreq));
+                }
+                expectedLevels.merge(rs.getLong("IDRECEIVER"), levels, PowerUtils::sumDbArray);
+            }
+        }
+        assertFalse(expectedLevels.isEmpty());
+
+        try(AttenuationMatrixReader reader = new AttenuationMatrixReader(matrixFile)) {
+            assertEquals(frequencies, reader.getFrequencies());
+            assertEquals(LDENConfig.TIME_PERIOD.values().length, reader.getPeriodCount());
+            AttenuationMatrixReader.ReceiverAttenuation receiver;
+            int receiverCount = 0;
+            while((receiver = reader.next()) != null) {
+                AttenuationMatrixReader.ReceiverAttenuation fetched = reader.read(receiver.receiverId);
+                assertArrayEquals(receiver.sourceIds, fetched.sourceIds);
+                if(receiver.getSourceCount() > 0) {
+                    assertEquals(receiver.getAttenuation(0, 2, 0), fetched.getAttenuation(0, 2, 0), 0);
+                }
+                receiverCount++;
+            }
+            assertTrue(receiverCount >= expectedLevels.size());
+            assertNull(reader.read(-42));
+        }
+
+        StringBuilder emissionFields = new StringBuilder();
+        for(int frequency : frequencies) {
+            emissionFields.append(", LWN").append(frequency).append(" LW").append(frequency);
+        }
+        try(Statement st = connection.createStatement()) {
+            st.execute("CREATE TABLE ROADS_EMISSION AS SELECT PK IDSOURCE, 'N' TIMESTRING" + emissionFields +
+                    " FROM ROADS_LW");
+        }
+        AttenuationMatrixEngine.TimeStepEmission emission =
+                AttenuationMatrixEngine.TimeStepEmission.fromTable(connection, "ROADS_EMISSION", "LW", frequencies);
+        assertEquals(Collections.singletonList("N"), emission.getStepNames());
+        assertEquals(LDENConfig.TIME_PERIOD.NIGHT.ordinal(), emission.getPeriod(0));
+        AttenuationMatrixEngine engine = new AttenuationMatrixEngine(matrixFile);
+        engine.setThreadCount(4);
+        engine.setBatchSize(3);
+        Map<Long, double[]> levels = new ConcurrentHashMap<>();
+        engine.run(emission, (receiverId, step, receiverLevels) -> levels.put(receiverId, receiverLevels));
+        // attenuation and table levels are rounded
+        for(Map.Entry<Long, double[]> entry : expectedLevels.entrySet()) {
+            assertArrayEquals(entry.getValue(), levels.get(entry.getKey()), 0.02);
+        }
+    }
+
+    /**
+     * Compute the night levels, the cells recorded in the checkpoint table are skipped if the computation is resumed
+     * @param ldenConfig Configuration with the checkpoint table
+     * @param maximumCells Maximum number of cells to compute
+     * @return Number of computed cells
+     */
+    private int computeNightLevelsWithCheckpoint(LDENConfig ldenConfig, int maximumCells) throws SQLException, IOException {
+        LDENPointNoiseMapFactory factory = new LDENPointNoiseMapFactory(connection, ldenConfig);
+        PointNoiseMap pointNoiseMap = createNightNoiseMap(factory);
+        if(ldenConfig.isResumeComputation()) {
+            pointNoiseMap.setResumeJournal(new CheckpointJournal(ldenConfig.getCheckpointTable()));
+        }
+        AtomicInteger computedCells = new AtomicInteger();
+        try {
+            pointNoiseMap.initialize(connection, new EmptyProgressVisitor());
+            factory.start();
+            pointNoiseMap.setGridDim(4); // force grid size
+            List<PointNoiseMap.CellIndex> cells = new ArrayList<>(new TreeSet<>(
+                    pointNoiseMap.searchPopulatedCells(connection).keySet()));
+            cells = cells.subList(0, Math.min(maximumCells, cells.size()));
+            pointNoiseMap.evaluateCells(connection, cells, new EmptyProgressVisitor(), new HashSet<>(),
+                    (cellIndex, computeRaysOut) -> {
+                        computedCells.incrementAndGet();
+                        factory.cellComputed(cellIndex, computeRaysOut);
+                    });
+        } finally {
+            factory.stop();
+        }
+        connection.commit();
+        return computedCells.get();
+    }
+
+    private static PointNoiseMap createNightNoiseMap(LDENPointNoiseMapFactory factory) {
+        PointNoiseMap pointNoiseMap = new PointNoiseMap("BUILDINGS", "ROADS_TRAFF",
+                "RECEIVERS");
+        pointNoiseMap.setComputeRaysOutFactory(factory);
+        pointNoiseMap.setPropagationProcessDataFactory(factory);
+        pointNoiseMap.setMaximumPropagationDistance(100.0);
+        pointNoiseMap.setComputeHorizontalDiffraction(false);
+        pointNoiseMap.setComputeVerticalDiffraction(false);
+        pointNoiseMap.setSoundReflectionOrder(0);
+        return pointNoiseMap;
+    }
+
+    /**
+     * Compute the night levels of the cells claimed from the queue into the partition table of the worker
+     * @return Number of computed cells
+     */
+    private static int computeNightLevelsWorker(Connection queueConnection, Connection workerConnection,
+                                                LDENConfig ldenConfig, CellWorkQueue queue, String worker) throws SQLException, IOException {
+        CellWorkQueue.setPartitionTables(ldenConfig, worker);
+        LDENPointNoiseMapFactory factory = new LDENPointNoiseMapFactory(workerConnection, ldenConfig);
+        factory.setCellWorkQueue(queue);
+        PointNoiseMap pointNoiseMap = createNightNoiseMap(factory);
+        try {
+            pointNoiseMap.initialize(workerConnection, new EmptyProgressVisitor());
+            factory.start();
+            pointNoiseMap.setGridDim(4); // force grid size
+            return queue.evaluateCells(queueConnection, workerConnection, worker, pointNoiseMap,
+                    new EmptyProgressVisitor(), new HashSet<>(), factory);
+        } finally {
+            factory.stop();
+        }
+    }
+
+    private static Connection openConnection() throws SQLException {
+        return JDBCUtilities.wrapConnection(H2GISDBFactory.openSpatialDataBase(
+                LDENPointNoiseMapFactoryTest.class.getSimpleName()));
+    }
+
+    private void assertDistributedLevels() throws SQLException {
+        Map<Long, Double> expectedLevels = new HashMap<>();
+        try(ResultSet rs = connection.createStatement().executeQuery("SELECT IDRECEIVER, LAEQ FROM LNIGHT_REFERENCE")) {
+            while (rs.next()) {
+                expectedLevels.put(rs.getLong(1), rs.getDouble(2));
+            }
+        }
+        Map<Long, Double> levels = new HashMap<>();
+        try(ResultSet rs = connection.createStatement().executeQuery("SELECT IDRECEIVER, LAEQ FROM LNIGHT_DISTRIBUTED")) {
+            while (rs.next()) {
+                assertNull(levels.put(rs.getLong(1), rs.getDouble(2)));
+            }
+        }
+        assertEquals(expectedLevels.keySet(), levels.keySet());
+        for(Map.Entry<Long, Double> entry : expectedLevels.entrySet()) {
+            assertEquals(entry.getValue(), levels.get(entry.getKey()), 0.01);
+        }
+    }
+
+    /**
+     * Fill the queue with the populated cells of the night computation
+     * @return Number of cells in the queue
+     */
+    private int initCellWorkQueue(CellWorkQueue queue) throws SQLException, IOException {
+        SHPRead.importTable(connection, LDENPointNoiseMapFactoryTest.class.getResource("roads_traff.shp").getFile());
+        SHPRead.importTable(connection, LDENPointNoiseMapFactoryTest.class.getResource("buildings.shp").getFile());
+        SHPRead.importTable(connection, LDENPointNoiseMapFactoryTest.class.getResource("receivers.shp").getFile());
+
+        computeNightLevels(createNightConfig("LNIGHT_REFERENCE"), "LNIGHT_REFERENCE");
+
+        // coordinator
+        PointNoiseMap pointNoiseMap = createNightNoiseMap(new LDENPointNoiseMapFactory(connection,
+                createNightConfig("LNIGHT_DISTRIBUTED")));
+        pointNoiseMap.initialize(connection, new EmptyProgressVisitor());
+        pointNoiseMap.setGridDim(4);
+        Map<PointNoiseMap.CellIndex, Integer> cells = pointNoiseMap.searchPopulatedCells(connection);
+        assertTrue(cells.size() > 1);
+        queue.init(connection, cells);
+        assertEquals(cells.size(), queue.countRemainingCells(connection));
+        return cells.size();
+    }
+
+    private static LDENConfig createNightConfig(String tableName) {
+        LDENConfig ldenConfig = new LDENConfig(LDENConfig.INPUT_MODE.INPUT_MODE_TRAFFIC_FLOW);
+        ldenConfig.setComputeLDay(false);
+        ldenConfig.setComputeLEvening(false);
+        ldenConfig.setComputeLNight(true);
+        ldenConfig.setComputeLDEN(false);
+        ldenConfig.setlNightTable(tableName);
+        return ldenConfig;
+    }
+
+    @Test
+    public void testCellWorkQueue() throws SQLException, IOException {
+        CellWorkQueue queue = new CellWorkQueue("NM_CELL_QUEUE");
+        int cellCount = initCellWorkQueue(queue);
+
+        try(Connection queueConnection = openConnection()) {
+            // the preparation thread would share the connection of the queue
+            try {
+                computeNightLevelsWorker(connection, connection, createNightConfig("LNIGHT_DISTRIBUTED"), queue, "A");
+                fail("The queue must not use the connection of the computation");
+            } catch (IllegalArgumentException ex) {
+                // expected
+            }
+            // worker B claims a cell then stops without computing it
+            assertNotNull(queue.pollCell(queueConnection, "B"));
+            int computedCells = computeNightLevelsWorker(queueConnection, connection,
+                    createNightConfig("LNIGHT_DISTRIBUTED"), queue, "A");
+            assertEquals(cellCount - 1, computedCells);
+            assertEquals(1, queue.countRemainingCells(connection));
+            assertEquals(1, queue.releaseCells(connection, "B", false));
+            assertEquals(1, computeNightLevelsWorker(queueConnection, connection,
+                    createNightConfig("LNIGHT_DISTRIBUTED"), queue, "B"));
+        }
+        assertEquals(0, queue.countRemainingCells(connection));
+        assertNull(queue.pollCell(connection, "A"));
+
+        List<String> workers = queue.fetchWorkers(connection);
+        assertEquals(Arrays.asList("A", "B"), workers);
+        assertTrue(JDBCUtilities.tableExists(connection, TableLocation.parse("B_LNIGHT_DISTRIBUTED")));
+        CellWorkQueue.mergePartitions(connection, createNightConfig("LNIGHT_DISTRIBUTED"), workers);
+        assertFalse(JDBCUtilities.tableExists(connection, TableLocation.parse("A_LNIGHT_DISTRIBUTED")));
+        assertFalse(JDBCUtilities.tableExists(connection, TableLocation.parse("B_LNIGHT_DISTRIBUTED")));
+
+        assertDistributedLevels();
+    }
+
+    @Test
+    public void testCellWorkQueueConcurrentWorkers() throws Exception {
+        CellWorkQueue queue = new CellWorkQueue("NM_CELL_QUEUE");
+        int cellCount = initCellWorkQueue(queue);
+
+        // two workers, each one with its own connections
+        String[] workers = new String[]{"A", "B"};
+        int[] computedCells = new int[workers.length];
+        Exception[] errors = new Exception[workers.length];
+        List<Thread> threads = new ArrayList<>();
+        for(int i = 0; i < workers.length; i++) {
+            final int workerIndex = i;
+            Thread thread = new Thread(() -> {
+                try(Connection queueConnection = openConnection(); Connection workerConnection = openConnection()) {
+                    computedCells[workerIndex] = computeNightLevelsWorker(queueConnection, workerConnection,
+                            createNightConfig("LNIGHT_DISTRIBUTED"), queue, workers[workerIndex]);
+                } catch (Exception ex) {
+                    errors[workerIndex] = ex;
+                }
+            }, "Worker " + workers[i]);
+            threads.add(thread);
+            thread.start();
+        }
+        for(Thread thread : threads) {
+            thread.join();
+        }
+        for(Exception error : errors) {
+            if(error != null) {
+                throw error;
+            }
+        }
+        // each cell is computed once, and set as done once its levels are committed
+        assertEquals(cellCount, computedCells[0] + computedCells[1]);
+        assertEquals(0, queue.countRemainingCells(connection));
+        List<String> distributedWorkers = queue.fetchWorkers(connection);
+        CellWorkQueue.mergePartitions(connection, createNightConfig("LNIGHT_DISTRIBUTED"), distributedWorkers);
+        assertDistributedLevels();
+
+        // the output files of the workers are distinct
+        LDENConfig ldenConfig = createNightConfig("LNIGHT_DISTRIBUTED");
+        File matrixFile = new File("target", "attenuation_matrix.bin");
+        ldenConfig.setAttenuationMatrixFile(matrixFile);
+        ldenConfig.setColumnarOutputFile(new File("target", "levels.bin"));
+        CellWorkQueue.setPartitionTables(ldenConfig, "A");
+        assertEquals(new File("target", "A_attenuation_matrix.bin"), ldenConfig.getAttenuationMatrixFile());
+        assertEquals(new File("target", "A_levels.bin"), ldenConfig.getColumnarOutputFile());
+        assertNull(ldenConfig.getSqlOutputFile());
+    }
+
+    @Test
+    public void testCheckpointReceiverRanges() {
+        Set<Long> addedReceivers = new HashSet<>();
+        CheckpointJournal.ReceiverRanges receivers = new CheckpointJournal.ReceiverRanges(addedReceivers);
+        // ranges of the cells are not sorted
+        receivers.addRange(10, 12);
+        receivers.addRange(1, 3);
+        receivers.addRange(5, 5);
+        assertEquals(7, receivers.size());
+        for(long receiver : new long[] {1, 2, 3, 5, 10, 11, 12}) {
+            assertTrue(receivers.contains(receiver));
+        }
+        for(long receiver : new long[] {0, 4, 6, 9, 13}) {
+            assertFalse(receivers.contains(receiver));
+        }
+        assertFalse(receivers.add(11L));
+        assertTrue(receivers.add(7L));
+        assertTrue(receivers.contains(7L));
+        assertEquals(Collections.singleton(7L), addedReceivers);
+        assertEquals(new HashSet<>(Arrays.asList(1L, 2L, 3L, 5L, 7L, 10L, 11L, 12L)), new HashSet<>(receivers));
+    }
+
+    @Test
+    public void testCheckpointResume() throws SQLException, IOException {
+        SHPRead.importTable(connection, LDENPointNoiseMapFactoryTest.class.getResource("roads_traff.shp").getFile());
+        SHPRead.importTable(connection, LDENPointNoiseMapFactoryTest.class.getResource("buildings.shp").getFile());
+        SHPRead.importTable(connection, LDENPointNoiseMapFactoryTest.class.getResource("receivers.shp").getFile());
+
+        LDENConfig referenceConfig = new LDENConfig(LDENConfig.INPUT_MODE.INPUT_MODE_TRAFFIC_FLOW);
+        referenceConfig.setComputeLDay(false);
+        referenceConfig.setComputeLEvening(false);
+        referenceConfig.setComputeLNight(true);
+        referenceConfig.setComputeLDEN(false);
+        computeNightLevels(referenceConfig, "LNIGHT_REFERENCE");
+        PointNoiseMap gridNoiseMap = createNightNoiseMap(new LDENPointNoiseMapFactory(connection, referenceConfig));
+        gridNoiseMap.initialize(connection, new EmptyProgressVisitor());
+        gridNoiseMap.setGridDim(4);
+        int populatedCells = gridNoiseMap.searchPopulatedCells(connection).size();
+        assertTrue(populatedCells > 2);
+
+        LDENConfig ldenConfig = new LDENConfig(LDENConfig.INPUT_MODE.INPUT_MODE_TRAFFIC_FLOW);
+        ldenConfig.setComputeLDay(false);
+        ldenConfig.setComputeLEvening(false);
+        ldenConfig.setComputeLNight(true);
+        ldenConfig.setComputeLDEN(false);
+        ldenConfig.setlNightTable("LNIGHT_RESUME");
+        ldenConfig.setCheckpointTable("NM_CHECKPOINT");
+        // interrupted computation
+        assertEquals(2, computeNightLevelsWithCheckpoint(ldenConfig, 2));
+        CheckpointJournal.ReceiverRanges recordedReceivers = new CheckpointJournal.ReceiverRanges();
+        assertEquals(2, new CheckpointJournal("NM_CHECKPOINT").fetchCompletedCells(connection, recordedReceivers).size());
+        assertFalse(recordedReceivers.isEmpty());
+        assertTrue(recordedReceivers.getRangeCount() < recordedReceivers.size());
+        // row of a cell interrupted before its record in the checkpoint table
+        long interruptedReceiver = -1;
+        try(ResultSet rs = connection.createStatement().executeQuery("SELECT PK FROM RECEIVERS ORDER BY PK")) {
+            while (rs.next() && interruptedReceiver < 0) {
+                if(!recordedReceivers.contains(rs.getLong(1))) {
+                    interruptedReceiver = rs.getLong(1);
+                }
+            }
+        }
+        assertTrue(interruptedReceiver >= 0);
+        connection.createStatement().execute("INSERT INTO LNIGHT_RESUME(IDRECEIVER, LAEQ) VALUES (" +
+                interruptedReceiver + ", 99)");
+
+        ldenConfig.setResumeComputation(true);
+        // the attenuation matrix of the interrupted computation can not be completed
+        File matrixFile = File.createTempFile("attenuation", ".bin");
+        matrixFile.deleteOnExit();
+        ldenConfig.setAttenuationMatrixFile(matrixFile);
+        LDENPointNoiseMapFactory matrixFactory = new LDENPointNoiseMapFactory(connection, ldenConfig);
+        createNightNoiseMap(matrixFactory).initialize(connection, new EmptyProgressVisitor());
+        matrixFactory.start();
+        matrixFactory.stop();
+        assertTrue(ldenConfig.aborted);
+        ldenConfig.aborted = false;
+        ldenConfig.setAttenuationMatrixFile(null);
+
+        // the completed cells are skipped
+        int remainingCells = computeNightLevelsWithCheckpoint(ldenConfig, Integer.MAX_VALUE);
+        assertEquals(populatedCells - 2, remainingCells);
+
+        Map<Long, Double> expectedLevels = new HashMap<>();
+        try(ResultSet rs = connection.createStatement().executeQuery("SELECT IDRECEIVER, LAEQ FROM LNIGHT_REFERENCE")) {
+            while (rs.next()) {
+                expectedLevels.put(rs.getLong(1), rs.getDouble(2));
+            }
+        }
+        Map<Long, Double> levels = new HashMap<>();
+        try(ResultSet rs = connection.createStatement().executeQuery("SELECT IDRECEIVER, LAEQ FROM LNIGHT_RESUME")) {
+            while (rs.next()) {
+                assertNull(levels.put(rs.getLong(1), rs.getDouble(2)));
+            }
+        }
+        assertEquals(expectedLevels.keySet(), levels.keySet());
+        for(Map.Entry<Long, Double> entry : expectedLevels.entrySet()) {
+            assertEquals(entry.getValue(), levels.get(entry.getKey()), 0.01);
+        }
+    }
+
+    /**
+     * @param tableName Levels table with the IDSOURCE field
+     * @param frequencies Frequency bands
+     * @return Levels of each receiver and source
+     */
+    private Map<String, double[]> fetchSourcesLevels(String tableName, List<Integer> frequencies) throws SQLException {
+        Map<String, double[]> levels = new HashMap<>();
+        try(ResultSet rs = connection.createStatement().executeQuery("SELECT * FROM " + tableName)) {
+            // merged sources levels do not have a source column
+            boolean sourceColumn = JDBCUtilities.getColumnNames(rs.getMetaData()).contains("IDSOURCE");
+            while (rs.next()) {
+                double[] row = new double[frequencies.size() + 1];
+                for(int idFreq = 0; idFreq < frequencies.size(); idFreq++) {
+                    row[idFreq] = rs.getDouble("HZ" + frequencies.get(idFreq));
+                }
+                row[frequencies.size()] = rs.getDouble("LAEQ");
+                levels.put(rs.getLong("IDRECEIVER") + ":" + (sourceColumn ? rs.getLong("IDSOURCE") : 0), row);
+            }
+        }
+        return levels;
+    }
+
+    /**
+     * @param expected Reference levels
+     * @param levels Levels of a channel
+     * @param offset Expected offset (dB) of the channel levels
+     */
+    private static void assertChannelLevels(Map<String, double[]> expected, Map<String, double[]> levels,
+                                            double offset) {
+        assertFalse(expected.isEmpty());
+        assertEquals(expected.keySet(), levels.keySet());
+        for(Map.Entry<String, double[]> entry : expected.entrySet()) {
+            double[] expectedLevels = entry.getValue().clone();
+            // -99 is written for the bands without sound, laeq is the last value
+            boolean silent = true;
+            for(int idLevel = 0; idLevel < expectedLevels.length - 1; idLevel++) {
+                if(expectedLevels[idLevel] > -99) {
+                    expectedLevels[idLevel] += offset;
+                    silent = false;
+                }
+            }
+            if(!silent) {
+                expectedLevels[expectedLevels.length - 1] += offset;
+            }
+            assertArrayEquals(entry.getKey(), expectedLevels, levels.get(entry.getKey()), 0.011);
+        }
+    }
+
+    /**
+     * @param sourcesLevels Levels of each receiver and source, see {@link #fetchSourcesLevels(String, List)}
+     * @return Energetic sum of the bands levels of each receiver, with the same keys than merged sources levels
+     */
+    private static Map<String, double[]> sumSourcesLevels(Map<String, double[]> sourcesLevels) {
+        Map<String, double[]> levels = new HashMap<>();
+        for(Map.Entry<String, double[]> entry : sourcesLevels.entrySet()) {
+            String receiver = entry.getKey().substring(0, entry.getKey().indexOf(':')) + ":0";
+            double[] sourceLevels = entry.getValue();
+            double[] receiverLevels = levels.computeIfAbsent(receiver, k -> new double[sourceLevels.length - 1]);
+            for(int idFreq = 0; idFreq < receiverLevels.length; idFreq++) {
+                receiverLevels[idFreq] += dbaToW(sourceLevels[idFreq]);
+            }
+        }
+        for(double[] receiverLevels : levels.values()) {
+            for(int idFreq = 0; idFreq < receiverLevels.length; idFreq++) {
+                receiverLevels[idFreq] = wToDba(receiverLevels[idFreq]);
+            }
+        }
+        return levels;
+    }
+
+    /**
+     * The levels of each period written per source must sum to the levels of the merged sources. Each period of
+     * a source keeps its own attenuation.
+     */
+    @Test
+    public void testSourcesTimePeriodLevels() throws SQLException, IOException {
+        SHPRead.importTable(connection, LDENPointNoiseMapFactoryTest.class.getResource("roads_traff.shp").getFile());
+        SHPRead.importTable(connection, LDENPointNoiseMapFactoryTest.class.getResource("buildings.shp").getFile());
+        SHPRead.importTable(connection, LDENPointNoiseMapFactoryTest.class.getResource("receivers.shp").getFile());
+
+        LDENConfig ldenConfig = new LDENConfig(LDENConfig.INPUT_MODE.INPUT_MODE_TRAFFIC_FLOW);
+        ldenConfig.setComputeLDay(true);
+        ldenConfig.setComputeLEvening(true);
+        ldenConfig.setComputeLNight(true);
+        ldenConfig.setComputeLDEN(false);
+        ldenConfig.setMergeSources(false);
+        ldenConfig.setlDayTable("LDAY_SOURCES");
+        ldenConfig.setlEveningTable("LEVENING_SOURCES");
+        computeNightLevels(ldenConfig, "LNIGHT_SOURCES");
+        ldenConfig.setMergeSources(true);
+        ldenConfig.setlDayTable("LDAY_MERGED");
+        ldenConfig.setlEveningTable("LEVENING_MERGED");
+        computeNightLevels(ldenConfig, "LNIGHT_MERGED");
+
+        List<Integer> frequencies = ldenConfig.propagationProcessPathDataDay.freq_lvl;
+        for(String period : new String[]{"DAY", "EVENING", "NIGHT"}) {
+            Map<String, double[]> sourcesLevels = sumSourcesLevels(fetchSourcesLevels("L" + period + "_SOURCES",
+                    frequencies));
+            Map<String, double[]> mergedLevels = fetchSourcesLevels("L" + period + "_MERGED", frequencies);
+            assertFalse(sourcesLevels.isEmpty());
+            assertTrue(mergedLevels.keySet().containsAll(sourcesLevels.keySet()));
+            for(Map.Entry<String, double[]> entry : mergedLevels.entrySet()) {
+                double[] levels = sourcesLevels.get(entry.getKey());
+                if(levels == null) {
+                    // the merged sources levels have a row for the receivers without sources in range
+                    for(int idFreq = 0; idFreq < frequencies.size(); idFreq++) {
+                        assertEquals(-99, entry.getValue()[idFreq], 0.01);
+                    }
+                    continue;
+                }
+                for(int idFreq = 0; idFreq < levels.length; idFreq++) {
+                    assertEquals(period + " " + entry.getKey() + " " + frequencies.get(idFreq) + " Hz",
+                            entry.getValue()[idFreq], levels[idFreq], 0.01);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testEmissionChannels() throws SQLException, IOException {
+        SHPRead.importTable(connection, LDENPointNoiseMapFactoryTest.class.getResource("roads_traff.shp").getFile());
+        SHPRead.importTable(connection, LDENPointNoiseMapFactoryTest.class.getResource("buildings.shp").getFile());
+        SHPRead.importTable(connection, LDENPointNoiseMapFactoryTest.class.getResource("receivers.shp").getFile());
+        // 7h traffic is twice the day traffic, the emission of the road is 3 dB louder
+        try(Statement st = connection.createStatement()) {
+            st.execute("ALTER TABLE ROADS_TRAFF ADD COLUMN TV_H07 DOUBLE");
+            st.execute("ALTER TABLE ROADS_TRAFF ADD COLUMN HV_H07 DOUBLE");
+            st.execute("ALTER TABLE ROADS_TRAFF ADD COLUMN LV_SPD_H07 DOUBLE");
+            st.execute("ALTER TABLE ROADS_TRAFF ADD COLUMN HV_SPD_H07 DOUBLE");
+            st.execute("UPDATE ROADS_TRAFF SET TV_H07 = 2 * TV_D, HV_H07 = 2 * HV_D, LV_SPD_H07 = LV_SPD_D," +
+                    " HV_SPD_H07 = HV_SPD_D");
+        }
+        double doubledTraffic = 10 * Math.log10(2);
+
+        LDENConfig ldenConfig = new LDENConfig(LDENConfig.INPUT_MODE.INPUT_MODE_TRAFFIC_FLOW);
+        ldenConfig.setComputeLDay(true);
+        ldenConfig.setComputeLEvening(false);
+        ldenConfig.setComputeLNight(true);
+        ldenConfig.setComputeLDEN(false);
+        ldenConfig.setMergeSources(false);
+        // channels D and N read the same traffic fields as the day and night periods
+        ldenConfig.addEmissionChannel("D", LDENConfig.TIME_PERIOD.DAY);
+        ldenConfig.addEmissionChannel("N", LDENConfig.TIME_PERIOD.NIGHT);
+        ldenConfig.addEmissionChannel("H07", LDENConfig.TIME_PERIOD.DAY);
+        computeNightLevels(ldenConfig, "LNIGHT_TABLE");
+
+        List<Integer> frequencies = ldenConfig.propagationProcessPathDataDay.freq_lvl;
+        Map<String, double[]> dayLevels = fetchSourcesLevels(ldenConfig.getlDayTable(), frequencies);
+        Map<String, double[]> nightLevels = fetchSourcesLevels("LNIGHT_TABLE", frequencies);
+        Map<String, double[]> hourLevels = fetchSourcesLevels(ldenConfig.getChannelTable("H07"), frequencies);
+        assertChannelLevels(dayLevels, fetchSourcesLevels(ldenConfig.getChannelTable("D"), frequencies), 0);
+        assertChannelLevels(nightLevels, fetchSourcesLevels(ldenConfig.getChannelTable("N"), frequencies), 0);
+        assertChannelLevels(dayLevels, hourLevels, doubledTraffic);
+
+        // Channel codes of the columnar file follow the channels declaration order
+        File columnarFile = File.createTempFile("lchannels", ".bin");
+        columnarFile.deleteOnExit();
+        ldenConfig.setColumnarOutputFile(columnarFile);
+        computeNightLevels(ldenConfig, "LNIGHT_COLUMNAR");
+        Map<String, double[]> columnarHourLevels = new HashMap<>();
+        try(ColumnarLevelsReader reader = new ColumnarLevelsReader(columnarFile)) {
+            ColumnarLevelsReader.Chunk chunk;
+            while((chunk = reader.next()) != null) {
+                for(int row = 0; row < chunk.rowCount; row++) {
+                    assertTrue(chunk.periods[row] < ColumnarLevelsWriter.PERIOD_FIRST_CHANNEL + 3);
+                    if(chunk.periods[row] == ColumnarLevelsWriter.PERIOD_FIRST_CHANNEL + 2) {
+                        double[] levels = new double[frequencies.size() + 1];
+                        for(int idFreq = 0; idFreq < frequencies.size(); idFreq++) {
+                            levels[idFreq] = chunk.levels[idFreq][row];
+                        }
+                        levels[frequencies.size()] = chunk.laeqs[row];
+                        columnarHourLevels.put(chunk.receiverIds[row] + ":" + chunk.sourceIds[row], levels);
+                    }
+                }
+            }
+        }
+        assertChannelLevels(hourLevels, columnarHourLevels, 0);
+
+        // Merged sources
+        ldenConfig.setColumnarOutputFile(null);
+        ldenConfig.setMergeSources(true);
+        computeNightLevels(ldenConfig, "LNIGHT_TABLE");
+        Map<String, double[]> mergedDayLevels = fetchSourcesLevels(ldenConfig.getlDayTable(), frequencies);
+        assertChannelLevels(mergedDayLevels, fetchSourcesLevels(ldenConfig.getChannelTable("D"), frequencies), 0);
+        assertChannelLevels(fetchSourcesLevels("LNIGHT_TABLE", frequencies),
+                fetchSourcesLevels(ldenConfig.getChannelTable("N"), frequencies), 0);
+        assertChannelLevels(mergedDayLevels, fetchSourcesLevels(ldenConfig.getChannelTable("H07"), frequencies),
+                doubledTraffic);
+    }
+
     @Test
     public void testTableGenerationFromTrafficNightOnlyLaeq() throws SQLException, IOException {
         SHPRead.importTable(connection, LDENPointNoiseMapFactoryTest.class.getResource("roads_traff.shp").getFile());
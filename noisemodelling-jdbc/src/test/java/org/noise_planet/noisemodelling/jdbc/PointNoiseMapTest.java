@@ -49,6 +49,48 @@ public class PointNoiseMapTest {
         }
     }
 
+    /**
+     * Load the scene with land cover and configure a direct field evaluation of the road sources on it
+     * @param st Statement of the test connection
+     * @return Noise map to initialize
+     */
+    private static PointNoiseMap createLandcoverNoiseMap(Statement st) throws Exception {
+        st.execute(String.format("CALL SHPREAD('%s', 'LANDCOVER2000')", PointNoiseMapTest.class.getResource("landcover2000.shp").getFile()));
+        st.execute(getRunScriptRes("scene_with_landcover.sql"));
+        PointNoiseMap pointNoiseMap = new PointNoiseMap("BUILDINGS", "ROADS_GEOM", "RECEIVERS");
+        pointNoiseMap.setComputeHorizontalDiffraction(true);
+        pointNoiseMap.setComputeVerticalDiffraction(true);
+        pointNoiseMap.setSoundReflectionOrder(0);
+        pointNoiseMap.setReceiverHasAbsoluteZCoordinates(false);
+        pointNoiseMap.setSourceHasAbsoluteZCoordinates(false);
+        pointNoiseMap.setHeightField("HEIGHT");
+        pointNoiseMap.setSoilTableName("LAND_G");
+        pointNoiseMap.setComputeRaysOutFactory(new JDBCComputeRaysOut(false));
+        pointNoiseMap.setPropagationProcessDataFactory(new JDBCPropagationData());
+        pointNoiseMap.setThreadCount(1);
+        return pointNoiseMap;
+    }
+
+    /**
+     * Evaluate every cell of the grid one after the other
+     * @return Sound level of each receiver
+     */
+    private Map<Long, double[]> computeLevels(PointNoiseMap pointNoiseMap) throws Exception {
+        Map<Long, double[]> levels = new HashMap<>();
+        Set<Long> receivers = new HashSet<>();
+        RootProgressVisitor progressVisitor = new RootProgressVisitor(pointNoiseMap.getGridDim() *
+                pointNoiseMap.getGridDim(), false, 5);
+        for(int i=0; i < pointNoiseMap.getGridDim(); i++) {
+            for (int j = 0; j < pointNoiseMap.getGridDim(); j++) {
+                IComputeRaysOut out = pointNoiseMap.evaluateCell(connection, i, j, progressVisitor, receivers);
+                for(ComputeRaysOutAttenuation.VerticeSL v : ((ComputeRaysOutAttenuation) out).getVerticesSoundLevel()) {
+                    levels.put(v.receiverId, v.value);
+                }
+            }
+        }
+        return levels;
+    }
+
 
 
     /**
@@ -144,6 +186,245 @@ public class PointNoiseMapTest {
         }
     }
 
+    @Test
+    public void testEvaluateCells() throws Exception {
+        try(Statement st = connection.createStatement()) {
+            PointNoiseMap pointNoiseMap = createLandcoverNoiseMap(st);
+            pointNoiseMap.initialize(connection, new EmptyProgressVisitor());
+            pointNoiseMap.setGridDim(3);
+
+            List<PointNoiseMap.CellIndex> cells = new ArrayList<>();
+            for(int i=0; i < pointNoiseMap.getGridDim(); i++) {
+                for(int j=0; j < pointNoiseMap.getGridDim(); j++) {
+                    cells.add(new PointNoiseMap.CellIndex(j, i));
+                }
+            }
+            // Sequential evaluation of cells
+            Map<Long, double[]> expectedLevels = new HashMap<>();
+            Set<Long> receivers = new HashSet<>();
+            RootProgressVisitor progressVisitor = new RootProgressVisitor(cells.size(), false, 5);
+            for(PointNoiseMap.CellIndex cellIndex : cells) {
+                IComputeRaysOut out = pointNoiseMap.evaluateCell(connection, cellIndex.getLatitudeIndex(),
+                        cellIndex.getLongitudeIndex(), progressVisitor, receivers);
+                for(ComputeRaysOutAttenuation.VerticeSL v : ((ComputeRaysOutAttenuation) out).getVerticesSoundLevel()) {
+                    expectedLevels.put(v.receiverId, v.value);
+                }
+            }
+            assertFalse(expectedLevels.isEmpty());
+
+            // Evaluation with cells prepared in advance
+            pointNoiseMap.setMaximumPreparedCells(2);
+            Map<Long, double[]> levels = new HashMap<>();
+            Set<Long> pipelinedReceivers = new HashSet<>();
+            List<PointNoiseMap.CellIndex> computedCells = new ArrayList<>();
+            progressVisitor = new RootProgressVisitor(cells.size(), false, 5);
+            pointNoiseMap.evaluateCells(connection, cells, progressVisitor, pipelinedReceivers, (cellIndex, out) -> {
+                computedCells.add(cellIndex);
+                for(ComputeRaysOutAttenuation.VerticeSL v : ((ComputeRaysOutAttenuation) out).getVerticesSoundLevel()) {
+                    levels.put(v.receiverId, v.value);
+                }
+            });
+            assertEquals(cells, computedCells);
+            assertEquals(receivers, pipelinedReceivers);
+            assertEquals(expectedLevels.keySet(), levels.keySet());
+            for(Map.Entry<Long, double[]> entry : expectedLevels.entrySet()) {
+                assertArrayEquals(entry.getValue(), levels.get(entry.getKey()), 1e-6);
+            }
+        }
+    }
+
+    @Test
+    public void testMaximumPreparedCells() throws Exception {
+        try(Statement st = connection.createStatement()) {
+            PointNoiseMap pointNoiseMap = createLandcoverNoiseMap(st);
+            pointNoiseMap.initialize(connection, new EmptyProgressVisitor());
+            pointNoiseMap.setGridDim(3);
+            pointNoiseMap.setMaximumPreparedCells(2);
+            List<PointNoiseMap.CellIndex> cells = new ArrayList<>();
+            for(int i=0; i < pointNoiseMap.getGridDim(); i++) {
+                for(int j=0; j < pointNoiseMap.getGridDim(); j++) {
+                    cells.add(new PointNoiseMap.CellIndex(j, i));
+                }
+            }
+            // The cells are fetched from the iterator when their preparation is submitted
+            AtomicInteger submittedCells = new AtomicInteger(0);
+            Iterable<PointNoiseMap.CellIndex> countedCells = () -> new Iterator<PointNoiseMap.CellIndex>() {
+                final Iterator<PointNoiseMap.CellIndex> it = cells.iterator();
+
+                @Override
+                public boolean hasNext() {
+                    return it.hasNext();
+                }
+
+                @Override
+                public PointNoiseMap.CellIndex next() {
+                    submittedCells.incrementAndGet();
+                    return it.next();
+                }
+            };
+            AtomicInteger computedCells = new AtomicInteger(0);
+            pointNoiseMap.evaluateCells(connection, countedCells, new EmptyProgressVisitor(), new HashSet<>(),
+                    (cellIndex, out) -> {
+                        int computed = computedCells.incrementAndGet();
+                        // current cell and at most maximumPreparedCells waiting cells
+                        assertTrue(submittedCells.get() <= computed + pointNoiseMap.getMaximumPreparedCells());
+                        assertTrue(submittedCells.get() == cells.size() ||
+                                submittedCells.get() == computed + pointNoiseMap.getMaximumPreparedCells());
+                    });
+            assertEquals(cells.size(), computedCells.get());
+            assertEquals(cells.size(), submittedCells.get());
+        }
+    }
+
+    @Test
+    public void testSceneRegionCache() throws Exception {
+        try(Statement st = connection.createStatement()) {
+            PointNoiseMap pointNoiseMap = createLandcoverNoiseMap(st);
+            pointNoiseMap.initialize(connection, new EmptyProgressVisitor());
+            pointNoiseMap.setGridDim(3);
+
+            Map<Long, double[]> expectedLevels = computeLevels(pointNoiseMap);
+            assertFalse(expectedLevels.isEmpty());
+
+            // Same evaluation with the scene fetched by regions of 2x2 cells
+            pointNoiseMap.setSceneCacheRegionSize(2);
+            pointNoiseMap.setSceneCacheMaximumRegions(2);
+            Map<Long, double[]> levels = new HashMap<>();
+            Set<Long> receivers = new HashSet<>();
+            RootProgressVisitor progressVisitor = new RootProgressVisitor(9, false, 5);
+            for(int i=0; i < pointNoiseMap.getGridDim(); i++) {
+                for (int j = 0; j < pointNoiseMap.getGridDim(); j++) {
+                    IComputeRaysOut out = pointNoiseMap.evaluateCell(connection, i, j, progressVisitor, receivers);
+                    for(ComputeRaysOutAttenuation.VerticeSL v : ((ComputeRaysOutAttenuation) out).getVerticesSoundLevel()) {
+                        levels.put(v.receiverId, v.value);
+                    }
+                    assertTrue(pointNoiseMap.getSceneCache().getRegionCount() <= 2);
+                }
+            }
+            assertEquals(expectedLevels.keySet(), levels.keySet());
+            for(Map.Entry<Long, double[]> entry : expectedLevels.entrySet()) {
+                assertArrayEquals(entry.getValue(), levels.get(entry.getKey()), 1e-6);
+            }
+        }
+    }
+
+    @Test
+    public void testAdaptiveCells() throws Exception {
+        try(Statement st = connection.createStatement()) {
+            PointNoiseMap pointNoiseMap = createLandcoverNoiseMap(st);
+            pointNoiseMap.initialize(connection, new EmptyProgressVisitor());
+            pointNoiseMap.setGridDim(1);
+
+            Map<Long, double[]> expectedLevels = new HashMap<>();
+            IComputeRaysOut referenceOut = pointNoiseMap.evaluateCell(connection, 0, 0, new EmptyProgressVisitor(),
+                    new HashSet<>());
+            for(ComputeRaysOutAttenuation.VerticeSL v : ((ComputeRaysOutAttenuation) referenceOut).getVerticesSoundLevel()) {
+                expectedLevels.put(v.receiverId, v.value);
+            }
+            assertTrue(expectedLevels.size() > 1);
+
+            // Split the area until each cell contains at most a quarter of the receivers
+            QuadTreeCellPartitioner partitioner = new QuadTreeCellPartitioner();
+            partitioner.setMaximumDepth(3);
+            partitioner.setMaximumReceivers(Math.max(1, expectedLevels.size() / 4));
+            List<QuadTreeCellPartitioner.Cell> cells = partitioner.partition(connection, pointNoiseMap);
+            int receiverCount = 0;
+            for(QuadTreeCellPartitioner.Cell cell : cells) {
+                assertTrue(cell.span == 1 || cell.receiverCount <= partitioner.getMaximumReceivers());
+                receiverCount += cell.receiverCount;
+            }
+            assertEquals(expectedLevels.size(), receiverCount);
+            Map<PointNoiseMap.CellIndex, Integer> cellIndices = pointNoiseMap.searchAdaptiveCells(connection, partitioner);
+            assertEquals(cells.size(), cellIndices.size());
+            assertTrue(cellIndices.size() > 1);
+            assertEquals(8, pointNoiseMap.getGridDim());
+
+            // The scene cache is not used for the cells larger than its regions
+            pointNoiseMap.setSceneCacheRegionSize(2);
+            Map<Long, double[]> levels = new HashMap<>();
+            Map<Long, PointNoiseMap.CellIndex> receiverCells = new HashMap<>();
+            Set<Long> receivers = new HashSet<>();
+            pointNoiseMap.evaluateCells(connection, new TreeSet<>(cellIndices.keySet()), new EmptyProgressVisitor(),
+                    receivers, (cellIndex, out) -> {
+                        for(ComputeRaysOutAttenuation.VerticeSL v : ((ComputeRaysOutAttenuation) out).getVerticesSoundLevel()) {
+                            // a receiver is computed in a single cell
+                            assertEquals(cellIndex, receiverCells.computeIfAbsent(v.receiverId, k -> cellIndex));
+                            levels.put(v.receiverId, v.value);
+                        }
+                    });
+            assertEquals(expectedLevels.keySet(), levels.keySet());
+            for(Map.Entry<Long, double[]> entry : expectedLevels.entrySet()) {
+                assertArrayEquals(entry.getValue(), levels.get(entry.getKey()), 1e-6);
+            }
+        }
+    }
+
+    /**
+     * Compare the levels computed with a triangulated DEM and with the same DEM interpolated on its grid
+     */
+    @Test
+    public void testGriddedDem() throws Exception {
+        try(Statement st = connection.createStatement()) {
+            PointNoiseMap pointNoiseMap = createLandcoverNoiseMap(st);
+            // Inclined plane sampled every 10 m on the extent of the scene
+            st.execute("CREATE TABLE DEM(THE_GEOM GEOMETRY) AS SELECT ST_SETSRID(ST_MAKEPOINT(X, Y, 0.02 * (X - MINX) + " +
+                    "0.01 * (Y - MINY)), SRID) FROM (SELECT MINX + I.X * 10 X, MINY + J.X * 10 Y, MINX, MINY, SRID FROM " +
+                    "(SELECT FLOOR(ST_XMIN(EXT)) - 200 MINX, FLOOR(ST_YMIN(EXT)) - 200 MINY, ST_SRID(EXT) SRID, " +
+                    "CEIL((ST_XMAX(EXT) - ST_XMIN(EXT) + 400) / 10) NX, CEIL((ST_YMAX(EXT) - ST_YMIN(EXT) + 400) / 10) NY " +
+                    "FROM (SELECT ST_EXTENT(THE_GEOM) EXT FROM BUILDINGS) E) P, SYSTEM_RANGE(0, 200) I, " +
+                    "SYSTEM_RANGE(0, 200) J WHERE I.X <= NX AND J.X <= NY) G");
+            st.execute("CREATE SPATIAL INDEX ON DEM(THE_GEOM)");
+            pointNoiseMap.setDemTable("DEM");
+            pointNoiseMap.initialize(connection, new EmptyProgressVisitor());
+            pointNoiseMap.setGridDim(2);
+
+            Map<Long, double[]> expectedLevels = computeLevels(pointNoiseMap);
+            assertFalse(expectedLevels.isEmpty());
+
+            pointNoiseMap.setGriddedDem(true);
+            Map<Long, double[]> levels = computeLevels(pointNoiseMap);
+            assertEquals(expectedLevels.keySet(), levels.keySet());
+            for(Map.Entry<Long, double[]> entry : expectedLevels.entrySet()) {
+                assertArrayEquals(entry.getValue(), levels.get(entry.getKey()), 1e-3);
+            }
+        }
+    }
+
+    /**
+     * Compare the levels computed with the soil areas polygons and with the rasterised soil areas
+     */
+    @Test
+    public void testGroundFactorGrid() throws Exception {
+        try(Statement st = connection.createStatement()) {
+            PointNoiseMap pointNoiseMap = createLandcoverNoiseMap(st);
+            pointNoiseMap.initialize(connection, new EmptyProgressVisitor());
+            assertNull(pointNoiseMap.getGroundFactorGrid());
+            pointNoiseMap.setGridDim(1);
+
+            Map<Long, double[]> expectedLevels = new HashMap<>();
+            IComputeRaysOut out = pointNoiseMap.evaluateCell(connection, 0, 0, new EmptyProgressVisitor(), new HashSet<>());
+            for(ComputeRaysOutAttenuation.VerticeSL v : ((ComputeRaysOutAttenuation) out).getVerticesSoundLevel()) {
+                expectedLevels.put(v.receiverId, v.value);
+            }
+            assertFalse(expectedLevels.isEmpty());
+
+            pointNoiseMap.setGroundFactorGridResolution(1);
+            pointNoiseMap.initialize(connection, new EmptyProgressVisitor());
+            assertNotNull(pointNoiseMap.getGroundFactorGrid());
+            pointNoiseMap.setGridDim(1);
+            Map<Long, double[]> levels = new HashMap<>();
+            out = pointNoiseMap.evaluateCell(connection, 0, 0, new EmptyProgressVisitor(), new HashSet<>());
+            for(ComputeRaysOutAttenuation.VerticeSL v : ((ComputeRaysOutAttenuation) out).getVerticesSoundLevel()) {
+                levels.put(v.receiverId, v.value);
+            }
+            assertEquals(expectedLevels.keySet(), levels.keySet());
+            // Rasterisation of the soil areas boundaries
+            for(Map.Entry<Long, double[]> entry : expectedLevels.entrySet()) {
+                assertArrayEquals(entry.getValue(), levels.get(entry.getKey()), 0.5);
+            }
+        }
+    }
+
     @Test
     public void testNoiseMapBuilding() throws Exception {
         try(Statement st = connection.createStatement()) {
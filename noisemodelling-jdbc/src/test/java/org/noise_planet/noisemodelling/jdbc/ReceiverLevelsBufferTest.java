@@ -0,0 +1,54 @@
+package org.noise_planet.noisemodelling.jdbc;
+
+import org.junit.Test;
+import org.noise_planet.noisemodelling.propagation.ComputeRaysOutAttenuation;
+
+import static org.junit.Assert.*;
+
+public class ReceiverLevelsBufferTest {
+
+    @Test
+    public void testBlocksOrder() {
+        ReceiverLevelsBuffer buffer = new ReceiverLevelsBuffer(4);
+        for(int i = 0; i < 10; i++) {
+            buffer.add(i, i * 10, new double[]{i, i + 0.5});
+        }
+        assertEquals(10, buffer.size());
+        // convenience row access
+        ComputeRaysOutAttenuation.VerticeSL row = buffer.pop();
+        assertEquals(0, row.receiverId);
+        assertEquals(0, row.sourceId);
+        assertArrayEquals(new double[]{0, 0.5}, row.value, 0);
+        assertEquals(9, buffer.size());
+        // block access
+        int expectedId = 1;
+        double[] levels = new double[2];
+        ReceiverLevelsBuffer.Block block;
+        while((block = buffer.poll()) != null) {
+            for(int i = 0; i < block.size(); i++) {
+                assertEquals(expectedId, block.getReceiverId(i));
+                assertEquals(expectedId * 10, block.getSourceId(i));
+                block.copyLevels(i, levels);
+                assertArrayEquals(new double[]{expectedId, expectedId + 0.5}, levels, 0);
+                assertEquals(expectedId + 0.5, block.getLevel(i, 1), 0);
+                expectedId++;
+            }
+            buffer.recycle(block);
+        }
+        assertEquals(10, expectedId);
+        assertTrue(buffer.isEmpty());
+        // recycled blocks do not hold previous rows
+        buffer.add(42, -1, new double[]{1, 2});
+        block = buffer.poll();
+        assertEquals(1, block.size());
+        assertEquals(42, block.getReceiverId(0));
+        assertArrayEquals(new double[]{1, 2}, block.getLevels(0), 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBandCountMismatch() {
+        ReceiverLevelsBuffer buffer = new ReceiverLevelsBuffer();
+        buffer.add(1, -1, new double[]{1, 2});
+        buffer.add(2, -1, new double[]{1, 2, 3});
+    }
+}
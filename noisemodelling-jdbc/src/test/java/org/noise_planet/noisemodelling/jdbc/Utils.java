@@ -4,6 +4,7 @@ import org.h2.util.StringUtils;
 import org.h2gis.utilities.SpatialResultSet;
 import org.locationtech.jts.geom.Geometry;
 import org.noise_planet.noisemodelling.pathfinder.*;
+import org.noise_planet.noisemodelling.propagation.AttenuationCnossosEvaluator;
 import org.noise_planet.noisemodelling.propagation.ComputeRaysOutAttenuation;
 import org.noise_planet.noisemodelling.propagation.PropagationProcessPathData;
 
@@ -69,8 +70,8 @@ public class Utils {
         }
 
         @Override
-        public double[] computeAttenuation(PropagationProcessPathData data, long sourceId, double sourceLi, long receiverId, List<PropagationPath> propagationPath) {
-            double[] attenuation = super.computeAttenuation(data, sourceId, sourceLi, receiverId, propagationPath);
+        public double[] computeAttenuation(AttenuationCnossosEvaluator evaluator, long sourceId, double sourceLi, long receiverId, List<PropagationPath> propagationPath) {
+            double[] attenuation = super.computeAttenuation(evaluator, sourceId, sourceLi, receiverId, propagationPath);
             double[] soundLevel = wToDba(multArray(processData.wjSources.get((int)sourceId), dbaToW(attenuation)));
             return soundLevel;
         }
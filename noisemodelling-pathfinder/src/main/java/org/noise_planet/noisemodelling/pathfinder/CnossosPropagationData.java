@@ -56,12 +56,22 @@ public class CnossosPropagationData {
     public static final double DEFAULT_MAXIMUM_REF_DIST = 700;
     public static final double DEFAULT_RECEIVER_DIST = 1.0;
     public static final double DEFAULT_GS = 0.0;
+    public static final double DEFAULT_FAR_FIELD_AGGREGATION_ERROR = 0.5;
+    public static final double DEFAULT_RECEIVER_GROUP_SIZE = 20;
     public static final String YAW_DATABASE_FIELD = "YAW";
     public static final String PITCH_DATABASE_FIELD = "PITCH";
     public static final String ROLL_DATABASE_FIELD = "ROLL";
     public static final String DIRECTIVITY_DATABASE_FIELD = "DIR_ID";
     public static final String GS_DATABASE_FIELD = "GS";
 
+    /** Method used to find the image receivers of the reflection paths */
+    public enum ReflectionMethod {
+        /** Image receivers of all the walls near the receiver, stored in a tree of visibility cones */
+        IMAGE_RECEIVER_TREE,
+        /** Image receivers of the walls facing the image and clipped by the beam of the previous reflection */
+        BEAM_TRACING
+    }
+
     public List<Long> receiversPk = new ArrayList<>();
     public List<Long> sourcesPk = new ArrayList<>();
     /** coordinate of receivers */
@@ -121,6 +131,19 @@ public class CnossosPropagationData {
     /** stop calculation if the sum of further sources contributions are smaller than this value */
     public double noiseFloor = Double.NEGATIVE_INFINITY;
 
+    /** Source points farther than this distance (m) from the receiver are merged into aggregate sources, 0 to disable */
+    public double farFieldAggregationDistance = 0;
+
+    /** Maximum geometric divergence error (dB) of a source point merged into an aggregate source */
+    public double farFieldAggregationError = DEFAULT_FAR_FIELD_AGGREGATION_ERROR;
+
+    /** Method used to find the image receivers of the reflection paths */
+    public ReflectionMethod reflectionMethod = ReflectionMethod.IMAGE_RECEIVER_TREE;
+
+    /** Receivers in the same square tile of this size (m) share the walls, sources and obstacle intersections
+     * queries, 0 to compute each receiver alone */
+    public double receiverGroupSize = DEFAULT_RECEIVER_GROUP_SIZE;
+
 
     /** cellId only used in output data */
     public int cellId;
@@ -249,6 +272,42 @@ public class CnossosPropagationData {
         this.reflexionOrder = reflexionOrder;
     }
 
+    /**
+     * Far field aggregation merges the distant omnidirectional source points of a receiver into aggregate sources,
+     * the paths of an aggregate source are computed once. The error bound covers only the geometric divergence,
+     * the other attenuation terms of a merged point are the ones of the aggregate path.
+     * @param farFieldAggregationDistance Source points farther than this distance (m) from the receiver are merged
+     *                                    into aggregate sources, 0 to disable
+     * @param farFieldAggregationError Maximum geometric divergence error (dB) of a merged source point
+     */
+    public void setFarFieldAggregation(double farFieldAggregationDistance, double farFieldAggregationError) {
+        this.farFieldAggregationDistance = farFieldAggregationDistance;
+        this.farFieldAggregationError = farFieldAggregationError;
+    }
+
+    public ReflectionMethod getReflectionMethod() {
+        return reflectionMethod;
+    }
+
+    /**
+     * @param reflectionMethod Method used to find the image receivers of the reflection paths
+     */
+    public void setReflectionMethod(ReflectionMethod reflectionMethod) {
+        this.reflectionMethod = reflectionMethod;
+    }
+
+    public double getReceiverGroupSize() {
+        return receiverGroupSize;
+    }
+
+    /**
+     * @param receiverGroupSize Receivers in the same square tile of this size (m) share the walls, sources and
+     *                          obstacle intersections queries, 0 to compute each receiver alone
+     */
+    public void setReceiverGroupSize(double receiverGroupSize) {
+        this.receiverGroupSize = receiverGroupSize;
+    }
+
     public void setComputeHorizontalDiffraction(boolean computeHorizontalDiffraction) {
         this.computeHorizontalDiffraction = computeHorizontalDiffraction;
     }
@@ -39,8 +39,6 @@ import org.h2gis.api.ProgressVisitor;
 import org.locationtech.jts.algorithm.*;
 import org.locationtech.jts.geom.*;
 import org.locationtech.jts.geom.impl.CoordinateArraySequence;
-import org.locationtech.jts.geom.prep.PreparedLineString;
-import org.locationtech.jts.index.ItemVisitor;
 import org.locationtech.jts.math.Vector3D;
 import org.locationtech.jts.triangulate.quadedge.Vertex;
 import org.noise_planet.noisemodelling.pathfinder.utils.ProfilerThread;
@@ -49,9 +47,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 import static java.lang.Double.isInfinite;
@@ -86,6 +86,17 @@ public class ComputeCnossosRays {
     /** Number of thread used for ray computation. */
     private int threadCount ;
     private ProfilerThread profilerThread;
+    /** Maximum number of line source points kept in memory for the receivers of the cell */
+    public static final long MAXIMUM_CACHED_LINE_SOURCE_POINTS = 1_000_000;
+    /** Discretisation of the line sources, shared by the receivers. Key is source index and line index */
+    private final Map<Long, LineSourceDiscretisation> lineSourceDiscretisations = new ConcurrentHashMap<>();
+    private final AtomicLong lineSourceCacheBudget = new AtomicLong(MAXIMUM_CACHED_LINE_SOURCE_POINTS);
+    /** Sources with aggregated power, used to skip the negligible sources */
+    private volatile SourcePowerIndex sourcePowerIndex;
+    /** Far field aggregation error of each receiver */
+    private double[] farFieldAggregationErrors;
+    /** Reflecting walls shared by the receivers for the beam tracing of the reflections */
+    private volatile MirrorReceiverBeamIndex.ReflectingWalls reflectingWalls;
 
     /**
      * Create new instance from the propagation data.
@@ -128,24 +139,26 @@ public class ComputeCnossosRays {
      */
     public void run(IComputeRaysOut computeRaysOut) {
         ProgressVisitor visitor = data.cellProg;
+        // Close receivers are computed together by the same thread
+        ReceiverGroups receiverGroups = new ReceiverGroups(data.receivers, data.receiverGroupSize);
+        ReceiverRangeQueue receiverRangeQueue = new ReceiverRangeQueue(receiverGroups.getGroupCount(), threadCount);
+        if (threadCount == 1) {
+            new RangeReceiversComputation(receiverRangeQueue, receiverGroups, this, visitor, computeRaysOut,
+                    data).run();
+            logFarFieldAggregationError();
+            return;
+        }
         ThreadPool threadManager = new ThreadPool(threadCount, threadCount + 1, Long.MAX_VALUE, TimeUnit.SECONDS);
-        int maximumReceiverBatch = (int) Math.ceil(data.receivers.size() / (double) threadCount);
-        int endReceiverRange = 0;
-        //Launch execution of computation by batch
-        while (endReceiverRange < data.receivers.size()) {
+        // Each thread fetch receivers ranges until all receivers are processed, so the threads finish at
+        // the same time even if the computation time of the receivers is not homogeneous
+        int workerCount = Math.min(threadCount, receiverGroups.getGroupCount());
+        for (int idWorker = 0; idWorker < workerCount; idWorker++) {
             //Break if the progress visitor is cancelled
             if (visitor != null && visitor.isCanceled()) {
                 break;
             }
-            int newEndReceiver = Math.min(endReceiverRange + maximumReceiverBatch, data.receivers.size());
-            RangeReceiversComputation batchThread = new RangeReceiversComputation(endReceiverRange, newEndReceiver,
-                    this, visitor, computeRaysOut, data);
-            if (threadCount != 1) {
-                threadManager.executeBlocking(batchThread);
-            } else {
-                batchThread.run();
-            }
-            endReceiverRange = newEndReceiver;
+            threadManager.execute(new RangeReceiversComputation(receiverRangeQueue, receiverGroups, this, visitor,
+                    computeRaysOut, data));
         }
         //Once the execution ends, shutdown the thread manager and await termination
         threadManager.shutdown();
@@ -156,6 +169,33 @@ public class ComputeCnossosRays {
         } catch (InterruptedException ex) {
             LOGGER.error(ex.getLocalizedMessage(), ex);
         }
+        logFarFieldAggregationError();
+    }
+
+    /**
+     * Log the maximal error of the far field aggregation among the receivers
+     */
+    private void logFarFieldAggregationError() {
+        if(data.farFieldAggregationDistance > 0) {
+            double maximalError = 0;
+            for(int receiverIndex = 0; receiverIndex < data.receivers.size(); receiverIndex++) {
+                maximalError = max(maximalError, getFarFieldAggregationError(receiverIndex));
+            }
+            LOGGER.info(String.format(Locale.ROOT, "Far field aggregation of %d receivers, maximal geometric " +
+                    "divergence error of the merged source points %.2f dB", data.receivers.size(), maximalError));
+        }
+    }
+
+    /**
+     * Compute the rays to the given receiver.
+     * @param receiverId       Receiver index, used as identifier in the computation output.
+     * @param receiverPosition Receiver position.
+     * @param dataOut          Computation output.
+     * @param visitor          Progress visitor used for cancellation and progression managing.
+     */
+    public void computeRaysAtPosition(int receiverId, Coordinate receiverPosition, IComputeRaysOut dataOut,
+                                      ProgressVisitor visitor) {
+        computeRaysAtPosition(new ReceiverPointInfo(receiverId, receiverPosition), dataOut, visitor);
     }
 
     /**
@@ -165,14 +205,23 @@ public class ComputeCnossosRays {
      * @param visitor Progress visitor used for cancellation and progression managing.
      */
     private void computeRaysAtPosition(ReceiverPointInfo rcv, IComputeRaysOut dataOut, ProgressVisitor visitor) {
-        MirrorReceiverResultIndex receiverMirrorIndex = null;
+        MirrorReceiverIndex receiverMirrorIndex = null;
 
         if(data.reflexionOrder > 0) {
-            Envelope receiverPropagationEnvelope = new Envelope(rcv.getCoord());
-            receiverPropagationEnvelope.expandBy(data.maxSrcDist);
-            List<ProfileBuilder.Wall> buildWalls = data.profileBuilder.getWallsIn(receiverPropagationEnvelope);
-            receiverMirrorIndex = new MirrorReceiverResultIndex(buildWalls, rcv.position, data.reflexionOrder,
-                    data.maxSrcDist, data.maxRefDist);
+            if(data.reflectionMethod == CnossosPropagationData.ReflectionMethod.BEAM_TRACING) {
+                receiverMirrorIndex = new MirrorReceiverBeamIndex(getReflectingWalls(), rcv.position,
+                        data.reflexionOrder, data.maxSrcDist, data.maxRefDist);
+            } else {
+                Envelope receiverPropagationEnvelope = new Envelope(rcv.getCoord());
+                receiverPropagationEnvelope.expandBy(data.maxSrcDist);
+                List<ProfileBuilder.Wall> buildWalls = rcv.group != null ?
+                        rcv.group.getWallsIn(data, receiverPropagationEnvelope) :
+                        data.profileBuilder.getWallsIn(receiverPropagationEnvelope);
+                receiverMirrorIndex = new MirrorReceiverResultIndex(buildWalls, rcv.position, data.reflexionOrder,
+                        data.maxSrcDist, data.maxRefDist);
+            }
+            dataOut.appendImageReceiver(receiverMirrorIndex.getNumberOfImageReceivers());
+            dataOut.appendRejectedBeam(receiverMirrorIndex.getRejectedBeamCount());
         }
 
         //Compute the source search area
@@ -183,64 +232,51 @@ public class ComputeCnossosRays {
                 rcv.getCoord().y - searchSourceDistance,
                 rcv.getCoord().y + searchSourceDistance
         );
-        Iterator<Integer> regionSourcesLst = data.sourcesIndex.query(receiverSourceRegion);
-        List<SourcePointInfo> sourceList = new ArrayList<>();
-        //Already processed Raw source (line and/or points)
-        HashSet<Integer> processedLineSources = new HashSet<>();
-        // Sum of all sources power using only geometric dispersion with direct field
-        double totalPowerRemaining = 0;
-        while (regionSourcesLst.hasNext()) {
-            Integer srcIndex = regionSourcesLst.next();
-            if (!processedLineSources.contains(srcIndex)) {
-                processedLineSources.add(srcIndex);
-                Geometry source = data.sourceGeometries.get(srcIndex);
-                double[] wj = data.getMaximalSourcePower(srcIndex);
-                if (source instanceof Point) {
-                    Coordinate ptpos = source.getCoordinate();
-                    if (ptpos.distance(rcv.getCoord()) < data.maxSrcDist) {
-                        Orientation orientation = null;
-                        if(data.sourcesPk.size() > srcIndex) {
-                            orientation = data.sourceOrientation.get(data.sourcesPk.get(srcIndex));
-                        }
-                        if(orientation == null) {
-                            orientation = new Orientation(0,0, 0);
-                        }
-                        totalPowerRemaining += insertPtSource((Point) source, rcv.getCoord(), srcIndex, sourceList, wj, 1., orientation);
-                    }
-                } else if (source instanceof LineString) {
-                    totalPowerRemaining += addLineSource((LineString) source, rcv.getCoord(), srcIndex, sourceList, wj);
-                } else if (source instanceof MultiLineString) {
-                    for (int id = 0; id < source.getNumGeometries(); id++) {
-                        Geometry subGeom = source.getGeometryN(id);
-                        if (subGeom instanceof LineString) {
-                            totalPowerRemaining += addLineSource((LineString) subGeom, rcv.getCoord(), srcIndex, sourceList, wj);
-                        }
-                    }
-                } else {
-                    throw new IllegalArgumentException(
-                            String.format("Sound source %s geometry are not supported", source.getGeometryType()));
+        AtomicInteger raysCount = new AtomicInteger(0);
+        // Far field aggregation needs all the source points of the receiver, sources are then enumerated
+        SourcePowerIndex powerIndex = isSourcePruningEnabled() && !(data.farFieldAggregationDistance > 0) ?
+                getSourcePowerIndex() : null;
+        if(powerIndex != null && powerIndex.isBounded()) {
+            computeRaysFromPowerIndex(powerIndex, receiverSourceRegion, rcv, dataOut, visitor, raysCount,
+                    receiverMirrorIndex);
+        } else {
+            Iterator<Integer> regionSourcesLst = rcv.group != null ?
+                    rcv.group.getSourcesIn(data, receiverSourceRegion).iterator() :
+                    data.sourcesIndex.query(receiverSourceRegion);
+            List<SourcePointInfo> sourceList = new ArrayList<>();
+            //Already processed Raw source (line and/or points)
+            HashSet<Integer> processedLineSources = new HashSet<>();
+            // Sum of all sources power using only geometric dispersion with direct field
+            double totalPowerRemaining = 0;
+            while (regionSourcesLst.hasNext()) {
+                Integer srcIndex = regionSourcesLst.next();
+                if (!processedLineSources.contains(srcIndex)) {
+                    processedLineSources.add(srcIndex);
+                    totalPowerRemaining += addSourcePoints(srcIndex, rcv.getCoord(), sourceList);
                 }
             }
-        }
-        // Sort sources by power contribution descending
-        Collections.sort(sourceList);
-        double powerAtSource = 0;
-        // For each Pt Source - Pt Receiver
-        AtomicInteger raysCount = new AtomicInteger(0);
-        for (SourcePointInfo src : sourceList) {
-            double[] power = rcvSrcPropagation(src, src.li, rcv, dataOut, raysCount, receiverMirrorIndex);
-            double global = sumArray(power.length, dbaToW(power));
-            totalPowerRemaining -= src.globalWj;
-            if (power.length > 0) {
-                powerAtSource += global;
-            } else {
-                powerAtSource += src.globalWj;
+            if(data.farFieldAggregationDistance > 0) {
+                sourceList = aggregateFarFieldSources(sourceList, rcv);
             }
-            totalPowerRemaining = max(0, totalPowerRemaining);
-            // If the delta between already received power and maximal potential power received is inferior than than data.maximumError
-            if ((visitor != null && visitor.isCanceled()) || (data.maximumError > 0 &&
-                            wToDba(powerAtSource + totalPowerRemaining) - wToDba(powerAtSource) < data.maximumError)) {
-                break; //Stop looking for more rays
+            // Sort sources by power contribution descending
+            Collections.sort(sourceList);
+            double powerAtSource = 0;
+            // For each Pt Source - Pt Receiver
+            for (SourcePointInfo src : sourceList) {
+                double[] power = rcvSrcPropagation(src, src.li, rcv, dataOut, raysCount, receiverMirrorIndex);
+                double global = sumArray(power.length, dbaToW(power));
+                totalPowerRemaining -= src.globalWj;
+                if (power.length > 0) {
+                    powerAtSource += global;
+                } else {
+                    powerAtSource += src.globalWj;
+                }
+                totalPowerRemaining = max(0, totalPowerRemaining);
+                // If the delta between already received power and maximal potential power received is inferior than than data.maximumError
+                if ((visitor != null && visitor.isCanceled()) || (data.maximumError > 0 &&
+                                wToDba(powerAtSource + totalPowerRemaining) - wToDba(powerAtSource) < data.maximumError)) {
+                    break; //Stop looking for more rays
+                }
             }
         }
 
@@ -253,6 +289,169 @@ public class ComputeCnossosRays {
         dataOut.finalizeReceiver(rcv.getId());
     }
 
+    /**
+     * Split the source into source points and add them to the list
+     * @param srcIndex Source index in {@link CnossosPropagationData#sourceGeometries}
+     * @param receiverCoord Receiver position
+     * @param sourceList Source points
+     * @return Sum of the maximal power received from the added source points
+     */
+    private double addSourcePoints(int srcIndex, Coordinate receiverCoord, List<SourcePointInfo> sourceList) {
+        double totalPowerRemaining = 0;
+        Geometry source = data.sourceGeometries.get(srcIndex);
+        double[] wj = data.getMaximalSourcePower(srcIndex);
+        if (source instanceof Point) {
+            Coordinate ptpos = source.getCoordinate();
+            if (ptpos.distance(receiverCoord) < data.maxSrcDist) {
+                Orientation orientation = null;
+                if(data.sourcesPk.size() > srcIndex) {
+                    orientation = data.sourceOrientation.get(data.sourcesPk.get(srcIndex));
+                }
+                if(orientation == null) {
+                    orientation = new Orientation(0,0, 0);
+                }
+                totalPowerRemaining += insertPtSource((Point) source, receiverCoord, srcIndex, sourceList, wj, 1., orientation);
+            }
+        } else if (source instanceof LineString) {
+            totalPowerRemaining += addLineSource((LineString) source, 0, receiverCoord, srcIndex, sourceList, wj);
+        } else if (source instanceof MultiLineString) {
+            for (int id = 0; id < source.getNumGeometries(); id++) {
+                Geometry subGeom = source.getGeometryN(id);
+                if (subGeom instanceof LineString) {
+                    totalPowerRemaining += addLineSource((LineString) subGeom, id, receiverCoord, srcIndex, sourceList, wj);
+                }
+            }
+        } else {
+            throw new IllegalArgumentException(
+                    String.format("Sound source %s geometry are not supported", source.getGeometryType()));
+        }
+        return totalPowerRemaining;
+    }
+
+    /**
+     * @return True if the computation of a receiver can stop before all the sources are processed
+     */
+    private boolean isSourcePruningEnabled() {
+        return data.maximumError > 0 || data.noiseFloor > Double.NEGATIVE_INFINITY;
+    }
+
+    /**
+     * @return Reflecting walls shared by the receivers, built on first call
+     */
+    MirrorReceiverBeamIndex.ReflectingWalls getReflectingWalls() {
+        MirrorReceiverBeamIndex.ReflectingWalls walls = reflectingWalls;
+        if(walls == null) {
+            synchronized (this) {
+                walls = reflectingWalls;
+                if(walls == null) {
+                    walls = new MirrorReceiverBeamIndex.ReflectingWalls(data.profileBuilder);
+                    reflectingWalls = walls;
+                }
+            }
+        }
+        return walls;
+    }
+
+    /**
+     * @return Source index with the aggregated maximal power of the sources, built on the first call
+     */
+    SourcePowerIndex getSourcePowerIndex() {
+        SourcePowerIndex index = sourcePowerIndex;
+        if(index == null) {
+            synchronized (this) {
+                index = sourcePowerIndex;
+                if(index == null) {
+                    index = new SourcePowerIndex(data);
+                    sourcePowerIndex = index;
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Process the sources by descending maximal received power. Nodes of the source index are expanded only when
+     * their power bound is the highest remaining one, so the nodes left when the stop criteria is reached are never
+     * enumerated.
+     */
+    private void computeRaysFromPowerIndex(SourcePowerIndex powerIndex, Envelope receiverSourceRegion,
+                                           ReceiverPointInfo rcv, IComputeRaysOut dataOut, ProgressVisitor visitor,
+                                           AtomicInteger raysCount, MirrorReceiverIndex receiverMirrorIndex) {
+        PackedBoundingVolumeHierarchy tree = powerIndex.getTree();
+        if(tree.getNodeCount() == 0) {
+            return;
+        }
+        Coordinate rcvCoord = rcv.getCoord();
+        PriorityQueue<PowerBoundEntry> queue = new PriorityQueue<>();
+        // Sum of the bounds of the queue entries
+        double totalPowerRemaining = 0;
+        double powerAtSource = 0;
+        if(tree.nodeIntersects(0, receiverSourceRegion)) {
+            double distance = tree.getNodeDistance(0, rcvCoord.x, rcvCoord.y);
+            if(distance < data.maxSrcDist) {
+                double bound = SourcePowerIndex.getReceivedPowerBound(powerIndex.getNodePower(0), distance);
+                queue.add(new PowerBoundEntry(bound, 0, -1, null));
+                totalPowerRemaining += bound;
+            }
+        }
+        List<SourcePointInfo> sourceList = new ArrayList<>();
+        while (!queue.isEmpty()) {
+            // Stop if the remaining sources cannot change the received level more than data.maximumError or if
+            // they are all below the noise floor
+            if ((visitor != null && visitor.isCanceled()) || (data.maximumError > 0 &&
+                    wToDba(powerAtSource + totalPowerRemaining) - wToDba(powerAtSource) < data.maximumError) ||
+                    wToDba(totalPowerRemaining) < data.noiseFloor) {
+                break;
+            }
+            PowerBoundEntry entry = queue.poll();
+            totalPowerRemaining = max(0, totalPowerRemaining - entry.bound);
+            if(entry.node >= 0) {
+                if(tree.isLeaf(entry.node)) {
+                    int start = tree.getLeafStart(entry.node);
+                    for(int position = start; position < start + tree.getLeafSize(entry.node); position++) {
+                        if(tree.itemIntersects(position, receiverSourceRegion)) {
+                            double distance = tree.getItemDistance(position, rcvCoord.x, rcvCoord.y);
+                            if(distance < data.maxSrcDist) {
+                                double bound = SourcePowerIndex.getReceivedPowerBound(
+                                        powerIndex.getItemPower(position), distance);
+                                queue.add(new PowerBoundEntry(bound, -1, position, null));
+                                totalPowerRemaining += bound;
+                            }
+                        }
+                    }
+                } else {
+                    for(int child : new int[]{tree.getLeftChild(entry.node), tree.getRightChild(entry.node)}) {
+                        if(tree.nodeIntersects(child, receiverSourceRegion)) {
+                            double distance = tree.getNodeDistance(child, rcvCoord.x, rcvCoord.y);
+                            if(distance < data.maxSrcDist) {
+                                double bound = SourcePowerIndex.getReceivedPowerBound(powerIndex.getNodePower(child),
+                                        distance);
+                                queue.add(new PowerBoundEntry(bound, child, -1, null));
+                                totalPowerRemaining += bound;
+                            }
+                        }
+                    }
+                }
+                continue;
+            } else if(entry.itemPosition >= 0) {
+                sourceList.clear();
+                addSourcePoints(tree.getItem(entry.itemPosition), rcvCoord, sourceList);
+                for(SourcePointInfo src : sourceList) {
+                    queue.add(new PowerBoundEntry(src.globalWj, -1, -1, src));
+                    totalPowerRemaining += src.globalWj;
+                }
+                continue;
+            }
+            SourcePointInfo src = entry.sourcePoint;
+            double[] power = rcvSrcPropagation(src, src.li, rcv, dataOut, raysCount, receiverMirrorIndex);
+            if (power.length > 0) {
+                powerAtSource += sumArray(power.length, dbaToW(power));
+            } else {
+                powerAtSource += src.globalWj;
+            }
+        }
+    }
+
     /**
      * Calculation of the propagation between the given source and receiver. The result is registered in the given
      * output.
@@ -264,7 +463,7 @@ public class ComputeCnossosRays {
      */
     private double[] rcvSrcPropagation(SourcePointInfo src, double srcLi, ReceiverPointInfo rcv,
                                        IComputeRaysOut dataOut, AtomicInteger raysCount,
-                                       MirrorReceiverResultIndex receiverMirrorIndex) {
+                                       MirrorReceiverIndex receiverMirrorIndex) {
 
         double propaDistance = src.getCoord().distance(rcv.getCoord());
         if (propaDistance < data.maxSrcDist) {
@@ -273,19 +472,154 @@ public class ComputeCnossosRays {
                     data.computeVerticalDiffraction, data.computeHorizontalDiffraction, data.isBodyBarrier()));
             // Process reflection
             if (data.reflexionOrder > 0) {
-                propagationPaths.addAll(computeReflexion(rcv.getCoord(), src.getCoord(), false,
-                        src.getOrientation(), receiverMirrorIndex));
+                List<PropagationPath> reflexionPaths = computeReflexion(rcv.getCoord(), src.getCoord(), false,
+                        src.getOrientation(), receiverMirrorIndex);
+                dataOut.appendReflexionPath(reflexionPaths.size());
+                propagationPaths.addAll(reflexionPaths);
             }
             if (!propagationPaths.isEmpty()) {
                 if(raysCount != null) {
                     raysCount.addAndGet(propagationPaths.size());
                 }
+                if(src.aggregatedSources != null) {
+                    return addAggregatedPropagationPaths(src, rcv, dataOut, propagationPaths);
+                }
                 return dataOut.addPropagationPaths(src.getId(), srcLi, rcv.getId(), propagationPaths);
             }
         }
         return new double[0];
     }
 
+    /**
+     * Give the paths of an aggregate source to each of its source points. Points of the same source share the output
+     * call, the attenuation output multiply the level by li only if li is greater than 1 so each point is counted
+     * with max(1, li).
+     * @return Energetic sum of the levels returned by the output
+     */
+    private double[] addAggregatedPropagationPaths(SourcePointInfo aggregate, ReceiverPointInfo rcv,
+                                                   IComputeRaysOut dataOut, List<PropagationPath> propagationPaths) {
+        Map<Integer, Double> sourcesLi = new LinkedHashMap<>();
+        for(SourcePointInfo src : aggregate.aggregatedSources) {
+            sourcesLi.merge(src.getId(), max(1, src.li), Double::sum);
+        }
+        double[] levels = new double[0];
+        for(Map.Entry<Integer, Double> sourceLi : sourcesLi.entrySet()) {
+            List<PropagationPath> sourcePaths = new ArrayList<>(propagationPaths.size());
+            for(PropagationPath propagationPath : propagationPaths) {
+                PropagationPath sourcePath = new PropagationPath(propagationPath);
+                sourcePath.setIdSource(sourceLi.getKey());
+                sourcePaths.add(sourcePath);
+            }
+            double[] power = dataOut.addPropagationPaths(sourceLi.getKey(), sourceLi.getValue(), rcv.getId(),
+                    sourcePaths);
+            if(power.length > 0) {
+                levels = levels.length == 0 ? power.clone() : sumDbArray(levels, power);
+            }
+        }
+        return levels;
+    }
+
+    /**
+     * Merge the source points far from the receiver into aggregate sources. The points are gathered in log-polar
+     * cells around the receiver, the step of the log distance and of the angle is ln(10^(error/20)), so the cells are
+     * square-like and grow with the distance.
+     * A point is merged only if the geometric divergence from the aggregate source position differs by less than
+     * {@link CnossosPropagationData#farFieldAggregationError} from the one of its own position. The other attenuation
+     * terms (atmospheric absorption, ground, diffraction) are the ones of the aggregate path and are not bounded.
+     * Directive sources are never merged, the emission of each point depends on its own direction to the receiver.
+     * @param sourceList Source points of the receiver
+     * @param rcv Receiver
+     * @return Source points and aggregate sources
+     */
+    private List<SourcePointInfo> aggregateFarFieldSources(List<SourcePointInfo> sourceList, ReceiverPointInfo rcv) {
+        double maximumRatio = pow(10, data.farFieldAggregationError / 20);
+        if(!(maximumRatio > 1)) {
+            return sourceList;
+        }
+        double logStep = log(maximumRatio);
+        Coordinate rcvCoord = rcv.getCoord();
+        List<SourcePointInfo> aggregatedList = new ArrayList<>(sourceList.size());
+        Map<List<Long>, List<SourcePointInfo>> cells = new HashMap<>();
+        for(SourcePointInfo src : sourceList) {
+            double distance = src.getCoord().distance(rcvCoord);
+            if(distance < data.farFieldAggregationDistance || !data.isOmnidirectional(src.getId())) {
+                aggregatedList.add(src);
+                continue;
+            }
+            // Log-polar cells, the distances of the points of a band differ by less than maximumRatio
+            long band = (long) floor(log(distance / data.farFieldAggregationDistance) / logStep);
+            long sector = (long) floor((atan2(src.getCoord().y - rcvCoord.y, src.getCoord().x - rcvCoord.x) + PI) /
+                    logStep);
+            List<Long> cellKey = Arrays.asList(band, sector);
+            cells.computeIfAbsent(cellKey, k -> new ArrayList<>()).add(src);
+        }
+        double aggregationError = 0;
+        for(List<SourcePointInfo> cell : cells.values()) {
+            if(cell.size() < 2) {
+                aggregatedList.addAll(cell);
+                continue;
+            }
+            // Aggregate position is the power weighted barycenter of the points
+            double weightSum = 0;
+            Coordinate position = new Coordinate(0, 0, 0);
+            SourcePointInfo loudest = cell.get(0);
+            for(SourcePointInfo src : cell) {
+                double weight = src.globalWj > 0 ? src.globalWj : 1;
+                weightSum += weight;
+                position.x += src.getCoord().x * weight;
+                position.y += src.getCoord().y * weight;
+                position.z += src.getCoord().z * weight;
+                if(src.globalWj > loudest.globalWj) {
+                    loudest = src;
+                }
+            }
+            position.x /= weightSum;
+            position.y /= weightSum;
+            position.z /= weightSum;
+            double aggregateDistance = CGAlgorithms3D.distance(rcvCoord, position);
+            List<SourcePointInfo> members = new ArrayList<>(cell.size());
+            double cellError = 0;
+            for(SourcePointInfo src : cell) {
+                double error = abs(20 * log10(CGAlgorithms3D.distance(rcvCoord, src.getCoord()) / aggregateDistance));
+                if(error <= data.farFieldAggregationError) {
+                    members.add(src);
+                    cellError = max(cellError, error);
+                } else {
+                    aggregatedList.add(src);
+                }
+            }
+            if(members.size() < 2) {
+                aggregatedList.addAll(members);
+            } else {
+                aggregatedList.add(new SourcePointInfo(members, position, loudest));
+                aggregationError = max(aggregationError, cellError);
+            }
+        }
+        setFarFieldAggregationError(rcv.getId(), aggregationError);
+        return aggregatedList;
+    }
+
+    private synchronized void setFarFieldAggregationError(int receiverIndex, double error) {
+        if(farFieldAggregationErrors == null) {
+            farFieldAggregationErrors = new double[data.receivers.size()];
+        }
+        if(receiverIndex < farFieldAggregationErrors.length) {
+            farFieldAggregationErrors[receiverIndex] = error;
+        }
+    }
+
+    /**
+     * @param receiverIndex Receiver index in {@link CnossosPropagationData#receivers}
+     * @return Maximal geometric divergence error (dB) of the source points merged by the far field aggregation for
+     * this receiver, 0 if no points have been merged
+     */
+    public synchronized double getFarFieldAggregationError(int receiverIndex) {
+        if(farFieldAggregationErrors == null || receiverIndex >= farFieldAggregationErrors.length) {
+            return 0;
+        }
+        return farFieldAggregationErrors[receiverIndex];
+    }
+
     /**
      * Direct Path computation.
      * @param src Source point.
@@ -295,7 +629,8 @@ public class ComputeCnossosRays {
     public List<PropagationPath> directPath(SourcePointInfo src,
                                             ReceiverPointInfo rcv, boolean verticalDiffraction, boolean horizontalDiffraction, boolean bodyBarrier) {
         return directPath(src.getCoord(), src.getId(), src.getOrientation(), rcv.getCoord(), rcv.getId(),
-                verticalDiffraction, horizontalDiffraction, bodyBarrier);
+                verticalDiffraction, horizontalDiffraction, bodyBarrier, rcv.getQueryContext(data.profileBuilder),
+                rcv.getProfile(src.getCoord(), data));
     }
 
     /**
@@ -307,8 +642,31 @@ public class ComputeCnossosRays {
      * @return Calculated propagation paths.
      */
     public List<PropagationPath> directPath(Coordinate srcCoord, int srcId, Orientation orientation, Coordinate rcvCoord, int rcvId, boolean verticalDiffraction, boolean horizontalDiffraction, boolean bodyBarrier) {
+        return directPath(srcCoord, srcId, orientation, rcvCoord, rcvId, verticalDiffraction, horizontalDiffraction,
+                bodyBarrier, new PathQueryContext(data.profileBuilder));
+    }
+
+    /**
+     * Direct Path computation.
+     * @param srcCoord Source point coordinate.
+     * @param srcId    Source point identifier.
+     * @param rcvCoord Receiver point coordinate.
+     * @param rcvId    Receiver point identifier.
+     * @param queryContext Obstacle intersections shared by the side hulls of the receiver.
+     * @return Calculated propagation paths.
+     */
+    public List<PropagationPath> directPath(Coordinate srcCoord, int srcId, Orientation orientation, Coordinate rcvCoord,
+                                            int rcvId, boolean verticalDiffraction, boolean horizontalDiffraction,
+                                            boolean bodyBarrier, PathQueryContext queryContext) {
+        return directPath(srcCoord, srcId, orientation, rcvCoord, rcvId, verticalDiffraction, horizontalDiffraction,
+                bodyBarrier, queryContext, data.profileBuilder.getProfile(srcCoord, rcvCoord, data.gS));
+    }
+
+    private List<PropagationPath> directPath(Coordinate srcCoord, int srcId, Orientation orientation,
+                                             Coordinate rcvCoord, int rcvId, boolean verticalDiffraction,
+                                             boolean horizontalDiffraction, boolean bodyBarrier,
+                                             PathQueryContext queryContext, ProfileBuilder.CutProfile cutProfile) {
         List<PropagationPath> propagationPaths = new ArrayList<>();
-        ProfileBuilder.CutProfile cutProfile = data.profileBuilder.getProfile(srcCoord, rcvCoord, data.gS);
         cutProfile.setSrcOrientation(orientation);
         //If the field is free, simplify the computation
         if(cutProfile.isFreeField()) {
@@ -322,11 +680,11 @@ public class ComputeCnossosRays {
                 }
             }
             if (horizontalDiffraction) {
-                PropagationPath propagationPath = computeVEdgeDiffraction(srcCoord, rcvCoord, data, LEFT, orientation);
+                PropagationPath propagationPath = computeVEdgeDiffraction(srcCoord, rcvCoord, data, LEFT, orientation, queryContext);
                 if (propagationPath != null && propagationPath.getPointList() != null) {
                     propagationPaths.add(propagationPath);
                 }
-                propagationPath = computeVEdgeDiffraction(srcCoord, rcvCoord, data, RIGHT, orientation);
+                propagationPath = computeVEdgeDiffraction(srcCoord, rcvCoord, data, RIGHT, orientation, queryContext);
                 if (propagationPath != null && propagationPath.getPointList() != null) {
                     propagationPaths.add(propagationPath);
                 }
@@ -601,9 +959,25 @@ public class ComputeCnossosRays {
      */
     public PropagationPath computeVEdgeDiffraction(Coordinate rcvCoord, Coordinate srcCoord,
                                                    CnossosPropagationData data, ComputationSide side, Orientation orientation) {
+        return computeVEdgeDiffraction(rcvCoord, srcCoord, data, side, orientation,
+                new PathQueryContext(data.profileBuilder));
+    }
+
+    /**
+     * Compute horizontal diffraction (diffraction of vertical edge.)
+     * @param rcvCoord Receiver coordinates.
+     * @param srcCoord Source coordinates.
+     * @param data     Propagation data.
+     * @param side     Side to compute.
+     * @param queryContext Obstacle intersections shared by the side hulls of the receiver.
+     * @return The propagation path of the horizontal diffraction.
+     */
+    public PropagationPath computeVEdgeDiffraction(Coordinate rcvCoord, Coordinate srcCoord,
+                                                   CnossosPropagationData data, ComputationSide side,
+                                                   Orientation orientation, PathQueryContext queryContext) {
 
         PropagationPath path = null;
-        List<Coordinate> coordinates = computeSideHull(side != LEFT, new Coordinate(rcvCoord), new Coordinate(srcCoord), data.profileBuilder);
+        List<Coordinate> coordinates = computeSideHull(side != LEFT, new Coordinate(rcvCoord), new Coordinate(srcCoord), queryContext);
         List<Coordinate> coords = toDirectLine(coordinates);
 
         if (!coordinates.isEmpty()) {
@@ -923,6 +1297,19 @@ public class ComputeCnossosRays {
      * @return
      */
     public List<Coordinate> computeSideHull(boolean left, Coordinate p1, Coordinate p2, ProfileBuilder profileBuilder) {
+        return computeSideHull(left, p1, p2, new PathQueryContext(profileBuilder));
+    }
+
+    /**
+     * Compute Side Hull using the obstacle intersections already found for the receiver
+     * @param left If true return path between p1 and p2; else p2 to p1
+     * @param p1   First point
+     * @param p2   Second point
+     * @param queryContext Obstacle intersections of the segments
+     * @return
+     */
+    public List<Coordinate> computeSideHull(boolean left, Coordinate p1, Coordinate p2, PathQueryContext queryContext) {
+        ProfileBuilder profileBuilder = queryContext.getProfileBuilder();
         if (p1.equals(p2)) {
             return new ArrayList<>();
         }
@@ -947,14 +1334,14 @@ public class ComputeCnossosRays {
         Plane cutPlane = computeZeroRadPlane(p1, p2);
 
         BuildingIntersectionRayVisitor buildingIntersectionRayVisitor = new BuildingIntersectionRayVisitor(
-                profileBuilder.getBuildings(), p1, p2, profileBuilder, input, buildingInHull, cutPlane);
+                profileBuilder, input, buildingInHull, cutPlane);
 
-        data.profileBuilder.getBuildingsOnPath(p1, p2, buildingIntersectionRayVisitor);
+        buildingIntersectionRayVisitor.addItems(queryContext.getBuildingsOnSegment(p1, p2));
 
         WallIntersectionRayVisitor wallIntersectionRayVisitor = new WallIntersectionRayVisitor(
-                profileBuilder.getWalls(), p1, p2, profileBuilder, input, wallInHull, cutPlane);
+                profileBuilder, input, wallInHull, cutPlane);
 
-        data.profileBuilder.getWallsOnPath(p1, p2, wallIntersectionRayVisitor);
+        wallIntersectionRayVisitor.addItems(queryContext.getWallsOnSegment(p1, p2));
 
         int k;
         while (convexHullIntersects) {
@@ -1011,12 +1398,14 @@ public class ComputeCnossosRays {
                 if (left && k < indexp2 || !left && k >= indexp2) {
                     if (!freeFieldSegments.contains(freeFieldTestSegment)) {
                         // Check if we still are in the propagation domain
-                        buildingIntersectionRayVisitor = new BuildingIntersectionRayVisitor(profileBuilder.getBuildings(),
-                                coordinates[k], coordinates[k + 1], profileBuilder, input, buildingInHull, cutPlane);
-                        profileBuilder.getBuildingsOnPath(coordinates[k], coordinates[k + 1], buildingIntersectionRayVisitor);
-                        wallIntersectionRayVisitor = new WallIntersectionRayVisitor(profileBuilder.getWalls(),
-                                coordinates[k], coordinates[k + 1], profileBuilder, input, wallInHull, cutPlane);
-                        profileBuilder.getWallsOnPath(coordinates[k], coordinates[k + 1], wallIntersectionRayVisitor);
+                        buildingIntersectionRayVisitor = new BuildingIntersectionRayVisitor(profileBuilder, input,
+                                buildingInHull, cutPlane);
+                        buildingIntersectionRayVisitor.addItems(
+                                queryContext.getBuildingsOnSegment(coordinates[k], coordinates[k + 1]));
+                        wallIntersectionRayVisitor = new WallIntersectionRayVisitor(profileBuilder, input,
+                                wallInHull, cutPlane);
+                        wallIntersectionRayVisitor.addItems(
+                                queryContext.getWallsOnSegment(coordinates[k], coordinates[k + 1]));
                         if (!buildingIntersectionRayVisitor.doContinue() || !wallIntersectionRayVisitor.doContinue()) {
                             convexHullIntersects = true;
                         }
@@ -1060,40 +1449,31 @@ public class ComputeCnossosRays {
     }
 
 
-    private static final class BuildingIntersectionRayVisitor implements ItemVisitor {
-        Set<Integer> itemProcessed = new HashSet<>();
-        List<ProfileBuilder.Building> buildings;
-        Coordinate p1;
-        Coordinate p2;
-        PreparedLineString seg;
+    private static final class BuildingIntersectionRayVisitor {
         Set<Integer> buildingsInIntersection;
         ProfileBuilder profileBuilder;
         Plane cutPlane;
         List<Coordinate> input;
         boolean foundIntersection = false;
 
-        public BuildingIntersectionRayVisitor(List<ProfileBuilder.Building> buildings, Coordinate p1,
-                                              Coordinate p2, ProfileBuilder profileBuilder, List<Coordinate> input, Set<Integer> buildingsInIntersection, Plane cutPlane) {
+        public BuildingIntersectionRayVisitor(ProfileBuilder profileBuilder, List<Coordinate> input,
+                                              Set<Integer> buildingsInIntersection, Plane cutPlane) {
             this.profileBuilder = profileBuilder;
             this.input = input;
             this.buildingsInIntersection = buildingsInIntersection;
             this.cutPlane = cutPlane;
-            this.buildings = buildings;
-            this.p1 = p1;
-            this.p2 = p2;
-            seg = new PreparedLineString(GEOMETRY_FACTORY.createLineString(new Coordinate[]{p1, p2}));
         }
 
-        @Override
-        public void visitItem(Object item) {
-            int id = (Integer) item;
-            if(!itemProcessed.contains(id)) {
-                itemProcessed.add(id);
-                final ProfileBuilder.Building b = buildings.get(id - 1);
-                RectangleLineIntersector rect = new RectangleLineIntersector(b.getGeometry().getEnvelopeInternal());
-                if (rect.intersects(p1, p2) && seg.intersects(b.getGeometry())) {
+        /**
+         * @param ids Buildings crossed by the segment, stop at the first building added to the hull
+         */
+        public void addItems(int[] ids) {
+            try {
+                for (int id : ids) {
                     addItem(id);
                 }
+            } catch (IllegalStateException ex) {
+                //Ignore
             }
         }
 
@@ -1117,41 +1497,31 @@ public class ComputeCnossosRays {
             return !foundIntersection;
         }
     }
-    private static final class WallIntersectionRayVisitor implements ItemVisitor {
-        Set<Integer> itemProcessed = new HashSet<>();
-        List<ProfileBuilder.Wall> walls;
-        Coordinate p1;
-        Coordinate p2;
-        PreparedLineString seg;
+    private static final class WallIntersectionRayVisitor {
         Set<Integer> wallsInIntersection;
         ProfileBuilder profileBuilder;
         Plane cutPlane;
         List<Coordinate> input;
         boolean foundIntersection = false;
 
-        public WallIntersectionRayVisitor(List<ProfileBuilder.Wall> walls, Coordinate p1,
-                                              Coordinate p2, ProfileBuilder profileBuilder, List<Coordinate> input,
+        public WallIntersectionRayVisitor(ProfileBuilder profileBuilder, List<Coordinate> input,
                                           Set<Integer> wallsInIntersection, Plane cutPlane) {
             this.profileBuilder = profileBuilder;
             this.input = input;
             this.wallsInIntersection = wallsInIntersection;
             this.cutPlane = cutPlane;
-            this.walls = walls;
-            this.p1 = p1;
-            this.p2 = p2;
-            seg = new PreparedLineString(GEOMETRY_FACTORY.createLineString(new Coordinate[]{p1, p2}));
         }
 
-        @Override
-        public void visitItem(Object item) {
-            int id = (Integer) item;
-            if(!itemProcessed.contains(id)) {
-                itemProcessed.add(id);
-                final ProfileBuilder.Wall w = walls.get(id-1);
-                RectangleLineIntersector rect = new RectangleLineIntersector(w.getLine().getEnvelopeInternal());
-                if (rect.intersects(p1, p2) && seg.intersects(w.getLine())) {
+        /**
+         * @param ids Walls crossed by the segment, stop at the first wall added to the hull
+         */
+        public void addItems(int[] ids) {
+            try {
+                for (int id : ids) {
                     addItem(id);
                 }
+            } catch (IllegalStateException ex) {
+                //Ignore
             }
         }
 
@@ -1201,7 +1571,7 @@ public class ComputeCnossosRays {
     }
 
     public List<PropagationPath> computeReflexion(Coordinate rcvCoord, Coordinate srcCoord, boolean favorable,
-                                                  Orientation orientation, MirrorReceiverResultIndex receiverMirrorIndex) {
+                                                  Orientation orientation, MirrorReceiverIndex receiverMirrorIndex) {
 
         // Compute receiver mirror
         LineIntersector linters = new RobustLineIntersector();
@@ -1593,55 +1963,97 @@ public class ComputeCnossosRays {
         return sumArray(srcWJ.length, srcWJ);
     }
 
-    private double addLineSource(LineString source, Coordinate receiverCoord, int srcIndex, List<SourcePointInfo> sourceList, double[] wj) {
+    /**
+     * @param srcIndex Source index
+     * @param partIndex Index of the line in the source geometry
+     * @param source Line source
+     * @return The discretisation shared by all the receivers of the cell
+     */
+    LineSourceDiscretisation getLineSourceDiscretisation(int srcIndex, int partIndex, LineString source) {
+        long key = ((long) srcIndex << 32) | (partIndex & 0xFFFFFFFFL);
+        return lineSourceDiscretisations.computeIfAbsent(key, k -> {
+            Orientation sourceOrientation = null;
+            if(data.sourcesPk.size() > srcIndex && data.sourceOrientation.containsKey(data.sourcesPk.get(srcIndex))) {
+                sourceOrientation = data.sourceOrientation.get(data.sourcesPk.get(srcIndex));
+            }
+            return new LineSourceDiscretisation(source, sourceOrientation, lineSourceCacheBudget);
+        });
+    }
+
+    private double addLineSource(LineString source, int partIndex, Coordinate receiverCoord, int srcIndex,
+                                 List<SourcePointInfo> sourceList, double[] wj) {
         double totalPowerRemaining = 0;
-        ArrayList<Coordinate> pts = new ArrayList<>();
         // Compute li to equation 4.1 NMPB 2008 (June 2009)
         Coordinate nearestPoint = JTSUtility.getNearestPoint(receiverCoord, source);
         double segmentSizeConstraint = max(1, receiverCoord.distance3D(nearestPoint) / 2.0);
         if (isNaN(segmentSizeConstraint)) {
             segmentSizeConstraint = max(1, receiverCoord.distance(nearestPoint) / 2.0);
         }
-        double li = splitLineStringIntoPoints(source, segmentSizeConstraint, pts);
-        for (int ptIndex = 0; ptIndex < pts.size(); ptIndex++) {
-            Coordinate pt = pts.get(ptIndex);
+        // Receivers at a similar distance share the same split of the line
+        LineSourceDiscretisation.Level level = getLineSourceDiscretisation(srcIndex, partIndex, source)
+                .getLevel(segmentSizeConstraint);
+        double li = level.getLi();
+        for (int ptIndex = 0; ptIndex < level.size(); ptIndex++) {
+            Coordinate pt = level.getPoint(ptIndex);
             if (pt.distance(receiverCoord) < data.maxSrcDist) {
-                // use the orientation computed from the line source coordinates
-                Vector3D v;
-                if(ptIndex == 0) {
-                    v = new Vector3D(source.getCoordinates()[0], pts.get(ptIndex));
-                } else {
-                    v = new Vector3D(pts.get(ptIndex - 1), pts.get(ptIndex));
+                totalPowerRemaining += insertPtSource(new Coordinate(pt), receiverCoord, srcIndex, sourceList, wj, li,
+                        level.getOrientation(ptIndex));
+            }
+        }
+        return totalPowerRemaining;
+    }
+
+    /**
+     * Share the receivers between the computation threads. The size of the ranges decreases with the number of
+     * remaining receivers (guided scheduling), large ranges limit the contention at the beginning and small ranges
+     * at the end balance the load of the threads.
+     */
+    static final class ReceiverRangeQueue {
+        /** Number of ranges per thread for the remaining receivers */
+        private static final int RANGES_PER_THREAD = 4;
+        private final AtomicInteger nextReceiver = new AtomicInteger(0);
+        private final int receiverCount;
+        private final int threadCount;
+
+        ReceiverRangeQueue(int receiverCount, int threadCount) {
+            this.receiverCount = receiverCount;
+            this.threadCount = Math.max(1, threadCount);
+        }
+
+        /**
+         * @param range Filled with the first receiver (included) and the last receiver (excluded) of the range
+         * @return False if all the receivers have been fetched
+         */
+        boolean nextRange(int[] range) {
+            while (true) {
+                int start = nextReceiver.get();
+                if (start >= receiverCount) {
+                    return false;
                 }
-                Orientation orientation;
-                if(data.sourcesPk.size() > srcIndex && data.sourceOrientation.containsKey(data.sourcesPk.get(srcIndex))) {
-                    // If the line source already provide an orientation then alter the line orientation
-                    orientation = data.sourceOrientation.get(data.sourcesPk.get(srcIndex));
-                    orientation = Orientation.fromVector(
-                            Orientation.rotate(new Orientation(orientation.yaw, orientation.roll, 0),
-                                    v.normalize()), orientation.roll);
-                } else {
-                    orientation = Orientation.fromVector(Orientation.rotate(new Orientation(0,0,0), v.normalize()), 0);
+                int size = Math.max(1, (receiverCount - start) / (threadCount * RANGES_PER_THREAD));
+                int end = Math.min(receiverCount, start + size);
+                if (nextReceiver.compareAndSet(start, end)) {
+                    range[0] = start;
+                    range[1] = end;
+                    return true;
                 }
-                totalPowerRemaining += insertPtSource(pt, receiverCoord, srcIndex, sourceList, wj, li, orientation);
             }
         }
-        return totalPowerRemaining;
     }
 
     private static final class RangeReceiversComputation implements Runnable {
-        private final int startReceiver; // Included
-        private final int endReceiver; // Excluded
+        private final ReceiverRangeQueue receiverRangeQueue;
+        private final ReceiverGroups receiverGroups;
         private final ComputeCnossosRays propagationProcess;
         private final ProgressVisitor visitor;
         private final IComputeRaysOut dataOut;
         private final CnossosPropagationData data;
 
-        public RangeReceiversComputation(int startReceiver, int endReceiver, ComputeCnossosRays propagationProcess,
-                                         ProgressVisitor visitor, IComputeRaysOut dataOut,
-                                         CnossosPropagationData data) {
-            this.startReceiver = startReceiver;
-            this.endReceiver = endReceiver;
+        public RangeReceiversComputation(ReceiverRangeQueue receiverRangeQueue, ReceiverGroups receiverGroups,
+                                         ComputeCnossosRays propagationProcess, ProgressVisitor visitor,
+                                         IComputeRaysOut dataOut, CnossosPropagationData data) {
+            this.receiverRangeQueue = receiverRangeQueue;
+            this.receiverGroups = receiverGroups;
             this.propagationProcess = propagationProcess;
             this.visitor = visitor;
             this.dataOut = dataOut.subProcess();
@@ -1651,31 +2063,12 @@ public class ComputeCnossosRays {
         @Override
         public void run() {
             try {
-                for (int idReceiver = startReceiver; idReceiver < endReceiver; idReceiver++) {
-                    if (visitor != null) {
-                        if (visitor.isCanceled()) {
-                            break;
-                        }
-                    }
-                    ReceiverPointInfo rcv = new ReceiverPointInfo(idReceiver, data.receivers.get(idReceiver));
-
-                    long start = 0;
-                    if(propagationProcess.profilerThread != null) {
-                        start = propagationProcess.profilerThread.timeTracker.get();
-                    }
-
-                    propagationProcess.computeRaysAtPosition(rcv, dataOut, visitor);
-
-                    // Save computation time for this receiver
-                    if(propagationProcess.profilerThread != null &&
-                            propagationProcess.profilerThread.getMetric(ReceiverStatsMetric.class) != null) {
-                        propagationProcess.profilerThread.getMetric(ReceiverStatsMetric.class).onEndComputation(idReceiver,
-                                (int) (propagationProcess.profilerThread.timeTracker.get() - start));
-                    }
-
-                    if (visitor != null) {
-                        visitor.endStep();
+                int[] range = new int[2];
+                while (receiverRangeQueue.nextRange(range)) {
+                    if (visitor != null && visitor.isCanceled()) {
+                        break;
                     }
+                    computeRange(range[0], range[1]);
                 }
             } catch (Exception ex) {
                 LOGGER.error(ex.getLocalizedMessage(), ex);
@@ -1685,12 +2078,168 @@ public class ComputeCnossosRays {
                 throw ex;
             }
         }
+
+        private void computeRange(int startGroup, int endGroup) {
+            for (int idGroup = startGroup; idGroup < endGroup; idGroup++) {
+                int groupSize = receiverGroups.getGroupSize(idGroup);
+                ReceiverGroup group = groupSize > 1 ? new ReceiverGroup(receiverGroups.getEnvelope(idGroup)) : null;
+                ReceiverStack stack = null;
+                for (int idRank = 0; idRank < groupSize; idRank++) {
+                    if (visitor != null && visitor.isCanceled()) {
+                        return;
+                    }
+                    int idReceiver = receiverGroups.getReceiver(idGroup, idRank);
+                    Coordinate position = data.receivers.get(idReceiver);
+                    boolean stackedWithNext = idRank + 1 < groupSize &&
+                            position.equals2D(data.receivers.get(receiverGroups.getReceiver(idGroup, idRank + 1)));
+                    if (stack != null && !stack.position.equals2D(position)) {
+                        stack = null;
+                    }
+                    if (stack == null && stackedWithNext) {
+                        stack = new ReceiverStack(position);
+                    }
+                    if (stack != null) {
+                        stack.keepProfiles = stackedWithNext;
+                    }
+                    computeReceiver(idReceiver, group, stack);
+                }
+            }
+        }
+
+        private void computeReceiver(int idReceiver, ReceiverGroup group, ReceiverStack stack) {
+            ReceiverPointInfo rcv = new ReceiverPointInfo(idReceiver, data.receivers.get(idReceiver));
+            rcv.group = group;
+            rcv.stack = stack;
+
+            long start = 0;
+            if(propagationProcess.profilerThread != null) {
+                start = propagationProcess.profilerThread.timeTracker.get();
+            }
+
+            propagationProcess.computeRaysAtPosition(rcv, dataOut, visitor);
+
+            // Save computation time for this receiver
+            if(propagationProcess.profilerThread != null &&
+                    propagationProcess.profilerThread.getMetric(ReceiverStatsMetric.class) != null) {
+                propagationProcess.profilerThread.getMetric(ReceiverStatsMetric.class).onEndComputation(idReceiver,
+                        (int) (propagationProcess.profilerThread.timeTracker.get() - start));
+            }
+
+            if (visitor != null) {
+                visitor.endStep();
+            }
+        }
+    }
+
+
+    /**
+     * Queries shared by the receivers of a group. The walls and the sources are fetched once with the group
+     * envelope expanded by the maximum propagation distance, then filtered for each receiver with the envelopes
+     * of the spatial indexes so the receivers get the same lists as with their own queries.
+     */
+    private static final class ReceiverGroup {
+        private final Envelope envelope;
+        private List<ProfileBuilder.Wall> walls;
+        private List<Integer> sources;
+        private PathQueryContext queryContext;
+
+        ReceiverGroup(Envelope envelope) {
+            this.envelope = envelope;
+        }
+
+        /**
+         * @param data Propagation data
+         * @param receiverEnvelope Wall search area of a receiver of this group
+         * @return Reflecting walls in the area
+         */
+        List<ProfileBuilder.Wall> getWallsIn(CnossosPropagationData data, Envelope receiverEnvelope) {
+            if(walls == null) {
+                Envelope groupEnvelope = new Envelope(envelope);
+                groupEnvelope.expandBy(data.maxSrcDist);
+                groupEnvelope.expandToInclude(receiverEnvelope);
+                walls = data.profileBuilder.getWallsIn(groupEnvelope);
+            }
+            List<ProfileBuilder.Wall> receiverWalls = new ArrayList<>(walls.size());
+            for(ProfileBuilder.Wall wall : walls) {
+                if(receiverEnvelope.intersects(wall.p0, wall.p1)) {
+                    receiverWalls.add(wall);
+                }
+            }
+            return receiverWalls;
+        }
+
+        /**
+         * @param data Propagation data
+         * @param receiverSourceRegion Source search area of a receiver of this group
+         * @return Source indexes in the area
+         */
+        List<Integer> getSourcesIn(CnossosPropagationData data, Envelope receiverSourceRegion) {
+            if(sources == null) {
+                Envelope groupEnvelope = new Envelope(envelope);
+                groupEnvelope.expandBy(data.maxSrcDist);
+                groupEnvelope.expandToInclude(receiverSourceRegion);
+                sources = new ArrayList<>();
+                data.sourcesIndex.query(groupEnvelope).forEachRemaining(sources::add);
+            }
+            List<Integer> receiverSources = new ArrayList<>(sources.size());
+            for(Integer srcIndex : sources) {
+                if(receiverSourceRegion.intersects(data.sourceGeometries.get(srcIndex).getEnvelopeInternal())) {
+                    receiverSources.add(srcIndex);
+                }
+            }
+            return receiverSources;
+        }
+
+        PathQueryContext getQueryContext(ProfileBuilder profileBuilder) {
+            if(queryContext == null) {
+                queryContext = new PathQueryContext(profileBuilder);
+            }
+            return queryContext;
+        }
     }
 
+    /**
+     * Receivers located above the same plan view position. The cut of the buildings, walls, ground and topography
+     * between a source and the receiver does not depend on the receiver height, the direct profiles of a receiver
+     * are kept and copied for the next receivers of the stack.
+     * At most {@link #MAXIMUM_PROFILES} profiles are kept, the profiles of the next source points are computed for
+     * each receiver. The last receiver of the stack takes the profiles out of the stack.
+     */
+    private static final class ReceiverStack {
+        /** Maximum number of direct profiles kept by a stack */
+        private static final int MAXIMUM_PROFILES = 4096;
+        private final Coordinate position;
+        /** Direct profile of each source point, the source is checked in 3D as the keys are compared in 2D */
+        private final Map<Coordinate, ProfileBuilder.CutProfile> profiles = new HashMap<>();
+        /** False for the last receiver of the stack */
+        private boolean keepProfiles = true;
+
+        ReceiverStack(Coordinate position) {
+            this.position = position;
+        }
+
+        ProfileBuilder.CutProfile getProfile(Coordinate srcCoord, Coordinate rcvCoord, CnossosPropagationData data) {
+            ProfileBuilder.CutProfile stackProfile = keepProfiles ? profiles.get(srcCoord) : profiles.remove(srcCoord);
+            if(stackProfile != null && stackProfile.getSource().getCoordinate().equals3D(srcCoord)) {
+                return new ProfileBuilder.CutProfile(stackProfile, rcvCoord);
+            }
+            ProfileBuilder.CutProfile profile = data.profileBuilder.getProfile(srcCoord, rcvCoord, data.gS);
+            if(keepProfiles && profiles.size() < MAXIMUM_PROFILES) {
+                // Keep an unmodified copy, the profile is modified by the path computation
+                profiles.put(srcCoord, new ProfileBuilder.CutProfile(profile, rcvCoord));
+            }
+            return profile;
+        }
+    }
 
     private static final class ReceiverPointInfo {
         private int sourcePrimaryKey;
         private Coordinate position;
+        private PathQueryContext queryContext;
+        /** Group of close receivers, null if the receiver is computed alone */
+        private ReceiverGroup group;
+        /** Receivers above the same position, null if there is no other receiver at this position */
+        private ReceiverStack stack;
 
         public ReceiverPointInfo(int sourcePrimaryKey, Coordinate position) {
             this.sourcePrimaryKey = sourcePrimaryKey;
@@ -1704,6 +2253,58 @@ public class ComputeCnossosRays {
         public int getId() {
             return sourcePrimaryKey;
         }
+
+        /**
+         * @param srcCoord Source point
+         * @param data Propagation data
+         * @return Direct profile between the source point and this receiver
+         */
+        public ProfileBuilder.CutProfile getProfile(Coordinate srcCoord, CnossosPropagationData data) {
+            if(stack != null) {
+                return stack.getProfile(srcCoord, position, data);
+            }
+            return data.profileBuilder.getProfile(srcCoord, position, data.gS);
+        }
+
+        /**
+         * @param profileBuilder Obstacles
+         * @return Obstacle intersections shared by the side hulls of this receiver and of its group
+         */
+        public PathQueryContext getQueryContext(ProfileBuilder profileBuilder) {
+            if(group != null) {
+                return group.getQueryContext(profileBuilder);
+            }
+            if(queryContext == null) {
+                queryContext = new PathQueryContext(profileBuilder);
+            }
+            return queryContext;
+        }
+    }
+
+    /**
+     * Node, source or source point of the source index with the upper bound of its received power
+     */
+    private static final class PowerBoundEntry implements Comparable<PowerBoundEntry> {
+        private final double bound;
+        private final int node;
+        private final int itemPosition;
+        private final SourcePointInfo sourcePoint;
+
+        PowerBoundEntry(double bound, int node, int itemPosition, SourcePointInfo sourcePoint) {
+            this.bound = bound;
+            this.node = node;
+            this.itemPosition = itemPosition;
+            this.sourcePoint = sourcePoint;
+        }
+
+        @Override
+        public int compareTo(PowerBoundEntry other) {
+            int cmp = -Double.compare(bound, other.bound);
+            if (cmp == 0 && sourcePoint != null && other.sourcePoint != null) {
+                return sourcePoint.compareTo(other.sourcePoint);
+            }
+            return cmp;
+        }
     }
 
     private static final class SourcePointInfo implements Comparable<SourcePointInfo> {
@@ -1712,6 +2313,8 @@ public class ComputeCnossosRays {
         private Coordinate position;
         private final double globalWj;
         private Orientation orientation;
+        /** Source points merged into this aggregate source, null if this is a source point */
+        private final List<SourcePointInfo> aggregatedSources;
 
         /**
          * @param wj               Maximum received power from this source
@@ -1727,6 +2330,27 @@ public class ComputeCnossosRays {
             this.globalWj = sumArray(wj.length, wj);
             this.li = li;
             this.orientation = orientation;
+            this.aggregatedSources = null;
+        }
+
+        /**
+         * Aggregate source
+         * @param aggregatedSources Merged source points
+         * @param position Aggregate source position
+         * @param loudest Point with the highest power, gives the identifier and the orientation of the
+         *                aggregate, the merged points are omnidirectional so the orientation is not used
+         */
+        public SourcePointInfo(List<SourcePointInfo> aggregatedSources, Coordinate position, SourcePointInfo loudest) {
+            this.sourcePrimaryKey = loudest.sourcePrimaryKey;
+            this.position = position;
+            double wj = 0;
+            for(SourcePointInfo src : aggregatedSources) {
+                wj += src.globalWj;
+            }
+            this.globalWj = wj;
+            this.li = loudest.li;
+            this.orientation = loudest.orientation;
+            this.aggregatedSources = aggregatedSources;
         }
 
         public Orientation getOrientation() {
@@ -0,0 +1,360 @@
+/**
+ * NoiseMap is a scientific computation plugin for OrbisGIS developed in order to
+ * evaluate the noise impact on urban mobility plans. This model is
+ * based on the French standard method NMPB2008. It includes traffic-to-noise
+ * sources evaluation and sound propagation processing.
+ * <p>
+ * This version is developed at French IRSTV Institute and at IFSTTAR
+ * (http://www.ifsttar.fr/) as part of the Eval-PDU project, funded by the
+ * French Agence Nationale de la Recherche (ANR) under contract ANR-08-VILL-0005-01.
+ * <p>
+ * Noisemap is distributed under GPL 3 license. Its reference contact is Judicaël
+ * Picaut <judicael.picaut@ifsttar.fr>. It is maintained by Nicolas Fortin
+ * as part of the "Atelier SIG" team of the IRSTV Institute <http://www.irstv.fr/>.
+ * <p>
+ * Copyright (C) 2011 IFSTTAR
+ * Copyright (C) 2011-2012 IRSTV (FR CNRS 2488)
+ * <p>
+ * Noisemap is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * <p>
+ * Noisemap is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * Noisemap. If not, see <http://www.gnu.org/licenses/>.
+ * <p>
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.noise_planet.noisemodelling.pathfinder;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Digital elevation model sampled on a regular grid. Each cell of the grid is split in two triangles along the
+ * diagonal going from the south west corner to the north east corner, so the elevation is the one of the equivalent
+ * triangulated irregular network without computing a triangulation. The profile between two points is computed by
+ * walking through the crossed cells.
+ */
+public class GriddedDem {
+    /** Maximal distance, in cell size unit, between a point and the grid node when building a grid from points */
+    private static final double GRID_NODE_TOLERANCE = 1e-3;
+    private static final double EPSILON = 1e-12;
+
+    private final double originX;
+    private final double originY;
+    private final double cellSizeX;
+    private final double cellSizeY;
+    private final int columns;
+    private final int rows;
+    /** Elevation of the grid nodes, row major from the southern row, NaN if there is no value */
+    private final double[] z;
+
+    /**
+     * @param originX X coordinate of the south west grid node
+     * @param originY Y coordinate of the south west grid node
+     * @param cellSizeX Distance between two columns
+     * @param cellSizeY Distance between two rows
+     * @param columns Number of columns (at least 2)
+     * @param rows Number of rows (at least 2)
+     * @param z Elevation of the grid nodes, row major from the southern row, NaN if there is no value
+     */
+    public GriddedDem(double originX, double originY, double cellSizeX, double cellSizeY, int columns, int rows,
+                      double[] z) {
+        if(columns < 2 || rows < 2) {
+            throw new IllegalArgumentException("The grid must contain at least 2 columns and 2 rows");
+        }
+        if(!(cellSizeX > 0) || !(cellSizeY > 0)) {
+            throw new IllegalArgumentException("Cell size must be strictly positive");
+        }
+        if(z.length != columns * rows) {
+            throw new IllegalArgumentException("Expected " + columns * rows + " elevation values, got " + z.length);
+        }
+        this.originX = originX;
+        this.originY = originY;
+        this.cellSizeX = cellSizeX;
+        this.cellSizeY = cellSizeY;
+        this.columns = columns;
+        this.rows = rows;
+        this.z = z;
+    }
+
+    /**
+     * Build a grid from points located on the nodes of a regular grid, for example the cell centers of an ESRI ascii
+     * grid imported with AscReaderDriver. The profiles are not interpolated across missing nodes, so a grid with holes
+     * (no data values) is rejected and the points must be triangulated instead.
+     * @param points Topographic points
+     * @return The grid or null if the points are not located on all the nodes of a regular grid
+     */
+    public static GriddedDem fromPoints(Collection<Coordinate> points) {
+        if(points.size() < 4) {
+            return null;
+        }
+        double[] xs = new double[points.size()];
+        double[] ys = new double[points.size()];
+        int i = 0;
+        for(Coordinate point : points) {
+            xs[i] = point.x;
+            ys[i] = point.y;
+            i++;
+        }
+        Arrays.sort(xs);
+        Arrays.sort(ys);
+        double cellSizeX = smallestStep(xs);
+        double cellSizeY = smallestStep(ys);
+        if(!(cellSizeX > 0) || !(cellSizeY > 0)) {
+            return null;
+        }
+        double originX = xs[0];
+        double originY = ys[0];
+        long columns = Math.round((xs[xs.length - 1] - originX) / cellSizeX) + 1;
+        long rows = Math.round((ys[ys.length - 1] - originY) / cellSizeY) + 1;
+        if(columns < 2 || rows < 2 || columns * rows > points.size()) {
+            return null;
+        }
+        double[] z = new double[(int) (columns * rows)];
+        Arrays.fill(z, Double.NaN);
+        for(Coordinate point : points) {
+            double gridX = (point.x - originX) / cellSizeX;
+            double gridY = (point.y - originY) / cellSizeY;
+            long column = Math.round(gridX);
+            long row = Math.round(gridY);
+            if(Math.abs(gridX - column) > GRID_NODE_TOLERANCE || Math.abs(gridY - row) > GRID_NODE_TOLERANCE) {
+                return null;
+            }
+            z[(int) (row * columns + column)] = point.z;
+        }
+        for(double nodeZ : z) {
+            if(Double.isNaN(nodeZ)) {
+                return null;
+            }
+        }
+        return new GriddedDem(originX, originY, cellSizeX, cellSizeY, (int) columns, (int) rows, z);
+    }
+
+    /**
+     * @param sortedValues Sorted values
+     * @return Smallest difference between two distinct values
+     */
+    private static double smallestStep(double[] sortedValues) {
+        double extent = sortedValues[sortedValues.length - 1] - sortedValues[0];
+        double minimalStep = Math.max(extent, 1.0) * 1e-9;
+        double step = Double.NaN;
+        for(int i = 1; i < sortedValues.length; i++) {
+            double delta = sortedValues[i] - sortedValues[i - 1];
+            if(delta > minimalStep && !(delta >= step)) {
+                step = delta;
+            }
+        }
+        return step;
+    }
+
+    public double getOriginX() {
+        return originX;
+    }
+
+    public double getOriginY() {
+        return originY;
+    }
+
+    public double getCellSizeX() {
+        return cellSizeX;
+    }
+
+    public double getCellSizeY() {
+        return cellSizeY;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * @return Envelope of the grid nodes
+     */
+    public Envelope getEnvelope() {
+        return new Envelope(originX, originX + (columns - 1) * cellSizeX, originY,
+                originY + (rows - 1) * cellSizeY);
+    }
+
+    /**
+     * @param column Column index
+     * @param row Row index, 0 is the southern row
+     * @return Elevation of the grid node or NaN if there is no value
+     */
+    public double getNodeZ(int column, int row) {
+        return z[row * columns + column];
+    }
+
+    /**
+     * @param x X coordinate
+     * @param y Y coordinate
+     * @return Interpolated elevation or NaN if the point is outside of the grid or near a node without value
+     */
+    public double getZ(double x, double y) {
+        return interpolate((x - originX) / cellSizeX, (y - originY) / cellSizeY);
+    }
+
+    /**
+     * @param gridX X coordinate in cell unit from the origin
+     * @param gridY Y coordinate in cell unit from the origin
+     * @return Elevation interpolated on the triangle of the cell containing the point
+     */
+    private double interpolate(double gridX, double gridY) {
+        if(gridX < -EPSILON || gridY < -EPSILON || gridX > columns - 1 + EPSILON || gridY > rows - 1 + EPSILON) {
+            return Double.NaN;
+        }
+        int column = Math.max(0, Math.min(columns - 2, (int) Math.floor(gridX)));
+        int row = Math.max(0, Math.min(rows - 2, (int) Math.floor(gridY)));
+        double u = gridX - column;
+        double v = gridY - row;
+        int index = row * columns + column;
+        double z00 = z[index];
+        double z11 = z[index + columns + 1];
+        if(u >= v) {
+            // South east triangle
+            double z10 = z[index + 1];
+            return z00 + u * (z10 - z00) + v * (z11 - z10);
+        } else {
+            // North west triangle
+            double z01 = z[index + columns];
+            return z00 + v * (z01 - z00) + u * (z11 - z01);
+        }
+    }
+
+    /**
+     * Compute the intersections of the segment p1-p2 with the sides of the grid triangles. The grid lines and
+     * diagonals crossed by the segment are enumerated in order, so the cost is linear with the number of crossed
+     * cells.
+     * @param p1 First point
+     * @param p2 Second point
+     * @return Intersection points ordered from p1 to p2, p1 and p2 excluded. Points without elevation are skipped.
+     */
+    public List<Coordinate> getProfile(Coordinate p1, Coordinate p2) {
+        double gx0 = (p1.x - originX) / cellSizeX;
+        double gy0 = (p1.y - originY) / cellSizeY;
+        double dgx = (p2.x - originX) / cellSizeX - gx0;
+        double dgy = (p2.y - originY) / cellSizeY - gy0;
+        // Clip the segment with the grid extent
+        double[] range = new double[]{0, 1};
+        if(!clip(gx0, dgx, columns - 1, range) || !clip(gy0, dgy, rows - 1, range)) {
+            return new ArrayList<>();
+        }
+        double tStart = range[0];
+        double tEnd = range[1];
+        LineCrossings xCrossings = new LineCrossings(gx0, dgx, tStart, tEnd);
+        LineCrossings yCrossings = new LineCrossings(gy0, dgy, tStart, tEnd);
+        // Diagonals are the lines gridX - gridY = k
+        LineCrossings diagonalCrossings = new LineCrossings(gx0 - gy0, dgx - dgy, tStart, tEnd);
+        List<Coordinate> outputPoints = new ArrayList<>(xCrossings.count() + yCrossings.count() +
+                diagonalCrossings.count());
+        double lastT = Double.NEGATIVE_INFINITY;
+        double dx = p2.x - p1.x;
+        double dy = p2.y - p1.y;
+        while(true) {
+            double t = Math.min(xCrossings.t, Math.min(yCrossings.t, diagonalCrossings.t));
+            if(t > tEnd + EPSILON) {
+                break;
+            }
+            if(t == xCrossings.t) {
+                xCrossings.next();
+            } else if(t == yCrossings.t) {
+                yCrossings.next();
+            } else {
+                diagonalCrossings.next();
+            }
+            // Skip p1, p2 and the crossings located on a grid node already added
+            if(t <= EPSILON || t >= 1 - EPSILON || t - lastT <= EPSILON) {
+                continue;
+            }
+            lastT = t;
+            double zGround = interpolate(gx0 + t * dgx, gy0 + t * dgy);
+            if(!Double.isNaN(zGround)) {
+                outputPoints.add(new Coordinate(p1.x + t * dx, p1.y + t * dy, zGround));
+            }
+        }
+        return outputPoints;
+    }
+
+    /**
+     * Restrict the range of t so that origin + t * delta is in [0, max]
+     * @return False if the range is empty
+     */
+    private static boolean clip(double origin, double delta, double max, double[] range) {
+        if(delta == 0) {
+            return origin >= -EPSILON && origin <= max + EPSILON;
+        }
+        double t1 = (0 - origin) / delta;
+        double t2 = (max - origin) / delta;
+        range[0] = Math.max(range[0], Math.min(t1, t2));
+        range[1] = Math.min(range[1], Math.max(t1, t2));
+        return range[0] <= range[1];
+    }
+
+    /**
+     * Iterate in increasing t over the values of origin + t * delta that are integers, t in [tStart, tEnd]
+     */
+    private static final class LineCrossings {
+        final double origin;
+        final double delta;
+        final int step;
+        int k;
+        final int kEnd;
+        double t;
+
+        LineCrossings(double origin, double delta, double tStart, double tEnd) {
+            this.origin = origin;
+            this.delta = delta;
+            if(delta == 0) {
+                step = 1;
+                k = 1;
+                kEnd = 0;
+                t = Double.POSITIVE_INFINITY;
+                return;
+            }
+            double start = origin + tStart * delta;
+            double end = origin + tEnd * delta;
+            if(delta > 0) {
+                step = 1;
+                k = (int) Math.ceil(start - EPSILON);
+                kEnd = (int) Math.floor(end + EPSILON);
+            } else {
+                step = -1;
+                k = (int) Math.floor(start + EPSILON);
+                kEnd = (int) Math.ceil(end - EPSILON);
+            }
+            t = computeT();
+        }
+
+        private double computeT() {
+            if((kEnd - k) * step < 0) {
+                return Double.POSITIVE_INFINITY;
+            }
+            return (k - origin) / delta;
+        }
+
+        int count() {
+            return Math.max(0, (kEnd - k) * step + 1);
+        }
+
+        void next() {
+            k += step;
+            t = computeT();
+        }
+    }
+}
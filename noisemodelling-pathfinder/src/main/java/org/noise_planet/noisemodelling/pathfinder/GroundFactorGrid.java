@@ -0,0 +1,259 @@
+/**
+ * NoiseMap is a scientific computation plugin for OrbisGIS developed in order to
+ * evaluate the noise impact on urban mobility plans. This model is
+ * based on the French standard method NMPB2008. It includes traffic-to-noise
+ * sources evaluation and sound propagation processing.
+ * <p>
+ * This version is developed at French IRSTV Institute and at IFSTTAR
+ * (http://www.ifsttar.fr/) as part of the Eval-PDU project, funded by the
+ * French Agence Nationale de la Recherche (ANR) under contract ANR-08-VILL-0005-01.
+ * <p>
+ * Noisemap is distributed under GPL 3 license. Its reference contact is Judicaël
+ * Picaut <judicael.picaut@ifsttar.fr>. It is maintained by Nicolas Fortin
+ * as part of the "Atelier SIG" team of the IRSTV Institute <http://www.irstv.fr/>.
+ * <p>
+ * Copyright (C) 2011 IFSTTAR
+ * Copyright (C) 2011-2012 IRSTV (FR CNRS 2488)
+ * <p>
+ * Noisemap is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * <p>
+ * Noisemap is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * Noisemap. If not, see <http://www.gnu.org/licenses/>.
+ * <p>
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.noise_planet.noisemodelling.pathfinder;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.Polygon;
+
+import java.util.Arrays;
+
+/**
+ * Ground factor (G) of the soil areas rasterised on a regular grid. A cell takes the G of the area that contains its
+ * center. The mean G along a segment is computed by walking through the crossed cells, so the soil polygons do not
+ * have to be split and intersected with each profile.
+ */
+public class GroundFactorGrid {
+    private final double originX;
+    private final double originY;
+    private final double resolution;
+    private final int columns;
+    private final int rows;
+    /** Ground factor of the cells, row major from the southern row, NaN if there is no soil area */
+    private final float[] g;
+
+    /**
+     * @param envelope Extent of the grid
+     * @param resolution Side length of a cell
+     */
+    public GroundFactorGrid(Envelope envelope, double resolution) {
+        if(!(resolution > 0)) {
+            throw new IllegalArgumentException("Resolution must be strictly positive");
+        }
+        this.originX = envelope.getMinX();
+        this.originY = envelope.getMinY();
+        this.resolution = resolution;
+        this.columns = Math.max(1, (int) Math.ceil(envelope.getWidth() / resolution));
+        this.rows = Math.max(1, (int) Math.ceil(envelope.getHeight() / resolution));
+        if((long) columns * rows > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many cells, increase the resolution");
+        }
+        g = new float[columns * rows];
+        Arrays.fill(g, Float.NaN);
+    }
+
+    public double getOriginX() {
+        return originX;
+    }
+
+    public double getOriginY() {
+        return originY;
+    }
+
+    public double getResolution() {
+        return resolution;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * Set the ground factor of the cells which center is inside the area. Rows are filled using a scan line, so the
+     * cost depends on the number of rows and on the number of edges of the area.
+     * @param area Polygon or MultiPolygon
+     * @param groundFactor Ground factor [0-1]
+     */
+    public void addArea(Geometry area, double groundFactor) {
+        for(int idGeom = 0; idGeom < area.getNumGeometries(); idGeom++) {
+            Geometry geometry = area.getGeometryN(idGeom);
+            if(geometry instanceof Polygon) {
+                addPolygon((Polygon) geometry, (float) groundFactor);
+            }
+        }
+    }
+
+    private void addPolygon(Polygon polygon, float groundFactor) {
+        Envelope env = polygon.getEnvelopeInternal();
+        int firstRow = Math.max(0, (int) Math.ceil((env.getMinY() - originY) / resolution - 0.5));
+        int lastRow = Math.min(rows - 1, (int) Math.floor((env.getMaxY() - originY) / resolution - 0.5));
+        if(firstRow > lastRow) {
+            return;
+        }
+        Coordinate[][] rings = new Coordinate[polygon.getNumInteriorRing() + 1][];
+        int edgeCount = 0;
+        rings[0] = polygon.getExteriorRing().getCoordinates();
+        for(int idHole = 0; idHole < polygon.getNumInteriorRing(); idHole++) {
+            LineString hole = polygon.getInteriorRingN(idHole);
+            rings[idHole + 1] = hole.getCoordinates();
+        }
+        for(Coordinate[] ring : rings) {
+            edgeCount += Math.max(0, ring.length - 1);
+        }
+        double[] crossings = new double[edgeCount];
+        for(int row = firstRow; row <= lastRow; row++) {
+            double y = originY + (row + 0.5) * resolution;
+            int crossingCount = 0;
+            for(Coordinate[] ring : rings) {
+                for(int i = 0; i < ring.length - 1; i++) {
+                    Coordinate a = ring[i];
+                    Coordinate b = ring[i + 1];
+                    // Half open rule in order to count a vertex once
+                    if((a.y <= y && y < b.y) || (b.y <= y && y < a.y)) {
+                        crossings[crossingCount++] = a.x + (y - a.y) / (b.y - a.y) * (b.x - a.x);
+                    }
+                }
+            }
+            Arrays.sort(crossings, 0, crossingCount);
+            // Even odd rule, holes are excluded
+            for(int i = 0; i + 1 < crossingCount; i += 2) {
+                int firstColumn = Math.max(0, (int) Math.ceil((crossings[i] - originX) / resolution - 0.5));
+                int lastColumn = Math.min(columns - 1,
+                        (int) Math.ceil((crossings[i + 1] - originX) / resolution - 0.5) - 1);
+                if(firstColumn <= lastColumn) {
+                    Arrays.fill(g, row * columns + firstColumn, row * columns + lastColumn + 1, groundFactor);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param column Column index
+     * @param row Row index, 0 is the southern row
+     * @return Ground factor of the cell or NaN if there is no soil area
+     */
+    public double getCellG(int column, int row) {
+        return g[row * columns + column];
+    }
+
+    /**
+     * @param x X coordinate
+     * @param y Y coordinate
+     * @param defaultG Ground factor outside of the soil areas
+     * @return Ground factor at the location
+     */
+    public double getG(double x, double y, double defaultG) {
+        int column = (int) Math.floor((x - originX) / resolution);
+        int row = (int) Math.floor((y - originY) / resolution);
+        if(column < 0 || row < 0 || column >= columns || row >= rows) {
+            return defaultG;
+        }
+        float value = g[row * columns + column];
+        return Float.isNaN(value) ? defaultG : value;
+    }
+
+    /**
+     * Mean ground factor along the segment p0-p1, weighted by the length of the segment in each crossed cell.
+     * @param p0 First point
+     * @param p1 Second point
+     * @param defaultG Ground factor outside of the soil areas
+     * @return Mean ground factor
+     */
+    public double getMeanG(Coordinate p0, Coordinate p1, double defaultG) {
+        final double dx = p1.x - p0.x;
+        final double dy = p1.y - p0.y;
+        if(dx == 0 && dy == 0) {
+            return getG(p0.x, p0.y, defaultG);
+        }
+        // Clip the segment with the grid extent
+        double tStart = 0;
+        double tEnd = 1;
+        double[] range = new double[]{tStart, tEnd};
+        if(!clip(p0.x - originX, dx, columns * resolution, range) ||
+                !clip(p0.y - originY, dy, rows * resolution, range)) {
+            return defaultG;
+        }
+        tStart = range[0];
+        tEnd = range[1];
+        // Parts of the segment outside of the grid
+        double sum = (tStart + 1 - tEnd) * defaultG;
+        // Start in the cell containing the middle of the first step in order to be robust on cell borders
+        double tMiddle = tStart + Math.min(tEnd - tStart, resolution / Math.max(Math.abs(dx), Math.abs(dy))) / 2;
+        int column = clamp((int) Math.floor((p0.x + tMiddle * dx - originX) / resolution), columns);
+        int row = clamp((int) Math.floor((p0.y + tMiddle * dy - originY) / resolution), rows);
+        final int stepX = dx > 0 ? 1 : -1;
+        final int stepY = dy > 0 ? 1 : -1;
+        final double tDeltaX = dx != 0 ? resolution / Math.abs(dx) : Double.POSITIVE_INFINITY;
+        final double tDeltaY = dy != 0 ? resolution / Math.abs(dy) : Double.POSITIVE_INFINITY;
+        double tMaxX = dx != 0 ? (originX + (column + (dx > 0 ? 1 : 0)) * resolution - p0.x) / dx :
+                Double.POSITIVE_INFINITY;
+        double tMaxY = dy != 0 ? (originY + (row + (dy > 0 ? 1 : 0)) * resolution - p0.y) / dy :
+                Double.POSITIVE_INFINITY;
+        double t = tStart;
+        while(t < tEnd) {
+            double tNext = Math.min(tEnd, Math.min(tMaxX, tMaxY));
+            float value = g[row * columns + column];
+            sum += (tNext - t) * (Float.isNaN(value) ? defaultG : value);
+            t = tNext;
+            if(tMaxX <= tMaxY) {
+                column += stepX;
+                tMaxX += tDeltaX;
+            } else {
+                row += stepY;
+                tMaxY += tDeltaY;
+            }
+            if(column < 0 || row < 0 || column >= columns || row >= rows) {
+                // Rounding error at the exit of the grid
+                sum += Math.max(0, tEnd - t) * defaultG;
+                break;
+            }
+        }
+        return sum;
+    }
+
+    private static int clamp(int index, int size) {
+        return Math.max(0, Math.min(size - 1, index));
+    }
+
+    /**
+     * Restrict the range of t so that origin + t * delta is in [0, max]
+     * @return False if the range is empty
+     */
+    private static boolean clip(double origin, double delta, double max, double[] range) {
+        if(delta == 0) {
+            return origin >= 0 && origin <= max;
+        }
+        double t1 = -origin / delta;
+        double t2 = (max - origin) / delta;
+        range[0] = Math.max(range[0], Math.min(t1, t2));
+        range[1] = Math.min(range[1], Math.max(t1, t2));
+        return range[0] < range[1];
+    }
+}
@@ -22,4 +22,25 @@ public interface IComputeRaysOut {
      * @return
      */
     IComputeRaysOut subProcess();
+
+    /**
+     * Statistics, number of image receivers built for a receiver
+     * @param added Number of image receivers
+     */
+    default void appendImageReceiver(long added) {
+    }
+
+    /**
+     * Statistics, number of candidate reflections not kept while building the image receivers of a receiver
+     * @param added Number of rejected reflections
+     */
+    default void appendRejectedBeam(long added) {
+    }
+
+    /**
+     * Statistics, number of reflection paths found between a source and a receiver
+     * @param added Number of reflection paths
+     */
+    default void appendReflexionPath(long added) {
+    }
 }
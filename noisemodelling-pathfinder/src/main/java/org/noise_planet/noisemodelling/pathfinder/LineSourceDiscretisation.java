@@ -0,0 +1,178 @@
+/**
+ * NoiseMap is a scientific computation plugin for OrbisGIS developed in order to
+ * evaluate the noise impact on urban mobility plans. This model is
+ * based on the French standard method NMPB2008. It includes traffic-to-noise
+ * sources evaluation and sound propagation processing.
+ * <p>
+ * This version is developed at French IRSTV Institute and at IFSTTAR
+ * (http://www.ifsttar.fr/) as part of the Eval-PDU project, funded by the
+ * French Agence Nationale de la Recherche (ANR) under contract ANR-08-VILL-0005-01.
+ * <p>
+ * Noisemap is distributed under GPL 3 license. Its reference contact is Judicaël
+ * Picaut <judicael.picaut@ifsttar.fr>. It is maintained by Nicolas Fortin
+ * as part of the "Atelier SIG" team of the IRSTV Institute <http://www.irstv.fr/>.
+ * <p>
+ * Copyright (C) 2011 IFSTTAR
+ * Copyright (C) 2011-2012 IRSTV (FR CNRS 2488)
+ * <p>
+ * Noisemap is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * <p>
+ * Noisemap is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * Noisemap. If not, see <http://www.gnu.org/licenses/>.
+ * <p>
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.noise_planet.noisemodelling.pathfinder;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.math.Vector3D;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Discretisation of a line source at several resolutions. A resolution is the number of segments of the same length
+ * the line is split into, it depends on the distance between the receiver and the line. The points of each resolution
+ * are computed on the first request and shared by all the receivers of the cell.
+ */
+public class LineSourceDiscretisation {
+    private final LineString source;
+    private final Orientation sourceOrientation;
+    private final AtomicLong cachePointBudget;
+    private final Map<Integer, Level> levels = new ConcurrentHashMap<>();
+
+    /**
+     * @param source Line source
+     * @param sourceOrientation Orientation of the source or null if the source orientation is the line direction
+     * @param cachePointBudget Remaining number of points that can be cached, shared by the line sources. Levels are
+     *                         not kept once the budget is consumed.
+     */
+    public LineSourceDiscretisation(LineString source, Orientation sourceOrientation, AtomicLong cachePointBudget) {
+        this.source = source;
+        this.sourceOrientation = sourceOrientation;
+        this.cachePointBudget = cachePointBudget;
+    }
+
+    public LineString getSource() {
+        return source;
+    }
+
+    /**
+     * @param segmentSizeConstraint Maximal distance between points
+     * @return Number of segments, 0 if the line is modelled as a single point source
+     */
+    public int getSegmentCount(double segmentSizeConstraint) {
+        double geomLength = source.getLength();
+        if(geomLength < segmentSizeConstraint) {
+            return 0;
+        }
+        return (int) Math.min(Integer.MAX_VALUE, Math.ceil(geomLength / segmentSizeConstraint));
+    }
+
+    /**
+     * @param segmentSizeConstraint Maximal distance between points
+     * @return Points of the line, identical to {@link ComputeCnossosRays#splitLineStringIntoPoints}
+     */
+    public Level getLevel(double segmentSizeConstraint) {
+        int segmentCount = getSegmentCount(segmentSizeConstraint);
+        Level level = levels.get(segmentCount);
+        if(level == null) {
+            // Concurrent threads may compute the same level, the results are identical
+            level = computeLevel(segmentSizeConstraint);
+            if(cachePointBudget.addAndGet(-level.size()) >= 0) {
+                Level previous = levels.putIfAbsent(segmentCount, level);
+                if(previous != null) {
+                    cachePointBudget.addAndGet(level.size());
+                    level = previous;
+                }
+            } else {
+                cachePointBudget.addAndGet(level.size());
+            }
+        }
+        return level;
+    }
+
+    /**
+     * @return Number of cached levels
+     */
+    public int getCachedLevelCount() {
+        return levels.size();
+    }
+
+    private Level computeLevel(double segmentSizeConstraint) {
+        List<Coordinate> pts = new ArrayList<>();
+        double li = ComputeCnossosRays.splitLineStringIntoPoints(source, segmentSizeConstraint, pts);
+        Coordinate[] points = pts.toArray(new Coordinate[0]);
+        Orientation[] orientations = new Orientation[points.length];
+        Coordinate first = source.getCoordinateN(0);
+        for(int ptIndex = 0; ptIndex < points.length; ptIndex++) {
+            // use the orientation computed from the line source coordinates
+            Vector3D v = new Vector3D(ptIndex == 0 ? first : points[ptIndex - 1], points[ptIndex]);
+            if(sourceOrientation != null) {
+                // If the line source already provide an orientation then alter the line orientation
+                orientations[ptIndex] = Orientation.fromVector(
+                        Orientation.rotate(new Orientation(sourceOrientation.yaw, sourceOrientation.roll, 0),
+                                v.normalize()), sourceOrientation.roll);
+            } else {
+                orientations[ptIndex] = Orientation.fromVector(Orientation.rotate(new Orientation(0,0,0),
+                        v.normalize()), 0);
+            }
+        }
+        return new Level(points, orientations, li);
+    }
+
+    /**
+     * Points of a line source at a given resolution
+     */
+    public static final class Level {
+        private final Coordinate[] points;
+        private final Orientation[] orientations;
+        private final double li;
+
+        Level(Coordinate[] points, Orientation[] orientations, double li) {
+            this.points = points;
+            this.orientations = orientations;
+            this.li = li;
+        }
+
+        public int size() {
+            return points.length;
+        }
+
+        /**
+         * @param index Point index
+         * @return Middle of the segment, must not be modified
+         */
+        public Coordinate getPoint(int index) {
+            return points[index];
+        }
+
+        /**
+         * @param index Point index
+         * @return Orientation of the segment
+         */
+        public Orientation getOrientation(int index) {
+            return orientations[index];
+        }
+
+        /**
+         * @return Length of the segments
+         */
+        public double getLi() {
+            return li;
+        }
+    }
+}
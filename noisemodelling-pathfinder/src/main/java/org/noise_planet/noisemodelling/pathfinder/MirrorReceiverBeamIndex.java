@@ -0,0 +1,359 @@
+/**
+ * NoiseMap is a scientific computation plugin for OrbisGIS developed in order to
+ * evaluate the noise impact on urban mobility plans. This model is
+ * based on the French standard method NMPB2008. It includes traffic-to-noise
+ * sources evaluation and sound propagation processing.
+ * <p>
+ * This version is developed at French IRSTV Institute and at IFSTTAR
+ * (http://www.ifsttar.fr/) as part of the Eval-PDU project, funded by the
+ * French Agence Nationale de la Recherche (ANR) under contract ANR-08-VILL-0005-01.
+ * <p>
+ * Noisemap is distributed under GPL 3 license. Its reference contact is Judicaël
+ * Picaut <judicael.picaut@ifsttar.fr>. It is maintained by Nicolas Fortin
+ * as part of the "Atelier SIG" team of the IRSTV Institute <http://www.irstv.fr/>.
+ * <p>
+ * Copyright (C) 2011 IFSTTAR
+ * Copyright (C) 2011-2012 IRSTV (FR CNRS 2488)
+ * <p>
+ * Noisemap is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * <p>
+ * Noisemap is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * Noisemap. If not, see <http://www.gnu.org/licenses/>.
+ * <p>
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.noise_planet.noisemodelling.pathfinder;
+
+import org.locationtech.jts.algorithm.locate.SimplePointInAreaLocator;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.LineSegment;
+import org.locationtech.jts.geom.Location;
+import org.locationtech.jts.index.strtree.STRtree;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.noise_planet.noisemodelling.pathfinder.ProfileBuilder.IntersectionType.BUILDING;
+import static org.noise_planet.noisemodelling.pathfinder.ProfileBuilder.IntersectionType.WALL;
+
+/**
+ * Image receivers built by beam tracing. A beam is the region seen from an image receiver through the part of the
+ * wall (aperture) that can reflect the sound toward the previous image. The next reflections are searched only
+ * on the walls facing the image receiver and the walls are clipped by the beam, so the number of image receivers
+ * stay low with higher reflection orders. A source sees an image receiver only if it is located in its beam.
+ */
+public class MirrorReceiverBeamIndex implements MirrorReceiverIndex {
+    /** Tolerance (m) of the beam boundaries, the exact test is done by the image receiver validation */
+    private static final double BEAM_EPSILON = 1e-6;
+    private final STRtree beamTree = new STRtree();
+    private final Coordinate receiverCoordinate;
+    private final double maximumDistanceFromWall;
+    private final double maximumPropagationDistance;
+    private int numberOfImageReceivers = 0;
+    private long rejectedBeamCount = 0;
+
+    /**
+     * Generate the image receivers by beam tracing
+     * @param reflectingWalls Walls shared by the receivers
+     * @param receiverCoordinates Receiver position
+     * @param reflectionOrder Maximum number of reflections
+     * @param maximumPropagationDistance Maximum length of the reflection path
+     * @param maximumDistanceFromWall Maximum distance of the walls from the source-receiver segment
+     */
+    public MirrorReceiverBeamIndex(ReflectingWalls reflectingWalls, Coordinate receiverCoordinates,
+                                   int reflectionOrder, double maximumPropagationDistance,
+                                   double maximumDistanceFromWall) {
+        this.receiverCoordinate = receiverCoordinates;
+        this.maximumDistanceFromWall = maximumDistanceFromWall;
+        this.maximumPropagationDistance = maximumPropagationDistance;
+        List<Beam> parentsToProcess = new ArrayList<>();
+        parentsToProcess.add(null);
+        for(int currentDepth = 0; currentDepth < reflectionOrder && !parentsToProcess.isEmpty(); currentDepth++) {
+            List<Beam> nextParentsToProcess = new ArrayList<>();
+            for(Beam parent : parentsToProcess) {
+                Coordinate receiverImage = parent == null ? receiverCoordinates : parent.image.getReceiverPos();
+                Envelope searchEnvelope;
+                if(parent == null) {
+                    searchEnvelope = new Envelope(receiverCoordinates);
+                    searchEnvelope.expandBy(maximumPropagationDistance);
+                } else {
+                    searchEnvelope = parent.envelope;
+                }
+                for(ProfileBuilder.Wall wall : reflectingWalls.getWallsIn(searchEnvelope)) {
+                    if(parent != null && wall == parent.image.getWall()) {
+                        continue;
+                    }
+                    Beam beam = createBeam(reflectingWalls, parent, receiverImage, wall);
+                    if(beam == null) {
+                        rejectedBeamCount++;
+                        continue;
+                    }
+                    beamTree.insert(beam.envelope, beam);
+                    nextParentsToProcess.add(beam);
+                    numberOfImageReceivers++;
+                    if(numberOfImageReceivers >= MirrorReceiverResultIndex.DEFAULT_MIRROR_RECEIVER_CAPACITY) {
+                        return;
+                    }
+                }
+            }
+            parentsToProcess = nextParentsToProcess;
+        }
+        beamTree.build();
+    }
+
+    /**
+     * @return The beam of the reflection of the receiver image on the wall, null if the wall does not face the
+     * image, is out of the parent beam or is too far
+     */
+    private Beam createBeam(ReflectingWalls reflectingWalls, Beam parent, Coordinate receiverImage,
+                            ProfileBuilder.Wall wall) {
+        if(!reflectingWalls.isFacing(wall, receiverImage)) {
+            return null;
+        }
+        Coordinate[] aperture = new Coordinate[]{wall.p0, wall.p1};
+        if(parent != null) {
+            aperture = parent.clip(wall.p0, wall.p1);
+            if(aperture == null) {
+                return null;
+            }
+        }
+        LineSegment wallSegment = wall.getLineSegment();
+        Coordinate proj = wallSegment.project(receiverImage);
+        Coordinate rcvMirror = new Coordinate(2 * proj.x - receiverImage.x,
+                2 * proj.y - receiverImage.y, receiverImage.z);
+        if(new LineSegment(aperture[0], aperture[1]).distance(rcvMirror) > maximumPropagationDistance) {
+            return null;
+        }
+        Beam beam = new Beam(new MirrorReceiverResult(rcvMirror, parent == null ? null : parent.image, wall,
+                wall.getOriginId(), wall.getType()), aperture[0], aperture[1], maximumPropagationDistance);
+        return beam.isValid() ? beam : null;
+    }
+
+    @Override
+    public int getNumberOfImageReceivers() {
+        return numberOfImageReceivers;
+    }
+
+    @Override
+    public long getRejectedBeamCount() {
+        return rejectedBeamCount;
+    }
+
+    @Override
+    public List<MirrorReceiverResult> findCloseMirrorReceivers(Coordinate sourcePosition) {
+        if(Double.isNaN(sourcePosition.z)) {
+            throw new IllegalArgumentException("Not supported NaN z value");
+        }
+        MirrorReceiverResultIndex.ReceiverImageVisitor receiverImageVisitor =
+                new MirrorReceiverResultIndex.ReceiverImageVisitor(null, sourcePosition, receiverCoordinate,
+                        maximumDistanceFromWall, maximumPropagationDistance);
+        for(Object item : beamTree.query(new Envelope(sourcePosition))) {
+            Beam beam = (Beam) item;
+            if(beam.contains(sourcePosition)) {
+                receiverImageVisitor.visitItem(beam.image);
+            }
+        }
+        return receiverImageVisitor.result;
+    }
+
+    /**
+     * Region seen from an image receiver through the aperture segment, limited by the propagation distance
+     */
+    private static final class Beam {
+        final MirrorReceiverResult image;
+        final Envelope envelope;
+        // Three half planes, origin, unit direction and kept side
+        final double[] originX = new double[3];
+        final double[] originY = new double[3];
+        final double[] directionX = new double[3];
+        final double[] directionY = new double[3];
+        final double[] side = new double[3];
+
+        Beam(MirrorReceiverResult image, Coordinate a0, Coordinate a1, double maximumPropagationDistance) {
+            this.image = image;
+            Coordinate i = image.getReceiverPos();
+            double orientation = Math.signum(cross(a0.x - i.x, a0.y - i.y, a1.x - i.x, a1.y - i.y));
+            // Side of a0 ray containing a1, side of a1 ray containing a0, side of the aperture opposite to the image
+            setHalfPlane(0, i, a0, orientation);
+            setHalfPlane(1, i, a1, -orientation);
+            setHalfPlane(2, a0, a1, -Math.signum(cross(a1.x - a0.x, a1.y - a0.y, i.x - a0.x, i.y - a0.y)));
+            envelope = new Envelope(a0, a1);
+            double a0Angle = Math.atan2(a0.y - i.y, a0.x - i.x);
+            double apertureAngle = normalizeAngle(Math.atan2(a1.y - i.y, a1.x - i.x) - a0Angle);
+            envelope.expandToInclude(i.x + maximumPropagationDistance * Math.cos(a0Angle),
+                    i.y + maximumPropagationDistance * Math.sin(a0Angle));
+            envelope.expandToInclude(i.x + maximumPropagationDistance * Math.cos(a0Angle + apertureAngle),
+                    i.y + maximumPropagationDistance * Math.sin(a0Angle + apertureAngle));
+            // Include the extremities of the arc
+            for(int axis = 0; axis < 4; axis++) {
+                double axisAngle = axis * Math.PI / 2;
+                double relativeAngle = normalizeAngle(axisAngle - a0Angle);
+                if(apertureAngle >= 0 ? relativeAngle >= 0 && relativeAngle <= apertureAngle :
+                        relativeAngle <= 0 && relativeAngle >= apertureAngle) {
+                    envelope.expandToInclude(i.x + maximumPropagationDistance * Math.cos(axisAngle),
+                            i.y + maximumPropagationDistance * Math.sin(axisAngle));
+                }
+            }
+        }
+
+        private void setHalfPlane(int index, Coordinate origin, Coordinate destination, double keptSide) {
+            double length = origin.distance(destination);
+            originX[index] = origin.x;
+            originY[index] = origin.y;
+            directionX[index] = (destination.x - origin.x) / length;
+            directionY[index] = (destination.y - origin.y) / length;
+            side[index] = keptSide;
+        }
+
+        /**
+         * @return False if the image receiver is aligned with the aperture
+         */
+        boolean isValid() {
+            for(int idPlane = 0; idPlane < 3; idPlane++) {
+                if(side[idPlane] == 0 || Double.isNaN(directionX[idPlane])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private double signedDistance(int index, double x, double y) {
+            return side[index] * cross(directionX[index], directionY[index], x - originX[index], y - originY[index]);
+        }
+
+        boolean contains(Coordinate p) {
+            for(int idPlane = 0; idPlane < 3; idPlane++) {
+                if(signedDistance(idPlane, p.x, p.y) < -BEAM_EPSILON) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * @return The part of the segment inside the beam or null if the segment is outside the beam
+         */
+        Coordinate[] clip(Coordinate p0, Coordinate p1) {
+            double t0 = 0;
+            double t1 = 1;
+            for(int idPlane = 0; idPlane < 3; idPlane++) {
+                double d0 = signedDistance(idPlane, p0.x, p0.y) + BEAM_EPSILON;
+                double d1 = signedDistance(idPlane, p1.x, p1.y) + BEAM_EPSILON;
+                if(d0 < 0 && d1 < 0) {
+                    return null;
+                } else if(d0 < 0) {
+                    t0 = Math.max(t0, d0 / (d0 - d1));
+                } else if(d1 < 0) {
+                    t1 = Math.min(t1, d0 / (d0 - d1));
+                }
+            }
+            if(t0 >= t1) {
+                return null;
+            }
+            return new Coordinate[]{interpolate(p0, p1, t0), interpolate(p0, p1, t1)};
+        }
+    }
+
+    private static Coordinate interpolate(Coordinate p0, Coordinate p1, double t) {
+        return new Coordinate(p0.x + (p1.x - p0.x) * t, p0.y + (p1.y - p0.y) * t, p0.z + (p1.z - p0.z) * t);
+    }
+
+    private static double cross(double ax, double ay, double bx, double by) {
+        return ax * by - ay * bx;
+    }
+
+    private static double normalizeAngle(double angle) {
+        while(angle > Math.PI) {
+            angle -= 2 * Math.PI;
+        }
+        while(angle <= -Math.PI) {
+            angle += 2 * Math.PI;
+        }
+        return angle;
+    }
+
+    /**
+     * Reflecting walls of the scene and their reflecting side. Shared by the receivers, the walls sides are
+     * computed once.
+     */
+    public static final class ReflectingWalls {
+        private static final byte LEFT_SIDE = 1;
+        private static final byte RIGHT_SIDE = 2;
+        /** Offset (m) of the point used to find the exterior side of a building wall */
+        private static final double SIDE_TEST_OFFSET = 0.01;
+        private final ProfileBuilder profileBuilder;
+        private final List<ProfileBuilder.Wall> processedWalls;
+        // Reflecting sides of the processed walls
+        private final byte[] sides;
+
+        public ReflectingWalls(ProfileBuilder profileBuilder) {
+            this.profileBuilder = profileBuilder;
+            processedWalls = profileBuilder.getProcessedWalls();
+            sides = new byte[processedWalls.size()];
+            for(int idWall = 0; idWall < processedWalls.size(); idWall++) {
+                ProfileBuilder.Wall wall = processedWalls.get(idWall);
+                if(wall.getType().equals(BUILDING)) {
+                    sides[idWall] = getExteriorSide(wall);
+                } else if(wall.getType().equals(WALL)) {
+                    sides[idWall] = LEFT_SIDE | RIGHT_SIDE;
+                }
+            }
+        }
+
+        private byte getExteriorSide(ProfileBuilder.Wall wall) {
+            double length = wall.p0.distance(wall.p1);
+            if(length == 0) {
+                return 0;
+            }
+            // Point on the left of the middle of the wall
+            Coordinate leftPoint = new Coordinate((wall.p0.x + wall.p1.x) / 2 - (wall.p1.y - wall.p0.y) / length * SIDE_TEST_OFFSET,
+                    (wall.p0.y + wall.p1.y) / 2 + (wall.p1.x - wall.p0.x) / length * SIDE_TEST_OFFSET);
+            Coordinate rightPoint = new Coordinate(wall.p0.x + wall.p1.x - leftPoint.x,
+                    wall.p0.y + wall.p1.y - leftPoint.y);
+            ProfileBuilder.Building building = profileBuilder.getBuilding(wall.getOriginId());
+            boolean leftExterior = SimplePointInAreaLocator.locate(leftPoint, building.getGeometry()) == Location.EXTERIOR;
+            boolean rightExterior = SimplePointInAreaLocator.locate(rightPoint, building.getGeometry()) == Location.EXTERIOR;
+            return (byte)((leftExterior ? LEFT_SIDE : 0) | (rightExterior ? RIGHT_SIDE : 0));
+        }
+
+        /**
+         * @param envelope Search area
+         * @return Building and free walls intersecting the area
+         */
+        public List<ProfileBuilder.Wall> getWallsIn(Envelope envelope) {
+            return profileBuilder.getWallsIn(envelope);
+        }
+
+        /**
+         * @param wall Wall
+         * @param position Position
+         * @return True if the position is on a reflecting side of the wall
+         */
+        public boolean isFacing(ProfileBuilder.Wall wall, Coordinate position) {
+            int wallIndex = wall.getProcessedWallIndex();
+            if(wallIndex < 0 || wallIndex >= sides.length || processedWalls.get(wallIndex) != wall) {
+                // Not a wall of the scene, both sides are reflecting
+                return true;
+            }
+            double orientation = cross(wall.p1.x - wall.p0.x, wall.p1.y - wall.p0.y,
+                    position.x - wall.p0.x, position.y - wall.p0.y);
+            if(orientation > 0) {
+                return (sides[wallIndex] & LEFT_SIDE) != 0;
+            } else if(orientation < 0) {
+                return (sides[wallIndex] & RIGHT_SIDE) != 0;
+            } else {
+                return false;
+            }
+        }
+    }
+}
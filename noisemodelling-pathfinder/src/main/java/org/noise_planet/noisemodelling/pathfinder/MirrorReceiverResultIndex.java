@@ -49,7 +49,7 @@ import org.locationtech.jts.triangulate.quadedge.Vertex;
 import java.util.ArrayList;
 import java.util.List;
 
-public class MirrorReceiverResultIndex {
+public class MirrorReceiverResultIndex implements MirrorReceiverIndex {
     private static final double DEFAULT_CIRCLE_POINT_ANGLE = Math.PI / 24;
     STRtree mirrorReceiverTree;
     public static final int DEFAULT_MIRROR_RECEIVER_CAPACITY = 50000;
@@ -59,6 +59,7 @@ public class MirrorReceiverResultIndex {
     private final double maximumDistanceFromWall;
     private final double maximumPropagationDistance;
     int numberOfImageReceivers = 0;
+    long rejectedImageReceivers = 0;
 
     public static Polygon createWallReflectionVisibilityCone(Coordinate receiverImage, LineSegment wall,
                                                              double maximumPropagationDistance,
@@ -145,6 +146,7 @@ public class MirrorReceiverResultIndex {
                             2 * proj.y - receiverImage.y, receiverImage.z);
                     if(wall.getLineSegment().distance(rcvMirror) > maximumPropagationDistance) {
                         // wall is too far from the receiver image, there is no receiver image
+                        rejectedImageReceivers++;
                         continue;
                     }
                     MirrorReceiverResult receiverResult = new MirrorReceiverResult(rcvMirror, parent, wall,
@@ -173,6 +175,17 @@ public class MirrorReceiverResultIndex {
         this.mirrorReceiverCapacity = mirrorReceiverCapacity;
     }
 
+    @Override
+    public int getNumberOfImageReceivers() {
+        return numberOfImageReceivers;
+    }
+
+    @Override
+    public long getRejectedBeamCount() {
+        return rejectedImageReceivers;
+    }
+
+    @Override
     public List<MirrorReceiverResult> findCloseMirrorReceivers(Coordinate sourcePosition) {
         if(Double.isNaN(sourcePosition.z)) {
             throw new IllegalArgumentException("Not supported NaN z value");
@@ -184,7 +197,7 @@ public class MirrorReceiverResultIndex {
         return receiverImageVisitor.result;
     }
 
-    private static class ReceiverImageVisitor implements ItemVisitor {
+    static class ReceiverImageVisitor implements ItemVisitor {
         List<MirrorReceiverResult> result = new ArrayList<>();
         List<ProfileBuilder.Wall> buildWalls;
         Coordinate source;
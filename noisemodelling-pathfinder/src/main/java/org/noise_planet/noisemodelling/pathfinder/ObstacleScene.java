@@ -0,0 +1,276 @@
+/**
+ * NoiseMap is a scientific computation plugin for OrbisGIS developed in order to
+ * evaluate the noise impact on urban mobility plans. This model is
+ * based on the French standard method NMPB2008. It includes traffic-to-noise
+ * sources evaluation and sound propagation processing.
+ * <p>
+ * This version is developed at French IRSTV Institute and at IFSTTAR
+ * (http://www.ifsttar.fr/) as part of the Eval-PDU project, funded by the
+ * French Agence Nationale de la Recherche (ANR) under contract ANR-08-VILL-0005-01.
+ * <p>
+ * Noisemap is distributed under GPL 3 license. Its reference contact is Judicaël
+ * Picaut <judicael.picaut@ifsttar.fr>. It is maintained by Nicolas Fortin
+ * as part of the "Atelier SIG" team of the IRSTV Institute <http://www.irstv.fr/>.
+ * <p>
+ * Copyright (C) 2011 IFSTTAR
+ * Copyright (C) 2011-2012 IRSTV (FR CNRS 2488)
+ * <p>
+ * Noisemap is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * <p>
+ * Noisemap is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * Noisemap. If not, see <http://www.gnu.org/licenses/>.
+ * <p>
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.noise_planet.noisemodelling.pathfinder;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.noise_planet.noisemodelling.pathfinder.PackedBoundingVolumeHierarchy.ItemIndexVisitor;
+
+import java.util.List;
+
+/**
+ * Read only copy of the building facets and free walls of a {@link ProfileBuilder} stored in primitive arrays
+ * (struct of arrays), indexed by packed bounding volume hierarchies. The ray tests read the flat arrays instead of
+ * following the Wall and Building objects.
+ */
+public class ObstacleScene {
+    private static final int WALL_COORDINATES = 6;
+    private final int wallCount;
+    /** x0, y0, z0, x1, y1, z1 of each wall */
+    private final double[] wallCoordinates;
+    /** Height of the building or of the free wall */
+    private final double[] wallHeights;
+    /** Absorption coefficients of the wall i are in wallAlphas[wallAlphaOffsets[i]..wallAlphaOffsets[i+1][ */
+    private final int[] wallAlphaOffsets;
+    private final float[] wallAlphas;
+    /** Building index or free wall index (0-n) */
+    private final int[] wallOriginIds;
+    private final int[] wallProcessedIndexes;
+    private final byte[] wallTypes;
+    /** Building facets and free walls */
+    private final PackedBoundingVolumeHierarchy wallHierarchy;
+    /** Free walls only */
+    private final PackedBoundingVolumeHierarchy freeWallHierarchy;
+    /** Building footprints, item is the building index (0-n) */
+    private final PackedBoundingVolumeHierarchy buildingHierarchy;
+
+    /**
+     * @param buildings Buildings of the profile builder
+     * @param walls Free walls of the profile builder
+     * @param processedWalls Processed walls of the profile builder, only building facets and free walls are copied
+     */
+    ObstacleScene(List<ProfileBuilder.Building> buildings, List<ProfileBuilder.Wall> walls,
+                  List<ProfileBuilder.Wall> processedWalls) {
+        int count = 0;
+        int alphaCount = 0;
+        int freeWallCount = 0;
+        for (ProfileBuilder.Wall wall : processedWalls) {
+            if(isObstacle(wall)) {
+                count++;
+                alphaCount += wall.getAlphas().size();
+                if(wall.getType() == ProfileBuilder.IntersectionType.WALL) {
+                    freeWallCount++;
+                }
+            }
+        }
+        wallCount = count;
+        wallCoordinates = new double[count * WALL_COORDINATES];
+        wallHeights = new double[count];
+        wallAlphaOffsets = new int[count + 1];
+        wallAlphas = new float[alphaCount];
+        wallOriginIds = new int[count];
+        wallProcessedIndexes = new int[count];
+        wallTypes = new byte[count];
+        double[] wallBounds = new double[count * 4];
+        int[] wallItems = new int[count];
+        double[] freeWallBounds = new double[freeWallCount * 4];
+        int[] freeWallItems = new int[freeWallCount];
+        int idWall = 0;
+        int idFreeWall = 0;
+        int alphaOffset = 0;
+        for (ProfileBuilder.Wall wall : processedWalls) {
+            if(!isObstacle(wall)) {
+                continue;
+            }
+            int c = idWall * WALL_COORDINATES;
+            wallCoordinates[c] = wall.p0.x;
+            wallCoordinates[c + 1] = wall.p0.y;
+            wallCoordinates[c + 2] = wall.p0.z;
+            wallCoordinates[c + 3] = wall.p1.x;
+            wallCoordinates[c + 4] = wall.p1.y;
+            wallCoordinates[c + 5] = wall.p1.z;
+            wallOriginIds[idWall] = wall.getOriginId();
+            wallProcessedIndexes[idWall] = wall.getProcessedWallIndex();
+            wallTypes[idWall] = (byte) wall.getType().ordinal();
+            wallAlphaOffsets[idWall] = alphaOffset;
+            for (Double alpha : wall.getAlphas()) {
+                wallAlphas[alphaOffset++] = alpha.floatValue();
+            }
+            setBounds(wallBounds, idWall, wall.p0, wall.p1);
+            wallItems[idWall] = idWall;
+            if(wall.getType() == ProfileBuilder.IntersectionType.WALL) {
+                wallHeights[idWall] = walls.get(wall.getOriginId()).getHeight();
+                setBounds(freeWallBounds, idFreeWall, wall.p0, wall.p1);
+                freeWallItems[idFreeWall++] = idWall;
+            } else {
+                wallHeights[idWall] = buildings.get(wall.getOriginId()).getHeight();
+            }
+            idWall++;
+        }
+        wallAlphaOffsets[count] = alphaOffset;
+        double[] buildingBounds = new double[buildings.size() * 4];
+        int[] buildingItems = new int[buildings.size()];
+        for (int idBuilding = 0; idBuilding < buildings.size(); idBuilding++) {
+            Envelope env = buildings.get(idBuilding).getGeometry().getEnvelopeInternal();
+            buildingBounds[idBuilding * 4] = env.getMinX();
+            buildingBounds[idBuilding * 4 + 1] = env.getMinY();
+            buildingBounds[idBuilding * 4 + 2] = env.getMaxX();
+            buildingBounds[idBuilding * 4 + 3] = env.getMaxY();
+            buildingItems[idBuilding] = idBuilding;
+        }
+        wallHierarchy = new PackedBoundingVolumeHierarchy(wallBounds, wallItems);
+        freeWallHierarchy = new PackedBoundingVolumeHierarchy(freeWallBounds, freeWallItems);
+        buildingHierarchy = new PackedBoundingVolumeHierarchy(buildingBounds, buildingItems);
+    }
+
+    private static boolean isObstacle(ProfileBuilder.Wall wall) {
+        return wall.getType() == ProfileBuilder.IntersectionType.BUILDING ||
+                wall.getType() == ProfileBuilder.IntersectionType.WALL;
+    }
+
+    private static void setBounds(double[] bounds, int index, Coordinate p0, Coordinate p1) {
+        bounds[index * 4] = Math.min(p0.x, p1.x);
+        bounds[index * 4 + 1] = Math.min(p0.y, p1.y);
+        bounds[index * 4 + 2] = Math.max(p0.x, p1.x);
+        bounds[index * 4 + 3] = Math.max(p0.y, p1.y);
+    }
+
+    /**
+     * @return Number of building facets and free walls
+     */
+    public int getWallCount() {
+        return wallCount;
+    }
+
+    public double getWallX0(int wall) {
+        return wallCoordinates[wall * WALL_COORDINATES];
+    }
+
+    public double getWallY0(int wall) {
+        return wallCoordinates[wall * WALL_COORDINATES + 1];
+    }
+
+    public double getWallZ0(int wall) {
+        return wallCoordinates[wall * WALL_COORDINATES + 2];
+    }
+
+    public double getWallX1(int wall) {
+        return wallCoordinates[wall * WALL_COORDINATES + 3];
+    }
+
+    public double getWallY1(int wall) {
+        return wallCoordinates[wall * WALL_COORDINATES + 4];
+    }
+
+    public double getWallZ1(int wall) {
+        return wallCoordinates[wall * WALL_COORDINATES + 5];
+    }
+
+    /**
+     * @param wall Wall index
+     * @return Height of the building or of the free wall
+     */
+    public double getWallHeight(int wall) {
+        return wallHeights[wall];
+    }
+
+    /**
+     * @param wall Wall index
+     * @return Number of absorption coefficients of the wall
+     */
+    public int getWallAlphaCount(int wall) {
+        return wallAlphaOffsets[wall + 1] - wallAlphaOffsets[wall];
+    }
+
+    /**
+     * @param wall Wall index
+     * @param band Frequency band index
+     * @return Absorption coefficient
+     */
+    public float getWallAlpha(int wall, int band) {
+        return wallAlphas[wallAlphaOffsets[wall] + band];
+    }
+
+    /**
+     * @param wall Wall index
+     * @return Building index or free wall index (0-n)
+     */
+    public int getWallOriginId(int wall) {
+        return wallOriginIds[wall];
+    }
+
+    /**
+     * @param wall Wall index
+     * @return Index of the wall in {@link ProfileBuilder#getProcessedWalls()}
+     */
+    public int getWallProcessedIndex(int wall) {
+        return wallProcessedIndexes[wall];
+    }
+
+    public ProfileBuilder.IntersectionType getWallType(int wall) {
+        return ProfileBuilder.IntersectionType.values()[wallTypes[wall]];
+    }
+
+    /**
+     * Visit the building facets and free walls that have an envelope intersecting the given envelope
+     * @param env Query envelope
+     * @param visitor Visitor of wall indexes
+     */
+    public void queryWalls(Envelope env, ItemIndexVisitor visitor) {
+        wallHierarchy.query(env, visitor);
+    }
+
+    /**
+     * Visit the building facets and free walls that have an envelope crossed by the segment p0-p1
+     * @param visitor Visitor of wall indexes
+     */
+    public void queryWallsOnSegment(Coordinate p0, Coordinate p1, ItemIndexVisitor visitor) {
+        wallHierarchy.querySegment(p0.x, p0.y, p1.x, p1.y, visitor);
+    }
+
+    /**
+     * Visit the free walls that have an envelope crossed by the segment p0-p1
+     * @param visitor Visitor of wall indexes
+     */
+    public void queryFreeWallsOnSegment(Coordinate p0, Coordinate p1, ItemIndexVisitor visitor) {
+        freeWallHierarchy.querySegment(p0.x, p0.y, p1.x, p1.y, visitor);
+    }
+
+    /**
+     * Visit the buildings that have an envelope intersecting the given envelope
+     * @param env Query envelope
+     * @param visitor Visitor of building indexes (0-n)
+     */
+    public void queryBuildings(Envelope env, ItemIndexVisitor visitor) {
+        buildingHierarchy.query(env, visitor);
+    }
+
+    /**
+     * Visit the buildings that have an envelope crossed by the segment p0-p1
+     * @param visitor Visitor of building indexes (0-n)
+     */
+    public void queryBuildingsOnSegment(Coordinate p0, Coordinate p1, ItemIndexVisitor visitor) {
+        buildingHierarchy.querySegment(p0.x, p0.y, p1.x, p1.y, visitor);
+    }
+}
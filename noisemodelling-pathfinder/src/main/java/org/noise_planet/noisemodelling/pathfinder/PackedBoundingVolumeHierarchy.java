@@ -0,0 +1,439 @@
+/**
+ * NoiseMap is a scientific computation plugin for OrbisGIS developed in order to
+ * evaluate the noise impact on urban mobility plans. This model is
+ * based on the French standard method NMPB2008. It includes traffic-to-noise
+ * sources evaluation and sound propagation processing.
+ * <p>
+ * This version is developed at French IRSTV Institute and at IFSTTAR
+ * (http://www.ifsttar.fr/) as part of the Eval-PDU project, funded by the
+ * French Agence Nationale de la Recherche (ANR) under contract ANR-08-VILL-0005-01.
+ * <p>
+ * Noisemap is distributed under GPL 3 license. Its reference contact is Judicaël
+ * Picaut <judicael.picaut@ifsttar.fr>. It is maintained by Nicolas Fortin
+ * as part of the "Atelier SIG" team of the IRSTV Institute <http://www.irstv.fr/>.
+ * <p>
+ * Copyright (C) 2011 IFSTTAR
+ * Copyright (C) 2011-2012 IRSTV (FR CNRS 2488)
+ * <p>
+ * Noisemap is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * <p>
+ * Noisemap is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * Noisemap. If not, see <http://www.gnu.org/licenses/>.
+ * <p>
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.noise_planet.noisemodelling.pathfinder;
+
+import org.locationtech.jts.geom.Envelope;
+
+import java.util.Arrays;
+
+/**
+ * Static bounding volume hierarchy stored in flat primitive arrays. Nodes are laid out in depth first order, the
+ * left child of an inner node is the following node, so a query walks the arrays forward most of the time. Items of
+ * a leaf are contiguous and their bounds are copied next to each other.
+ */
+public class PackedBoundingVolumeHierarchy {
+    public static final int DEFAULT_LEAF_CAPACITY = 4;
+    /** Tolerance (m) of the segment against box test, candidates are filtered by the caller */
+    private static final double SEGMENT_EPSILON = 1e-7;
+
+    /** minX, minY, maxX, maxY of each node */
+    private final double[] nodeBounds;
+    /** Leaf: first item position. Inner node: index of the right child */
+    private final int[] nodeOffsets;
+    /** Leaf: number of items. Inner node: 0 */
+    private final int[] nodeCounts;
+    private final int nodeCount;
+    /** Item identifiers in leaf order */
+    private final int[] items;
+    /** minX, minY, maxX, maxY of each item in leaf order */
+    private final double[] itemBounds;
+    private final int leafCapacity;
+
+    /**
+     * Visit the items found by a query
+     */
+    public interface ItemIndexVisitor {
+        /**
+         * @param item Item identifier
+         * @return False to stop the query
+         */
+        boolean visit(int item);
+    }
+
+    /**
+     * @param bounds minX, minY, maxX, maxY of the items
+     * @param ids Identifier of each item, same order than bounds
+     */
+    public PackedBoundingVolumeHierarchy(double[] bounds, int[] ids) {
+        this(bounds, ids, ids.length, DEFAULT_LEAF_CAPACITY);
+    }
+
+    /**
+     * @param bounds minX, minY, maxX, maxY of the items
+     * @param ids Identifier of each item, same order than bounds
+     * @param itemCount Number of items to read in bounds and ids
+     * @param leafCapacity Maximum number of items of a leaf
+     */
+    public PackedBoundingVolumeHierarchy(double[] bounds, int[] ids, int itemCount, int leafCapacity) {
+        if(leafCapacity < 1) {
+            throw new IllegalArgumentException("Leaf capacity must be strictly positive");
+        }
+        this.leafCapacity = leafCapacity;
+        int[] order = new int[itemCount];
+        for(int i = 0; i < itemCount; i++) {
+            order[i] = i;
+        }
+        // A binary tree with leaves of at least one item has less than 2 * itemCount nodes
+        int maxNodes = Math.max(1, 2 * itemCount);
+        double[] buildBounds = new double[maxNodes * 4];
+        int[] buildOffsets = new int[maxNodes];
+        int[] buildCounts = new int[maxNodes];
+        double[] centers = new double[itemCount * 2];
+        for(int i = 0; i < itemCount; i++) {
+            centers[i * 2] = (bounds[i * 4] + bounds[i * 4 + 2]) / 2;
+            centers[i * 2 + 1] = (bounds[i * 4 + 1] + bounds[i * 4 + 3]) / 2;
+        }
+        Builder builder = new Builder(bounds, centers, order, buildBounds, buildOffsets, buildCounts);
+        if(itemCount > 0) {
+            builder.build(0, itemCount);
+        }
+        nodeCount = builder.nodeCount;
+        nodeBounds = Arrays.copyOf(buildBounds, nodeCount * 4);
+        nodeOffsets = Arrays.copyOf(buildOffsets, nodeCount);
+        nodeCounts = Arrays.copyOf(buildCounts, nodeCount);
+        items = new int[itemCount];
+        itemBounds = new double[itemCount * 4];
+        for(int i = 0; i < itemCount; i++) {
+            items[i] = ids[order[i]];
+            System.arraycopy(bounds, order[i] * 4, itemBounds, i * 4, 4);
+        }
+    }
+
+    private final class Builder {
+        final double[] bounds;
+        final double[] centers;
+        final int[] order;
+        final double[] nodeBounds;
+        final int[] nodeOffsets;
+        final int[] nodeCounts;
+        int nodeCount = 0;
+
+        Builder(double[] bounds, double[] centers, int[] order, double[] nodeBounds, int[] nodeOffsets,
+                int[] nodeCounts) {
+            this.bounds = bounds;
+            this.centers = centers;
+            this.order = order;
+            this.nodeBounds = nodeBounds;
+            this.nodeOffsets = nodeOffsets;
+            this.nodeCounts = nodeCounts;
+        }
+
+        /**
+         * Create the node of the items order[start..end[ and its children
+         */
+        void build(int start, int end) {
+            int node = nodeCount++;
+            double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+            double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+            double minCX = Double.POSITIVE_INFINITY, minCY = Double.POSITIVE_INFINITY;
+            double maxCX = Double.NEGATIVE_INFINITY, maxCY = Double.NEGATIVE_INFINITY;
+            for(int i = start; i < end; i++) {
+                int item = order[i];
+                minX = Math.min(minX, bounds[item * 4]);
+                minY = Math.min(minY, bounds[item * 4 + 1]);
+                maxX = Math.max(maxX, bounds[item * 4 + 2]);
+                maxY = Math.max(maxY, bounds[item * 4 + 3]);
+                minCX = Math.min(minCX, centers[item * 2]);
+                minCY = Math.min(minCY, centers[item * 2 + 1]);
+                maxCX = Math.max(maxCX, centers[item * 2]);
+                maxCY = Math.max(maxCY, centers[item * 2 + 1]);
+            }
+            nodeBounds[node * 4] = minX;
+            nodeBounds[node * 4 + 1] = minY;
+            nodeBounds[node * 4 + 2] = maxX;
+            nodeBounds[node * 4 + 3] = maxY;
+            if(end - start <= leafCapacity) {
+                nodeOffsets[node] = start;
+                nodeCounts[node] = end - start;
+                return;
+            }
+            // Split at the median of the item centers along the largest axis
+            int axis = maxCX - minCX >= maxCY - minCY ? 0 : 1;
+            int middle = (start + end) >>> 1;
+            select(start, end - 1, middle, axis);
+            build(start, middle);
+            nodeOffsets[node] = nodeCount;
+            nodeCounts[node] = 0;
+            build(middle, end);
+        }
+
+        /**
+         * Partial sort of order[left..right] so that the k-th item is at its place (quick select)
+         */
+        void select(int left, int right, int k, int axis) {
+            while(right > left) {
+                double pivot = centers[order[(left + right) >>> 1] * 2 + axis];
+                int i = left;
+                int j = right;
+                while(i <= j) {
+                    while(centers[order[i] * 2 + axis] < pivot) {
+                        i++;
+                    }
+                    while(centers[order[j] * 2 + axis] > pivot) {
+                        j--;
+                    }
+                    if(i <= j) {
+                        int tmp = order[i];
+                        order[i] = order[j];
+                        order[j] = tmp;
+                        i++;
+                        j--;
+                    }
+                }
+                if(k <= j) {
+                    right = j;
+                } else if(k >= i) {
+                    left = i;
+                } else {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return Number of items
+     */
+    public int size() {
+        return items.length;
+    }
+
+    /**
+     * @return Number of nodes
+     */
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * @param node Node index, the root is 0
+     * @return True if the node contains items, false if it has two children
+     */
+    public boolean isLeaf(int node) {
+        return nodeCounts[node] > 0;
+    }
+
+    /**
+     * @param node Inner node index
+     * @return Index of the first child node
+     */
+    public int getLeftChild(int node) {
+        return node + 1;
+    }
+
+    /**
+     * @param node Inner node index
+     * @return Index of the second child node
+     */
+    public int getRightChild(int node) {
+        return nodeOffsets[node];
+    }
+
+    /**
+     * @param node Leaf index
+     * @return Position of the first item of the leaf, items of the leaf are contiguous
+     */
+    public int getLeafStart(int node) {
+        return nodeOffsets[node];
+    }
+
+    /**
+     * @param node Leaf index
+     * @return Number of items of the leaf
+     */
+    public int getLeafSize(int node) {
+        return nodeCounts[node];
+    }
+
+    /**
+     * @param position Item position in leaf order
+     * @return Item identifier
+     */
+    public int getItem(int position) {
+        return items[position];
+    }
+
+    /**
+     * @return Planar distance between the point and the bounds of the node, 0 if the point is inside
+     */
+    public double getNodeDistance(int node, double x, double y) {
+        return boxDistance(nodeBounds, node * 4, x, y);
+    }
+
+    /**
+     * @return Planar distance between the point and the bounds of the item, 0 if the point is inside
+     */
+    public double getItemDistance(int position, double x, double y) {
+        return boxDistance(itemBounds, position * 4, x, y);
+    }
+
+    /**
+     * @return True if the bounds of the node intersect the envelope
+     */
+    public boolean nodeIntersects(int node, Envelope env) {
+        int b = node * 4;
+        return nodeBounds[b] <= env.getMaxX() && nodeBounds[b + 2] >= env.getMinX() &&
+                nodeBounds[b + 1] <= env.getMaxY() && nodeBounds[b + 3] >= env.getMinY();
+    }
+
+    /**
+     * @return True if the bounds of the item intersect the envelope
+     */
+    public boolean itemIntersects(int position, Envelope env) {
+        int b = position * 4;
+        return itemBounds[b] <= env.getMaxX() && itemBounds[b + 2] >= env.getMinX() &&
+                itemBounds[b + 1] <= env.getMaxY() && itemBounds[b + 3] >= env.getMinY();
+    }
+
+    private static double boxDistance(double[] boxes, int b, double x, double y) {
+        double dx = Math.max(0, Math.max(boxes[b] - x, x - boxes[b + 2]));
+        double dy = Math.max(0, Math.max(boxes[b + 1] - y, y - boxes[b + 3]));
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    /**
+     * Visit the items that have bounds intersecting the envelope
+     * @param env Query envelope
+     * @param visitor Item visitor
+     * @return False if the visitor stopped the query
+     */
+    public boolean query(Envelope env, ItemIndexVisitor visitor) {
+        if(nodeCount == 0 || env.isNull()) {
+            return true;
+        }
+        final double minX = env.getMinX(), minY = env.getMinY(), maxX = env.getMaxX(), maxY = env.getMaxY();
+        int[] stack = new int[32];
+        int stackSize = 0;
+        int node = 0;
+        while(true) {
+            int b = node * 4;
+            if(nodeBounds[b] <= maxX && nodeBounds[b + 2] >= minX && nodeBounds[b + 1] <= maxY &&
+                    nodeBounds[b + 3] >= minY) {
+                int count = nodeCounts[node];
+                if(count > 0) {
+                    int offset = nodeOffsets[node];
+                    for(int i = offset; i < offset + count; i++) {
+                        int ib = i * 4;
+                        if(itemBounds[ib] <= maxX && itemBounds[ib + 2] >= minX && itemBounds[ib + 1] <= maxY &&
+                                itemBounds[ib + 3] >= minY) {
+                            if(!visitor.visit(items[i])) {
+                                return false;
+                            }
+                        }
+                    }
+                } else {
+                    if(stackSize == stack.length) {
+                        stack = Arrays.copyOf(stack, stackSize * 2);
+                    }
+                    stack[stackSize++] = nodeOffsets[node];
+                    node = node + 1;
+                    continue;
+                }
+            }
+            if(stackSize == 0) {
+                return true;
+            }
+            node = stack[--stackSize];
+        }
+    }
+
+    /**
+     * Visit the items that have bounds crossed by the segment p0-p1. Only the boxes are tested, the caller have to
+     * check the intersection with the item geometry.
+     * @return False if the visitor stopped the query
+     */
+    public boolean querySegment(double x0, double y0, double x1, double y1, ItemIndexVisitor visitor) {
+        if(nodeCount == 0) {
+            return true;
+        }
+        final double dx = x1 - x0;
+        final double dy = y1 - y0;
+        final double invDx = dx != 0 ? 1 / dx : Double.POSITIVE_INFINITY;
+        final double invDy = dy != 0 ? 1 / dy : Double.POSITIVE_INFINITY;
+        int[] stack = new int[32];
+        int stackSize = 0;
+        int node = 0;
+        while(true) {
+            if(segmentIntersects(nodeBounds, node * 4, x0, y0, invDx, invDy)) {
+                int count = nodeCounts[node];
+                if(count > 0) {
+                    int offset = nodeOffsets[node];
+                    for(int i = offset; i < offset + count; i++) {
+                        if(segmentIntersects(itemBounds, i * 4, x0, y0, invDx, invDy)) {
+                            if(!visitor.visit(items[i])) {
+                                return false;
+                            }
+                        }
+                    }
+                } else {
+                    if(stackSize == stack.length) {
+                        stack = Arrays.copyOf(stack, stackSize * 2);
+                    }
+                    stack[stackSize++] = nodeOffsets[node];
+                    node = node + 1;
+                    continue;
+                }
+            }
+            if(stackSize == 0) {
+                return true;
+            }
+            node = stack[--stackSize];
+        }
+    }
+
+    /**
+     * Slab test of the segment origin + t * (1 / inv) with t in [0, 1] against the slightly enlarged box
+     */
+    private static boolean segmentIntersects(double[] boxes, int b, double x0, double y0, double invDx,
+                                             double invDy) {
+        double minX = boxes[b] - SEGMENT_EPSILON;
+        double minY = boxes[b + 1] - SEGMENT_EPSILON;
+        double maxX = boxes[b + 2] + SEGMENT_EPSILON;
+        double maxY = boxes[b + 3] + SEGMENT_EPSILON;
+        double tMin = 0;
+        double tMax = 1;
+        if(Double.isInfinite(invDx)) {
+            if(x0 < minX || x0 > maxX) {
+                return false;
+            }
+        } else {
+            double t1 = (minX - x0) * invDx;
+            double t2 = (maxX - x0) * invDx;
+            tMin = Math.max(tMin, Math.min(t1, t2));
+            tMax = Math.min(tMax, Math.max(t1, t2));
+            if(tMin > tMax) {
+                return false;
+            }
+        }
+        if(Double.isInfinite(invDy)) {
+            return y0 >= minY && y0 <= maxY;
+        } else {
+            double t1 = (minY - y0) * invDy;
+            double t2 = (maxY - y0) * invDy;
+            tMin = Math.max(tMin, Math.min(t1, t2));
+            tMax = Math.min(tMax, Math.max(t1, t2));
+            return tMin <= tMax;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+/**
+ * NoiseMap is a scientific computation plugin for OrbisGIS developed in order to
+ * evaluate the noise impact on urban mobility plans. This model is
+ * based on the French standard method NMPB2008. It includes traffic-to-noise
+ * sources evaluation and sound propagation processing.
+ * <p>
+ * This version is developed at French IRSTV Institute and at IFSTTAR
+ * (http://www.ifsttar.fr/) as part of the Eval-PDU project, funded by the
+ * French Agence Nationale de la Recherche (ANR) under contract ANR-08-VILL-0005-01.
+ * <p>
+ * Noisemap is distributed under GPL 3 license. Its reference contact is Judicaël
+ * Picaut <judicael.picaut@ifsttar.fr>. It is maintained by Nicolas Fortin
+ * as part of the "Atelier SIG" team of the IRSTV Institute <http://www.irstv.fr/>.
+ * <p>
+ * Copyright (C) 2011 IFSTTAR
+ * Copyright (C) 2011-2012 IRSTV (FR CNRS 2488)
+ * <p>
+ * Noisemap is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * <p>
+ * Noisemap is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * Noisemap. If not, see <http://www.gnu.org/licenses/>.
+ * <p>
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.noise_planet.noisemodelling.pathfinder;
+
+import org.locationtech.jts.algorithm.RectangleLineIntersector;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LineSegment;
+import org.locationtech.jts.geom.prep.PreparedLineString;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Obstacle intersections of the segments tested while computing the paths of a receiver. The lateral diffraction
+ * hulls of the left and right sides, and of the sources seen from the same receiver, test the same segments many
+ * times (receiver to building corner, corner to corner). The buildings and walls crossed by a segment are computed
+ * once and replayed in the same order for the next tests.
+ * <p>
+ * Only the side hulls of the horizontal diffraction use this context. The cut profiles of the direct path, of the
+ * hull edges and of the reflection paths are still built for each source: their segments end on the source or on
+ * reflection points that depend on the source so they are seldom shared, and the callers modify the profiles.
+ */
+public class PathQueryContext {
+    /** Maximum number of segments kept for each kind of obstacle */
+    public static final int DEFAULT_MAXIMUM_SEGMENTS = 4096;
+    private static final GeometryFactory GEOMETRY_FACTORY = new GeometryFactory();
+    private static final int[] EMPTY = new int[0];
+    private final ProfileBuilder profileBuilder;
+    private final int maximumSegments;
+    private final Map<LineSegment, int[]> buildingsOnSegment = new HashMap<>();
+    private final Map<LineSegment, int[]> wallsOnSegment = new HashMap<>();
+    private int queryCount = 0;
+
+    public PathQueryContext(ProfileBuilder profileBuilder) {
+        this(profileBuilder, DEFAULT_MAXIMUM_SEGMENTS);
+    }
+
+    /**
+     * @param profileBuilder Obstacles
+     * @param maximumSegments Maximum number of segments kept for each kind of obstacle, the next ones are computed
+     *                        for each test
+     */
+    public PathQueryContext(ProfileBuilder profileBuilder, int maximumSegments) {
+        this.profileBuilder = profileBuilder;
+        this.maximumSegments = maximumSegments;
+    }
+
+    public ProfileBuilder getProfileBuilder() {
+        return profileBuilder;
+    }
+
+    /**
+     * @return Number of intersection queries done on the profile builder
+     */
+    public int getQueryCount() {
+        return queryCount;
+    }
+
+    /**
+     * @param p0 First point
+     * @param p1 Second point
+     * @return Identifiers (1-n) of the buildings which 2D geometry cross the segment, in the order of the spatial
+     * index query
+     */
+    public int[] getBuildingsOnSegment(Coordinate p0, Coordinate p1) {
+        LineSegment key = new LineSegment(p0, p1);
+        int[] ids = buildingsOnSegment.get(key);
+        if(ids == null) {
+            queryCount++;
+            PreparedLineString seg = new PreparedLineString(GEOMETRY_FACTORY.createLineString(new Coordinate[]{p0, p1}));
+            IdCollector collector = new IdCollector();
+            profileBuilder.getBuildingsOnPath(p0, p1, item -> {
+                int id = (Integer) item;
+                if(collector.processed.add(id)) {
+                    ProfileBuilder.Building b = profileBuilder.getBuilding(id - 1);
+                    RectangleLineIntersector rect = new RectangleLineIntersector(b.getGeometry().getEnvelopeInternal());
+                    if (rect.intersects(p0, p1) && seg.intersects(b.getGeometry())) {
+                        collector.add(id);
+                    }
+                }
+            });
+            ids = collector.toArray();
+            if(buildingsOnSegment.size() < maximumSegments) {
+                buildingsOnSegment.put(key, ids);
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * @param p0 First point
+     * @param p1 Second point
+     * @return Identifiers (1-n) of the walls which 2D line cross the segment, in the order of the spatial index query
+     */
+    public int[] getWallsOnSegment(Coordinate p0, Coordinate p1) {
+        LineSegment key = new LineSegment(p0, p1);
+        int[] ids = wallsOnSegment.get(key);
+        if(ids == null) {
+            queryCount++;
+            PreparedLineString seg = new PreparedLineString(GEOMETRY_FACTORY.createLineString(new Coordinate[]{p0, p1}));
+            IdCollector collector = new IdCollector();
+            profileBuilder.getWallsOnPath(p0, p1, item -> {
+                int id = (Integer) item;
+                if(collector.processed.add(id)) {
+                    ProfileBuilder.Wall w = profileBuilder.getWall(id - 1);
+                    RectangleLineIntersector rect = new RectangleLineIntersector(w.getLine().getEnvelopeInternal());
+                    if (rect.intersects(p0, p1) && seg.intersects(w.getLine())) {
+                        collector.add(id);
+                    }
+                }
+            });
+            ids = collector.toArray();
+            if(wallsOnSegment.size() < maximumSegments) {
+                wallsOnSegment.put(key, ids);
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Forget the segments, to be called when the receiver changes
+     */
+    public void clear() {
+        buildingsOnSegment.clear();
+        wallsOnSegment.clear();
+    }
+
+    private static final class IdCollector {
+        final Set<Integer> processed = new HashSet<>();
+        int[] ids = EMPTY;
+        int size = 0;
+
+        void add(int id) {
+            if(size == ids.length) {
+                ids = Arrays.copyOf(ids, Math.max(4, size * 2));
+            }
+            ids[size++] = id;
+        }
+
+        int[] toArray() {
+            return size == 0 ? EMPTY : Arrays.copyOf(ids, size);
+        }
+    }
+}
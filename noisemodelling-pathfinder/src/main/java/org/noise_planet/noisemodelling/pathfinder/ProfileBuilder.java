@@ -115,13 +115,11 @@ public class ProfileBuilder {
     private final List<Building> buildings = new ArrayList<>();
     /** List of walls. */
     private final List<Wall> walls = new ArrayList<>();
-    /** Building RTree. */
-    private final STRtree buildingTree;
-    /** Building RTree. */
-    private final STRtree wallTree = new STRtree(TREE_NODE_CAPACITY);
-    /** Global RTree. */
-    private STRtree rtree;
+    /** Ground effects boundaries RTree, the building facets and walls are indexed by the obstacle scene. */
+    private STRtree groundEffectsBoundariesTree;
     private STRtree groundEffectsRtree = new STRtree(TREE_NODE_CAPACITY);
+    /** Primitive arrays copy of the building facets and walls, available once the feeding is finished. */
+    private ObstacleScene obstacleScene;
 
 
     /** List of topographic points. */
@@ -136,9 +134,13 @@ public class ProfileBuilder {
     private List<Coordinate> vertices = new ArrayList<>();
     /** Topographic RTree. */
     private STRtree topoTree;
+    /** Topography sampled on a regular grid, used instead of the triangulation if set. */
+    private GriddedDem griddedDem;
 
     /** List of ground effects. */
     private final List<GroundEffect> groundEffects = new ArrayList<>();
+    /** Rasterised ground factor, used instead of the ground effects polygons if set. */
+    private GroundFactorGrid groundFactorGrid;
 
     /** Receivers .*/
     private final List<Coordinate> receivers = new ArrayList<>();
@@ -166,7 +168,6 @@ public class ProfileBuilder {
      * Main empty constructor.
      */
     public ProfileBuilder() {
-        buildingTree = new STRtree(buildingNodeCapacity);
     }
 
     //TODO : when a source/receiver are underground, should an offset be applied ?
@@ -182,7 +183,6 @@ public class ProfileBuilder {
         this.topoNodeCapacity = topoNodeCapacity;
         this.groundNodeCapacity = groundNodeCapacity;
         this.maxLineLength = maxLineLength;
-        buildingTree = new STRtree(buildingNodeCapacity);
     }
 
     /**
@@ -195,13 +195,12 @@ public class ProfileBuilder {
         }
         else if(!isFeedingFinished) {
             if(envelope == null) {
-                envelope = building.poly.getEnvelopeInternal();
+                envelope = new Envelope(building.poly.getEnvelopeInternal());
             }
             else {
                 envelope.expandToInclude(building.poly.getEnvelopeInternal());
             }
             buildings.add(building);
-            buildingTree.insert(building.poly.getEnvelopeInternal(), buildings.size());
             return this;
         }
         else{
@@ -419,14 +418,13 @@ public class ProfileBuilder {
         Polygon poly = (Polygon)geom;
         if(!isFeedingFinished) {
             if(envelope == null) {
-                envelope = geom.getEnvelopeInternal();
+                envelope = new Envelope(geom.getEnvelopeInternal());
             }
             else {
                 envelope.expandToInclude(geom.getEnvelopeInternal());
             }
             Building building = new Building(poly, height, alphas, id, zBuildings);
             buildings.add(building);
-            buildingTree.insert(building.poly.getEnvelopeInternal(), buildings.size());
             //TODO : generalization of building coefficient
             addGroundEffect(geom, 0);
             return this;
@@ -504,7 +502,7 @@ public class ProfileBuilder {
     public ProfileBuilder addWall(LineString geom, double height, List<Double> alphas, int id) {
         if(!isFeedingFinished) {
             if(envelope == null) {
-                envelope = geom.getEnvelopeInternal();
+                envelope = new Envelope(geom.getEnvelopeInternal());
             }
             else {
                 envelope.expandToInclude(geom.getEnvelopeInternal());
@@ -514,7 +512,6 @@ public class ProfileBuilder {
                 wall.setHeight(height);
                 wall.setAlpha(alphas);
                 walls.add(wall);
-                wallTree.insert(wall.line.getEnvelopeInternal(), walls.size());
             }
             return this;
         }
@@ -563,6 +560,51 @@ public class ProfileBuilder {
         return this;
     }
 
+    /**
+     * Set the topography as a regular grid. The elevation is interpolated on the grid and the topographic points and
+     * lines are ignored, so no triangulation is computed.
+     * @param griddedDem Topography grid.
+     */
+    public ProfileBuilder setGriddedDem(GriddedDem griddedDem) {
+        if(!isFeedingFinished) {
+            Envelope demEnvelope = griddedDem.getEnvelope();
+            if(envelope == null) {
+                envelope = new Envelope(demEnvelope);
+            }
+            else {
+                envelope.expandToInclude(demEnvelope);
+            }
+            this.griddedDem = griddedDem;
+        }
+        return this;
+    }
+
+    /**
+     * @return Topography grid or null if the topography is triangulated.
+     */
+    public GriddedDem getGriddedDem() {
+        return griddedDem;
+    }
+
+    /**
+     * Set the rasterised ground factor. The ground factor of the profiles is read on the grid and the ground effects
+     * polygons are ignored. The grid may be shared between profile builders.
+     * @param groundFactorGrid Ground factor grid.
+     */
+    public ProfileBuilder setGroundFactorGrid(GroundFactorGrid groundFactorGrid) {
+        if(!isFeedingFinished) {
+            this.groundFactorGrid = groundFactorGrid;
+        }
+        return this;
+    }
+
+    /**
+     * @return Rasterised ground factor or null if the ground effects polygons are used.
+     */
+    public GroundFactorGrid getGroundFactorGrid() {
+        return groundFactorGrid;
+    }
+
     /**
      * Add the topographic line in the data, to complete the topographic data.
      */
@@ -570,7 +612,7 @@ public class ProfileBuilder {
         if(!isFeedingFinished) {
             LineString lineSegment = FACTORY.createLineString(new Coordinate[]{new Coordinate(x0, y0, z0), new Coordinate(x1, y1, z1)});
             if(envelope == null) {
-                envelope = lineSegment.getEnvelopeInternal();
+                envelope = new Envelope(lineSegment.getEnvelopeInternal());
             }
             else {
                 envelope.expandToInclude(lineSegment.getEnvelopeInternal());
@@ -587,7 +629,7 @@ public class ProfileBuilder {
     public ProfileBuilder addTopographicLine(LineString lineSegment) {
         if(!isFeedingFinished) {
             if(envelope == null) {
-                envelope = lineSegment.getEnvelopeInternal();
+                envelope = new Envelope(lineSegment.getEnvelopeInternal());
             }
             else {
                 envelope.expandToInclude(lineSegment.getEnvelopeInternal());
@@ -605,7 +647,7 @@ public class ProfileBuilder {
     public ProfileBuilder addGroundEffect(Geometry geom, double coefficient) {
         if(!isFeedingFinished) {
             if(envelope == null) {
-                envelope = geom.getEnvelopeInternal();
+                envelope = new Envelope(geom.getEnvelopeInternal());
             }
             else {
                 envelope.expandToInclude(geom.getEnvelopeInternal());
@@ -633,7 +675,7 @@ public class ProfileBuilder {
                     new Coordinate(minX, minY)
             });
             if(envelope == null) {
-                envelope = geom.getEnvelopeInternal();
+                envelope = new Envelope(geom.getEnvelopeInternal());
             }
             else {
                 envelope.expandToInclude(geom.getEnvelopeInternal());
@@ -764,7 +806,7 @@ public class ProfileBuilder {
         isFeedingFinished = true;
 
         //Process topographic points and lines
-        if(topoPoints.size()+topoLines.size() > 1) {
+        if(griddedDem == null && topoPoints.size()+topoLines.size() > 1) {
             //Feed the Delaunay layer
             LayerDelaunay layerDelaunay = new LayerTinfour();
             layerDelaunay.setRetrieveNeighbors(true);
@@ -837,7 +879,7 @@ public class ProfileBuilder {
             }*/
         }
         //Update building z
-        if(topoTree != null) {
+        if(hasTopography()) {
             for (Building b : buildings) {
                 if(isNaN(b.poly.getCoordinate().z) || b.poly.getCoordinate().z == 0.0 || !zBuildings) {
                     b.poly2D_3D();
@@ -873,7 +915,7 @@ public class ProfileBuilder {
             }
         }
         //Process buildings
-        rtree = new STRtree(buildingNodeCapacity);
+        groundEffectsBoundariesTree = new STRtree(groundNodeCapacity);
         buildingsWideAnglePoints.clear();
         for (int j = 0; j < buildings.size(); j++) {
             Building building = buildings.get(j);
@@ -887,7 +929,6 @@ public class ProfileBuilder {
                 walls.add(w);
                 w.setAlpha(building.alphas);
                 processedWalls.add(w);
-                rtree.insert(lineSegment.toGeometry(FACTORY).getEnvelopeInternal(), processedWalls.size()-1);
             }
             building.setWalls(walls);
         }
@@ -899,7 +940,6 @@ public class ProfileBuilder {
                 Wall w = new Wall(lineSegment, j, IntersectionType.WALL).setProcessedWallIndex(processedWalls.size());
                 w.setAlpha(wall.alphas);
                 processedWalls.add(w);
-                rtree.insert(lineSegment.toGeometry(FACTORY).getEnvelopeInternal(), processedWalls.size()-1);
             }
         }
         //Process the ground effects
@@ -922,39 +962,49 @@ public class ProfileBuilder {
                 for (int k = 0; k < coords.length - 1; k++) {
                     LineSegment line = new LineSegment(coords[k], coords[k + 1]);
                     processedWalls.add(new Wall(line, j, GROUND_EFFECT).setProcessedWallIndex(processedWalls.size()));
-                    rtree.insert(new Envelope(line.p0, line.p1), processedWalls.size() - 1);
+                    groundEffectsBoundariesTree.insert(new Envelope(line.p0, line.p1), processedWalls.size() - 1);
                 }
             }
         }
-        rtree.build();
+        groundEffectsBoundariesTree.build();
         groundEffectsRtree.build();
+        obstacleScene = new ObstacleScene(buildings, walls, processedWalls);
         return this;
     }
 
+    /**
+     * @return Building facets and walls stored in primitive arrays, null until the feeding is finished
+     */
+    public ObstacleScene getObstacleScene() {
+        return obstacleScene;
+    }
+
     public double getZ(Coordinate reflectionPt) {
-        List<Integer> ids = buildingTree.query(new Envelope(reflectionPt));
-        if(ids.isEmpty()) {
-            return getZGround(reflectionPt);
-        }
-        else {
-            for(Integer id : ids) {
-                Geometry buildingGeometry =  buildings.get(id - 1).getGeometry();
-                if(buildingGeometry.getEnvelopeInternal().intersects(reflectionPt)) {
-                    return buildingGeometry.getCoordinate().z;
-                }
+        if(obstacleScene != null) {
+            final double[] buildingZ = new double[] {NaN};
+            obstacleScene.queryBuildings(new Envelope(reflectionPt), building -> {
+                buildingZ[0] = buildings.get(building).getGeometry().getCoordinate().z;
+                return false;
+            });
+            if(!isNaN(buildingZ[0])) {
+                return buildingZ[0];
             }
-            return getZGround(reflectionPt);
         }
+        return getZGround(reflectionPt);
     }
 
+    /**
+     * @param env Query envelope
+     * @return Building facets and walls having an envelope intersecting the given envelope, empty until the feeding
+     * is finished
+     */
     public List<Wall> getWallsIn(Envelope env) {
         List<Wall> list = new ArrayList<>();
-        List<Integer> indexes = rtree.query(env);
-        for(int i : indexes) {
-            Wall w = getProcessedWalls().get(i);
-            if(w.getType().equals(BUILDING) || w.getType().equals(WALL)) {
-                list.add(w);
-            }
+        if(obstacleScene != null) {
+            obstacleScene.queryWalls(env, wall -> {
+                list.add(processedWalls.get(obstacleScene.getWallProcessedIndex(wall)));
+                return true;
+            });
         }
         return list;
     }
@@ -1060,7 +1110,7 @@ public class ProfileBuilder {
         CutProfile profile = new CutProfile();
 
         //Topography
-        if(topoTree != null) {
+        if(hasTopography()) {
             addTopoCutPts(c0, c1, profile);
         }
         // Split line into segments for structures based on RTree in order to limit the number of queries
@@ -1069,7 +1119,7 @@ public class ProfileBuilder {
         List<LineSegment> lines = splitSegment(c0, c1, maxLineLength);
 
         //Buildings and Ground effect
-        if(rtree != null) {
+        if(obstacleScene != null) {
             addGroundBuildingCutPts(lines, fullLine, profile);
         }
 
@@ -1092,8 +1142,15 @@ public class ProfileBuilder {
 
 
         //Sets the ground effects
-        //Check is source is inside ground
-        setGroundEffects(profile, c0, gS);
+        if(groundFactorGrid != null) {
+            for(CutPoint cut : profile.pts) {
+                cut.groundCoef = groundFactorGrid.getG(cut.coordinate.x, cut.coordinate.y, gS);
+            }
+            profile.setGroundFactorGrid(groundFactorGrid, gS);
+        } else {
+            //Check is source is inside ground
+            setGroundEffects(profile, c0, gS);
+        }
 
 
         return profile;
@@ -1280,11 +1337,15 @@ public class ProfileBuilder {
     private void addGroundBuildingCutPts(List<LineSegment> lines, LineSegment fullLine, CutProfile profile) {
         List<Integer> indexes = new ArrayList<>();
         for (LineSegment line : lines) {
-            indexes.addAll(rtree.query(new Envelope(line.p0, line.p1)));
+            obstacleScene.queryWallsOnSegment(line.p0, line.p1, wall -> {
+                indexes.add(obstacleScene.getWallProcessedIndex(wall));
+                return true;
+            });
+            indexes.addAll(groundEffectsBoundariesTree.query(new Envelope(line.p0, line.p1)));
         }
-        indexes = indexes.stream().distinct().collect(Collectors.toList());
+        List<Integer> distinctIndexes = indexes.stream().distinct().collect(Collectors.toList());
         Map<Integer, Coordinate> processedGround = new HashMap<>();
-        for (int i : indexes) {
+        for (int i : distinctIndexes) {
             Wall facetLine = processedWalls.get(i);
             Coordinate intersection = fullLine.intersection(facetLine.ls);
             if (intersection != null) {
@@ -1297,7 +1358,7 @@ public class ProfileBuilder {
                         intersection.z = facetLine.p0.z + ((intersection.x - facetLine.p0.x) / (facetLine.p1.x - facetLine.p0.x) * (facetLine.p1.z - facetLine.p0.z));
                     }
                 }
-                else if(topoTree == null) {
+                else if(!hasTopography()) {
                     intersection.z = NaN;
                 }
                 else {
@@ -1534,6 +1595,9 @@ public class ProfileBuilder {
     }
 
     public List<Coordinate> getTopographicProfile(Coordinate p1, Coordinate p2) {
+        if(griddedDem != null) {
+            return griddedDem.getProfile(p1, p2);
+        }
         List<Coordinate> outputPoints = new ArrayList<>();
         //get origin triangle id
         int curTriP1 = getTriangleIdByCoordinate(p1);
@@ -1580,13 +1644,25 @@ public class ProfileBuilder {
      * @return True if digital elevation model has been added
      */
     public boolean hasDem() {
-        return topoTree != null && topoTree.size() > 0;
+        return griddedDem != null || (topoTree != null && topoTree.size() > 0);
+    }
+
+    /**
+     * @return True if the ground elevation is available from the grid or from the triangulation
+     */
+    private boolean hasTopography() {
+        return griddedDem != null || topoTree != null;
     }
 
     public double getZGround(CutPoint cut) {
         if(!Double.isNaN(cut.zGround)) {
             return cut.zGround;
         }
+        if(griddedDem != null) {
+            double z = griddedDem.getZ(cut.coordinate.x, cut.coordinate.y);
+            cut.zGround = z;
+            return isNaN(z) ? 0.0 : z;
+        }
         if(topoTree == null) {
             cut.zGround = NaN;
             return 0.0;
@@ -1645,6 +1721,50 @@ public class ProfileBuilder {
         private Boolean hasGroundEffectInter = false;
         private Boolean isFreeField;
         private Orientation srcOrientation;
+        /** Rasterised ground factor, null if the ground factor is given by the cut points. */
+        private GroundFactorGrid groundFactorGrid;
+        /** Ground factor outside of the soil areas of the grid. */
+        private double gS;
+
+        public CutProfile() {
+        }
+
+        /**
+         * Copy a profile for a receiver at another height. The cut points only depend on the plan view position of
+         * the source and of the receiver, so the profile of a receiver above the same location is the same except
+         * for the receiver point.
+         * @param other Profile to copy
+         * @param receiverCoordinate Receiver with the same x and y as the receiver of the copied profile
+         */
+        public CutProfile(CutProfile other, Coordinate receiverCoordinate) {
+            pts = new ArrayList<>(other.pts.size());
+            for(CutPoint cut : other.pts) {
+                CutPoint copy = new CutPoint(cut);
+                if(cut == other.source) {
+                    source = copy;
+                } else if(cut == other.receiver) {
+                    copy.coordinate = new Coordinate(receiverCoordinate);
+                    receiver = copy;
+                }
+                pts.add(copy);
+            }
+            hasBuildingInter = other.hasBuildingInter;
+            hasTopographyInter = other.hasTopographyInter;
+            hasGroundEffectInter = other.hasGroundEffectInter;
+            srcOrientation = other.srcOrientation;
+            groundFactorGrid = other.groundFactorGrid;
+            gS = other.gS;
+        }
+
+        /**
+         * Compute the ground factor of the path with the grid instead of the cut points.
+         * @param groundFactorGrid Rasterised ground factor.
+         * @param gS Ground factor outside of the soil areas.
+         */
+        public void setGroundFactorGrid(GroundFactorGrid groundFactorGrid, double gS) {
+            this.groundFactorGrid = groundFactorGrid;
+            this.gS = gS;
+        }
 
         /**
          * Add the source point.
@@ -1810,6 +1930,9 @@ public class ProfileBuilder {
         }
 
         public double getGPath(CutPoint p0, CutPoint p1) {
+            if(groundFactorGrid != null) {
+                return groundFactorGrid.getMeanG(p0.getCoordinate(), p1.getCoordinate(), gS);
+            }
             CutPoint current = p0;
             double totLength = dist2D(p0.getCoordinate(), p1.getCoordinate());
             double rsLength = 0.0;
@@ -2566,33 +2689,53 @@ public class ProfileBuilder {
     }
 
     /**
-     * Find all buildings (polygons) that 2D cross the line p1->p2
+     * Find all buildings (polygons) that 2D cross the line p1->p2. The obstacles are indexed by
+     * {@link #finishFeeding()}, that must be called before.
      * @param p1 first point of line
      * @param p2 second point of line
-     * @param visitor Iterate over found buildings
-     * @return Building identifier (1-n) intersected by the line
+     * @param visitor Iterate over found buildings, the item is the building identifier (1-n). The visitor can throw
+     *                an {@link IllegalStateException} to stop the query.
+     * @throws IllegalStateException If {@link #finishFeeding()} has not been called
      */
     public void getBuildingsOnPath(Coordinate p1, Coordinate p2, ItemVisitor visitor) {
+        checkObstacleScene();
         try {
-            List<LineSegment> lines = splitSegment(p1, p2, maxLineLength);
-            for(LineSegment segment : lines) {
-                Envelope pathEnv = new Envelope(segment.p0, segment.p1);
-                    buildingTree.query(pathEnv, visitor);
-            }
+            obstacleScene.queryBuildingsOnSegment(p1, p2, building -> {
+                visitor.visitItem(building + 1);
+                return true;
+            });
         } catch (IllegalStateException ex) {
             //Ignore
         }
     }
 
+    /**
+     * Find all walls that 2D cross the line p1->p2. The obstacles are indexed by {@link #finishFeeding()}, that
+     * must be called before.
+     * @param p1 first point of line
+     * @param p2 second point of line
+     * @param visitor Iterate over found walls, the item is the wall identifier (1-n). The visitor can throw an
+     *                {@link IllegalStateException} to stop the query.
+     * @throws IllegalStateException If {@link #finishFeeding()} has not been called
+     */
     public void getWallsOnPath(Coordinate p1, Coordinate p2, ItemVisitor visitor) {
-        Envelope pathEnv = new Envelope(p1, p2);
+        checkObstacleScene();
         try {
-            wallTree.query(pathEnv, visitor);
+            obstacleScene.queryFreeWallsOnSegment(p1, p2, wall -> {
+                visitor.visitItem(obstacleScene.getWallOriginId(wall) + 1);
+                return true;
+            });
         } catch (IllegalStateException ex) {
             //Ignore
         }
     }
 
+    private void checkObstacleScene() {
+        if(obstacleScene == null) {
+            throw new IllegalStateException("finishFeeding() must be called before querying the obstacles");
+        }
+    }
+
 
     /**
      * Hold two integers. Used to store unique triangle segments
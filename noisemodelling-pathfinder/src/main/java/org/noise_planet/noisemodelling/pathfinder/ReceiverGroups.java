@@ -0,0 +1,128 @@
+/**
+ * NoiseMap is a scientific computation plugin for OrbisGIS developed in order to
+ * evaluate the noise impact on urban mobility plans. This model is
+ * based on the French standard method NMPB2008. It includes traffic-to-noise
+ * sources evaluation and sound propagation processing.
+ * <p>
+ * This version is developed at French IRSTV Institute and at IFSTTAR
+ * (http://www.ifsttar.fr/) as part of the Eval-PDU project, funded by the
+ * French Agence Nationale de la Recherche (ANR) under contract ANR-08-VILL-0005-01.
+ * <p>
+ * Noisemap is distributed under GPL 3 license. Its reference contact is Judicaël
+ * Picaut <judicael.picaut@ifsttar.fr>. It is maintained by Nicolas Fortin
+ * as part of the "Atelier SIG" team of the IRSTV Institute <http://www.irstv.fr/>.
+ * <p>
+ * Copyright (C) 2011 IFSTTAR
+ * Copyright (C) 2011-2012 IRSTV (FR CNRS 2488)
+ * <p>
+ * Noisemap is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * <p>
+ * Noisemap is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * Noisemap. If not, see <http://www.gnu.org/licenses/>.
+ * <p>
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.noise_planet.noisemodelling.pathfinder;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Receivers gathered by square tiles. Receivers of a facade or of a vertical stack fall in the same tiles, they
+ * are computed one after the other by the same thread so the walls, the sources and the obstacle intersections
+ * fetched for the first receiver of a group are reused by the others. In a tile, the receivers located above the
+ * same plan view position are consecutive.
+ */
+final class ReceiverGroups {
+    private final int[] receiverOrder;
+    // First position in receiverOrder of each group, with an additional end position
+    private final int[] groupStart;
+    private final Envelope[] envelopes;
+
+    /**
+     * @param receivers Receivers positions
+     * @param groupSize Side length (m) of the tiles, 0 to compute each receiver alone
+     */
+    ReceiverGroups(List<Coordinate> receivers, double groupSize) {
+        Map<Long, List<Integer>> tiles = new LinkedHashMap<>();
+        for(int idReceiver = 0; idReceiver < receivers.size(); idReceiver++) {
+            long key = idReceiver;
+            if(groupSize > 0) {
+                Coordinate receiver = receivers.get(idReceiver);
+                long column = (long) Math.floor(receiver.x / groupSize);
+                long row = (long) Math.floor(receiver.y / groupSize);
+                key = (column << 32) ^ (row & 0xFFFFFFFFL);
+            }
+            tiles.computeIfAbsent(key, k -> new ArrayList<>()).add(idReceiver);
+        }
+        receiverOrder = new int[receivers.size()];
+        groupStart = new int[tiles.size() + 1];
+        envelopes = new Envelope[tiles.size()];
+        int position = 0;
+        int idGroup = 0;
+        for(List<Integer> tile : tiles.values()) {
+            groupStart[idGroup] = position;
+            Envelope envelope = new Envelope();
+            // Receivers at the same plan view location (vertical stack) are computed one after the other
+            Map<Coordinate, List<Integer>> stacks = new LinkedHashMap<>();
+            for(int idReceiver : tile) {
+                Coordinate receiver = receivers.get(idReceiver);
+                stacks.computeIfAbsent(new Coordinate(receiver.x, receiver.y), k -> new ArrayList<>()).add(idReceiver);
+                envelope.expandToInclude(receiver);
+            }
+            for(List<Integer> stack : stacks.values()) {
+                for(int idReceiver : stack) {
+                    receiverOrder[position++] = idReceiver;
+                }
+            }
+            envelopes[idGroup++] = envelope;
+        }
+        groupStart[idGroup] = position;
+    }
+
+    /**
+     * @return Number of groups
+     */
+    int getGroupCount() {
+        return envelopes.length;
+    }
+
+    /**
+     * @param group Group index
+     * @return Envelope of the receivers of the group
+     */
+    Envelope getEnvelope(int group) {
+        return envelopes[group];
+    }
+
+    /**
+     * @param group Group index
+     * @return Number of receivers in the group
+     */
+    int getGroupSize(int group) {
+        return groupStart[group + 1] - groupStart[group];
+    }
+
+    /**
+     * @param group Group index
+     * @param index Index of the receiver in the group
+     * @return Receiver index
+     */
+    int getReceiver(int group, int index) {
+        return receiverOrder[groupStart[group] + index];
+    }
+}
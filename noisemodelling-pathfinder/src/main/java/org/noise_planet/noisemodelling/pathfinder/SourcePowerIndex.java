@@ -0,0 +1,144 @@
+/**
+ * NoiseMap is a scientific computation plugin for OrbisGIS developed in order to
+ * evaluate the noise impact on urban mobility plans. This model is
+ * based on the French standard method NMPB2008. It includes traffic-to-noise
+ * sources evaluation and sound propagation processing.
+ * <p>
+ * This version is developed at French IRSTV Institute and at IFSTTAR
+ * (http://www.ifsttar.fr/) as part of the Eval-PDU project, funded by the
+ * French Agence Nationale de la Recherche (ANR) under contract ANR-08-VILL-0005-01.
+ * <p>
+ * Noisemap is distributed under GPL 3 license. Its reference contact is Judicaël
+ * Picaut <judicael.picaut@ifsttar.fr>. It is maintained by Nicolas Fortin
+ * as part of the "Atelier SIG" team of the IRSTV Institute <http://www.irstv.fr/>.
+ * <p>
+ * Copyright (C) 2011 IFSTTAR
+ * Copyright (C) 2011-2012 IRSTV (FR CNRS 2488)
+ * <p>
+ * Noisemap is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * <p>
+ * Noisemap is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * Noisemap. If not, see <http://www.gnu.org/licenses/>.
+ * <p>
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.noise_planet.noisemodelling.pathfinder;
+
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.Puntal;
+
+import java.util.List;
+
+import static org.noise_planet.noisemodelling.pathfinder.utils.AcousticPropagation.getADiv;
+import static org.noise_planet.noisemodelling.pathfinder.utils.PowerUtils.dbaToW;
+import static org.noise_planet.noisemodelling.pathfinder.utils.PowerUtils.sumArray;
+
+/**
+ * Spatial index of the sound sources where each node holds the sum of the maximal power of its sources. The power
+ * received from all the sources of a node is bounded using the geometric divergence at the nearest point of the node
+ * bounds, so the nodes that cannot contribute significantly are skipped without enumerating their sources.
+ */
+public class SourcePowerIndex {
+    private final PackedBoundingVolumeHierarchy tree;
+    /** Maximal power of each item (W for points, W/m times the length for lines) in leaf order */
+    private final double[] itemPowers;
+    private final double[] nodePowers;
+    private final boolean bounded;
+
+    /**
+     * @param data Propagation data, the maximal power of the sources is read from
+     *             {@link CnossosPropagationData#getMaximalSourcePower(int)}
+     */
+    public SourcePowerIndex(CnossosPropagationData data) {
+        List<Geometry> sources = data.sourceGeometries;
+        int sourceCount = sources.size();
+        double[] bounds = new double[sourceCount * 4];
+        int[] ids = new int[sourceCount];
+        double[] powers = new double[sourceCount];
+        boolean allBounded = true;
+        for(int idSource = 0; idSource < sourceCount; idSource++) {
+            Geometry source = sources.get(idSource);
+            Envelope env = source.getEnvelopeInternal();
+            bounds[idSource * 4] = env.getMinX();
+            bounds[idSource * 4 + 1] = env.getMinY();
+            bounds[idSource * 4 + 2] = env.getMaxX();
+            bounds[idSource * 4 + 3] = env.getMaxY();
+            ids[idSource] = idSource;
+            double[] wj = data.getMaximalSourcePower(idSource);
+            if(wj.length == 0) {
+                // Unknown emission, nothing can be skipped
+                allBounded = false;
+                powers[idSource] = Double.POSITIVE_INFINITY;
+            } else {
+                powers[idSource] = sumArray(wj.length, wj) * (source instanceof Puntal ? 1 : source.getLength());
+            }
+        }
+        bounded = allBounded;
+        tree = new PackedBoundingVolumeHierarchy(bounds, ids);
+        itemPowers = new double[sourceCount];
+        for(int position = 0; position < sourceCount; position++) {
+            itemPowers[position] = powers[tree.getItem(position)];
+        }
+        // Children are stored after their parent
+        nodePowers = new double[tree.getNodeCount()];
+        for(int node = nodePowers.length - 1; node >= 0; node--) {
+            if(tree.isLeaf(node)) {
+                int start = tree.getLeafStart(node);
+                double power = 0;
+                for(int position = start; position < start + tree.getLeafSize(node); position++) {
+                    power += itemPowers[position];
+                }
+                nodePowers[node] = power;
+            } else {
+                nodePowers[node] = nodePowers[tree.getLeftChild(node)] + nodePowers[tree.getRightChild(node)];
+            }
+        }
+    }
+
+    /**
+     * @return False if the maximal power of at least one source is unknown
+     */
+    public boolean isBounded() {
+        return bounded;
+    }
+
+    public PackedBoundingVolumeHierarchy getTree() {
+        return tree;
+    }
+
+    /**
+     * @param node Node index
+     * @return Sum of the maximal power of the sources of the node
+     */
+    public double getNodePower(int node) {
+        return nodePowers[node];
+    }
+
+    /**
+     * @param position Item position in leaf order
+     * @return Maximal power of the source
+     */
+    public double getItemPower(int position) {
+        return itemPowers[position];
+    }
+
+    /**
+     * Upper bound of the received power, same estimation than the one used to sort the source points
+     * @param power Maximal emitted power
+     * @param distance Minimal distance between the receiver and the sources
+     * @return Maximal received power with geometric divergence and reflective ground only
+     */
+    public static double getReceivedPowerBound(double power, double distance) {
+        return power * dbaToW(-getADiv(distance)) * dbaToW(3);
+    }
+}
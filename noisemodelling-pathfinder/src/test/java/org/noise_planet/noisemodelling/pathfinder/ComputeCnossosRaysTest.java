@@ -5,11 +5,11 @@ import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.jts.geom.Envelope;
 import org.locationtech.jts.geom.GeometryFactory;
 
-import java.util.Arrays;
-import java.util.List;
+import java.util.*;
 
 import static java.lang.Double.NaN;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 public class ComputeCnossosRaysTest {
 
@@ -1238,6 +1238,146 @@ public class ComputeCnossosRaysTest {
         assertEquals(3, propDataOut.getPropagationPaths().size());
     }
 
+    /**
+     * Multi-thread computation must process each receiver exactly once
+     */
+    @Test
+    public void testMultiThreadReceivers() {
+        //Profile building
+        ProfileBuilder profileBuilder = new ProfileBuilder()
+                .addBuilding(new Coordinate[]{
+                        new Coordinate(80, 40, 0),
+                        new Coordinate(120, 40, 0),
+                        new Coordinate(120, 60, 0),
+                        new Coordinate(80, 60, 0)
+                }, 10)
+                .finishFeeding();
+
+        //Propagation data building
+        PropagationDataBuilder builder = new PropagationDataBuilder(profileBuilder)
+                .addSource(10, 50, 1)
+                .setGs(0.5);
+        for (int i = 0; i < 97; i++) {
+            builder.addReceiver(150 + (i % 10) * 5, (i / 10) * 10, 4);
+        }
+        CnossosPropagationData rayData = builder.build();
+
+        int[] threadCounts = new int[] {1, 4};
+        int[][] pathsPerReceiver = new int[threadCounts.length][rayData.receivers.size()];
+        for (int idRun = 0; idRun < threadCounts.length; idRun++) {
+            ComputeCnossosRaysOut propDataOut = new ComputeCnossosRaysOut(true);
+            ComputeCnossosRays computeRays = new ComputeCnossosRays(rayData);
+            computeRays.setThreadCount(threadCounts[idRun]);
+            computeRays.run(propDataOut);
+            for (PropagationPath path : propDataOut.getPropagationPaths()) {
+                pathsPerReceiver[idRun][path.getIdReceiver()]++;
+            }
+        }
+        for (int idReceiver = 0; idReceiver < rayData.receivers.size(); idReceiver++) {
+            assertTrue(pathsPerReceiver[0][idReceiver] > 0);
+            assertEquals(pathsPerReceiver[0][idReceiver], pathsPerReceiver[1][idReceiver]);
+        }
+    }
+
+    /**
+     * Record the traced paths and the geometric divergence sum of the source points
+     */
+    private static class FarFieldRaysOut implements IComputeRaysOut {
+        Map<List<PointPath>, Set<Long>> pathSources = new IdentityHashMap<>();
+        double energy = 0;
+
+        @Override
+        public synchronized double[] addPropagationPaths(long sourceId, double sourceLi, long receiverId,
+                                                         List<PropagationPath> propagationPath) {
+            for(PropagationPath path : propagationPath) {
+                pathSources.computeIfAbsent(path.getPointList(), k -> new HashSet<>()).add(sourceId);
+                double distance = path.getSRSegment().s.distance(path.getSRSegment().r);
+                energy += Math.max(1, sourceLi) / (distance * distance);
+            }
+            return new double[0];
+        }
+
+        /**
+         * @return Number of traced paths of the omnidirectional sources
+         */
+        long countPaths(Set<Integer> directiveSources) {
+            return pathSources.values().stream().filter(sources -> sources.stream()
+                    .noneMatch(id -> directiveSources.contains(id.intValue()))).count();
+        }
+
+        @Override
+        public void finalizeReceiver(long receiverId) {
+        }
+
+        @Override
+        public IComputeRaysOut subProcess() {
+            return this;
+        }
+    }
+
+    private static FarFieldRaysOut computeFarField(double aggregationDistance, Set<Integer> directiveSources,
+                                                   double[] aggregationError) {
+        GeometryFactory factory = new GeometryFactory();
+        ProfileBuilder builder = new ProfileBuilder();
+        builder.addGroundEffect(factory.toGeometry(new Envelope(-1000, 1000, -1000, 1000)), 0.5);
+        builder.finishFeeding();
+
+        CnossosPropagationData rayData = new CnossosPropagationData(builder) {
+            @Override
+            public boolean isOmnidirectional(int srcIndex) {
+                return !directiveSources.contains(srcIndex);
+            }
+        };
+        rayData.addReceiver(new Coordinate(0, 0, 4));
+        // Near road and parallel far roads made of short sections
+        rayData.addSource(factory.createLineString(new Coordinate[]{new Coordinate(-100, 20, 0.05),
+                new Coordinate(100, 20, 0.05)}));
+        for(int y = 300; y <= 900; y += 200) {
+            for(int x = -800; x < 800; x += 10) {
+                if(y == 500) {
+                    directiveSources.add(rayData.sourceGeometries.size());
+                }
+                rayData.addSource(factory.createLineString(new Coordinate[]{new Coordinate(x, y, 0.05),
+                        new Coordinate(x + 10, y, 0.05)}));
+            }
+        }
+        rayData.setComputeHorizontalDiffraction(false);
+        rayData.setComputeVerticalDiffraction(false);
+        rayData.reflexionOrder = 0;
+        rayData.setFarFieldAggregation(aggregationDistance, 1);
+
+        FarFieldRaysOut propDataOut = new FarFieldRaysOut();
+        ComputeCnossosRays computeRays = new ComputeCnossosRays(rayData);
+        computeRays.setThreadCount(1);
+        computeRays.run(propDataOut);
+        aggregationError[0] = computeRays.getFarFieldAggregationError(0);
+        return propDataOut;
+    }
+
+    /**
+     * Test optimisation feature {@link CnossosPropagationData#farFieldAggregationDistance}
+     */
+    @Test
+    public void testFarFieldAggregation() {
+        double[] referenceError = new double[1];
+        FarFieldRaysOut reference = computeFarField(0, new HashSet<>(), referenceError);
+        assertEquals(0, referenceError[0], 0);
+        double[] aggregationError = new double[1];
+        Set<Integer> directiveSources = new HashSet<>();
+        FarFieldRaysOut aggregated = computeFarField(200, directiveSources, aggregationError);
+        // Far source points are merged and traced once, paths of an aggregate source share the same points
+        assertTrue(aggregated.countPaths(directiveSources) * 4 < reference.countPaths(directiveSources));
+        assertTrue(aggregationError[0] > 0);
+        assertTrue(aggregationError[0] <= 1);
+        assertEquals(10 * Math.log10(reference.energy), 10 * Math.log10(aggregated.energy), 1);
+        // Directive sources keep their own paths
+        for(Set<Long> sources : aggregated.pathSources.values()) {
+            if(sources.stream().anyMatch(id -> directiveSources.contains(id.intValue()))) {
+                assertEquals(1, sources.size());
+            }
+        }
+    }
+
     /**
      * Assertions for a list of {@link PropagationPath}.
      * @param expectedPts    Array of arrays of array of expected coordinates (xyz) of points of paths. To each path
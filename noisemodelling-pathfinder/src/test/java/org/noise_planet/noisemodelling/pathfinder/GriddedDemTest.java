@@ -0,0 +1,133 @@
+package org.noise_planet.noisemodelling.pathfinder;
+
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+import static org.noise_planet.noisemodelling.pathfinder.ProfileBuilder.IntersectionType.TOPOGRAPHY;
+
+/**
+ * Test class dedicated to {@link GriddedDem}.
+ */
+public class GriddedDemTest {
+    private static final double DELTA = 1e-8;
+
+    private static double planeZ(double x, double y) {
+        return 0.5 * x + 0.25 * y + 3;
+    }
+
+    private static List<Coordinate> planeGridPoints() {
+        List<Coordinate> points = new ArrayList<>();
+        for(int row = 0; row < 40; row++) {
+            for(int column = 0; column < 60; column++) {
+                double x = 10 + column * 5;
+                double y = 20 + row * 5;
+                points.add(new Coordinate(x, y, planeZ(x, y)));
+            }
+        }
+        return points;
+    }
+
+    @Test
+    public void testFromPoints() {
+        List<Coordinate> points = planeGridPoints();
+        GriddedDem dem = GriddedDem.fromPoints(points);
+        assertNotNull(dem);
+        assertEquals(60, dem.getColumns());
+        assertEquals(40, dem.getRows());
+        assertEquals(5, dem.getCellSizeX(), DELTA);
+        assertEquals(5, dem.getCellSizeY(), DELTA);
+        assertEquals(10, dem.getOriginX(), DELTA);
+        assertEquals(20, dem.getOriginY(), DELTA);
+        assertEquals(planeZ(210, 25), dem.getNodeZ(40, 1), DELTA);
+        assertEquals(planeZ(15, 20), dem.getNodeZ(1, 0), DELTA);
+        // Missing grid node, the points must be triangulated
+        points.remove(100);
+        assertNull(GriddedDem.fromPoints(points));
+        // Grid node without elevation
+        points = planeGridPoints();
+        points.get(100).z = Double.NaN;
+        assertNull(GriddedDem.fromPoints(points));
+        // Not a regular grid
+        Random random = new Random(42);
+        List<Coordinate> randomPoints = new ArrayList<>();
+        for(int i = 0; i < 100; i++) {
+            randomPoints.add(new Coordinate(random.nextDouble() * 100, random.nextDouble() * 100, 0));
+        }
+        assertNull(GriddedDem.fromPoints(randomPoints));
+    }
+
+    @Test
+    public void testInterpolation() {
+        // One cell, only the south east corner is elevated
+        GriddedDem dem = new GriddedDem(0, 0, 2, 2, 2, 2, new double[]{0, 10, 0, 0});
+        // South east triangle
+        assertEquals(5, dem.getZ(1.5, 0.5), DELTA);
+        // North west triangle
+        assertEquals(0, dem.getZ(0.5, 1.5), DELTA);
+        // On the diagonal both triangles give the same value
+        assertEquals(0, dem.getZ(1.0, 1.0), DELTA);
+        assertTrue(Double.isNaN(dem.getZ(-1.0, 1.0)));
+        assertTrue(Double.isNaN(dem.getZ(1, 2.5)));
+    }
+
+    @Test
+    public void testProfile() {
+        GriddedDem dem = GriddedDem.fromPoints(planeGridPoints());
+        assertNotNull(dem);
+        Random random = new Random(42);
+        for(int i = 0; i < 50; i++) {
+            // Points may be outside of the grid
+            Coordinate p1 = new Coordinate(random.nextDouble() * 340 - 10, random.nextDouble() * 240 - 10);
+            Coordinate p2 = new Coordinate(random.nextDouble() * 340 - 10, random.nextDouble() * 240 - 10);
+            List<Coordinate> profile = dem.getProfile(p1, p2);
+            double lastDistance = 0;
+            for(Coordinate pt : profile) {
+                assertEquals(planeZ(pt.x, pt.y), pt.z, 1e-6);
+                // ordered from p1 to p2 and located on the segment
+                double distance = pt.distance(p1);
+                assertTrue(distance > lastDistance);
+                lastDistance = distance;
+                assertEquals(p1.distance(p2), distance + pt.distance(p2), 1e-6);
+            }
+        }
+        // Horizontal segment crossing 4 columns and 3 diagonals of the cells
+        List<Coordinate> profile = dem.getProfile(new Coordinate(12, 22), new Coordinate(32, 22));
+        assertEquals(7, profile.size());
+        assertEquals(15, profile.get(0).x, DELTA);
+        assertEquals(20, profile.get(2).x, DELTA);
+        assertEquals(22, profile.get(1).y, DELTA);
+        assertEquals(17, profile.get(1).x, DELTA);
+    }
+
+    @Test
+    public void testProfileBuilderGriddedDem() {
+        List<Coordinate> points = planeGridPoints();
+        ProfileBuilder triangulated = new ProfileBuilder();
+        for(Coordinate point : points) {
+            triangulated.addTopographicPoint(point.copy());
+        }
+        triangulated.finishFeeding();
+        ProfileBuilder gridded = new ProfileBuilder();
+        gridded.setGriddedDem(GriddedDem.fromPoints(points));
+        gridded.finishFeeding();
+        assertTrue(gridded.hasDem());
+        assertTrue(gridded.getTriangles().isEmpty());
+        Coordinate source = new Coordinate(38, 51, 1);
+        Coordinate receiver = new Coordinate(250, 190, 4);
+        assertEquals(triangulated.getZGround(new ProfileBuilder.CutPoint(source, TOPOGRAPHY, -1)),
+                gridded.getZGround(new ProfileBuilder.CutPoint(source, TOPOGRAPHY, -1)), 1e-6);
+        ProfileBuilder.CutProfile triangulatedProfile = triangulated.getProfile(source, receiver);
+        ProfileBuilder.CutProfile griddedProfile = gridded.getProfile(source, receiver);
+        // Planar ground, intermediate topographic points are removed
+        assertEquals(triangulatedProfile.getCutPoints().size(), griddedProfile.getCutPoints().size());
+        for(int i = 0; i < griddedProfile.getCutPoints().size(); i++) {
+            assertEquals(0, triangulatedProfile.getCutPoints().get(i).getCoordinate().distance3D(
+                    griddedProfile.getCutPoints().get(i).getCoordinate()), 1e-6);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package org.noise_planet.noisemodelling.pathfinder;
+
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.io.ParseException;
+import org.locationtech.jts.io.WKTReader;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test class dedicated to {@link GroundFactorGrid}.
+ */
+public class GroundFactorGridTest {
+    private static final WKTReader READER = new WKTReader();
+    private static final double DELTA = 1e-6;
+
+    @Test
+    public void testRasterisation() throws ParseException {
+        GroundFactorGrid grid = new GroundFactorGrid(new Envelope(0, 100, 0, 50), 1);
+        assertEquals(100, grid.getColumns());
+        assertEquals(50, grid.getRows());
+        grid.addArea(READER.read("POLYGON((10 10, 30 10, 30 30, 10 30, 10 10), (15 15, 15 20, 20 20, 20 15, 15 15))"), 0.7);
+        assertEquals(0.7, grid.getG(10.2, 10.2, 0), DELTA);
+        assertEquals(0.7, grid.getG(29.8, 29.8, 0), DELTA);
+        // hole and outside
+        assertEquals(0.2, grid.getG(17, 17, 0.2), DELTA);
+        assertEquals(0.2, grid.getG(30.5, 20, 0.2), DELTA);
+        assertEquals(0.2, grid.getG(-5, 20, 0.2), DELTA);
+        assertTrue(Double.isNaN(grid.getCellG(9, 9)));
+        assertEquals(0.7, grid.getCellG(10, 10), DELTA);
+        // multi polygon
+        grid.addArea(READER.read("MULTIPOLYGON(((50 0, 60 0, 60 10, 50 10, 50 0)),((70 0, 80 0, 80 10, 70 10, 70 0)))"), 1);
+        assertEquals(1, grid.getG(55, 5, 0), DELTA);
+        assertEquals(1, grid.getG(75, 5, 0), DELTA);
+        assertEquals(0, grid.getG(65, 5, 0), DELTA);
+    }
+
+    @Test
+    public void testMeanG() throws ParseException {
+        GroundFactorGrid grid = new GroundFactorGrid(new Envelope(0, 100, 0, 100), 2);
+        grid.addArea(READER.read("POLYGON((0 0, 50 0, 50 100, 0 100, 0 0))"), 1);
+        // Half of the horizontal segment is on G=1
+        assertEquals(0.5, grid.getMeanG(new Coordinate(20, 51), new Coordinate(80, 51), 0), DELTA);
+        assertEquals(0.5, grid.getMeanG(new Coordinate(80, 51), new Coordinate(20, 51), 0), DELTA);
+        // Diagonal segment
+        assertEquals(0.5, grid.getMeanG(new Coordinate(0, 0), new Coordinate(100, 100), 0), DELTA);
+        // Segment partially outside of the grid, default G outside
+        assertEquals(0.75, grid.getMeanG(new Coordinate(-50, 51), new Coordinate(50, 51), 0.5), DELTA);
+        // Vertical segment
+        assertEquals(1, grid.getMeanG(new Coordinate(25, 10), new Coordinate(25, 90), 0), DELTA);
+        assertEquals(0.3, grid.getMeanG(new Coordinate(75, 10), new Coordinate(75, 90), 0.3), DELTA);
+        // Point
+        assertEquals(1, grid.getMeanG(new Coordinate(25, 10), new Coordinate(25, 10), 0), DELTA);
+    }
+
+    @Test
+    public void testProfileBuilderGroundFactorGrid() throws ParseException {
+        ProfileBuilder polygons = new ProfileBuilder()
+                .addGroundEffect(0.0, 50.0, -20.0, 80.0, 0.9)
+                .addGroundEffect(50.0, 150.0, -20.0, 80.0, 0.5)
+                .addGroundEffect(150.0, 225.0, -20.0, 80.0, 0.2)
+                .finishFeeding();
+        GroundFactorGrid grid = new GroundFactorGrid(new Envelope(-10, 235, -30, 90), 0.5);
+        for(ProfileBuilder.GroundEffect groundEffect : polygons.getGroundEffects()) {
+            grid.addArea(groundEffect.getGeometry(), groundEffect.getCoefficient());
+        }
+        ProfileBuilder raster = new ProfileBuilder().setGroundFactorGrid(grid).finishFeeding();
+        Coordinate source = new Coordinate(10, 10, 1);
+        Coordinate receiver = new Coordinate(200, 50, 4);
+        ProfileBuilder.CutProfile polygonProfile = polygons.getProfile(source, receiver, 0);
+        ProfileBuilder.CutProfile rasterProfile = raster.getProfile(source, receiver, 0);
+        assertEquals(polygonProfile.getGPath(), rasterProfile.getGPath(), 0.01);
+        assertEquals(0.9, rasterProfile.getSource().getGroundCoef(), DELTA);
+        assertEquals(0.2, rasterProfile.getReceiver().getGroundCoef(), DELTA);
+    }
+}
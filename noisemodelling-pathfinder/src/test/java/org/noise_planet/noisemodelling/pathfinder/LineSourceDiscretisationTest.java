@@ -0,0 +1,58 @@
+package org.noise_planet.noisemodelling.pathfinder;
+
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.io.ParseException;
+import org.locationtech.jts.io.WKTReader;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test class dedicated to {@link LineSourceDiscretisation}.
+ */
+public class LineSourceDiscretisationTest {
+    private static final double DELTA = 1e-9;
+
+    @Test
+    public void testSameSplitAsLineString() throws ParseException {
+        LineString line = (LineString) new WKTReader().read("LINESTRING Z(0 0 1, 40 0 1, 40 35 2, 100 60 0.5)");
+        LineSourceDiscretisation discretisation = new LineSourceDiscretisation(line, null,
+                new AtomicLong(Long.MAX_VALUE));
+        for(double constraint : new double[]{1, 2.5, 7, 33, 120, 500}) {
+            List<Coordinate> pts = new ArrayList<>();
+            double li = ComputeCnossosRays.splitLineStringIntoPoints(line, constraint, pts);
+            LineSourceDiscretisation.Level level = discretisation.getLevel(constraint);
+            assertEquals(li, level.getLi(), DELTA);
+            assertEquals(pts.size(), level.size());
+            for(int i = 0; i < pts.size(); i++) {
+                assertEquals(0, pts.get(i).distance3D(level.getPoint(i)), DELTA);
+                assertNotNull(level.getOrientation(i));
+            }
+        }
+        // Constraints giving the same number of segments share the level
+        assertSame(discretisation.getLevel(10), discretisation.getLevel(10.1));
+        assertEquals(7, discretisation.getCachedLevelCount());
+    }
+
+    @Test
+    public void testCacheBudget() throws ParseException {
+        LineString line = (LineString) new WKTReader().read("LINESTRING(0 0, 100 0)");
+        AtomicLong budget = new AtomicLong(30);
+        LineSourceDiscretisation discretisation = new LineSourceDiscretisation(line, null, budget);
+        assertEquals(20, discretisation.getLevel(5).size());
+        assertEquals(1, discretisation.getCachedLevelCount());
+        // Does not fit in the remaining budget, computed but not kept
+        assertEquals(50, discretisation.getLevel(2).size());
+        assertEquals(1, discretisation.getCachedLevelCount());
+        assertEquals(50, discretisation.getLevel(2).size());
+        // The remaining budget is still available
+        assertEquals(10, discretisation.getLevel(10).size());
+        assertEquals(2, discretisation.getCachedLevelCount());
+        assertEquals(0, budget.get());
+    }
+}
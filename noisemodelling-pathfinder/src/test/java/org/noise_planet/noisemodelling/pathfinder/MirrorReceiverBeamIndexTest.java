@@ -0,0 +1,119 @@
+package org.noise_planet.noisemodelling.pathfinder;
+
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.io.ParseException;
+import org.locationtech.jts.io.WKTReader;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class dedicated to {@link MirrorReceiverBeamIndex}.
+ */
+public class MirrorReceiverBeamIndexTest {
+
+    private static Map<List<Integer>, MirrorReceiverResult> wallChains(List<MirrorReceiverResult> results) {
+        Map<List<Integer>, MirrorReceiverResult> chains = new HashMap<>();
+        for(MirrorReceiverResult result : results) {
+            List<Integer> chain = new ArrayList<>();
+            for(MirrorReceiverResult cursor = result; cursor != null; cursor = cursor.getParentMirror()) {
+                chain.add(cursor.getWall().getProcessedWallIndex());
+            }
+            chains.put(chain, result);
+        }
+        return chains;
+    }
+
+    /**
+     * @return True if one of the reflections of the chain is done on the back side of a wall
+     */
+    private static boolean hasBackSideReflection(MirrorReceiverBeamIndex.ReflectingWalls walls, Coordinate receiver,
+                                                 MirrorReceiverResult result) {
+        for(MirrorReceiverResult cursor = result; cursor != null; cursor = cursor.getParentMirror()) {
+            Coordinate image = cursor.getParentMirror() == null ? receiver : cursor.getParentMirror().getReceiverPos();
+            if(!walls.isFacing(cursor.getWall(), image)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Beam tracing must find the same reflections as the image receiver tree with less image receivers, except the
+     * reflections on the back side of the walls
+     */
+    @Test
+    public void testSameReflectionsAsImageReceiverTree() throws ParseException {
+        WKTReader wktReader = new WKTReader();
+        ProfileBuilder profileBuilder = new ProfileBuilder();
+        // Street canyon and a building at the end of the street
+        profileBuilder.addBuilding(wktReader.read("POLYGON((0 10, 100 10, 100 30, 0 30, 0 10))"), 15, -1);
+        profileBuilder.addBuilding(wktReader.read("POLYGON((0 -30, 100 -30, 100 -10, 0 -10, 0 -30))"), 15, -1);
+        profileBuilder.addBuilding(wktReader.read("POLYGON((120 -20, 140 -20, 140 20, 120 20, 120 -20))"), 15, -1);
+        profileBuilder.addBuilding(wktReader.read("POLYGON((40 50, 60 50, 60 70, 40 70, 40 50))"), 15, -1);
+        profileBuilder.finishFeeding();
+        Coordinate receiver = new Coordinate(20, 2, 4);
+        double maximumPropagationDistance = 500;
+        double maximumDistanceFromWall = 200;
+        int reflectionOrder = 3;
+        Envelope envelope = new Envelope(receiver);
+        envelope.expandBy(maximumPropagationDistance);
+        MirrorReceiverResultIndex treeIndex = new MirrorReceiverResultIndex(profileBuilder.getWallsIn(envelope),
+                receiver, reflectionOrder, maximumPropagationDistance, maximumDistanceFromWall);
+        MirrorReceiverBeamIndex.ReflectingWalls walls = new MirrorReceiverBeamIndex.ReflectingWalls(profileBuilder);
+        MirrorReceiverBeamIndex beamIndex = new MirrorReceiverBeamIndex(walls, receiver, reflectionOrder,
+                maximumPropagationDistance, maximumDistanceFromWall);
+        assertTrue(beamIndex.getNumberOfImageReceivers() < treeIndex.getNumberOfImageReceivers());
+        assertTrue(beamIndex.getRejectedBeamCount() > 0);
+        int reflectionCount = 0;
+        for(int x = -20; x <= 160; x += 7) {
+            for(int y = -45; y <= 80; y += 5) {
+                Coordinate source = new Coordinate(x + 0.5, y + 0.25, 0.5);
+                Map<List<Integer>, MirrorReceiverResult> expected =
+                        wallChains(treeIndex.findCloseMirrorReceivers(source));
+                Map<List<Integer>, MirrorReceiverResult> got = wallChains(beamIndex.findCloseMirrorReceivers(source));
+                for(Map.Entry<List<Integer>, MirrorReceiverResult> entry : expected.entrySet()) {
+                    assertEquals(source + " " + entry.getKey(), !hasBackSideReflection(walls, receiver,
+                            entry.getValue()), got.containsKey(entry.getKey()));
+                }
+                assertTrue(expected.keySet().containsAll(got.keySet()));
+                reflectionCount += got.size();
+            }
+        }
+        assertTrue(reflectionCount > 0);
+    }
+
+    /**
+     * The back side of a building wall does not reflect
+     */
+    @Test
+    public void testReflectingSide() throws ParseException {
+        WKTReader wktReader = new WKTReader();
+        ProfileBuilder profileBuilder = new ProfileBuilder();
+        profileBuilder.addBuilding(wktReader.read("POLYGON((0 0, 10 0, 10 10, 0 10, 0 0))"), 10, -1);
+        profileBuilder.addWall((LineString) wktReader.read("LINESTRING(20 0 5, 20 10 5)"), 5, 1);
+        profileBuilder.finishFeeding();
+        MirrorReceiverBeamIndex.ReflectingWalls walls = new MirrorReceiverBeamIndex.ReflectingWalls(profileBuilder);
+        for(ProfileBuilder.Wall wall : profileBuilder.getWallsIn(new Envelope(-5, 25, -5, 15))) {
+            Coordinate middle = wall.getLineSegment().midPoint();
+            Coordinate outside = new Coordinate(middle.x + (middle.x - 5) * 0.1, middle.y + (middle.y - 5) * 0.1);
+            Coordinate inside = new Coordinate(middle.x - (middle.x - 5) * 0.1, middle.y - (middle.y - 5) * 0.1);
+            if(wall.getType() == ProfileBuilder.IntersectionType.BUILDING) {
+                assertTrue(walls.isFacing(wall, outside));
+                assertFalse(walls.isFacing(wall, inside));
+            } else {
+                assertTrue(walls.isFacing(wall, outside));
+                assertTrue(walls.isFacing(wall, inside));
+            }
+        }
+    }
+}
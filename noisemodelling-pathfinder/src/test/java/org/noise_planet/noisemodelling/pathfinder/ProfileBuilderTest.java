@@ -5,6 +5,7 @@ import org.cts.op.CoordinateOperationException;
 import org.junit.Test;
 import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.GeometryFactory;
 import org.locationtech.jts.geom.LineSegment;
 import org.locationtech.jts.geom.LineString;
 import org.locationtech.jts.io.ParseException;
@@ -17,10 +18,14 @@ import org.slf4j.LoggerFactory;
 import javax.xml.stream.XMLStreamException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
 
 import static org.junit.Assert.*;
 
@@ -255,6 +260,22 @@ public class ProfileBuilderTest {
         assertEquals(10.0, pts.get(18).getCoordinate().y, DELTA);
         assertEquals(0.3, pts.get(18).getCoordinate().z, DELTA);
 
+        // Receiver at another height above the same position
+        Coordinate upperReceiver = new Coordinate(8, 10, 20);
+        ProfileBuilder.CutProfile expected = profileBuilder.getProfile(new Coordinate(0, 1, 0.1), upperReceiver);
+        ProfileBuilder.CutProfile stacked = new ProfileBuilder.CutProfile(profile, upperReceiver);
+        assertEquals(expected.getCutPoints().size(), stacked.getCutPoints().size());
+        for(int i = 0; i < expected.getCutPoints().size(); i++) {
+            ProfileBuilder.CutPoint expectedPoint = expected.getCutPoints().get(i);
+            ProfileBuilder.CutPoint stackedPoint = stacked.getCutPoints().get(i);
+            assertEquals(expectedPoint.getType(), stackedPoint.getType());
+            assertEquals(0, expectedPoint.getCoordinate().distance3D(stackedPoint.getCoordinate()), DELTA);
+            assertEquals(expectedPoint.getGroundCoef(), stackedPoint.getGroundCoef(), DELTA);
+        }
+        assertEquals(20, stacked.getReceiver().getCoordinate().z, DELTA);
+        assertEquals(0.3, profile.getReceiver().getCoordinate().z, DELTA);
+        assertEquals(expected.isFreeField(), stacked.isFreeField());
+        assertEquals(expected.getGPath(), stacked.getGPath(), DELTA);
     }
 
     @Test
@@ -360,6 +381,119 @@ public class ProfileBuilderTest {
         assertEquals(0, cutProfile.getCutPoints().get(8).getCoordinate().distance3D(new Coordinate(200, 50, 14)), 0.001);
     }
 
+    /**
+     * Check that the packed hierarchy of the obstacle scene returns the same walls and buildings than a brute force
+     * search.
+     */
+    @Test
+    public void testObstacleSceneQueries() throws ParseException {
+        ProfileBuilder profileBuilder = new ProfileBuilder();
+        Random random = new Random(42);
+        for(int i = 0; i < 200; i++) {
+            double x = random.nextDouble() * 500;
+            double y = random.nextDouble() * 500;
+            double w = 2 + random.nextDouble() * 15;
+            double h = 2 + random.nextDouble() * 15;
+            profileBuilder.addBuilding(READER.read(String.format(Locale.ROOT,
+                    "POLYGON((%f %f,%f %f,%f %f,%f %f,%f %f))", x, y, x + w, y, x + w, y + h, x, y + h, x, y)),
+                    5 + i % 10, Arrays.asList(0.1, 0.2, 0.3), i);
+        }
+        for(int i = 0; i < 50; i++) {
+            double x = random.nextDouble() * 500;
+            double y = random.nextDouble() * 500;
+            profileBuilder.addWall(new Coordinate[]{new Coordinate(x, y), new Coordinate(x + random.nextDouble() * 20,
+                    y + random.nextDouble() * 20), new Coordinate(x, y + 30)}, 4, i);
+        }
+        profileBuilder.finishFeeding();
+        ObstacleScene scene = profileBuilder.getObstacleScene();
+        assertNotNull(scene);
+        assertEquals(200 * 4 + 50 * 2, scene.getWallCount());
+        for(int idWall = 0; idWall < scene.getWallCount(); idWall++) {
+            ProfileBuilder.Wall wall = profileBuilder.getProcessedWalls().get(scene.getWallProcessedIndex(idWall));
+            assertEquals(wall.p0.x, scene.getWallX0(idWall), 0);
+            assertEquals(wall.p1.y, scene.getWallY1(idWall), 0);
+            assertEquals(wall.p1.z, scene.getWallZ1(idWall), 0);
+            assertEquals(wall.getAlphas().size(), scene.getWallAlphaCount(idWall));
+            if(wall.getType() == ProfileBuilder.IntersectionType.BUILDING) {
+                assertEquals(0.2, scene.getWallAlpha(idWall, 1), 1e-6);
+            }
+        }
+        for(int i = 0; i < 100; i++) {
+            Coordinate p0 = new Coordinate(random.nextDouble() * 500, random.nextDouble() * 500);
+            Coordinate p1 = new Coordinate(random.nextDouble() * 500, random.nextDouble() * 500);
+            // Walls in envelope
+            Envelope env = new Envelope(p0, p1);
+            Set<ProfileBuilder.Wall> expectedWalls = new HashSet<>();
+            for(ProfileBuilder.Wall wall : profileBuilder.getProcessedWalls()) {
+                if((wall.getType() == ProfileBuilder.IntersectionType.BUILDING ||
+                        wall.getType() == ProfileBuilder.IntersectionType.WALL) &&
+                        env.intersects(wall.getLine().getEnvelopeInternal())) {
+                    expectedWalls.add(wall);
+                }
+            }
+            List<ProfileBuilder.Wall> walls = profileBuilder.getWallsIn(env);
+            assertEquals(expectedWalls.size(), walls.size());
+            assertEquals(expectedWalls, new HashSet<>(walls));
+            // Buildings and walls crossed by the segment
+            LineString segment = new LineSegment(p0, p1).toGeometry(new GeometryFactory());
+            Set<Integer> visitedBuildings = new HashSet<>();
+            profileBuilder.getBuildingsOnPath(p0, p1, item -> visitedBuildings.add((Integer) item));
+            for(int idBuilding = 0; idBuilding < profileBuilder.getBuildings().size(); idBuilding++) {
+                if(segment.intersects(profileBuilder.getBuildings().get(idBuilding).getGeometry())) {
+                    assertTrue(visitedBuildings.contains(idBuilding + 1));
+                }
+            }
+            Set<Integer> visitedWalls = new HashSet<>();
+            profileBuilder.getWallsOnPath(p0, p1, item -> visitedWalls.add((Integer) item));
+            for(int idWall = 0; idWall < profileBuilder.getWalls().size(); idWall++) {
+                if(segment.intersects(profileBuilder.getWalls().get(idWall).getLine())) {
+                    assertTrue(visitedWalls.contains(idWall + 1));
+                }
+            }
+        }
+    }
+
+    /**
+     * The path queries require the obstacle scene and can be stopped by the visitor.
+     */
+    @Test
+    public void testObstaclesOnPathStop() throws ParseException {
+        ProfileBuilder profileBuilder = new ProfileBuilder();
+        for(int i = 0; i < 10; i++) {
+            profileBuilder.addBuilding(READER.read(String.format(Locale.ROOT,
+                    "POLYGON((%d 0,%d 0,%d 10,%d 10,%d 0))", i * 20, i * 20 + 10, i * 20 + 10, i * 20, i * 20)), 5, i);
+        }
+        profileBuilder.addWall(new Coordinate[]{new Coordinate(0, 20), new Coordinate(200, 20)}, 4, 0);
+        profileBuilder.addWall(new Coordinate[]{new Coordinate(0, 30), new Coordinate(200, 30)}, 4, 1);
+        Coordinate p0 = new Coordinate(-5, 5);
+        Coordinate p1 = new Coordinate(250, 50);
+        try {
+            profileBuilder.getBuildingsOnPath(p0, p1, item -> {});
+            fail("The obstacles are not indexed before finishFeeding");
+        } catch (IllegalStateException ex) {
+            // expected
+        }
+        profileBuilder.finishFeeding();
+        Coordinate b1 = new Coordinate(-5, 5);
+        Coordinate b2 = new Coordinate(250, 5);
+        Set<Integer> buildings = new HashSet<>();
+        profileBuilder.getBuildingsOnPath(b1, b2, item -> buildings.add((Integer) item));
+        assertEquals(10, buildings.size());
+        // the visitor stops the query by throwing an IllegalStateException
+        List<Integer> visited = new ArrayList<>();
+        profileBuilder.getBuildingsOnPath(b1, b2, item -> {
+            visited.add((Integer) item);
+            throw new IllegalStateException();
+        });
+        assertEquals(1, visited.size());
+        visited.clear();
+        profileBuilder.getWallsOnPath(new Coordinate(100, 0), new Coordinate(100, 50), item -> {
+            visited.add((Integer) item);
+            throw new IllegalStateException();
+        });
+        assertEquals(1, visited.size());
+    }
+
     /*
      * CutProfile{pts=[
      * SOURCE (10.0,10.0,1.0) ; grd : 0.9 ; topoH : null ; buildH : 0.0 ; buildId : -1 ; alpha : [] ; ,
@@ -0,0 +1,97 @@
+package org.noise_planet.noisemodelling.pathfinder;
+
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test class dedicated to {@link SourcePowerIndex}.
+ */
+public class SourcePowerIndexTest {
+    private static final GeometryFactory FACTORY = new GeometryFactory();
+
+    /**
+     * Propagation data with a known maximal power for each source
+     */
+    private static final class PowerPropagationData extends CnossosPropagationData {
+        private final List<double[]> wj = new ArrayList<>();
+
+        PowerPropagationData(ProfileBuilder profileBuilder) {
+            super(profileBuilder);
+        }
+
+        void addSource(Coordinate position, double power) {
+            addSource(FACTORY.createPoint(position));
+            wj.add(new double[]{power / 2, power / 2});
+        }
+
+        @Override
+        public double[] getMaximalSourcePower(int sourceId) {
+            return sourceId < wj.size() ? wj.get(sourceId) : new double[0];
+        }
+    }
+
+    private static PowerPropagationData createData() {
+        ProfileBuilder builder = new ProfileBuilder();
+        builder.finishFeeding();
+        PowerPropagationData data = new PowerPropagationData(builder);
+        // One loud source near the receiver and a dense layer of quiet sources
+        data.addSource(new Coordinate(5, 5, 1), 1e6);
+        for(int i = 0; i < 20; i++) {
+            for(int j = 0; j < 20; j++) {
+                data.addSource(new Coordinate(100 + i * 20, 100 + j * 20, 1), 1);
+            }
+        }
+        data.addReceiver(new Coordinate(0, 0, 4));
+        data.reflexionOrder = 0;
+        data.setComputeHorizontalDiffraction(false);
+        data.setComputeVerticalDiffraction(false);
+        return data;
+    }
+
+    @Test
+    public void testAggregatedPower() {
+        PowerPropagationData data = createData();
+        SourcePowerIndex index = new SourcePowerIndex(data);
+        assertTrue(index.isBounded());
+        assertEquals(401, index.getTree().size());
+        assertEquals(1e6 + 400, index.getNodePower(0), 1e-6);
+        // Bound decrease with the distance
+        assertTrue(SourcePowerIndex.getReceivedPowerBound(1, 10) > SourcePowerIndex.getReceivedPowerBound(1, 100));
+        // Source with unknown emission
+        data.addSource(FACTORY.createPoint(new Coordinate(50, 50, 1)));
+        assertFalse(new SourcePowerIndex(data).isBounded());
+    }
+
+    @Test
+    public void testSkipNegligibleSources() {
+        PowerPropagationData data = createData();
+        ComputeCnossosRaysOut allRays = new ComputeCnossosRaysOut(false, data);
+        ComputeCnossosRays computeRays = new ComputeCnossosRays(data);
+        computeRays.setThreadCount(1);
+        computeRays.run(allRays);
+        assertEquals(401, allRays.rayCount.get());
+
+        data = createData();
+        data.maximumError = 0.1;
+        ComputeCnossosRaysOut prunedRays = new ComputeCnossosRaysOut(false, data);
+        computeRays = new ComputeCnossosRays(data);
+        computeRays.setThreadCount(1);
+        computeRays.run(prunedRays);
+        // The quiet sources cannot change the level of the loud source by more than 0.1 dB
+        assertEquals(1, prunedRays.rayCount.get());
+
+        data = createData();
+        data.noiseFloor = 200;
+        ComputeCnossosRaysOut noRays = new ComputeCnossosRaysOut(false, data);
+        computeRays = new ComputeCnossosRays(data);
+        computeRays.setThreadCount(1);
+        computeRays.run(noRays);
+        assertEquals(0, noRays.rayCount.get());
+    }
+}
@@ -124,6 +124,113 @@ public class TestComputeCnossosRays {
         assertEquals(0, p1.distance(ray.get(i)), 0.02);
     }
 
+    /**
+     * Side hulls computed with a shared query context must be the same as the ones computed alone
+     */
+    @Test
+    public void TestSideHullSharedQueryContext() throws ParseException {
+        WKTReader wktReader = new WKTReader(new GeometryFactory());
+        ProfileBuilder profileBuilder = new ProfileBuilder();
+        profileBuilder.addBuilding(wktReader.read("POLYGON((5 6, 6 5, 7 5, 7 8, 6 8, 5 7, 5 6))"), 4, -1);
+        profileBuilder.addBuilding(wktReader.read("POLYGON((9 7, 11 7, 11 11, 9 11, 9 7))"), 4, -1);
+        profileBuilder.addBuilding(wktReader.read("POLYGON((12 8, 13 8, 13 10, 12 10, 12 8))"), 4, -1);
+        profileBuilder.addBuilding(wktReader.read("POLYGON((10 4, 11 4, 11 6, 10 6, 10 4))"), 4, -1);
+        profileBuilder.finishFeeding();
+
+        ComputeCnossosRays computeRays = new ComputeCnossosRays(new CnossosPropagationData(profileBuilder));
+        Coordinate p1 = new Coordinate(2, 6.5, 1.6);
+        Coordinate[] sources = new Coordinate[]{new Coordinate(14, 6.5, 1.6), new Coordinate(14, 6.8, 1.6)};
+        PathQueryContext queryContext = new PathQueryContext(profileBuilder);
+        int isolatedQueryCount = 0;
+        for(Coordinate p2 : sources) {
+            for(boolean left : new boolean[]{true, false}) {
+                PathQueryContext isolatedContext = new PathQueryContext(profileBuilder);
+                List<Coordinate> expected = computeRays.computeSideHull(left, p1, p2, isolatedContext);
+                isolatedQueryCount += isolatedContext.getQueryCount();
+                List<Coordinate> ray = computeRays.computeSideHull(left, p1, p2, queryContext);
+                assertEquals(expected.size(), ray.size());
+                for(int i = 0; i < ray.size(); i++) {
+                    assertEquals(0, expected.get(i).distance3D(ray.get(i)), 1e-12);
+                }
+            }
+        }
+        // Left and right hulls share the first segments
+        Assert.assertTrue(queryContext.getQueryCount() < isolatedQueryCount);
+    }
+
+    private static List<String> computeRayKeys(double receiverGroupSize, int threadCount) throws ParseException {
+        WKTReader wktReader = new WKTReader(new GeometryFactory());
+        ProfileBuilder profileBuilder = new ProfileBuilder();
+        profileBuilder.addBuilding(wktReader.read("POLYGON((0 0, 30 0, 30 12, 0 12, 0 0))"), 15, -1);
+        profileBuilder.addBuilding(wktReader.read("POLYGON((10 40, 25 40, 25 55, 10 55, 10 40))"), 9, -1);
+        profileBuilder.addBuilding(wktReader.read("POLYGON((-40 20, -25 20, -25 30, -40 30, -40 20))"), 6, -1);
+        profileBuilder.addWall(new Coordinate[]{new Coordinate(40, 20, 3), new Coordinate(60, 25, 3)}, 3, -1);
+        profileBuilder.finishFeeding();
+        CnossosPropagationData data = new CnossosPropagationData(profileBuilder);
+        data.addSource(wktReader.read("LINESTRING(-60 70 0.05, 80 70 0.05)"));
+        data.addSource(wktReader.read("POINT(70 10 1)"));
+        // Receivers on the facade and above
+        for(int level = 0; level < 3; level++) {
+            for(int i = 0; i < 8; i++) {
+                data.addReceiver(new Coordinate(2 + i * 3.5, 14, 1.5 + level * 3));
+            }
+        }
+        data.addReceiver(new Coordinate(-50, 0, 4));
+        data.reflexionOrder = 1;
+        data.maxSrcDist = 200;
+        data.setComputeHorizontalDiffraction(true);
+        data.setComputeVerticalDiffraction(true);
+        data.setReceiverGroupSize(receiverGroupSize);
+        ComputeCnossosRaysOut rayOut = new ComputeCnossosRaysOut(true, data);
+        ComputeCnossosRays computeRays = new ComputeCnossosRays(data);
+        computeRays.setThreadCount(threadCount);
+        computeRays.run(rayOut);
+        List<String> keys = new ArrayList<>();
+        for(PropagationPath path : rayOut.getPropagationPaths()) {
+            StringBuilder key = new StringBuilder();
+            key.append(path.getIdReceiver()).append(' ').append(path.getIdSource());
+            for(PointPath pointPath : path.getPointList()) {
+                key.append(' ').append(pointPath.type).append(' ').append(pointPath.coordinate);
+            }
+            keys.add(key.toString());
+        }
+        keys.sort(String::compareTo);
+        return keys;
+    }
+
+    /**
+     * Close receivers share their queries, the paths must not change
+     */
+    @Test
+    public void TestReceiverGroupsSameRays() throws ParseException {
+        List<String> expected = computeRayKeys(0, 1);
+        Assert.assertFalse(expected.isEmpty());
+        assertEquals(expected, computeRayKeys(20, 1));
+        assertEquals(expected, computeRayKeys(5, 4));
+    }
+
+    @Test
+    public void TestReceiverGroupsOrder() {
+        List<Coordinate> receivers = new ArrayList<>();
+        receivers.add(new Coordinate(1, 1));
+        receivers.add(new Coordinate(25, 1));
+        receivers.add(new Coordinate(2, 3));
+        receivers.add(new Coordinate(-1, 3));
+        // Upper receiver, computed just after the receiver below
+        receivers.add(new Coordinate(1, 1, 10));
+        ReceiverGroups groups = new ReceiverGroups(receivers, 10);
+        assertEquals(3, groups.getGroupCount());
+        assertEquals(3, groups.getGroupSize(0));
+        assertEquals(0, groups.getReceiver(0, 0));
+        assertEquals(4, groups.getReceiver(0, 1));
+        assertEquals(2, groups.getReceiver(0, 2));
+        assertEquals(1, groups.getReceiver(1, 0));
+        assertEquals(3, groups.getReceiver(2, 0));
+        assertEquals(new Envelope(1, 2, 1, 3), groups.getEnvelope(0));
+        // Disabled grouping
+        assertEquals(5, new ReceiverGroups(receivers, 0).getGroupCount());
+    }
+
     @Test
     public void TestSplitLineStringIntoPoints() {
         GeometryFactory factory = new GeometryFactory();
@@ -0,0 +1,510 @@
+/**
+ * NoiseMap is a scientific computation plugin for OrbisGIS developed in order to
+ * evaluate the noise impact on urban mobility plans. This model is
+ * based on the French standard method NMPB2008. It includes traffic-to-noise
+ * sources evaluation and sound propagation processing.
+ * <p>
+ * This version is developed at French IRSTV Institute and at IFSTTAR
+ * (http://www.ifsttar.fr/) as part of the Eval-PDU project, funded by the
+ * French Agence Nationale de la Recherche (ANR) under contract ANR-08-VILL-0005-01.
+ * <p>
+ * Noisemap is distributed under GPL 3 license. Its reference contact is Judicaël
+ * Picaut <judicael.picaut@ifsttar.fr>. It is maintained by Nicolas Fortin
+ * as part of the "Atelier SIG" team of the IRSTV Institute <http://www.irstv.fr/>.
+ * <p>
+ * Copyright (C) 2011 IFSTTAR
+ * Copyright (C) 2011-2012 IRSTV (FR CNRS 2488)
+ * <p>
+ * Noisemap is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * <p>
+ * Noisemap is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * Noisemap. If not, see <http://www.gnu.org/licenses/>.
+ * <p>
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.noise_planet.noisemodelling.propagation;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.noise_planet.noisemodelling.pathfinder.PointPath;
+import org.noise_planet.noisemodelling.pathfinder.PropagationPath;
+import org.noise_planet.noisemodelling.pathfinder.SegmentPath;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static java.lang.Math.*;
+import static org.noise_planet.noisemodelling.pathfinder.PointPath.POINT_TYPE.*;
+
+/**
+ * Instance based evaluation of the CNOSSOS-EU attenuation terms (Directive 2015/996/EN).
+ * Frequency dependent constants (wave length, atmospheric absorption, ground factor terms) are derived once from
+ * {@link PropagationProcessPathData} and the attenuation of each term is written in buffers owned by this instance,
+ * so the evaluation of a propagation path does not allocate memory.
+ * The returned arrays are overwritten by the next call of the same method. An instance is not thread safe, each
+ * computation thread must use its own instance.
+ * @see EvaluateAttenuationCnossos
+ */
+public class AttenuationCnossosEvaluator {
+    // Last evaluator used by each thread
+    private static final ThreadLocal<AttenuationCnossosEvaluator> THREAD_EVALUATOR = new ThreadLocal<>();
+    private final PropagationProcessPathData data;
+    // References used to detect a modification of the meteorological data
+    private final List<Integer> frequenciesReference;
+    private final double[] alphaAtmoReference;
+    private final double celerity;
+
+    private final int bandCount;
+    /** Wave length, using a constant celerity of 340 m/s as in the CNOSSOS-EU diffraction terms (m) */
+    private final double[] freqLambda;
+    /** Atmospheric absorption (dB/km) */
+    private final double[] alphaAtmo;
+    /** Wave number (rad/m) */
+    private final double[] waveNumber;
+    // Frequency terms of Eq. 2.5.17
+    private final double[] fm25;
+    private final double[] fm15;
+    private final double[] fm075;
+
+    // Computation buffers
+    private final double[] aDiv;
+    private final double[] aAtm;
+    private final double[] aRef;
+    private final double[] aGround;
+    private final double[] aDif;
+    private final double[] aBoundary;
+    private final double[] aRetroDiff;
+    private final double[] deltaBodyScreen;
+    private final double[] aGlobalMeteoHom;
+    private final double[] aGlobalMeteoFav;
+    private final double[] aGlobalMeteoRay;
+
+    /**
+     * @param data Meteorological and frequency data, the tables are computed once from the current values
+     */
+    public AttenuationCnossosEvaluator(PropagationProcessPathData data) {
+        this.data = data;
+        this.frequenciesReference = data.freq_lvl;
+        this.alphaAtmoReference = data.getAlpha_atmo();
+        this.celerity = data.getCelerity();
+        bandCount = data.freq_lvl.size();
+        freqLambda = new double[bandCount];
+        waveNumber = new double[bandCount];
+        fm25 = new double[bandCount];
+        fm15 = new double[bandCount];
+        fm075 = new double[bandCount];
+        alphaAtmo = new double[bandCount];
+        for (int idf = 0; idf < bandCount; idf++) {
+            int fm = data.freq_lvl.get(idf);
+            freqLambda[idf] = 340.0 / fm;
+            waveNumber[idf] = 2 * PI * fm / celerity;
+            fm25[idf] = pow(fm, 2.5);
+            fm15[idf] = pow(fm, 1.5);
+            fm075[idf] = pow(fm, 0.75);
+            alphaAtmo[idf] = alphaAtmoReference != null && idf < alphaAtmoReference.length ?
+                    alphaAtmoReference[idf] : 0;
+        }
+        aDiv = new double[bandCount];
+        aAtm = new double[bandCount];
+        aRef = new double[bandCount];
+        aGround = new double[bandCount];
+        aDif = new double[bandCount];
+        aBoundary = new double[bandCount];
+        aRetroDiff = new double[bandCount];
+        deltaBodyScreen = new double[bandCount];
+        aGlobalMeteoHom = new double[bandCount];
+        aGlobalMeteoFav = new double[bandCount];
+        aGlobalMeteoRay = new double[bandCount];
+    }
+
+    /**
+     * @param data Meteorological data
+     * @return Evaluator of the calling thread for this meteorological data. Only the last evaluator of each thread
+     * is kept, so evaluating alternately different meteorological data rebuilds the evaluator.
+     */
+    public static AttenuationCnossosEvaluator getThreadEvaluator(PropagationProcessPathData data) {
+        AttenuationCnossosEvaluator evaluator = THREAD_EVALUATOR.get();
+        if(evaluator == null || !evaluator.isUpToDate(data)) {
+            evaluator = new AttenuationCnossosEvaluator(data);
+            THREAD_EVALUATOR.set(evaluator);
+        }
+        return evaluator;
+    }
+
+    /**
+     * @return Meteorological data used to build this instance
+     */
+    public PropagationProcessPathData getData() {
+        return data;
+    }
+
+    /**
+     * @param other Meteorological data
+     * @return True if the tables of this instance are the one of the provided meteorological data
+     */
+    public boolean isUpToDate(PropagationProcessPathData other) {
+        return other == data && other.freq_lvl == frequenciesReference &&
+                other.getAlpha_atmo() == alphaAtmoReference && other.getCelerity() == celerity;
+    }
+
+    /**
+     * The divergence, reflection, ground and diffraction terms only depend on the frequencies and the sound celerity.
+     * @param other Other evaluator
+     * @return True if these terms evaluated by this instance are also the terms of the other evaluator
+     */
+    public boolean hasSameGeometricalTerms(AttenuationCnossosEvaluator other) {
+        return other == this || (other.celerity == celerity && other.frequenciesReference.equals(frequenciesReference));
+    }
+
+    public int getBandCount() {
+        return bandCount;
+    }
+
+    /**
+     * @return Buffer of the body barrier attenuation, to be filled by the caller
+     */
+    public double[] getDeltaBodyScreen() {
+        return deltaBodyScreen;
+    }
+
+    /**
+     * @return Buffer of the attenuation in homogeneous conditions, to be filled by the caller
+     */
+    public double[] getAGlobalMeteoHom() {
+        return aGlobalMeteoHom;
+    }
+
+    /**
+     * @return Buffer of the attenuation in favourable conditions, to be filled by the caller
+     */
+    public double[] getAGlobalMeteoFav() {
+        return aGlobalMeteoFav;
+    }
+
+    /**
+     * @return Buffer of the attenuation of a ray, to be filled by the caller
+     */
+    public double[] getAGlobalMeteoRay() {
+        return aGlobalMeteoRay;
+    }
+
+    /**
+     * Eq. 2.5.12
+     * @param path Propagation path
+     * @return Attenuation due to geometrical divergence
+     */
+    public double[] aDiv(PropagationPath path) {
+        double distance = path.difVPoints.isEmpty() ? path.getSRSegment().d : path.getSRSegment().dc;
+        Arrays.fill(aDiv, 20 * log10(distance) + 11);
+        return aDiv;
+    }
+
+    /**
+     * Eq. 2.5.13
+     * @param distance Propagation distance (m)
+     * @return Attenuation due to atmospheric absorption
+     */
+    public double[] aAtm(double distance) {
+        for (int idfreq = 0; idfreq < bandCount; idfreq++) {
+            aAtm[idfreq] = alphaAtmo[idfreq] * distance / 1000.;
+        }
+        return aAtm;
+    }
+
+    /**
+     * @param path Propagation path
+     * @return Attenuation due to the absorption of the reflection walls
+     */
+    public double[] aRef(PropagationPath path) {
+        Arrays.fill(aRef, 0.0);
+        List<PointPath> points = path.getPointList();
+        for (int idRef = 0; idRef < path.refPoints.size(); idRef++) {
+            List<Double> alpha = points.get(path.refPoints.get(idRef)).alphaWall;
+            if (alpha != null && !alpha.isEmpty()) {
+                for (int idf = 0; idf < bandCount; idf++) {
+                    aRef[idf] += -10 * log10(1 - alpha.get(idf));
+                }
+            }
+        }
+        return aRef;
+    }
+
+    private boolean isValidRcrit(PropagationPath pp, int idFreq, boolean favorable) {
+        double lambda = freqLambda[idFreq];
+        return favorable ?
+                pp.deltaF > -lambda / 20 && pp.deltaF > lambda / 4 - pp.deltaPrimeF || pp.deltaF > 0 :
+                pp.deltaH > -lambda / 20 && pp.deltaH > lambda / 4 - pp.deltaPrimeH || pp.deltaH > 0 ;
+    }
+
+    /**
+     * Attenuation due to the ground and diffraction, in the current favourable condition of the path.
+     * @param path Propagation path
+     * @return Aboundary
+     */
+    public double[] aBoundary(PropagationPath path) {
+        List<PointPath> points = path.getPointList();
+        boolean favorable = path.isFavorable();
+        if(path.keepAbsorption) {
+            path.aBoundaryH.init(bandCount);
+            path.aBoundaryF.init(bandCount);
+        }
+        // Find the first diffraction point. Only the validity of the DIFH_RCRIT points depends on the frequency
+        int firstDiffIndex = Integer.MAX_VALUE;
+        PointPath.POINT_TYPE firstDiffType = null;
+        int firstEdgeIndex = Integer.MAX_VALUE;
+        PointPath.POINT_TYPE firstEdgeType = null;
+        for (int i = 0; i < path.difHPoints.size() + path.difVPoints.size(); i++) {
+            int idPoint = i < path.difHPoints.size() ? path.difHPoints.get(i) :
+                    path.difVPoints.get(i - path.difHPoints.size());
+            if(idPoint < 0 || idPoint >= points.size()) {
+                continue;
+            }
+            PointPath.POINT_TYPE type = points.get(idPoint).type;
+            if (type == DIFH || type == DIFV) {
+                if (idPoint < firstEdgeIndex) {
+                    firstEdgeIndex = idPoint;
+                    firstEdgeType = type;
+                }
+                if (idPoint < firstDiffIndex) {
+                    firstDiffIndex = idPoint;
+                    firstDiffType = type;
+                }
+            } else if (type == DIFH_RCRIT && idPoint < firstDiffIndex) {
+                firstDiffIndex = idPoint;
+                firstDiffType = type;
+            }
+        }
+        SegmentPath srSegment = path.getSRSegment();
+        for (int i = 0; i < bandCount; i++) {
+            PointPath.POINT_TYPE first = firstDiffType == DIFH_RCRIT && !isValidRcrit(path, i, favorable) ?
+                    firstEdgeType : firstDiffType;
+            aGround[i] = favorable ? aGroundF(path, srSegment, i, false) : aGroundH(path, srSegment, i, false);
+            if (path.groundAttenuation != null && path.groundAttenuation.aGroundF != null) {
+                if (favorable) {
+                    path.groundAttenuation.aGroundF[i] = aGround[i];
+                } else {
+                    path.groundAttenuation.aGroundH[i] = aGround[i];
+                }
+            }
+            if (first != null) {
+                aDif[i] = aDif(path, i, first);
+                if (first != DIFV) {
+                    aGround[i] = 0.;
+                }
+            } else {
+                aDif[i] = 0.;
+            }
+        }
+        if (path.keepAbsorption) {
+            if (favorable) {
+                path.absorptionData.aDifF = aDif.clone();
+            } else {
+                path.absorptionData.aDifH = aDif.clone();
+            }
+        }
+        for (int i = 0; i < bandCount; i++) {
+            aBoundary[i] = aGround[i] + aDif[i];
+        }
+        return aBoundary;
+    }
+
+    /**
+     * Eq. 2.5.36
+     * @param reflect Propagation path
+     * @return Retro-diffraction attenuation of the reflection points
+     */
+    public double[] deltaRetrodif(PropagationPath reflect) {
+        Arrays.fill(aRetroDiff, 0.);
+        Coordinate s = reflect.getSRSegment().s;
+        Coordinate r = reflect.getSRSegment().r;
+        for (int idRef = 0; idRef < reflect.refPoints.size(); idRef++) {
+            //Get the reflexion point
+            PointPath pp = reflect.getPointList().get(reflect.refPoints.get(idRef));
+            //Get the point on the top of the obstacle
+            double ox = pp.coordinate.x;
+            double oy = pp.buildingHeight;
+            //Compute de distance delta (2.5.36)
+            double deltaPrime = -(distance(s.x, s.y, ox, oy) + distance(ox, oy, r.x, r.y) - reflect.getSRSegment().d);
+            double ch = 1.;
+            for (int i = 0; i < bandCount; i++) {
+                double testForm = 40.0 / freqLambda[i] * deltaPrime;
+                aRetroDiff[i] = testForm >= -2 ? 10 * ch * log10(3 + testForm) : 0;
+            }
+        }
+        if (reflect.keepAbsorption) {
+            if (reflect.reflectionAttenuation.dLRetro == null) {
+                reflect.reflectionAttenuation.init(bandCount);
+            }
+            reflect.reflectionAttenuation.dLRetro = aRetroDiff.clone();
+        }
+        return aRetroDiff;
+    }
+
+    private static double distance(double x0, double y0, double x1, double y1) {
+        double dx = x0 - x1;
+        double dy = y0 - y1;
+        return sqrt(dx * dx + dy * dy);
+    }
+
+    private double aDif(PropagationPath proPath, int i, PointPath.POINT_TYPE type) {
+        List<SegmentPath> segments = proPath.getSegmentList();
+        SegmentPath first = segments.get(0);
+        SegmentPath last = segments.get(segments.size() - 1);
+        boolean favorable = proPath.isFavorable();
+
+        double ch = 1.;
+        double lambda = freqLambda[i];
+        double cSecond = (type == DIFH && proPath.difHPoints.size() <= 1) || (type == DIFV && proPath.difVPoints.size() <= 1) || proPath.e <= 0.3 ? 1. :
+                (1+pow(5*lambda/proPath.e, 2))/(1./3+pow(5*lambda/proPath.e, 2));
+
+        double _delta = favorable && (type == DIFH || type == DIFH_RCRIT) ? proPath.deltaF : proPath.deltaH;
+        double deltaDStar = (first.dPrime + last.dPrime - proPath.getSRSegment().dPrime);
+        double deltaDiffSR = 0;
+        double testForm = 40/lambda*cSecond*_delta;
+        if(_delta >= 0 || (_delta > -lambda/20 && _delta > lambda/4 - deltaDStar)) {
+            deltaDiffSR = testForm>=-2 ? 10*ch*log10(3+testForm) : 0;
+        }
+
+        if(type == DIFV) {
+            if(proPath.keepAbsorption) {
+                if(favorable) {
+                    proPath.aBoundaryF.deltaDiffSR[i] = deltaDiffSR;
+                }
+                else {
+                    proPath.aBoundaryH.deltaDiffSR[i] = deltaDiffSR;
+                }
+            }
+            return deltaDiffSR;
+        }
+
+        _delta = favorable ? proPath.deltaSPrimeRF : proPath.deltaSPrimeRH;
+        testForm = 40/lambda*cSecond*_delta;
+        double deltaDiffSPrimeR = testForm>=-2 ? 10*ch*log10(3+testForm) : 0;
+
+        _delta = favorable ? proPath.deltaSRPrimeF : proPath.deltaSRPrimeH;
+        testForm = 40/lambda*cSecond*_delta;
+        double deltaDiffSRPrime = testForm>=-2 ? 10*ch*log10(3+testForm) : 0;
+
+        double aGroundSO = favorable ? aGroundF(proPath, first, i, false) : aGroundH(proPath, first, i, false);
+        double aGroundOR = favorable ? aGroundF(proPath, last, i, true) : aGroundH(proPath, last, i, true);
+
+        //If the source or the receiver are under the mean plane, change the computation of deltaDffSR and deltaGround
+        double deltaGroundSO = -20*log10(1+(pow(10, -aGroundSO/20)-1)*pow(10, -(deltaDiffSPrimeR-deltaDiffSR)/20));
+        double deltaGroundOR  = -20 * log10(1 + (pow(10, -aGroundOR / 20) - 1) * pow(10, -(deltaDiffSRPrime - deltaDiffSR) / 20));
+
+        //Double check NaN values
+        if(Double.isNaN(deltaGroundSO)) {
+            deltaGroundSO = aGroundSO;
+            deltaDiffSR = deltaDiffSPrimeR;
+        }
+        if(Double.isNaN(deltaGroundOR)) {
+            deltaGroundOR = aGroundOR;
+            deltaDiffSR = deltaDiffSPrimeR;
+        }
+
+        double aDiff = min(25, max(0, deltaDiffSR)) + deltaGroundSO + deltaGroundOR;
+        if(proPath.keepAbsorption) {
+            PropagationPath.ABoundary aBoundaryData = favorable ? proPath.aBoundaryF : proPath.aBoundaryH;
+            aBoundaryData.deltaDiffSR[i] = deltaDiffSR;
+            aBoundaryData.aGroundSO[i] = aGroundSO;
+            aBoundaryData.aGroundOR[i] = aGroundOR;
+            aBoundaryData.deltaDiffSPrimeR[i] = deltaDiffSPrimeR;
+            aBoundaryData.deltaDiffSRPrime[i] = deltaDiffSRPrime;
+            aBoundaryData.deltaGroundSO[i] = deltaGroundSO;
+            aBoundaryData.deltaGroundOR[i] = deltaGroundOR;
+            aBoundaryData.aDiff[i] = aDiff;
+        }
+        return aDiff;
+    }
+
+    /**
+     * Eq. 2.5.17
+     * @param gw Ground factor of the path
+     * @param idFreq Frequency band index
+     * @return w value
+     */
+    private double computeW(double gw, int idFreq) {
+        double gw26 = pow(gw, 2.6);
+        return 0.0185 * fm25[idFreq] * gw26 /
+                (fm15[idFreq] * gw26 + 1.3e3 * fm075[idFreq] * pow(gw, 1.3) + 1.16e6);
+    }
+
+    /**
+     * Eq. 2.5.16
+     */
+    private static double computeCf(double dp, double w) {
+        return dp * (1 + 3 * w * dp * exp(-sqrt(w * dp))) / (1 + w * dp);
+    }
+
+    /**
+     * Eq. 2.5.15
+     * @param proPath Propagation path
+     * @param path Segment of the propagation path
+     * @param idFreq Frequency band index
+     * @param forceGPath Use gPath instead of gPathPrime
+     * @return Aground in homogeneous conditions
+     */
+    public double aGroundH(PropagationPath proPath, SegmentPath path, int idFreq, boolean forceGPath) {
+        double gw = forceGPath ? path.gPath : proPath.isFavorable() ? path.gPath : path.gPathPrime;
+        double w = computeW(gw, idFreq);
+        double dp = path.dp;
+        double cf = computeCf(dp, w);
+        double k = waveNumber[idFreq];
+        if(proPath.keepAbsorption && path == proPath.getSRSegment()) {
+            proPath.groundAttenuation.wH[idFreq] = w;
+            proPath.groundAttenuation.cfH[idFreq] = cf;
+        }
+        if(path.gPath == 0) {
+            return -3;
+        }
+        double gm = forceGPath ? path.gPath : path.gPathPrime;
+        double aGroundHMin = -3*(1-gm);
+        double zs = path.zsH;
+        double zr = path.zrH;
+        double aGroundHComputed = -10 * log10(4 * (k*k) / (dp*dp) *
+                (zs*zs - sqrt(2 * cf / k) * zs + cf / k) *
+                (zr*zr - sqrt(2 * cf / k) * zr + cf / k));
+        return max(aGroundHComputed, aGroundHMin);
+    }
+
+    /**
+     * Eq. 2.5.20
+     * @param proPath Propagation path
+     * @param path Segment of the propagation path
+     * @param idFreq Frequency band index
+     * @param forceGPath Use gPath instead of gPathPrime for Gm
+     * @return Aground in favourable conditions
+     */
+    public double aGroundF(PropagationPath proPath, SegmentPath path, int idFreq, boolean forceGPath) {
+        double gw = proPath.isFavorable() ? path.gPath : path.gPathPrime;
+        double w = computeW(gw, idFreq);
+        double dp = path.dp;
+        double cf = computeCf(dp, w);
+        double k = waveNumber[idFreq];
+        if(proPath.keepAbsorption && path == proPath.getSRSegment()) {
+            proPath.groundAttenuation.wF[idFreq] = w;
+            proPath.groundAttenuation.cfF[idFreq] = cf;
+        }
+        double gm = forceGPath ? path.gPath : path.gPathPrime;
+        double aGroundFMin = path.testFormH <= 1 ? -3 * (1 - gm) : -3 * (1 - gm) * (1 + 2 * (1 - (1 / path.testFormH)));
+        if(path.gPath == 0) {
+            return aGroundFMin;
+        }
+        else {
+            double zs = path.zsF;
+            double zr = path.zrF;
+            double aGroundFComputed = -10 * log10(4 * (k*k) / (dp*dp) *
+                    (zs*zs - sqrt(2 * cf / k) * zs + cf / k) *
+                    (zr*zr - sqrt(2 * cf / k) * zr + cf / k));
+            return max(aGroundFComputed, aGroundFMin);
+        }
+    }
+}
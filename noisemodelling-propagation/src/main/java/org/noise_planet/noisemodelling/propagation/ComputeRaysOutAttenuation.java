@@ -36,7 +36,6 @@ package org.noise_planet.noisemodelling.propagation;
 
 import org.locationtech.jts.algorithm.Angle;
 import org.locationtech.jts.geom.Coordinate;
-import org.locationtech.jts.math.Vector3D;
 import org.noise_planet.noisemodelling.pathfinder.*;
 
 import java.util.*;
@@ -63,6 +62,7 @@ public class ComputeRaysOutAttenuation implements IComputeRaysOut {
 
     public PropagationProcessPathData genericMeteoData;
     public CnossosPropagationData inputData;
+    private double[] inputFrequencies;
 
     public ComputeRaysOutAttenuation(boolean keepRays, PropagationProcessPathData pathData, CnossosPropagationData inputData) {
         this.keepRays = keepRays;
@@ -88,6 +88,7 @@ public class ComputeRaysOutAttenuation implements IComputeRaysOut {
     public AtomicLong nb_obstr_test = new AtomicLong();
     public AtomicLong nb_image_receiver = new AtomicLong();
     public AtomicLong nb_reflexion_path = new AtomicLong();
+    public AtomicLong nb_rejected_beam = new AtomicLong();
     public AtomicLong nb_diffraction_path = new AtomicLong();
     public AtomicInteger cellComputed = new AtomicInteger();
     private static final double angle_section = (2 * Math.PI) / PropagationProcessPathData.DEFAULT_WIND_ROSE.length;
@@ -127,6 +128,42 @@ public class ComputeRaysOutAttenuation implements IComputeRaysOut {
         return index;
     }
 
+    /**
+     * Compute the map relative angle of the ray propagation direction, without intermediate objects.
+     * Same result as {@code Orientation.rotate(sourceOrientation, Orientation.toVector(rayDirectivity), false)}
+     * @param sourceOrientation Orientation of the sound source
+     * @param rayDirectivity Propagation direction relative to the sound source orientation
+     * @return Angle of the propagation direction in radians (atan2 convention)
+     */
+    public static double getRayDirectionAngle(Orientation sourceOrientation, Orientation rayDirectivity) {
+        // Direction vector of the ray relative to the source (Orientation.toVector), axis order is north, east, up
+        double yaw = Math.toRadians(rayDirectivity.yaw);
+        double pitch = Math.toRadians(rayDirectivity.pitch);
+        double c2 = Math.cos(- pitch);
+        double rayNorth = Math.cos(yaw) * c2;
+        double rayEast = Math.sin(yaw) * c2;
+        double rayUp = -Math.sin(- pitch);
+        // Apply the source orientation (Orientation.rotate)
+        yaw = Math.toRadians(sourceOrientation.yaw);
+        pitch = Math.toRadians(sourceOrientation.pitch);
+        final double roll = Math.toRadians(sourceOrientation.roll);
+        final double c1 = Math.cos(yaw);
+        final double s1 = Math.sin(yaw);
+        c2 = Math.cos(- pitch);
+        final double s2 = Math.sin(- pitch);
+        final double c3 = Math.cos(roll);
+        final double s3 = Math.sin(roll);
+        double rotatedY = 0;
+        rotatedY += c1 * c2 * rayNorth;
+        rotatedY += (c1 * s2 * s3 - s1 * c3) * rayEast;
+        rotatedY += (c1 * s2 * c3 + s1 * s3) * rayUp;
+        double rotatedX = 0;
+        rotatedX += s1 * c2 * rayNorth;
+        rotatedX += (s1 * s2 * s3 + c1 * c3) * rayEast;
+        rotatedX += (s1 * s2 * c3 - c1 * s3) * rayUp;
+        return Math.atan2(rotatedY, rotatedX);
+    }
+
     @Override
     public void finalizeReceiver(long receiverId) {
 
@@ -164,42 +201,99 @@ public class ComputeRaysOutAttenuation implements IComputeRaysOut {
         if (data == null) {
             return new double[0];
         }
-        // cache frequencies
-        double[] frequencies = new double[0];
-        if(inputData != null) {
-            frequencies = new double[inputData.freq_lvl.size()];
-            for (int idFrequency = 0; idFrequency < frequencies.length; idFrequency++) {
-                frequencies[idFrequency] = inputData.freq_lvl.get(idFrequency);
+        return computeAttenuation(getEvaluator(data), sourceId, sourceLi, receiverId, propagationPath);
+    }
+
+    /**
+     * @param data Meteorological data
+     * @return The attenuation evaluator of the current thread for this meteorological data
+     */
+    protected AttenuationCnossosEvaluator getEvaluator(PropagationProcessPathData data) {
+        return AttenuationCnossosEvaluator.getThreadEvaluator(data);
+    }
+
+    /**
+     * Frequencies of the input data, used for the directivity of sources
+     */
+    private double[] getInputFrequencies() {
+        double[] frequencies = inputFrequencies;
+        if(frequencies == null) {
+            frequencies = new double[0];
+            if(inputData != null) {
+                frequencies = new double[inputData.freq_lvl.size()];
+                for (int idFrequency = 0; idFrequency < frequencies.length; idFrequency++) {
+                    frequencies[idFrequency] = inputData.freq_lvl.get(idFrequency);
+                }
             }
+            inputFrequencies = frequencies;
+        }
+        return frequencies;
+    }
+
+    /**
+     * Compute the attenuation of the propagation paths between a source and a receiver. Called for the paths of
+     * this instance and for the paths of the {@link ThreadRaysOut} instances, with their own evaluator.
+     * @param evaluator Attenuation evaluator, must be used only by the calling thread
+     * @param sourceId Source index
+     * @param sourceLi Source power per meter coefficient
+     * @param receiverId Receiver index
+     * @param propagationPath Propagation paths between the source and the receiver
+     * @return Energetic sum of the attenuation of the paths in dB or empty array if there is no path
+     */
+    public double[] computeAttenuation(AttenuationCnossosEvaluator evaluator, long sourceId, double sourceLi, long receiverId, List<PropagationPath> propagationPath) {
+        return computeAttenuation(new AttenuationCnossosEvaluator[] {evaluator}, sourceId, sourceLi, receiverId,
+                propagationPath)[0];
+    }
+
+    /**
+     * Compute the attenuation of the propagation paths between a source and a receiver for several meteorological
+     * conditions (ex. day, evening and night periods).
+     * The terms that do not depend on the meteorological conditions (divergence, reflection, ground and diffraction)
+     * are evaluated once per path with the first evaluator and reused by the evaluators that share the same
+     * frequencies and sound celerity. Only the atmospheric absorption and the favourable occurrence weighting are
+     * evaluated for each evaluator. If the absorption data is kept, the path holds the values of the last evaluator.
+     * @param evaluators Attenuation evaluators, must be used only by the calling thread
+     * @param sourceId Source index
+     * @param sourceLi Source power per meter coefficient
+     * @param receiverId Receiver index
+     * @param propagationPath Propagation paths between the source and the receiver
+     * @return For each evaluator, energetic sum of the attenuation of the paths in dB or empty array if there is no path
+     */
+    public double[][] computeAttenuation(AttenuationCnossosEvaluator[] evaluators, long sourceId, double sourceLi, long receiverId, List<PropagationPath> propagationPath) {
+        AttenuationCnossosEvaluator evaluator = evaluators[0];
+        PropagationProcessPathData data = evaluator.getData();
+        int bandCount = evaluator.getBandCount();
+        boolean[] sharedTerms = new boolean[evaluators.length];
+        for (int idEvaluator = 0; idEvaluator < evaluators.length; idEvaluator++) {
+            sharedTerms[idEvaluator] = evaluator.hasSameGeometricalTerms(evaluators[idEvaluator]);
         }
         // Compute receiver/source attenuation
-        double[] propagationAttenuationSpectrum = null;
+        double[][] propagationAttenuationSpectrum = new double[evaluators.length][];
         for (PropagationPath proPath : propagationPath) {
             if(keepAbsorption) {
                 proPath.keepAbsorption = true;
                 proPath.groundAttenuation.init(data.freq_lvl.size());
                 proPath.absorptionData.init(data.freq_lvl.size());
             }
-            EvaluateAttenuationCnossos.init(data);
             //ADiv computation
-            double[] aDiv = EvaluateAttenuationCnossos.aDiv(proPath, data);
-            //AAtm computation
-            double[] aAtm = EvaluateAttenuationCnossos.aAtm(data, proPath.getSRSegment().d);
+            double[] aDiv = evaluator.aDiv(proPath);
             //Reflexion computation
-            double[] aRef = EvaluateAttenuationCnossos.evaluateAref(proPath, data);
-            double[] aRetroDiff;
-            //ABoundary computation
-            double[] aBoundary;
-            double[] aGlobalMeteoHom = new double[data.freq_lvl.size()];
-            double[] aGlobalMeteoFav = new double[data.freq_lvl.size()];
-            double[] deltaBodyScreen = new double[data.freq_lvl.size()];
+            double[] aRef = evaluator.aRef(proPath);
+            double[] deltaBodyScreen = evaluator.getDeltaBodyScreen();
+            Arrays.fill(deltaBodyScreen, 0);
 
             List<PointPath> ptList = proPath.getPointList();
 
             // todo get hRail from input data
             double hRail = 0.5;
             Coordinate src = ptList.get(0).coordinate;
-            PointPath pDif = ptList.stream().filter(p -> p.type.equals(DIFH)).findFirst().orElse(null);
+            PointPath pDif = null;
+            for (PointPath pointPath : ptList) {
+                if (pointPath.type == DIFH) {
+                    pDif = pointPath;
+                    break;
+                }
+            }
 
             if (pDif != null && pDif.alphaWall.size()>0) {
                 if (pDif.bodyBarrier){
@@ -292,7 +386,9 @@ public class ComputeRaysOutAttenuation implements IComputeRaysOut {
                                 }
                             }
                         }
-                        deltaBodyScreen = wToDba(deltaL);
+                        for (int idfreq = 0; idfreq < deltaL.length; idfreq++) {
+                            deltaBodyScreen[idfreq] = wToDba(deltaL[idfreq]);
+                        }
                     }
                 }
 
@@ -301,83 +397,138 @@ public class ComputeRaysOutAttenuation implements IComputeRaysOut {
             // restore the Map relative propagation direction from the emission propagation relative to the sound source orientation
             // just swap the inverse boolean parameter
             // @see ComputeCnossosRays#computeOrientation
-            Vector3D fieldVectorPropagation = Orientation.rotate(proPath.getSourceOrientation(),
-                    Orientation.toVector(proPath.raySourceReceiverDirectivity), false);
-            int roseIndex = getRoseIndex(Math.atan2(fieldVectorPropagation.getY(), fieldVectorPropagation.getX()));
+            int roseIndex = getRoseIndex(getRayDirectionAngle(proPath.getSourceOrientation(),
+                    proPath.raySourceReceiverDirectivity));
+            boolean computeHomogeneous = false;
+            boolean computeFavorable = false;
+            for (AttenuationCnossosEvaluator periodEvaluator : evaluators) {
+                double windRoseProbability = periodEvaluator.getData().getWindRose()[roseIndex];
+                computeHomogeneous |= windRoseProbability != 1;
+                computeFavorable |= windRoseProbability != 0;
+                Arrays.fill(periodEvaluator.getAGlobalMeteoHom(), 0);
+                Arrays.fill(periodEvaluator.getAGlobalMeteoFav(), 0);
+            }
             // Homogenous conditions
-            if (data.getWindRose()[roseIndex] != 1) {
+            if (computeHomogeneous) {
                 proPath.setFavorable(false);
-
-                aBoundary = EvaluateAttenuationCnossos.aBoundary(proPath, data);
-                aRetroDiff = EvaluateAttenuationCnossos.deltaRetrodif(proPath, data);
-                for (int idfreq = 0; idfreq < data.freq_lvl.size(); idfreq++) {
-                    aGlobalMeteoHom[idfreq] = -(aDiv[idfreq] + aAtm[idfreq] + aBoundary[idfreq] + aRef[idfreq] + aRetroDiff[idfreq] - deltaBodyScreen[idfreq]); // Eq. 2.5.6
-                }
-                //For testing purpose
-                if(keepAbsorption) {
-                    proPath.absorptionData.aBoundaryH = aBoundary.clone();
-                    proPath.absorptionData.aGlobalH = aGlobalMeteoHom.clone();
+                double[] sharedBoundary = evaluator.aBoundary(proPath);
+                double[] sharedRetroDiff = evaluator.deltaRetrodif(proPath);
+                for (int idEvaluator = 0; idEvaluator < evaluators.length; idEvaluator++) {
+                    AttenuationCnossosEvaluator periodEvaluator = evaluators[idEvaluator];
+                    if (periodEvaluator.getData().getWindRose()[roseIndex] == 1) {
+                        continue;
+                    }
+                    //ABoundary computation
+                    double[] aBoundary = sharedTerms[idEvaluator] ? sharedBoundary : periodEvaluator.aBoundary(proPath);
+                    double[] aRetroDiff = sharedTerms[idEvaluator] ? sharedRetroDiff : periodEvaluator.deltaRetrodif(proPath);
+                    //AAtm computation
+                    double[] aAtm = periodEvaluator.aAtm(proPath.getSRSegment().d);
+                    double[] aGlobalMeteoHom = periodEvaluator.getAGlobalMeteoHom();
+                    for (int idfreq = 0; idfreq < bandCount; idfreq++) {
+                        aGlobalMeteoHom[idfreq] = -(aDiv[idfreq] + aAtm[idfreq] + aBoundary[idfreq] + aRef[idfreq] + aRetroDiff[idfreq] - deltaBodyScreen[idfreq]); // Eq. 2.5.6
+                    }
+                    //For testing purpose
+                    if(keepAbsorption) {
+                        proPath.absorptionData.aBoundaryH = aBoundary.clone();
+                        proPath.absorptionData.aGlobalH = aGlobalMeteoHom.clone();
+                    }
                 }
             }
             // Favorable conditions
-            if (data.getWindRose()[roseIndex] != 0) {
+            if (computeFavorable) {
                 proPath.setFavorable(true);
-                aBoundary = EvaluateAttenuationCnossos.aBoundary(proPath, data);
-                aRetroDiff = EvaluateAttenuationCnossos.deltaRetrodif(proPath, data);
-                for (int idfreq = 0; idfreq < data.freq_lvl.size(); idfreq++) {
-                    aGlobalMeteoFav[idfreq] = -(aDiv[idfreq] + aAtm[idfreq] + aBoundary[idfreq]+ aRef[idfreq] + aRetroDiff[idfreq] -deltaBodyScreen[idfreq]); // Eq. 2.5.8
-                }
-                //For testing purpose
-                if(keepAbsorption) {
-                    proPath.absorptionData.aBoundaryF = aBoundary.clone();
-                    proPath.absorptionData.aGlobalF = aGlobalMeteoFav.clone();
+                double[] sharedBoundary = evaluator.aBoundary(proPath);
+                double[] sharedRetroDiff = evaluator.deltaRetrodif(proPath);
+                for (int idEvaluator = 0; idEvaluator < evaluators.length; idEvaluator++) {
+                    AttenuationCnossosEvaluator periodEvaluator = evaluators[idEvaluator];
+                    if (periodEvaluator.getData().getWindRose()[roseIndex] == 0) {
+                        continue;
+                    }
+                    //ABoundary computation
+                    double[] aBoundary = sharedTerms[idEvaluator] ? sharedBoundary : periodEvaluator.aBoundary(proPath);
+                    double[] aRetroDiff = sharedTerms[idEvaluator] ? sharedRetroDiff : periodEvaluator.deltaRetrodif(proPath);
+                    //AAtm computation
+                    double[] aAtm = periodEvaluator.aAtm(proPath.getSRSegment().d);
+                    double[] aGlobalMeteoFav = periodEvaluator.getAGlobalMeteoFav();
+                    for (int idfreq = 0; idfreq < bandCount; idfreq++) {
+                        aGlobalMeteoFav[idfreq] = -(aDiv[idfreq] + aAtm[idfreq] + aBoundary[idfreq]+ aRef[idfreq] + aRetroDiff[idfreq] -deltaBodyScreen[idfreq]); // Eq. 2.5.8
+                    }
+                    //For testing purpose
+                    if(keepAbsorption) {
+                        proPath.absorptionData.aBoundaryF = aBoundary.clone();
+                        proPath.absorptionData.aGlobalF = aGlobalMeteoFav.clone();
+                    }
                 }
             }
 
-            //For testing purpose
-            if(keepAbsorption) {
-                proPath.keepAbsorption = true;
-                proPath.absorptionData.aDiv = aDiv.clone();
-                proPath.absorptionData.aAtm = aAtm.clone();
-            }
-
-            // Compute attenuation under the wind conditions using the ray direction
-            double[] aGlobalMeteoRay = sumArrayWithPonderation(aGlobalMeteoFav, aGlobalMeteoHom, data.getWindRose()[roseIndex]);
-
-            // Apply attenuation due to sound direction
+            // Attenuation due to sound direction
+            double[] attSource = null;
             if(inputData != null && !inputData.isOmnidirectional((int)sourceId)) {
                 Orientation directivityToPick = proPath.raySourceReceiverDirectivity;
-                double[] attSource = inputData.getSourceAttenuation((int) sourceId,
-                        frequencies, Math.toRadians(directivityToPick.yaw),
+                attSource = inputData.getSourceAttenuation((int) sourceId,
+                        getInputFrequencies(), Math.toRadians(directivityToPick.yaw),
                         Math.toRadians(directivityToPick.pitch));
                 if(keepAbsorption) {
                     proPath.absorptionData.aSource = attSource;
                 }
-                aGlobalMeteoRay = sumArray(aGlobalMeteoRay, attSource);
+                if (attSource.length != bandCount) {
+                    throw new IllegalArgumentException("Not same size array");
+                }
             }
 
-            // For line source, take account of li coefficient
-            if(sourceLi > 1.0) {
-                for (int i = 0; i < aGlobalMeteoRay.length; i++) {
-                    aGlobalMeteoRay[i] = wToDba(dbaToW(aGlobalMeteoRay[i]) * sourceLi);
+            for (int idEvaluator = 0; idEvaluator < evaluators.length; idEvaluator++) {
+                AttenuationCnossosEvaluator periodEvaluator = evaluators[idEvaluator];
+                double windRoseProbability = periodEvaluator.getData().getWindRose()[roseIndex];
+                double[] aGlobalMeteoHom = periodEvaluator.getAGlobalMeteoHom();
+                double[] aGlobalMeteoFav = periodEvaluator.getAGlobalMeteoFav();
+                //For testing purpose
+                if(keepAbsorption) {
+                    proPath.keepAbsorption = true;
+                    proPath.absorptionData.aDiv = aDiv.clone();
+                    proPath.absorptionData.aAtm = periodEvaluator.aAtm(proPath.getSRSegment().d).clone();
                 }
-            }
-            // Keep global attenuation
-            if(keepAbsorption) {
-                proPath.absorptionData.aGlobal = aGlobalMeteoRay.clone();
-            }
 
-            if (propagationAttenuationSpectrum != null) {
-                propagationAttenuationSpectrum = sumDbArray(aGlobalMeteoRay, propagationAttenuationSpectrum);
-            } else {
-                propagationAttenuationSpectrum = aGlobalMeteoRay;
+                // Compute attenuation under the wind conditions using the ray direction
+                double[] aGlobalMeteoRay = periodEvaluator.getAGlobalMeteoRay();
+                for (int idfreq = 0; idfreq < bandCount; idfreq++) {
+                    aGlobalMeteoRay[idfreq] = wToDba(windRoseProbability * dbaToW(aGlobalMeteoFav[idfreq]) +
+                            (1 - windRoseProbability) * dbaToW(aGlobalMeteoHom[idfreq]));
+                }
+
+                // Apply attenuation due to sound direction
+                if(attSource != null) {
+                    for (int idfreq = 0; idfreq < bandCount; idfreq++) {
+                        aGlobalMeteoRay[idfreq] += attSource[idfreq];
+                    }
+                }
+
+                // For line source, take account of li coefficient
+                if(sourceLi > 1.0) {
+                    for (int i = 0; i < aGlobalMeteoRay.length; i++) {
+                        aGlobalMeteoRay[i] = wToDba(dbaToW(aGlobalMeteoRay[i]) * sourceLi);
+                    }
+                }
+                // Keep global attenuation
+                if(keepAbsorption) {
+                    proPath.absorptionData.aGlobal = aGlobalMeteoRay.clone();
+                }
+
+                double[] spectrum = propagationAttenuationSpectrum[idEvaluator];
+                if (spectrum != null) {
+                    for (int idfreq = 0; idfreq < bandCount; idfreq++) {
+                        spectrum[idfreq] = wToDba(dbaToW(aGlobalMeteoRay[idfreq]) + dbaToW(spectrum[idfreq]));
+                    }
+                } else {
+                    propagationAttenuationSpectrum[idEvaluator] = aGlobalMeteoRay.clone();
+                }
             }
         }
-        if (propagationAttenuationSpectrum != null) {
-            return propagationAttenuationSpectrum;
-        } else {
-            return new double[0];
+        for (int idEvaluator = 0; idEvaluator < evaluators.length; idEvaluator++) {
+            if (propagationAttenuationSpectrum[idEvaluator] == null) {
+                propagationAttenuationSpectrum[idEvaluator] = new double[0];
+            }
         }
+        return propagationAttenuationSpectrum;
     }
 
     @Override
@@ -398,6 +549,7 @@ public class ComputeRaysOutAttenuation implements IComputeRaysOut {
         propagationPathsSize.set(0);
     }
 
+    @Override
     public void appendReflexionPath(long added) {
         nb_reflexion_path.addAndGet(added);
     }
@@ -406,10 +558,16 @@ public class ComputeRaysOutAttenuation implements IComputeRaysOut {
         nb_diffraction_path.addAndGet(added);
     }
 
+    @Override
     public void appendImageReceiver(long added) {
         nb_image_receiver.addAndGet(added);
     }
 
+    @Override
+    public void appendRejectedBeam(long added) {
+        nb_rejected_beam.addAndGet(added);
+    }
+
     public void appendSourceCount(long srcCount) {
         nb_couple_receiver_src.addAndGet(srcCount);
     }
@@ -460,6 +618,7 @@ public class ComputeRaysOutAttenuation implements IComputeRaysOut {
         public List<PropagationPath> propagationPaths = new ArrayList<PropagationPath>();
         public PropagationProcessPathData propagationProcessPathData;
         public boolean keepRays = false;
+        private AttenuationCnossosEvaluator evaluator;
 
         public ThreadRaysOut(ComputeRaysOutAttenuation multiThreadParent, PropagationProcessPathData propagationProcessPathData) {
             this.multiThreadParent = multiThreadParent;
@@ -469,7 +628,9 @@ public class ComputeRaysOutAttenuation implements IComputeRaysOut {
 
         @Override
         public double[] addPropagationPaths(long sourceId, double sourceLi, long receiverId, List<PropagationPath> propagationPath) {
-            double[] aGlobalMeteo = multiThreadParent.computeAttenuation(propagationProcessPathData, sourceId, sourceLi, receiverId, propagationPath);
+            // the evaluator of this instance is kept when the caller switches between the time periods
+            double[] aGlobalMeteo = propagationProcessPathData == null ? new double[0] :
+                    multiThreadParent.computeAttenuation(getEvaluator(), sourceId, sourceLi, receiverId, propagationPath);
             multiThreadParent.rayCount.addAndGet(propagationPath.size());
             if(keepRays) {
                 if(multiThreadParent.inputData != null && sourceId < multiThreadParent.inputData.sourcesPk.size() &&
@@ -487,6 +648,27 @@ public class ComputeRaysOutAttenuation implements IComputeRaysOut {
                     propagationPaths.addAll(propagationPath);
                 }
             }
+            return addAttenuation(sourceId, receiverId, aGlobalMeteo);
+        }
+
+        /**
+         * @return Attenuation evaluator of this instance, built from the meteorological data
+         */
+        public AttenuationCnossosEvaluator getEvaluator() {
+            if(evaluator == null || !evaluator.isUpToDate(propagationProcessPathData)) {
+                evaluator = new AttenuationCnossosEvaluator(propagationProcessPathData);
+            }
+            return evaluator;
+        }
+
+        /**
+         * Keep the attenuation between a source and a receiver, already computed by the caller
+         * @param sourceId Source index
+         * @param receiverId Receiver index
+         * @param aGlobalMeteo Energetic sum of the attenuation of the propagation paths
+         * @return aGlobalMeteo or empty array if null
+         */
+        public double[] addAttenuation(long sourceId, long receiverId, double[] aGlobalMeteo) {
             if (aGlobalMeteo != null) {
                 receiverAttenuationLevels.add(new VerticeSL(receiverId, sourceId, aGlobalMeteo));
                 return aGlobalMeteo;
@@ -499,6 +681,21 @@ public class ComputeRaysOutAttenuation implements IComputeRaysOut {
             multiThreadParent.receiversAttenuationLevels.add(new VerticeSL(receiverId, sourceId, level));
         }
 
+        @Override
+        public void appendImageReceiver(long added) {
+            multiThreadParent.appendImageReceiver(added);
+        }
+
+        @Override
+        public void appendRejectedBeam(long added) {
+            multiThreadParent.appendRejectedBeam(added);
+        }
+
+        @Override
+        public void appendReflexionPath(long added) {
+            multiThreadParent.appendReflexionPath(added);
+        }
+
         @Override
         public void finalizeReceiver(final long receiverId) {
             if(keepRays && !propagationPaths.isEmpty()) {
@@ -33,8 +33,6 @@
  */
 package org.noise_planet.noisemodelling.propagation;
 
-import org.locationtech.jts.geom.Coordinate;
-import org.noise_planet.noisemodelling.pathfinder.PointPath;
 import org.noise_planet.noisemodelling.pathfinder.PropagationPath;
 import org.noise_planet.noisemodelling.pathfinder.SegmentPath;
 import org.slf4j.Logger;
@@ -45,7 +43,6 @@ import java.util.Arrays;
 import java.util.List;
 
 import static java.lang.Math.*;
-import static org.noise_planet.noisemodelling.pathfinder.PointPath.POINT_TYPE.*;
 
 /**
  * Return the dB value corresponding to the parameters
@@ -55,11 +52,13 @@ import static org.noise_planet.noisemodelling.pathfinder.PointPath.POINT_TYPE.*;
  */
 
 public class EvaluateAttenuationCnossos {
-    private static double[] freq_lambda;
-    private static double[] aGlobal;
+    private static final ThreadLocal<double[]> aGlobal = new ThreadLocal<>();
 
+    /**
+     * @return Last result of {@link #evaluate(PropagationPath, PropagationProcessPathData)} in the calling thread
+     */
     public static double[] getaGlobal() {
-        return aGlobal;
+        return aGlobal.get();
     }
 
     private static final Logger LOGGER = LoggerFactory.getLogger(EvaluateAttenuationCnossos.class);
@@ -75,16 +74,17 @@ public class EvaluateAttenuationCnossos {
         double cprime;
 
         for (int idfreq = 0; idfreq < data.freq_lvl.size(); idfreq++) {
+            double lambda = getWaveLength(data, idfreq);
             double Ch = 1; // Eq 2.5.21
             if (srpath.eLength > 0.3) {
-                double gammaPart = pow((5 * freq_lambda[idfreq]) / srpath.eLength, 2);
+                double gammaPart = pow((5 * lambda) / srpath.eLength, 2);
                 cprime = (1. + gammaPart) / (1./3. + gammaPart); // Eq. 2.5.23
             } else {
                 cprime = 1.;
             }
 
             //(7.11) NMP2008 P.32
-            double testForm = (40 / freq_lambda[idfreq])
+            double testForm = (40 / lambda)
                     * cprime * srpath.getDelta();
 
             double deltaDif = 0.;
@@ -210,26 +210,6 @@ public class EvaluateAttenuationCnossos {
         return -20 * log10(attArg);
     }
 
-    /**
-     *
-     * @param path
-     * @param data
-     * @return
-     */
-    private static double[] getARef(PropagationPath path, PropagationProcessPathData data) {
-        double[] aRef = new double[data.freq_lvl.size()];
-        Arrays.fill(aRef, 0.0);
-        for (int idf = 0; idf < data.freq_lvl.size(); idf++) {
-            for (int idRef = 0; idRef < path.refPoints.size(); idRef++) {
-                List<Double> alpha = path.getPointList().get(path.refPoints.get(idRef)).alphaWall;
-                if(alpha != null && !alpha.isEmpty()) {
-                    aRef[idf] += -10 * log10(1 - alpha.get(idf));
-                }
-            }
-        }
-        return aRef;
-    }
-
     /**
      *
      * @param segmentPath
@@ -383,28 +363,38 @@ public class EvaluateAttenuationCnossos {
     }
 
     /**
-     *
+     * Wave length of the frequency band
+     * @param data Meteorological data
+     * @param idf Frequency band index
+     * @return Wave length in meter
+     */
+    private static double getWaveLength(PropagationProcessPathData data, int idf) {
+        if (data.freq_lvl.get(idf) > 0) {
+            return data.getCelerity() / data.freq_lvl.get(idf);
+        } else {
+            return 1;
+        }
+    }
+
+    /**
+     * @param data Meteorological data
+     * @return Evaluator of the calling thread, the returned buffers must be copied before the next evaluation
+     */
+    private static AttenuationCnossosEvaluator getEvaluator(PropagationProcessPathData data) {
+        return AttenuationCnossosEvaluator.getThreadEvaluator(data);
+    }
+
+    /**
+     * The wave lengths are now computed on the fly, this method is kept for compatibility only.
      * @param data
+     * @deprecated Use {@link AttenuationCnossosEvaluator} to share precomputed values
      */
+    @Deprecated
     public static void init(PropagationProcessPathData data) {
-        // init
-        aGlobal = new double[data.freq_lvl.size()];
-
-        // Init wave length for each frequency
-        freq_lambda = new double[data.freq_lvl.size()];
-        for (int idf = 0; idf < data.freq_lvl.size(); idf++) {
-            if (data.freq_lvl.get(idf) > 0) {
-                freq_lambda[idf] = data.getCelerity() / data.freq_lvl.get(idf);
-            } else {
-                freq_lambda[idf] = 1;
-            }
-        }
     }
 
     public static double[] aDiv(PropagationPath path, PropagationProcessPathData data) {
-        double[] aDiv = new double[data.freq_lvl.size()];
-        Arrays.fill(aDiv, getADiv(path.difVPoints.isEmpty() ? path.getSRSegment().d : path.getSRSegment().dc));
-        return aDiv;
+        return getEvaluator(data).aDiv(path).clone();
     }
 
     /**
@@ -414,15 +404,7 @@ public class EvaluateAttenuationCnossos {
      * @return
      */
     public static double[] aAtm(PropagationProcessPathData data, double distance) {
-        // init
-        double[] aAtm = new double[data.freq_lvl.size()];
-        // init atmosphere
-        double[] alpha_atmo = data.getAlpha_atmo();
-
-        for (int idfreq = 0; idfreq < data.freq_lvl.size(); idfreq++) {
-            aAtm[idfreq] = getAAtm(distance, alpha_atmo[idfreq]);
-        }
-        return aAtm;
+        return getEvaluator(data).aAtm(distance).clone();
     }
 
     /**
@@ -432,7 +414,7 @@ public class EvaluateAttenuationCnossos {
      * @return
      */
     public static double[] evaluateAref(PropagationPath path, PropagationProcessPathData data) {
-        return getARef(path, data);
+        return getEvaluator(data).aRef(path).clone();
     }
 
     /**
@@ -444,20 +426,10 @@ public class EvaluateAttenuationCnossos {
      */
     public static double[] evaluate(PropagationPath path, PropagationProcessPathData data) {
         // init
-        aGlobal = new double[data.freq_lvl.size()];
+        double[] aGlobal = new double[data.freq_lvl.size()];
         double[] aBoundary;
         double[] aRef;
 
-        // Init wave length for each frequency
-        freq_lambda = new double[data.freq_lvl.size()];
-        for (int idf = 0; idf < data.freq_lvl.size(); idf++) {
-            if (data.freq_lvl.get(idf) > 0) {
-                freq_lambda[idf] = data.getCelerity() / data.freq_lvl.get(idf);
-            } else {
-                freq_lambda[idf] = 1;
-            }
-        }
-
         // init atmosphere
         double[] alpha_atmo = data.getAlpha_atmo();
 
@@ -474,7 +446,7 @@ public class EvaluateAttenuationCnossos {
         aBoundary = getABoundary(path, data);
 
         // reflections
-        aRef = getARef(path, data);
+        aRef = evaluateAref(path, data);
 
         for (int idfreq = 0; idfreq < data.freq_lvl.size(); idfreq++) {
             // atm
@@ -488,201 +460,18 @@ public class EvaluateAttenuationCnossos {
             aGlobal[idfreq] = -(aDiv + aAtm + aBoundary[idfreq] + aRef[idfreq]);
 
         }
+        EvaluateAttenuationCnossos.aGlobal.set(aGlobal);
         return aGlobal;
     }
 
-    private static boolean isValidRcrit(PropagationPath pp, int freq, boolean favorable) {
-        double lambda = 340.0/freq;
-        return favorable ?
-                pp.deltaF > -lambda / 20 && pp.deltaF > lambda / 4 - pp.deltaPrimeF || pp.deltaF > 0 :
-                pp.deltaH > -lambda / 20 && pp.deltaH > lambda / 4 - pp.deltaPrimeH || pp.deltaH > 0 ;
-    }
-
     public static double[] aBoundary(PropagationPath path, PropagationProcessPathData data) {
-        double[] aGround = new double[data.freq_lvl.size()];
-        double[] aDif = new double[data.freq_lvl.size()];
-        List<PointPath> diffPts = new ArrayList<>();
-        for(int i=0; i<path.getPointList().size(); i++) {
-            if(path.difHPoints.contains(i)) {
-                diffPts.add(path.getPointList().get(i));
-            }
-            else if(path.difVPoints.contains(i)) {
-                diffPts.add(path.getPointList().get(i));
-            }
-        }
         path.aBoundaryH.init(data.freq_lvl.size());
         path.aBoundaryF.init(data.freq_lvl.size());
-        // Without diff
-        for(int i=0; i<data.freq_lvl.size(); i++) {
-            int finalI = i;
-            PointPath first = diffPts.stream()
-                    .filter(pp -> pp.type.equals(PointPath.POINT_TYPE.DIFH) || pp.type.equals(DIFV) ||
-                            (pp.type.equals(DIFH_RCRIT) &&
-                                    isValidRcrit(path, data.freq_lvl.get(finalI), path.isFavorable())))
-                    .findFirst()
-                    .orElse(null);
-            aGround[i] = path.isFavorable() ?
-                    aGroundF(path, path.getSRSegment(), data, i) :
-                    aGroundH(path, path.getSRSegment(), data, i);
-            if(path.groundAttenuation != null && path.groundAttenuation.aGroundF != null) {
-                if (path.isFavorable()) {
-                    path.groundAttenuation.aGroundF[i] = aGround[i];
-                } else {
-                    path.groundAttenuation.aGroundH[i] = aGround[i];
-                }
-            }
-            if (first != null) {
-                aDif[i] = aDif(path, data, i, first.type);
-                if(!first.type.equals(DIFV)) {
-                    aGround[i] = 0.;
-                }
-            }
-            // With diff
-            else {
-                aDif[i] = 0.;
-            }
-
-        }
-        if(path.keepAbsorption) {
-            if (path.isFavorable()) {
-                path.absorptionData.aDifF = aDif;
-            } else {
-                path.absorptionData.aDifH = aDif;
-            }
-        }
-        double[] aBoundary = new double[data.freq_lvl.size()];
-        for(int i=0; i<data.freq_lvl.size(); i++) {
-            aBoundary[i] = aGround[i] + aDif[i];
-        }
-        return aBoundary;
+        return getEvaluator(data).aBoundary(path).clone();
     }
 
     public static double[] deltaRetrodif(PropagationPath reflect, PropagationProcessPathData data) {
-
-        double[] retroDiff = new double[data.freq_lvl.size()];
-        Arrays.fill(retroDiff, 0.);
-        Coordinate s = reflect.getSRSegment().s;
-        Coordinate r = reflect.getSRSegment().r;
-        for(int idx : reflect.refPoints) {
-            //Get the reflexion point
-            PointPath pp = reflect.getPointList().get(idx);
-            //Get the point on the top of the obstacle
-            Coordinate o = new Coordinate(pp.coordinate.x, pp.buildingHeight);
-            //Compute de distance delta (2.5.36)
-            double deltaPrime = -(s.distance(o) + o.distance(r) - reflect.getSRSegment().d);
-            double ch = 1.;
-            for (int i = 0; i < data.freq_lvl.size(); i++) {
-                double lambda = 340.0 / data.freq_lvl.get(i);
-                double testForm = 40.0 / lambda * deltaPrime;
-                double dLRetro = testForm >= -2 ? 10 * ch * log10(3 + testForm) : 0;
-                retroDiff[i] = dLRetro;
-            }
-        }
-        if (reflect.keepAbsorption) {
-            if (reflect.reflectionAttenuation.dLRetro == null) {
-                reflect.reflectionAttenuation.init(data.freq_lvl.size());
-            }
-            reflect.reflectionAttenuation.dLRetro = retroDiff;
-        }
-        return retroDiff;
-    }
-
-    private static double aDif(PropagationPath proPath, PropagationProcessPathData data, int i, PointPath.POINT_TYPE type) {
-        SegmentPath first = proPath.getSegmentList().get(0);
-        SegmentPath last = proPath.getSegmentList().get(proPath.getSegmentList().size()-1);
-
-        double ch = 1.;
-        double lambda = 340.0 / data.freq_lvl.get(i);
-        double cSecond = (type.equals(DIFH) && proPath.difHPoints.size() <= 1) || (type.equals(DIFV) && proPath.difVPoints.size() <= 1) || proPath.e <= 0.3 ? 1. :
-                (1+pow(5*lambda/proPath.e, 2))/(1./3+pow(5*lambda/proPath.e, 2));
-
-        double _delta = proPath.isFavorable() && (type.equals(DIFH) || type.equals(DIFH_RCRIT)) ? proPath.deltaF : proPath.deltaH;
-        double deltaDStar = (proPath.getSegmentList().get(0).dPrime+proPath.getSegmentList().get(proPath.getSegmentList().size()-1).dPrime-proPath.getSRSegment().dPrime);
-        double deltaDiffSR = 0;
-        double testForm = 40/lambda*cSecond*_delta;
-        if(_delta >= 0 || (_delta > -lambda/20 && _delta > lambda/4 - deltaDStar)) {
-            deltaDiffSR = testForm>=-2 ? 10*ch*log10(3+testForm) : 0;
-        }
-
-        if(type.equals(DIFV)) {
-            if(proPath.keepAbsorption) {
-                if(proPath.isFavorable()) {
-                    proPath.aBoundaryF.deltaDiffSR[i] = deltaDiffSR;
-                }
-                else {
-                    proPath.aBoundaryH.deltaDiffSR[i] = deltaDiffSR;
-                }
-            }
-            return deltaDiffSR;
-        }
-
-        _delta = proPath.isFavorable() ? proPath.deltaSPrimeRF : proPath.deltaSPrimeRH;
-        testForm = 40/lambda*cSecond*_delta;
-        double deltaDiffSPrimeR = testForm>=-2 ? 10*ch*log10(3+testForm) : 0;
-
-        _delta = proPath.isFavorable() ? proPath.deltaSRPrimeF : proPath.deltaSRPrimeH;
-        testForm = 40/lambda*cSecond*_delta;
-        double deltaDiffSRPrime = testForm>=-2 ? 10*ch*log10(3+testForm) : 0;
-
-        double aGroundSO = proPath.isFavorable() ? aGroundF(proPath, first, data, i) : aGroundH(proPath, first, data, i);
-        double aGroundOR = proPath.isFavorable() ? aGroundF(proPath, last, data, i, true) : aGroundH(proPath, last, data, i, true);
-
-        //If the source or the receiver are under the mean plane, change the computation of deltaDffSR and deltaGround
-        double deltaGroundSO = -20*log10(1+(pow(10, -aGroundSO/20)-1)*pow(10, -(deltaDiffSPrimeR-deltaDiffSR)/20));
-        double deltaGroundOR  = -20 * log10(1 + (pow(10, -aGroundOR / 20) - 1) * pow(10, -(deltaDiffSRPrime - deltaDiffSR) / 20));
-
-        //Double check NaN values
-        if(Double.isNaN(deltaGroundSO)) {
-           // LOGGER.error("The deltaGroundSO value is NaN. Has been fixed but should be checked");
-            deltaGroundSO = aGroundSO;
-            deltaDiffSR = deltaDiffSPrimeR;
-        }
-        if(Double.isNaN(deltaGroundOR)) {
-         //   LOGGER.error("The deltaGroundOR value is NaN. Has been fixed but should be checked");
-            deltaGroundOR = aGroundOR;
-            deltaDiffSR = deltaDiffSPrimeR;
-        }
-
-        double aDiff = min(25, max(0, deltaDiffSR)) + deltaGroundSO + deltaGroundOR;
-        if(proPath.keepAbsorption) {
-            if(proPath.isFavorable()) {
-                proPath.aBoundaryF.deltaDiffSR[i] = deltaDiffSR;
-                proPath.aBoundaryF.aGroundSO[i] = aGroundSO;
-                proPath.aBoundaryF.aGroundOR[i] = aGroundOR;
-                proPath.aBoundaryF.deltaDiffSPrimeR[i] = deltaDiffSPrimeR;
-                proPath.aBoundaryF.deltaDiffSRPrime[i] = deltaDiffSRPrime;
-                proPath.aBoundaryF.deltaGroundSO[i] = deltaGroundSO;
-                proPath.aBoundaryF.deltaGroundOR[i] = deltaGroundOR;
-                proPath.aBoundaryF.aDiff[i] = aDiff;
-            }
-            else {
-                proPath.aBoundaryH.deltaDiffSR[i] = deltaDiffSR;
-                proPath.aBoundaryH.aGroundSO[i] = aGroundSO;
-                proPath.aBoundaryH.aGroundOR[i] = aGroundOR;
-                proPath.aBoundaryH.deltaDiffSPrimeR[i] = deltaDiffSPrimeR;
-                proPath.aBoundaryH.deltaDiffSRPrime[i] = deltaDiffSRPrime;
-                proPath.aBoundaryH.deltaGroundSO[i] = deltaGroundSO;
-                proPath.aBoundaryH.deltaGroundOR[i] = deltaGroundOR;
-                proPath.aBoundaryH.aDiff[i] = aDiff;
-            }
-        }
-
-        return aDiff;
-    }
-
-    private static double[] computeCfKValues(PropagationPath proPath, SegmentPath path, PropagationProcessPathData data, int idFreq) {
-        return computeCfKValues(proPath, path, data, idFreq, false);
-    }
-    private static double[] computeCfKValues(PropagationPath proPath, SegmentPath path, PropagationProcessPathData data, int idFreq, boolean forceGPath) {
-        int fm = data.freq_lvl.get(idFreq);
-        double c = data.getCelerity();
-        double dp = path.dp;
-        double k = 2*PI*fm/c;
-        double gw = forceGPath ? path.gPath : proPath.isFavorable() ? path.gPath : path.gPathPrime;
-        double w = 0.0185 * pow(fm, 2.5) * pow(gw, 2.6) /
-                (pow(fm, 1.5) * pow(gw, 2.6) + 1.3e3 * pow(fm, 0.75) * pow(gw, 1.3) + 1.16e6);
-        double cf = dp * (1 + 3 * w * dp * exp(-sqrt(w * dp))) / (1 + w * dp);
-        return new double[]{cf, k, w};
+        return getEvaluator(data).deltaRetrodif(reflect).clone();
     }
 
     public static double aGroundH(PropagationPath proPath, SegmentPath path, PropagationProcessPathData data, int idFreq) {
@@ -690,54 +479,15 @@ public class EvaluateAttenuationCnossos {
     }
 
     public static double aGroundH(PropagationPath proPath, SegmentPath path, PropagationProcessPathData data, int idFreq, boolean forceGPath) {
-        double[] values = computeCfKValues(proPath, path, data, idFreq, forceGPath);
-        double cf = values[0];
-        double k = values[1];
-        double w = values[2];
-        if(proPath.keepAbsorption && path == proPath.getSRSegment()) {
-            proPath.groundAttenuation.wH[idFreq] = w;
-            proPath.groundAttenuation.cfH[idFreq] = cf;
-        }
-        if(path.gPath == 0) {
-            return -3;
-        }
-        double dp = path.dp;
-        double gm = forceGPath ? path.gPath : path.gPathPrime;
-        double aGroundHMin = -3*(1-gm);
-        double zs = path.zsH;
-        double zr = path.zrH;
-        double aGroundHComputed = -10 * log10(4 * (k*k) / (dp*dp) *
-                (zs*zs - sqrt(2 * cf / k) * zs + cf / k) *
-                (zr*zr - sqrt(2 * cf / k) * zr + cf / k));
-        return max(aGroundHComputed, aGroundHMin);
+        return getEvaluator(data).aGroundH(proPath, path, idFreq, forceGPath);
     }
 
     //Todo check if the favorable testform should be use instead
     public static double aGroundF(PropagationPath proPath, SegmentPath path, PropagationProcessPathData data, int idFreq) {
         return aGroundF(proPath, path, data, idFreq, false);
     }
+
     public static double aGroundF(PropagationPath proPath, SegmentPath path, PropagationProcessPathData data, int idFreq, boolean forceGPath) {
-        double[] values = computeCfKValues(proPath, path, data, idFreq);
-        double cf = values[0];
-        double k = values[1];
-        double w = values[2];
-        if(proPath.keepAbsorption && path == proPath.getSRSegment()) {
-            proPath.groundAttenuation.wF[idFreq] = w;
-            proPath.groundAttenuation.cfF[idFreq] = cf;
-        }
-        double gm = forceGPath ? path.gPath : path.gPathPrime;
-        double aGroundFMin = path.testFormH <= 1 ? -3 * (1 - gm) : -3 * (1 - gm) * (1 + 2 * (1 - (1 / path.testFormH)));
-        if(path.gPath == 0) {
-            return aGroundFMin;
-        }
-        else {
-            double dp = path.dp;
-            double zs = path.zsF;
-            double zr = path.zrF;
-            double aGroundFComputed = -10 * log10(4 * (k*k) / (dp*dp) *
-                    (zs*zs - sqrt(2 * cf / k) * zs + cf / k) *
-                    (zr*zr - sqrt(2 * cf / k) * zr + cf / k));
-            return max(aGroundFComputed, aGroundFMin);
-        }
+        return getEvaluator(data).aGroundF(proPath, path, idFreq, forceGPath);
     }
 }
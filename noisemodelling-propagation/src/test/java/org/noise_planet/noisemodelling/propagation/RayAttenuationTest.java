@@ -3,11 +3,17 @@ package org.noise_planet.noisemodelling.propagation;
 import com.fasterxml.jackson.annotation.JsonAutoDetect;
 import com.fasterxml.jackson.databind.json.JsonMapper;
 import org.junit.Test;
+import org.locationtech.jts.math.Vector3D;
+import org.noise_planet.noisemodelling.pathfinder.Orientation;
 import org.noise_planet.noisemodelling.pathfinder.PointPath;
 import org.noise_planet.noisemodelling.pathfinder.PropagationPath;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 
 public class RayAttenuationTest {
@@ -32,4 +38,85 @@ public class RayAttenuationTest {
             assertFalse(Double.isNaN(value));
         }
     }
+
+    @Test
+    public void testEvaluatorSameAsStaticMethods() throws IOException {
+        JsonMapper mapper = JsonMapper.builder().build();
+        mapper.setVisibility(mapper.getSerializationConfig().getDefaultVisibilityChecker()
+                .withFieldVisibility(JsonAutoDetect.Visibility.ANY)
+                .withGetterVisibility(JsonAutoDetect.Visibility.NONE)
+                .withIsGetterVisibility(JsonAutoDetect.Visibility.NONE)
+                .withSetterVisibility(JsonAutoDetect.Visibility.NONE)
+                .withCreatorVisibility(JsonAutoDetect.Visibility.NONE));
+        PropagationPath path = mapper.readValue(
+                RayAttenuationTest.class.getResourceAsStream("special_ray.json"), PropagationPath.class);
+        PropagationProcessPathData propagationProcessPathData = new PropagationProcessPathData(false);
+        AttenuationCnossosEvaluator evaluator = new AttenuationCnossosEvaluator(propagationProcessPathData);
+        assertArrayEquals(EvaluateAttenuationCnossos.aDiv(path, propagationProcessPathData),
+                evaluator.aDiv(path), 1e-12);
+        assertArrayEquals(EvaluateAttenuationCnossos.aAtm(propagationProcessPathData, 100),
+                evaluator.aAtm(100), 1e-12);
+        assertArrayEquals(EvaluateAttenuationCnossos.evaluateAref(path, propagationProcessPathData),
+                evaluator.aRef(path), 1e-12);
+        path.keepAbsorption = true;
+        assertArrayEquals(EvaluateAttenuationCnossos.aBoundary(path, propagationProcessPathData),
+                evaluator.aBoundary(path), 1e-12);
+        assertArrayEquals(EvaluateAttenuationCnossos.deltaRetrodif(path, propagationProcessPathData),
+                evaluator.deltaRetrodif(path), 1e-12);
+    }
+
+    @Test
+    public void testRayDirectionAngle() {
+        Orientation[] sourceOrientations = new Orientation[] {new Orientation(0, 0, 0),
+                new Orientation(45, 0, 0), new Orientation(90, 15, 0), new Orientation(210, -30, 10)};
+        Orientation[] rayDirections = new Orientation[] {new Orientation(0, 0, 0),
+                new Orientation(30, 5, 0), new Orientation(135, -20, 0), new Orientation(300, 60, 0)};
+        for(Orientation sourceOrientation : sourceOrientations) {
+            for(Orientation rayDirection : rayDirections) {
+                Vector3D expected = Orientation.rotate(sourceOrientation, Orientation.toVector(rayDirection), false);
+                assertEquals(Math.atan2(expected.getY(), expected.getX()),
+                        ComputeRaysOutAttenuation.getRayDirectionAngle(sourceOrientation, rayDirection), 1e-12);
+            }
+        }
+    }
+
+    private static double[] windRose(double favorableOccurrence) {
+        double[] windRose = new double[PropagationProcessPathData.DEFAULT_WIND_ROSE.length];
+        Arrays.fill(windRose, favorableOccurrence);
+        return windRose;
+    }
+
+    @Test
+    public void testTimePeriodsAttenuation() throws IOException {
+        JsonMapper mapper = JsonMapper.builder().build();
+        mapper.setVisibility(mapper.getSerializationConfig().getDefaultVisibilityChecker()
+                .withFieldVisibility(JsonAutoDetect.Visibility.ANY)
+                .withGetterVisibility(JsonAutoDetect.Visibility.NONE)
+                .withIsGetterVisibility(JsonAutoDetect.Visibility.NONE)
+                .withSetterVisibility(JsonAutoDetect.Visibility.NONE)
+                .withCreatorVisibility(JsonAutoDetect.Visibility.NONE));
+        PropagationPath path = mapper.readValue(
+                RayAttenuationTest.class.getResourceAsStream("special_ray.json"), PropagationPath.class);
+        PropagationProcessPathData day = new PropagationProcessPathData(false);
+        day.setHumidity(60);
+        day.setWindRose(windRose(0.3));
+        PropagationProcessPathData evening = new PropagationProcessPathData(false);
+        evening.setHumidity(80);
+        evening.setWindRose(windRose(1));
+        PropagationProcessPathData night = new PropagationProcessPathData(false);
+        night.setTemperature(5);
+        night.setWindRose(windRose(0.7));
+        ComputeRaysOutAttenuation computeRaysOutAttenuation = new ComputeRaysOutAttenuation(false, day);
+        AttenuationCnossosEvaluator[] evaluators = new AttenuationCnossosEvaluator[] {
+                new AttenuationCnossosEvaluator(day), new AttenuationCnossosEvaluator(evening),
+                new AttenuationCnossosEvaluator(night)};
+        assertFalse(evaluators[0].hasSameGeometricalTerms(evaluators[2]));
+        double[][] merged = computeRaysOutAttenuation.computeAttenuation(evaluators, 0, 1.0, 0,
+                Collections.singletonList(path));
+        for(int idPeriod = 0; idPeriod < evaluators.length; idPeriod++) {
+            double[] expected = computeRaysOutAttenuation.computeAttenuation(evaluators[idPeriod].getData(), 0, 1.0, 0,
+                    Collections.singletonList(path));
+            assertArrayEquals(expected, merged[idPeriod], 1e-12);
+        }
+    }
 }
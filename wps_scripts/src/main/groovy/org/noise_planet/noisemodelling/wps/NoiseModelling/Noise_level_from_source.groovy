@@ -268,6 +268,22 @@ inputs = [
                         '</br> <b> Default value : empty (do not keep rays) </b>',
                 min        : 0, max: 1, type: String.class
         ],
+        confCheckpointTable     : [
+                name       : 'Checkpoint table name',
+                title      : 'Checkpoint table name',
+                description: 'Record the computed cells in the specified table (ex: NM_CHECKPOINT) in order to resume ' +
+                        'the computation if it is interrupted.' +
+                        '</br> </br> <b> Default value : empty (do not record the computed cells) </b>',
+                min        : 0, max: 1, type: String.class
+        ],
+        confResume              : [
+                name       : 'Resume computation',
+                title      : 'Resume an interrupted computation',
+                description: 'Keep the levels of the cells recorded in the checkpoint table by an interrupted ' +
+                        'computation and compute only the other cells. The checkpoint table must be set.' +
+                        '</br> </br> <b> Default value : false </b>',
+                min        : 0, max: 1, type: Boolean.class
+        ],
 ]
 
 outputs = [
@@ -596,6 +612,15 @@ def exec(Connection connection, input) {
         ldenConfig.setMaximumRaysOutputCount(maximumRaysToExport);
     }
 
+    if (input['confCheckpointTable'] && !((input['confCheckpointTable'] as String).isEmpty())) {
+        ldenConfig.setCheckpointTable(input['confCheckpointTable'] as String)
+        if (input['confResume']) {
+            ldenConfig.setResumeComputation(input['confResume'] as Boolean)
+        }
+    } else if (input['confResume']) {
+        throw new IllegalArgumentException("The checkpoint table is required to resume the computation")
+    }
+
     LDENPointNoiseMapFactory ldenProcessing = new LDENPointNoiseMapFactory(connection, ldenConfig)
 
     // add optional discrete directivity table name
@@ -674,6 +699,10 @@ def exec(Connection connection, input) {
 
     pointNoiseMap.setComputeRaysOutFactory(ldenProcessing)
     pointNoiseMap.setPropagationProcessDataFactory(ldenProcessing)
+    if (ldenConfig.isResumeComputation()) {
+        // skip the cells recorded by the interrupted computation
+        pointNoiseMap.setResumeJournal(new CheckpointJournal(ldenConfig.getCheckpointTable()))
+    }
 
 
     // Do not propagate for low emission or far away sources
@@ -707,14 +736,13 @@ def exec(Connection connection, input) {
         int k = 0
         Map cells = pointNoiseMap.searchPopulatedCells(connection);
         ProgressVisitor progressVisitor = progressLogger.subProcess(cells.size());
-        new TreeSet<>(cells.keySet()).each { cellIndex ->
+        // Run ray propagation, the next cell is prepared while the rays of the current cell are computed
+        pointNoiseMap.evaluateCells(connection, new TreeSet<>(cells.keySet()), progressVisitor, receivers, { cellIndex, out ->
             Envelope cellEnvelope = pointNoiseMap.getCellEnv(pointNoiseMap.getMainEnvelope(),
                     cellIndex.getLatitudeIndex(), cellIndex.getLongitudeIndex(), pointNoiseMap.getCellWidth(),
                     pointNoiseMap.getCellHeight());
-            logger.info("Compute domain is " + new GeometryFactory().toGeometry(cellEnvelope))
-            logger.info(String.format("Compute... %.3f %% (%d receivers in this cell)", 100 * k++ / cells.size(), cells.get(cellIndex)))
-            // Run ray propagation
-            IComputeRaysOut out = pointNoiseMap.evaluateCell(connection, cellIndex.getLatitudeIndex(), cellIndex.getLongitudeIndex(), progressVisitor, receivers)
+            logger.info("Computed domain is " + new GeometryFactory().toGeometry(cellEnvelope))
+            logger.info(String.format("Computed... %.3f %% (%d receivers in this cell)", 100 * ++k / cells.size(), cells.get(cellIndex)))
             // Export as a Google Earth 3d scene
             if (out instanceof ComputeRaysOutAttenuation && folderExportKML != null) {
                 ComputeRaysOutAttenuation cellStorage = (ComputeRaysOutAttenuation) out;
@@ -723,8 +751,9 @@ def exec(Connection connection, input) {
                                 cellIndex.getLongitudeIndex())).getPath(),
                 cellStorage.inputData.profileBuilder, cellStorage, sridSources)
             }
-
-        }
+            // record the cell in the checkpoint table once its levels are written
+            ldenProcessing.cellComputed(cellIndex, out)
+        } as PointNoiseMap.CellComputedListener)
     } finally {
         profilerThread.stop();
         ldenProcessing.stop()
@@ -269,7 +269,23 @@ inputs = [
                         '. The number of rays has been limited in this script in order to avoid memory exception' +
                         '</br> <b> Default value : empty (do not keep rays) </b>',
                 min        : 0, max: 1, type: String.class
-        ]
+        ],
+        confCheckpointTable     : [
+                name       : 'Checkpoint table name',
+                title      : 'Checkpoint table name',
+                description: 'Record the computed cells in the specified table (ex: NM_CHECKPOINT) in order to resume ' +
+                        'the computation if it is interrupted.' +
+                        '</br> </br> <b> Default value : empty (do not record the computed cells) </b>',
+                min        : 0, max: 1, type: String.class
+        ],
+        confResume              : [
+                name       : 'Resume computation',
+                title      : 'Resume an interrupted computation',
+                description: 'Keep the levels of the cells recorded in the checkpoint table by an interrupted ' +
+                        'computation and compute only the other cells. The checkpoint table must be set.' +
+                        '</br> </br> <b> Default value : false </b>',
+                min        : 0, max: 1, type: Boolean.class
+        ],
 ]
 
 outputs = [
@@ -585,6 +601,15 @@ def exec(Connection connection, input) {
         ldenConfig.setMaximumRaysOutputCount(maximumRaysToExport);
     }
 
+    if (input['confCheckpointTable'] && !((input['confCheckpointTable'] as String).isEmpty())) {
+        ldenConfig.setCheckpointTable(input['confCheckpointTable'] as String)
+        if (input['confResume']) {
+            ldenConfig.setResumeComputation(input['confResume'] as Boolean)
+        }
+    } else if (input['confResume']) {
+        throw new IllegalArgumentException("The checkpoint table is required to resume the computation")
+    }
+
     LDENPointNoiseMapFactory ldenProcessing = new LDENPointNoiseMapFactory(connection, ldenConfig)
     pointNoiseMap.setComputeHorizontalDiffraction(compute_vertical_diffraction)
     pointNoiseMap.setComputeVerticalDiffraction(compute_horizontal_diffraction)
@@ -657,6 +682,10 @@ def exec(Connection connection, input) {
     // --------------------------------------------
     pointNoiseMap.setComputeRaysOutFactory(ldenProcessing)
     pointNoiseMap.setPropagationProcessDataFactory(ldenProcessing)
+    if (ldenConfig.isResumeComputation()) {
+        // skip the cells recorded by the interrupted computation
+        pointNoiseMap.setResumeJournal(new CheckpointJournal(ldenConfig.getCheckpointTable()))
+    }
 
     // Init Map
     pointNoiseMap.initialize(connection, new EmptyProgressVisitor())
@@ -687,10 +716,9 @@ def exec(Connection connection, input) {
         int k = 0
         Map cells = pointNoiseMap.searchPopulatedCells(connection)
         ProgressVisitor progressVisitor = progressLogger.subProcess(cells.size())
-        new TreeSet<>(cells.keySet()).each { cellIndex ->
-            // Run ray propagation
-            logger.info(String.format("Compute... %.3f %% (%d receivers in this cell)", 100 * k++ / cells.size(), cells.get(cellIndex)))
-            IComputeRaysOut out = pointNoiseMap.evaluateCell(connection, cellIndex.getLatitudeIndex(), cellIndex.getLongitudeIndex(), progressVisitor, receivers)
+        // Run ray propagation, the next cell is prepared while the rays of the current cell are computed
+        pointNoiseMap.evaluateCells(connection, new TreeSet<>(cells.keySet()), progressVisitor, receivers, { cellIndex, out ->
+            logger.info(String.format("Computed... %.3f %% (%d receivers in this cell)", 100 * ++k / cells.size(), cells.get(cellIndex)))
             // Export as a Google Earth 3d scene
             if (out instanceof ComputeRaysOutAttenuation && folderExportKML != null) {
                 ComputeRaysOutAttenuation cellStorage = (ComputeRaysOutAttenuation) out;
@@ -699,7 +727,9 @@ def exec(Connection connection, input) {
                                 cellIndex.getLongitudeIndex())).getPath(),
                         cellStorage.inputData.profileBuilder, cellStorage, sridSources)
             }
-        }
+            // record the cell in the checkpoint table once its levels are written
+            ldenProcessing.cellComputed(cellIndex, out)
+        } as PointNoiseMap.CellComputedListener)
     } catch(IllegalArgumentException | IllegalStateException ex) {
         System.err.println(ex);
         throw ex;